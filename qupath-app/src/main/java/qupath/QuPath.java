@@ -29,8 +29,13 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
@@ -51,12 +56,14 @@ import qupath.lib.common.Version;
 import qupath.lib.gui.BuildInfo;
 import qupath.lib.gui.ExtensionClassLoader;
 import qupath.lib.gui.QuPathApp;
+import qupath.lib.gui.UserDirectoryManager;
 import qupath.lib.gui.extensions.Subcommand;
 import qupath.lib.gui.images.stores.ImageRegionStoreFactory;
 import qupath.lib.gui.logging.LogManager;
 import qupath.lib.gui.logging.LogManager.LogLevel;
 import qupath.lib.gui.prefs.PathPrefs;
 import qupath.lib.gui.scripting.QPEx;
+import qupath.lib.gui.scripting.languages.GroovyLanguage;
 import qupath.lib.gui.scripting.languages.ScriptLanguageProvider;
 import qupath.lib.gui.tma.QuPathTMAViewer;
 import qupath.lib.images.ImageData;
@@ -343,11 +350,33 @@ class ScriptCommand implements Runnable {
 			+ "extract the third series within the file.", paramLabel = "server-arguments")
 	private String[] serverArgs;
 
+	@Option(names = {"--script-cache"}, description = {"Store compiled scripts, so they can be reused by later runs.",
+			"By default, these are stored in a 'script-cache' directory within the QuPath user directory."})
+	private boolean useScriptCache;
+	
+	@Option(names = {"--script-cache-dir"}, description = {"Directory used to store compiled scripts (implies --script-cache).",
+			"This should only be writable by the current user."}, paramLabel = "directory")
+	private String scriptCacheDir;
+
+	@Option(names = {"--profile-startup"}, description = "Log the time spent in each phase of startup and script execution.")
+	private boolean profileStartup;
+
 	@Option(names = {"-h", "--help"}, usageHelp = true, description = "Show this help message and exit.")
 	private boolean usageHelpRequested;
+	
+	/**
+	 * Total time spent in each phase, in nanoseconds
+	 */
+	private final Map<String, Long> phaseTimes = new LinkedHashMap<>();
+	
+	private long phaseStartTime;
 		
 	@Override
 	public void run() {
+		phaseStartTime = System.nanoTime();
+		var jvmStartup = ProcessHandle.current().info().startInstant()
+				.map(start -> Duration.between(start, Instant.now()))
+				.orElse(null);
 		try {
 			if (projectPath != null && !projectPath.toLowerCase().endsWith(ProjectIO.getProjectExtension()))
 				throw new IOException("Project file must end with '.qpproj'");
@@ -360,15 +389,28 @@ class ScriptCommand implements Runnable {
 			
 			// Ensure we have a tile cache set
 			createTileCache();
+			endPhase("Create tile cache");
 			
 			// Set classloader to include any available extensions
+			// (image server builders are only instantiated when they are needed)
 			var extensionClassLoader = ExtensionClassLoader.getInstance();
 			extensionClassLoader.refresh();
 			ImageServerProvider.setServiceLoader(ServiceLoader.load(ImageServerBuilder.class, extensionClassLoader));
 			Thread.currentThread().setContextClassLoader(extensionClassLoader);
+			endPhase("Find extensions");
 			
 			// Unfortunately necessary to force initialization (including GsonTools registration of some classes)
 			QP.getCoreClasses();
+			endPhase("Initialize core classes");
+			
+			// Store compiled scripts so that they can be reused by other processes, if requested
+			if (useScriptCache()) {
+				Path cacheDir = scriptCacheDir == null || scriptCacheDir.isBlank() ? 
+						getDefaultScriptCacheDirectory() : 
+						Paths.get(QuPath.getEncodedPath(scriptCacheDir));
+				logger.debug("Compiled script cache directory: {}", cacheDir);
+				GroovyLanguage.setCompiledScriptCacheDirectory(cacheDir);
+			}
 			
 			ImageData<BufferedImage> imageData;
 			
@@ -381,6 +423,7 @@ class ScriptCommand implements Runnable {
 				if (imagePath != null && !imagePath.equals("")) {
 					imageList = imageList.stream().filter(e -> imagePath.equals(e.getImageName())).toList();
 				}
+				endPhase("Load project");
 					
 				int batchSize = imageList.size();
 				
@@ -388,12 +431,16 @@ class ScriptCommand implements Runnable {
 					var entry = imageList.get(batchIndex);
 					logger.info("Running script for {} ({}/{})", entry.getImageName(), batchIndex, batchSize);
 					imageData = entry.readImageData();
+					endPhase("Read image data");
 					try {
 						Object result = runBatchScript(project, imageData, batchIndex, batchSize, save);
 						if (result != null)
 							logger.info("Script result: {}", result);
-						if (save)
+						endPhase("Run script");
+						if (save) {
 							entry.saveImageData(imageData);
+							endPhase("Save image data");
+						}
 					} catch (Exception e) {
 						logger.error("Error running script for image: " + entry.getImageName(), e);
 						// Throw an exception if we have a single image
@@ -401,7 +448,8 @@ class ScriptCommand implements Runnable {
 						if (imagePath != null && imagePath.equals(entry.getImageName()))
 							throw new RuntimeException(e);
 					} finally {
-						imageData.getServer().close();						
+						imageData.getServer().close();
+						endPhase("Close image");
 					}
 				}
 			} else if (imagePath != null && !imagePath.equals("")) {
@@ -409,22 +457,55 @@ class ScriptCommand implements Runnable {
 				URI uri = GeneralTools.toURI(path);
 				ImageServer<BufferedImage> server = ImageServers.buildServer(uri, parseArgs(serverArgs));
 				imageData = new ImageData<>(server);
+				endPhase("Read image data");
 				Object result = runSingleScript(null, imageData);
 				if (result != null)
 					logger.info("Script result: {}", result);
+				endPhase("Run script");
 				server.close();
+				endPhase("Close image");
 			} else {
 				Object result = runSingleScript(null, null);
 				if (result != null)
 					logger.info("Script result: {}", result);
+				endPhase("Run script");
 			}
 			
 		} catch (Exception e) {
 			logger.error(e.getLocalizedMessage(), e);
 			throw new RuntimeException(e);
+		} finally {
+			if (profileStartup)
+				logPhaseTimes(jvmStartup);
 		}
 	}
 	
+	/**
+	 * Record the time since the end of the last phase.
+	 * Phases with the same name are summed (e.g. when processing multiple images).
+	 * @param name
+	 */
+	private void endPhase(String name) {
+		long time = System.nanoTime();
+		phaseTimes.merge(name, time - phaseStartTime, Long::sum);
+		phaseStartTime = time;
+	}
+	
+	private void logPhaseTimes(Duration jvmStartup) {
+		var sb = new StringBuilder("Startup profile:");
+		long total = 0;
+		if (jvmStartup != null) {
+			sb.append(String.format("%n  %-24s %8d ms", "JVM & command line", jvmStartup.toMillis()));
+			total += jvmStartup.toNanos();
+		}
+		for (var entry : phaseTimes.entrySet()) {
+			sb.append(String.format("%n  %-24s %8d ms", entry.getKey(), entry.getValue() / 1_000_000));
+			total += entry.getValue();
+		}
+		sb.append(String.format("%n  %-24s %8d ms", "Total", total / 1_000_000));
+		logger.info(sb.toString());
+	}
+	
 	/**
 	 * Parse String arguments. If surrounded by square brackets, this is treated as a comma-separated list.
 	 * Otherwise, an array is returned containing a copy of the supplied args.
@@ -444,6 +525,23 @@ class ScriptCommand implements Runnable {
 	}
 	
 	
+	private boolean useScriptCache() {
+		return useScriptCache || (scriptCacheDir != null && !scriptCacheDir.isBlank());
+	}
+	
+	/**
+	 * Get the default directory for compiled scripts.
+	 * This is within the QuPath user directory (or its default location), rather than a shared temp directory, 
+	 * because classes found in the cache are loaded and run.
+	 */
+	private static Path getDefaultScriptCacheDirectory() {
+		var userDir = UserDirectoryManager.getInstance().userDirectoryProperty().get();
+		if (userDir == null)
+			userDir = PathPrefs.getDefaultQuPathUserDirectory();
+		return userDir.resolve("script-cache");
+	}
+	
+	
 	/**
 	 * The tile cache is usually set when initializing the GUI; here, we need to create one for performance
 	 */
@@ -517,15 +615,18 @@ class ScriptCommand implements Runnable {
 				.setBatchSaveResult(batchSave)
 				.setWriter(outWriter)
 				.setErrorWriter(errWriter)
+				.useCompiled(useScriptCache())
 				.build();
 		
 		// Evaluate the script
+		long startTime = System.nanoTime();
 		try {
 			result = language.execute(params);
 		} finally {
 			// Ensure writers are flushed
 			outWriter.flush();
 			errWriter.flush();
+			logger.info("Script completed in {} ms", (System.nanoTime() - startTime) / 1_000_000);
 		}
 		
 		// return output, which may be null
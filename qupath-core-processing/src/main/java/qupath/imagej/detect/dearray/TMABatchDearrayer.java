@@ -0,0 +1,476 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.imagej.detect.dearray;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import qupath.imagej.detect.dearray.TMADearrayerPluginIJ.Dearrayer;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.images.ImageData;
+import qupath.lib.images.ImageData.ImageType;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.objects.hierarchy.DefaultTMAGrid;
+import qupath.lib.objects.hierarchy.TMAGrid;
+import qupath.lib.projects.ProjectImageEntry;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * Dearray tissue microarray images without the need for a plugin or an open viewer,
+ * optionally processing many images in parallel.
+ * <p>
+ * Each image is dearrayed in the same way as {@link TMADearrayerPluginIJ}, using a low-resolution version of the whole image.
+ * The position of each core can then be refined using a higher-resolution image of the region around the core,
+ * with cores processed in parallel.
+ * <p>
+ * When dearraying project entries, at most {@link Builder#parallelism(int)} images are open at any one time.
+ * Only the image server and image type are read for each entry, not the object hierarchy.
+ * The resulting {@link TMAGrid} can be set with {@link qupath.lib.objects.hierarchy.PathObjectHierarchy#setTMAGrid(TMAGrid)}.
+ *
+ * @since v0.6.0
+ */
+public class TMABatchDearrayer {
+
+	private static final Logger logger = LoggerFactory.getLogger(TMABatchDearrayer.class);
+
+	/**
+	 * Preferred diameter of a core (in pixels) in the images used for refinement.
+	 */
+	private static final double REFINE_CORE_DIAMETER_PX = 128;
+
+	private final double coreDiameterMicrons;
+	private final double coreDiameterPixels;
+	private final String[] columnLabels;
+	private final String[] rowLabels;
+	private final boolean columnFirst;
+	private final double densityThreshold;
+	private final double boundsScale;
+	private final boolean refine;
+	private final int parallelism;
+
+	private TMABatchDearrayer(Builder builder) {
+		this.coreDiameterMicrons = builder.coreDiameterMicrons;
+		this.coreDiameterPixels = builder.coreDiameterPixels;
+		this.columnLabels = PathObjectTools.parseTMALabelString(builder.columnLabels);
+		this.rowLabels = PathObjectTools.parseTMALabelString(builder.rowLabels);
+		this.columnFirst = builder.columnFirst;
+		this.densityThreshold = builder.densityThreshold;
+		this.boundsScale = builder.boundsScale;
+		this.refine = builder.refine;
+		this.parallelism = builder.parallelism;
+	}
+
+	/**
+	 * Create a new builder for a {@link TMABatchDearrayer}.
+	 * @return
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Get the maximum number of images that will be dearrayed in parallel.
+	 * @return
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Dearray the images for multiple project entries in parallel.
+	 * Images are opened, dearrayed and closed again, with at most {@link #getParallelism()} images open at any one time.
+	 * The entries themselves are not modified.
+	 * <p>
+	 * If an image cannot be read or dearrayed, this is logged and the entry is omitted from the output.
+	 *
+	 * @param entries the entries to dearray
+	 * @return a map of the TMA grid for each entry that could be dearrayed, in the order of the input
+	 * @throws InterruptedException if the thread is interrupted while waiting for the results
+	 */
+	public Map<ProjectImageEntry<BufferedImage>, TMAGrid> dearray(Collection<? extends ProjectImageEntry<BufferedImage>> entries) throws InterruptedException {
+		Map<ProjectImageEntry<BufferedImage>, TMAGrid> results = new LinkedHashMap<>();
+		var pool = Executors.newFixedThreadPool(parallelism, ThreadTools.createThreadFactory("tma-dearray-", true));
+		try {
+			var futures = new ArrayDeque<EntryFuture>();
+			var iterator = entries.iterator();
+			while (iterator.hasNext() || !futures.isEmpty()) {
+				while (iterator.hasNext() && futures.size() < parallelism) {
+					var entry = iterator.next();
+					futures.add(new EntryFuture(entry, pool.submit(() -> dearray(entry))));
+				}
+				var next = futures.poll();
+				try {
+					var grid = next.future().get();
+					if (grid == null)
+						logger.warn("No TMA grid found for {}", next.entry().getImageName());
+					else
+						results.put(next.entry(), grid);
+				} catch (ExecutionException e) {
+					logger.error("Unable to dearray " + next.entry().getImageName() + ": " + e.getCause().getLocalizedMessage(), e.getCause());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return results;
+	}
+
+	private TMAGrid dearray(ProjectImageEntry<BufferedImage> entry) throws Exception {
+		// Avoid reading the full image data, since the hierarchy may be large and isn't needed
+		boolean isFluorescence = entry.readImageType() == ImageType.FLUORESCENCE;
+		try (var server = entry.getServerBuilder().build()) {
+			var grid = dearray(server, isFluorescence);
+			if (grid != null)
+				logger.info("Dearrayed {} ({} cores)", entry.getImageName(), grid.nCores());
+			return grid;
+		}
+	}
+
+	/**
+	 * Dearray a single image.
+	 * The hierarchy of the image data is not modified.
+	 * @param imageData the image data
+	 * @return the TMA grid, or null if no grid could be found
+	 * @throws IOException if the image could not be read
+	 */
+	public TMAGrid dearray(ImageData<BufferedImage> imageData) throws IOException {
+		return dearray(imageData.getServer(), imageData.isFluorescence());
+	}
+
+	private TMAGrid dearray(ImageServer<BufferedImage> server, boolean isFluorescence) throws IOException {
+		double fullCoreDiameterPx = getCoreDiameterPixels(server);
+		var grid = new Dearrayer().dearray(server, fullCoreDiameterPx, densityThreshold, boundsScale, isFluorescence, columnLabels, rowLabels, columnFirst);
+		if (grid == null || !refine || Thread.currentThread().isInterrupted())
+			return grid;
+		return refineGrid(server, grid, fullCoreDiameterPx, isFluorescence);
+	}
+
+	private double getCoreDiameterPixels(ImageServer<?> server) {
+		var cal = server.getPixelCalibration();
+		if (Double.isFinite(coreDiameterMicrons) && cal.hasPixelSizeMicrons())
+			return coreDiameterMicrons / cal.getAveragedPixelSizeMicrons();
+		if (Double.isFinite(coreDiameterPixels))
+			return coreDiameterPixels;
+		throw new IllegalArgumentException("Core diameter in pixels is required for images without a pixel size in microns");
+	}
+
+	/**
+	 * Refine the positions of all cores in a grid, processing cores in parallel.
+	 */
+	private static TMAGrid refineGrid(ImageServer<BufferedImage> server, TMAGrid grid, double fullCoreDiameterPx, boolean isFluorescence) throws IOException {
+		try {
+			List<TMACoreObject> cores = grid.getTMACoreList().parallelStream()
+					.map(core -> refineCore(server, core, fullCoreDiameterPx, isFluorescence))
+					.toList();
+			return DefaultTMAGrid.create(cores, grid.getGridWidth());
+		} catch (RefineException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Refine the position of a single core by reading the region around it at a higher resolution,
+	 * and moving the core to the center of the nearby tissue.
+	 * Missing cores are returned unchanged, as are cores for which no tissue can be found close to the original position.
+	 * Refined cores retain the name, classification, metadata and measurements of the original core.
+	 */
+	private static TMACoreObject refineCore(ImageServer<BufferedImage> server, TMACoreObject core, double fullCoreDiameterPx, boolean isFluorescence) {
+		if (core.isMissing() || Thread.currentThread().isInterrupted())
+			return core;
+
+		var roi = core.getROI();
+		double downsample = Math.max(1.0, fullCoreDiameterPx / REFINE_CORE_DIAMETER_PX);
+		var request = RegionRequest.createInstance(server.getPath(), downsample,
+				(int)(roi.getCentroidX() - fullCoreDiameterPx),
+				(int)(roi.getCentroidY() - fullCoreDiameterPx),
+				(int)Math.ceil(fullCoreDiameterPx * 2),
+				(int)Math.ceil(fullCoreDiameterPx * 2),
+				roi.getImagePlane())
+				.intersect2D(0, 0, server.getWidth(), server.getHeight());
+		if (request.getWidth() <= 0 || request.getHeight() <= 0)
+			return core;
+
+		BufferedImage img;
+		try {
+			img = server.readRegion(request);
+		} catch (IOException e) {
+			throw new RefineException(e);
+		}
+		double coreDiameterPx = fullCoreDiameterPx / downsample;
+		ByteProcessor bp = TMADearrayer.makeBinaryImage(createProcessor(img, server.isRGB()), coreDiameterPx, null, isFluorescence);
+
+		double x0 = (roi.getCentroidX() - request.getX()) / downsample;
+		double y0 = (roi.getCentroidY() - request.getY()) / downsample;
+		double[] center = findTissueCenter(bp, x0, y0, coreDiameterPx);
+		if (center == null)
+			return core;
+
+		double x = request.getX() + center[0] * downsample;
+		double y = request.getY() + center[1] * downsample;
+		var refined = PathObjects.createTMACoreObject(x, y, roi.getBoundsWidth(), false, roi.getImagePlane());
+		refined.setName(core.getName());
+		refined.setPathClass(core.getPathClass());
+		refined.getMetadata().putAll(core.getMetadata());
+		refined.getMeasurementList().putAll(core.getMeasurementList());
+		return refined;
+	}
+
+	/**
+	 * Locate the center of the tissue close to a starting position, using mean shift on the foreground pixels
+	 * within a circular window.
+	 * @param bp binary image, with tissue pixels having the value 255
+	 * @param x starting x-coordinate
+	 * @param y starting y-coordinate
+	 * @param coreDiameterPx expected core diameter
+	 * @return the refined (x, y) coordinates, or null if too little tissue was found or the core moved too far
+	 */
+	static double[] findTissueCenter(ByteProcessor bp, double x, double y, double coreDiameterPx) {
+		int w = bp.getWidth();
+		int h = bp.getHeight();
+		byte[] pixels = (byte[])bp.getPixels();
+		double radius = coreDiameterPx * 0.6;
+		double radiusSquared = radius * radius;
+		// Require at least a quarter of the core area to contain tissue
+		double minCount = Math.PI * coreDiameterPx * coreDiameterPx / 16;
+		double cx = x;
+		double cy = y;
+		for (int iter = 0; iter < 20; iter++) {
+			int x1 = Math.max(0, (int)(cx - radius));
+			int x2 = Math.min(w, (int)Math.ceil(cx + radius) + 1);
+			int y1 = Math.max(0, (int)(cy - radius));
+			int y2 = Math.min(h, (int)Math.ceil(cy + radius) + 1);
+			long count = 0;
+			double sumX = 0;
+			double sumY = 0;
+			for (int yy = y1; yy < y2; yy++) {
+				double dy = yy + 0.5 - cy;
+				for (int xx = x1; xx < x2; xx++) {
+					if (pixels[yy * w + xx] == 0)
+						continue;
+					double dx = xx + 0.5 - cx;
+					if (dx*dx + dy*dy > radiusSquared)
+						continue;
+					sumX += xx + 0.5;
+					sumY += yy + 0.5;
+					count++;
+				}
+			}
+			if (count < minCount)
+				return null;
+			double nextX = sumX / count;
+			double nextY = sumY / count;
+			double shift = Math.hypot(nextX - cx, nextY - cy);
+			cx = nextX;
+			cy = nextY;
+			if (shift < 0.25)
+				break;
+		}
+		// Don't allow cores to move by more than half a diameter, since they might have moved onto a neighbor
+		if (Math.hypot(cx - x, cy - y) > coreDiameterPx * 0.5)
+			return null;
+		return new double[] {cx, cy};
+	}
+
+	/**
+	 * Create a processor suitable for {@link TMADearrayer#makeBinaryImage(ImageProcessor, double, ij.gui.Roi, boolean)},
+	 * averaging channels for non-RGB images.
+	 */
+	private static ImageProcessor createProcessor(BufferedImage img, boolean isRGB) {
+		if (isRGB)
+			return new ColorProcessor(img);
+		int w = img.getWidth();
+		int h = img.getHeight();
+		var raster = img.getRaster();
+		int nBands = raster.getNumBands();
+		float[] pixels = raster.getSamples(0, 0, w, h, 0, (float[])null);
+		if (nBands > 1) {
+			float[] samples = null;
+			for (int b = 1; b < nBands; b++) {
+				samples = raster.getSamples(0, 0, w, h, b, samples);
+				for (int i = 0; i < pixels.length; i++)
+					pixels[i] += samples[i];
+			}
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] /= nBands;
+		}
+		return new FloatProcessor(w, h, pixels);
+	}
+
+
+	private record EntryFuture(ProjectImageEntry<BufferedImage> entry, Future<TMAGrid> future) {}
+
+	/**
+	 * Wrap an {@link IOException} thrown when refining cores within a stream.
+	 */
+	private static class RefineException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private RefineException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException)super.getCause();
+		}
+
+	}
+
+
+	/**
+	 * Builder for a {@link TMABatchDearrayer}.
+	 * Default values match those of {@link TMADearrayerPluginIJ}.
+	 */
+	public static class Builder {
+
+		private double coreDiameterMicrons = 1200;
+		private double coreDiameterPixels = 5000;
+		private String columnLabels = "1-16";
+		private String rowLabels = "A-J";
+		private boolean columnFirst = false;
+		private double densityThreshold = 0.05;
+		private double boundsScale = 1.05;
+		private boolean refine = true;
+		private int parallelism = Math.min(4, ThreadTools.getParallelism());
+
+		private Builder() {}
+
+		/**
+		 * Set the approximate core diameter in microns.
+		 * This is used for images that have a pixel size in microns.
+		 * @param diameter
+		 * @return this builder
+		 */
+		public Builder coreDiameterMicrons(double diameter) {
+			this.coreDiameterMicrons = diameter;
+			return this;
+		}
+
+		/**
+		 * Set the approximate core diameter in pixels.
+		 * This is used for images that don't have a pixel size in microns.
+		 * @param diameter
+		 * @return this builder
+		 */
+		public Builder coreDiameterPixels(double diameter) {
+			this.coreDiameterPixels = diameter;
+			return this;
+		}
+
+		/**
+		 * Set the column and row labels.
+		 * The number of labels defines the grid dimensions.
+		 * @param columnLabels column labels, either a range (e.g. 1-10 or A-J) or separated by spaces
+		 * @param rowLabels row labels, either a range (e.g. 1-10 or A-J) or separated by spaces
+		 * @return this builder
+		 * @see PathObjectTools#parseTMALabelString(String)
+		 */
+		public Builder labels(String columnLabels, String rowLabels) {
+			this.columnLabels = Objects.requireNonNull(columnLabels);
+			this.rowLabels = Objects.requireNonNull(rowLabels);
+			return this;
+		}
+
+		/**
+		 * Specify whether core names should have the form column-row (rather than the default row-column).
+		 * @param columnFirst
+		 * @return this builder
+		 */
+		public Builder columnFirst(boolean columnFirst) {
+			this.columnFirst = columnFirst;
+			return this;
+		}
+
+		/**
+		 * Set the minimum proportion of a core that should contain tissue; cores below this are marked as missing.
+		 * @param threshold value between 0 and 1
+		 * @return this builder
+		 */
+		public Builder densityThreshold(double threshold) {
+			this.densityThreshold = threshold;
+			return this;
+		}
+
+		/**
+		 * Set the scale factor applied to the core diameter when creating core ROIs.
+		 * @param scale
+		 * @return this builder
+		 */
+		public Builder boundsScale(double scale) {
+			this.boundsScale = scale;
+			return this;
+		}
+
+		/**
+		 * Specify whether core positions should be refined using higher-resolution images around each core.
+		 * @param refine
+		 * @return this builder
+		 */
+		public Builder refine(boolean refine) {
+			this.refine = refine;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of images to dearray in parallel.
+		 * This also limits the number of images that are open at any one time.
+		 * @param parallelism
+		 * @return this builder
+		 */
+		public Builder parallelism(int parallelism) {
+			if (parallelism < 1)
+				throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * Build the dearrayer.
+		 * @return
+		 */
+		public TMABatchDearrayer build() {
+			return new TMABatchDearrayer(this);
+		}
+
+	}
+
+}
@@ -201,6 +201,59 @@ public class TMADearrayerPluginIJ extends AbstractInteractivePlugin<BufferedImag
 			logger.trace("ROI scale: " + roiScaleFactor);
 		
 
+			String[] hLabelsSplit = PathObjectTools.parseTMALabelString(horizontalLabels);
+			String[] vLabelsSplit = PathObjectTools.parseTMALabelString(verticalLabels);
+
+			tmaGrid = dearray(server, fullCoreDiameterPx, densityThreshold, roiScaleFactor, isFluorescence, hLabelsSplit, vLabelsSplit, horizontalLabelFirst);
+			
+			return tmaGrid == null ? null : new ArrayList<>(tmaGrid.getTMACoreList());
+		}
+		
+		
+		
+		/**
+		 * Dearray a TMA image, reading it at a low resolution determined by {@link #getPreferredDownsample(ImageServer)}.
+		 * @param server the server for the TMA image
+		 * @param fullCoreDiameterPx the approximate core diameter, in pixels at the full image resolution
+		 * @param densityThreshold proportion of a core that must contain tissue for it not to be marked as missing
+		 * @param roiScaleFactor scale factor to apply to the core diameter when creating the core ROIs
+		 * @param isFluorescence true if the image is fluorescence (i.e. tissue is brighter than the background)
+		 * @param hLabelsSplit column labels
+		 * @param vLabelsSplit row labels
+		 * @param horizontalLabelFirst if true, names have the form column-row, otherwise row-column
+		 * @return the TMA grid, or null if no grid could be found
+		 * @throws IOException if the image could not be read
+		 */
+		TMAGrid dearray(final ImageServer<BufferedImage> server, double fullCoreDiameterPx, double densityThreshold, double roiScaleFactor, boolean isFluorescence, String[] hLabelsSplit, String[] vLabelsSplit, boolean horizontalLabelFirst) throws IOException {
+			double downsample = getPreferredDownsample(server);
+
+			// Read the image
+			PathImage<ImagePlus> pathImage = IJTools.convertToImagePlus(server,
+					RegionRequest.createInstance(server.getPath(), downsample, 0, 0, server.getWidth(), server.getHeight()));
+//			PathImage<ImagePlus> pathImage = IJTools.createPathImage(server, downsample);
+			ImagePlus imp = pathImage.getImage();
+
+			if (imp.getType() == ImagePlus.COLOR_RGB || imp.getNChannels() == 1)
+				ip = imp.getProcessor();
+			else {
+				ZProjector zProjector = new ZProjector(imp);
+				zProjector.setMethod(ZProjector.AVG_METHOD);
+				zProjector.doProjection();
+				ip = zProjector.getProjection().getProcessor();
+			}
+			bp = null;
+				
+			updateGrid(tmaGrid, downsample);
+			return doDearraying(fullCoreDiameterPx, downsample, densityThreshold, roiScaleFactor, isFluorescence, hLabelsSplit, vLabelsSplit, horizontalLabelFirst);
+		}
+		
+		
+		/**
+		 * Get the downsample factor used to read the whole TMA image for dearraying.
+		 * @param server the server for the TMA image
+		 * @return a downsample giving an image around 1200 pixels across, or pixels of around 25 µm if the pixel size is known
+		 */
+		static double getPreferredDownsample(final ImageServer<?> server) {
 			double maxDimLength = Math.max(server.getWidth(), server.getHeight());
 			double dimRequested = 1200;
 			double downsample = Math.pow(2, Math.round(Math.log(maxDimLength / dimRequested)/Math.log(2)));
@@ -225,29 +278,7 @@ public class TMADearrayerPluginIJ extends AbstractInteractivePlugin<BufferedImag
 					downsample = downsample2;
 			}
 
-			// Read the image
-			PathImage<ImagePlus> pathImage = IJTools.convertToImagePlus(server,
-					RegionRequest.createInstance(server.getPath(), downsample, 0, 0, server.getWidth(), server.getHeight()));
-//			PathImage<ImagePlus> pathImage = IJTools.createPathImage(server, downsample);
-			ImagePlus imp = pathImage.getImage();
-
-			if (imp.getType() == ImagePlus.COLOR_RGB || imp.getNChannels() == 1)
-				ip = imp.getProcessor();
-			else {
-				ZProjector zProjector = new ZProjector(imp);
-				zProjector.setMethod(ZProjector.AVG_METHOD);
-				zProjector.doProjection();
-				ip = zProjector.getProjection().getProcessor();
-			}
-			bp = null;
-				
-			String[] hLabelsSplit = PathObjectTools.parseTMALabelString(horizontalLabels);
-			String[] vLabelsSplit = PathObjectTools.parseTMALabelString(verticalLabels);
-
-			updateGrid(tmaGrid, downsample);
-			tmaGrid = doDearraying(fullCoreDiameterPx, downsample, densityThreshold, roiScaleFactor, isFluorescence, hLabelsSplit, vLabelsSplit, horizontalLabelFirst);
-			
-			return tmaGrid == null ? null : new ArrayList<>(tmaGrid.getTMACoreList());
+			return downsample;
 		}
 		
 		
@@ -43,7 +43,6 @@ import ij.process.ImageProcessor;
 import qupath.imagej.tools.IJTools;
 import qupath.lib.color.ColorDeconvolutionStains;
 import qupath.lib.color.ColorTransformer;
-import qupath.lib.color.ColorTransformer.ColorTransformMethod;
 import qupath.lib.common.ColorTools;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.images.ImageData;
@@ -133,8 +132,9 @@ public class PositivePixelCounterIJ extends AbstractDetectionPlugin<BufferedImag
 			ColorProcessor cp = (ColorProcessor)imp.getProcessor();
 			int[] rgb = (int[])cp.getPixels();
 			
-			float[] pxHematoxylin = ColorTransformer.getTransformedPixels(rgb, ColorTransformMethod.Stain_1, null, stains);
-			float[] pxDAB = ColorTransformer.getTransformedPixels(rgb, ColorTransformMethod.Stain_2, null, stains);
+			float[][] pxStains = ColorTransformer.getDeconvolvedPixels(rgb, stains, null, 1, 2);
+			float[] pxHematoxylin = pxStains[0];
+			float[] pxDAB = pxStains[1];
 //			float[] pxHematoxylin = ColorDeconvolution.colorDeconvolveRGBArray(rgb, stains, 0, null);
 //			float[] pxDAB = ColorDeconvolution.colorDeconvolveRGBArray(rgb, stains, 1, null);
 			
@@ -27,12 +27,17 @@ import java.awt.Rectangle;
 import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.simplify.VWSimplifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,11 +49,15 @@ import ij.measure.Calibration;
 import ij.plugin.filter.RankFilters;
 import ij.process.Blitter;
 import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import qupath.imagej.processing.MorphologicalReconstruction;
 import qupath.imagej.processing.RoiLabeling;
 import qupath.imagej.processing.SimpleThresholding;
 import qupath.imagej.tools.IJTools;
+import qupath.lib.analysis.images.ContourTracing;
+import qupath.lib.analysis.images.SimpleImages;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.PathImage;
@@ -66,6 +75,8 @@ import qupath.lib.plugins.ObjectDetector;
 import qupath.lib.plugins.parameters.ParameterList;
 import qupath.lib.regions.ImagePlane;
 import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.FastPolygonUnion;
+import qupath.lib.roi.GeometryTools;
 import qupath.lib.roi.ROIs;
 import qupath.lib.roi.ShapeSimplifier;
 import qupath.lib.roi.RoiTools;
@@ -88,6 +99,17 @@ public class SimpleTissueDetection2 extends AbstractDetectionPlugin<BufferedImag
 	
 	private static final Logger logger = LoggerFactory.getLogger(SimpleTissueDetection2.class);
 	
+	/**
+	 * Width and height of tiles used for boundary refinement, in pixels at the refinement resolution
+	 */
+	private static final int REFINE_TILE_SIZE = 512;
+	
+	/**
+	 * Padding added to tiles used for boundary refinement, so that filtering isn't impacted by tile boundaries.
+	 * This is in pixels at the refinement resolution, and is increased if the filters are scaled up.
+	 */
+	private static final int REFINE_TILE_PADDING = 8;
+	
 	private ParameterList params;
 
 	private String lastResults = null;
@@ -117,6 +139,9 @@ public class SimpleTissueDetection2 extends AbstractDetectionPlugin<BufferedImag
 		params.addBooleanParameter("excludeOnBoundary", "Exclude on boundary", false, "Discard detection regions that touch the image boundary");
 		
 		params.addBooleanParameter("singleAnnotation", "Single annotation", true, "Create a single annotation object from all (possibly-disconnected) regions");
+		
+		params.addIntParameter("refineFactor", "Boundary refinement", 1, null, 1, 16, "Refine region boundaries at a higher resolution - e.g. 4 means thresholding again at 4x the resolution, but only close to the boundary.\n"
+				+ "Boundary tiles are processed in parallel. Use 1 for no refinement.");
 
 	}
 	
@@ -172,36 +197,22 @@ public class SimpleTissueDetection2 extends AbstractDetectionPlugin<BufferedImag
 			boolean dilateBoundaries = params.getBooleanParameterValue("dilateBoundaries");
 			boolean singleAnnotation = Boolean.TRUE.equals(params.getBooleanParameterValue("singleAnnotation"));
 			
-			// Create a ByteProcessor
-			ImagePlus imp = pathImage.getImage();
-			ByteProcessor bp = imp.getProcessor().convertToByteProcessor();
+			int refineFactor = params.getIntParameterValue("refineFactor");
+			double refineDownsample = Math.max(1.0, downsample / refineFactor);
+			boolean doRefine = refineDownsample < downsample;
 			
-			if (smoothImage)
-				bp.smooth();
-	//		new ImagePlus("Binary", bp.duplicate()).show();
-	
-			// Apply threshold
-			if (darkBackground)
-				bp = SimpleThresholding.thresholdAbove(bp, threshold);
+			// Create a binary ByteProcessor
+			// If we aren't refining, retain the original 8-bit processing so that results are unchanged
+			ImagePlus imp = pathImage.getImage();
+			double rawThreshold = getRawThreshold(imp.getProcessor(), threshold);
+			ByteProcessor bp;
+			if (doRefine)
+				bp = createBinaryImage(imp, rawThreshold, smoothImage, darkBackground, medianCleanup, dilateBoundaries, 1.0);
 			else
-				bp = SimpleThresholding.thresholdBelow(bp, threshold);
-					
-			if (Thread.currentThread().isInterrupted())
-				return null;
-
-			
-			// Apply small median filter to clean up
-			if (medianCleanup) {
-				RankFilters rf = new RankFilters();
-				rf.rank(bp, 1, RankFilters.MEDIAN);
-			}
-			
-			// Apply maximum filter, if required
-			if (dilateBoundaries)
-				bp.filter(ImageProcessor.MAX);
+				bp = createBinaryImage8Bit(imp, threshold, smoothImage, darkBackground, medianCleanup, dilateBoundaries);
 			
-	//		bp.resetMinAndMax();
-	//		new ImagePlus("", bp.duplicate()).show();
+			if (bp == null || Thread.currentThread().isInterrupted())
+				return null;
 			
 			// If there is a ROI, clear everything outside
 			Roi roiIJ = null;
@@ -243,11 +254,32 @@ public class SimpleTissueDetection2 extends AbstractDetectionPlugin<BufferedImag
 				return null;
 			
 			bp.setThreshold(127, Double.POSITIVE_INFINITY, ImageProcessor.NO_LUT_UPDATE);
-			List<PathObject> pathObjects = convertToPathObjects(bp, minArea, smoothCoordinates, imp.getCalibration(), downsample, maxHoleArea, excludeOnBoundary, singleAnnotation, pathImage.getImageRegion().getImagePlane(), null);
+			var plane = pathImage.getImageRegion().getImagePlane();
+			List<PathObject> pathObjects = convertToPathObjects(bp, minArea, smoothCoordinates, imp.getCalibration(), downsample, maxHoleArea, excludeOnBoundary, singleAnnotation, plane, null);
 
 			if (Thread.currentThread().isInterrupted())
 				return null;
 			
+			// Refine the boundaries at a higher resolution, if required
+			if (pathObjects != null && !pathObjects.isEmpty() && doRefine) {
+				var coarse = FastPolygonUnion.union(pathObjects.stream().map(p -> p.getROI().getGeometry()).toList());
+				// Filters are scaled so that they cover the same area of the image as in the coarse pass
+				double radiusScale = downsample / refineDownsample;
+				var refined = refineBoundaries(server, coarse, plane, downsample, refineDownsample, 
+						(int)Math.ceil(REFINE_TILE_PADDING * radiusScale),
+						img -> createBinaryImage(img, rawThreshold, smoothImage, darkBackground, medianCleanup, dilateBoundaries, radiusScale));
+				if (refined == null)
+					return null;
+				if (pathROI != null)
+					refined = refined.intersection(pathROI.getGeometry());
+				// Apply the area constraints at full resolution
+				double scale = downsample * downsample;
+				refined = GeometryTools.refineAreas(refined, minArea * scale, maxHoleArea <= 0 ? Double.POSITIVE_INFINITY : maxHoleArea * scale);
+				if (smoothCoordinates)
+					refined = VWSimplifier.simplify(refined, refineDownsample/2);
+				pathObjects = createAnnotations(refined, plane, singleAnnotation);
+			}
+			
 			if (pathObjects == null || pathObjects.isEmpty())
 				lastResults =  "No regions detected!";
 			else if (pathObjects.size() == 1)
@@ -270,6 +302,233 @@ public class SimpleTissueDetection2 extends AbstractDetectionPlugin<BufferedImag
 	
 	
 	
+	/**
+	 * Convert a threshold in the range 0-255 to the raw pixel values of an image.
+	 * <p>
+	 * For 8-bit and RGB images, the threshold is unchanged.
+	 * Otherwise, it is scaled according to the display range of the image, as if the image had been converted to 8-bit.
+	 * The raw threshold can then be applied to other images (e.g. tiles at a higher resolution), without the result 
+	 * depending upon the range of values in each image.
+	 * 
+	 * @param ip the image used to define the scaling (usually the full downsampled image)
+	 * @param threshold the threshold, in the range 0-255
+	 * @return the threshold to apply to raw pixel values
+	 */
+	static double getRawThreshold(ImageProcessor ip, double threshold) {
+		if (ip instanceof ByteProcessor || ip instanceof ColorProcessor)
+			return threshold;
+		double min = ip.getMin();
+		double max = ip.getMax();
+		return min + threshold / 255.0 * (max - min);
+	}
+	
+	
+	/**
+	 * Create a binary image by converting an image to 8-bit and thresholding, after optional smoothing and followed by optional cleanup.
+	 * <p>
+	 * This is the original method used by the command, retained so that results are unchanged whenever boundaries aren't refined.
+	 * Since the conversion to 8-bit depends upon the display range, it isn't suitable for thresholding tiles consistently.
+	 * 
+	 * @param imp the image to threshold
+	 * @param threshold the threshold, in the range 0-255
+	 * @param smoothImage apply a 3x3 mean filter before thresholding
+	 * @param darkBackground if true, pixels above the threshold are foreground; otherwise, pixels below the threshold
+	 * @param medianCleanup apply a median filter after thresholding
+	 * @param dilateBoundaries apply a 3x3 maximum filter after thresholding
+	 * @return the binary image, or null if the thread is interrupted
+	 * @see #createBinaryImage(ImagePlus, double, boolean, boolean, boolean, boolean, double)
+	 */
+	static ByteProcessor createBinaryImage8Bit(ImagePlus imp, double threshold, boolean smoothImage, boolean darkBackground, boolean medianCleanup, boolean dilateBoundaries) {
+		ByteProcessor bp = imp.getProcessor().convertToByteProcessor();
+		
+		if (smoothImage)
+			bp.smooth();
+
+		// Apply threshold
+		if (darkBackground)
+			bp = SimpleThresholding.thresholdAbove(bp, threshold);
+		else
+			bp = SimpleThresholding.thresholdBelow(bp, threshold);
+				
+		if (Thread.currentThread().isInterrupted())
+			return null;
+
+		// Apply small median filter to clean up
+		if (medianCleanup) {
+			RankFilters rf = new RankFilters();
+			rf.rank(bp, 1, RankFilters.MEDIAN);
+		}
+		
+		// Apply maximum filter, if required
+		if (dilateBoundaries)
+			bp.filter(ImageProcessor.MAX);
+		
+		return bp;
+	}
+	
+	
+	/**
+	 * Create a binary image by thresholding an image, after optional smoothing and followed by optional cleanup.
+	 * <p>
+	 * The threshold is applied to the raw pixel values (or the mean of RGB values) without any rescaling, 
+	 * so that tiles of the same image are thresholded consistently.
+	 * 
+	 * @param imp the image to threshold
+	 * @param rawThreshold threshold to apply to the raw pixel values; see {@link #getRawThreshold(ImageProcessor, double)}
+	 * @param smoothImage apply a 3x3 mean filter before thresholding
+	 * @param darkBackground if true, pixels above the threshold are foreground; otherwise, pixels below the threshold
+	 * @param medianCleanup apply a median filter after thresholding
+	 * @param dilateBoundaries apply a 3x3 maximum filter after thresholding
+	 * @param radiusScale scale factor for filter radii; this should be &gt; 1 when thresholding at a higher resolution, 
+	 *                    so that filters cover the same region of the image
+	 * @return the binary image, or null if the thread is interrupted
+	 */
+	static ByteProcessor createBinaryImage(ImagePlus imp, double rawThreshold, boolean smoothImage, boolean darkBackground, boolean medianCleanup, boolean dilateBoundaries, double radiusScale) {
+		ImageProcessor ip = imp.getProcessor();
+		if (ip instanceof ColorProcessor)
+			ip = ip.convertToByteProcessor(false);
+		FloatProcessor fp = ip.convertToFloatProcessor();
+		
+		RankFilters rf = new RankFilters();
+		boolean scaleFilters = radiusScale > 1;
+		if (smoothImage) {
+			if (scaleFilters)
+				rf.rank(fp, radiusScale, RankFilters.MEAN);
+			else
+				fp.smooth();
+		}
+//		new ImagePlus("Smoothed", fp.duplicate()).show();
+
+		// Apply threshold
+		ByteProcessor bp;
+		if (darkBackground)
+			bp = SimpleThresholding.thresholdAbove(fp, rawThreshold);
+		else
+			bp = SimpleThresholding.thresholdBelow(fp, rawThreshold);
+				
+		if (Thread.currentThread().isInterrupted())
+			return null;
+
+		// Apply small median filter to clean up
+		if (medianCleanup) {
+			rf.rank(bp, Math.max(1, radiusScale), RankFilters.MEDIAN);
+		}
+		
+		// Apply maximum filter, if required
+		if (dilateBoundaries) {
+			if (scaleFilters)
+				rf.rank(bp, radiusScale, RankFilters.MAX);
+			else
+				bp.filter(ImageProcessor.MAX);
+		}
+		
+//		bp.resetMinAndMax();
+//		new ImagePlus("", bp.duplicate()).show();
+		return bp;
+	}
+	
+	
+	/**
+	 * Refine the boundaries of a coarse detection by thresholding again at a higher resolution.
+	 * <p>
+	 * Only tiles close to the coarse boundary are read and thresholded (in parallel); 
+	 * the coarse result is retained elsewhere.
+	 * Refined regions are restricted to lie close to the coarse result, so that regions discarded at 
+	 * the coarse resolution don't reappear.
+	 * 
+	 * @param server the image server
+	 * @param coarse the coarse detection, in full-resolution pixel coordinates
+	 * @param plane the image plane
+	 * @param coarseDownsample the downsample used for the coarse detection
+	 * @param refineDownsample the downsample to use for refinement
+	 * @param padding padding to add to each tile, in pixels at the refinement resolution
+	 * @param binarizer function to create a binary image from a tile (values 0 and 255)
+	 * @return the refined geometry, or null if the thread is interrupted
+	 * @throws IOException if the image tiles could not be read
+	 */
+	private static Geometry refineBoundaries(ImageServer<BufferedImage> server, Geometry coarse, ImagePlane plane, 
+			double coarseDownsample, double refineDownsample, int padding, Function<ImagePlus, ByteProcessor> binarizer) throws IOException {
+		
+		// Refine within a couple of coarse pixels of the boundary
+		double margin = coarseDownsample * 2;
+		var boundaryBand = PreparedGeometryFactory.prepare(coarse.getBoundary().buffer(margin));
+		var allowed = coarse.buffer(margin);
+		
+		// Tiles are defined in full-resolution coordinates, and padded so that filters behave at tile boundaries
+		double tileSize = REFINE_TILE_SIZE * refineDownsample;
+		int pad = (int)Math.ceil(Math.max(REFINE_TILE_PADDING, padding) * refineDownsample);
+		var env = allowed.getEnvelopeInternal();
+		int x0 = (int)Math.max(0, Math.floor(env.getMinX()));
+		int y0 = (int)Math.max(0, Math.floor(env.getMinY()));
+		int x1 = (int)Math.min(server.getWidth(), Math.ceil(env.getMaxX()));
+		int y1 = (int)Math.min(server.getHeight(), Math.ceil(env.getMaxY()));
+		
+		List<Polygon> boundaryTiles = new ArrayList<>();
+		for (double y = y0; y < y1; y += tileSize) {
+			for (double x = x0; x < x1; x += tileSize) {
+				var tile = GeometryTools.createRectangle(x, y, Math.min(tileSize, x1 - x), Math.min(tileSize, y1 - y));
+				if (boundaryBand.intersects(tile))
+					boundaryTiles.add(tile);
+			}
+		}
+		logger.debug("Refining {} boundary tiles at downsample {}", boundaryTiles.size(), refineDownsample);
+		
+		List<Geometry> pieces;
+		try {
+			pieces = boundaryTiles.parallelStream().map(tile -> {
+				if (Thread.currentThread().isInterrupted())
+					return null;
+				var tileEnv = tile.getEnvelopeInternal();
+				int x = (int)Math.max(0, tileEnv.getMinX() - pad);
+				int y = (int)Math.max(0, tileEnv.getMinY() - pad);
+				int x2 = (int)Math.min(server.getWidth(), Math.ceil(tileEnv.getMaxX() + pad));
+				int y2 = (int)Math.min(server.getHeight(), Math.ceil(tileEnv.getMaxY() + pad));
+				var request = RegionRequest.createInstance(server.getPath(), refineDownsample, x, y, x2 - x, y2 - y, plane);
+				try {
+					var bp = binarizer.apply(IJTools.convertToImagePlus(server, request).getImage());
+					if (bp == null)
+						return null;
+					var image = SimpleImages.createFloatImage((float[])bp.convertToFloatProcessor().getPixels(), bp.getWidth(), bp.getHeight());
+					var geom = ContourTracing.createTracedGeometry(image, 127, Double.POSITIVE_INFINITY, request);
+					return geom.intersection(allowed.intersection(tile));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).toList();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		if (Thread.currentThread().isInterrupted() || pieces.contains(null))
+			return null;
+		
+		// Retain the coarse result away from the boundary, and the refined result elsewhere
+		var geometries = new ArrayList<Geometry>(pieces);
+		geometries.add(coarse.difference(FastPolygonUnion.union(boundaryTiles)));
+		return FastPolygonUnion.union(geometries);
+	}
+	
+	
+	/**
+	 * Create locked annotations from a geometry, either as a single annotation or one per polygon.
+	 */
+	private static List<PathObject> createAnnotations(Geometry geometry, ImagePlane plane, boolean singleAnnotation) {
+		List<PathObject> pathObjects = new ArrayList<>();
+		if (!geometry.isEmpty()) {
+			var roi = GeometryTools.geometryToROI(geometry, plane);
+			if (singleAnnotation)
+				pathObjects.add(PathObjects.createAnnotationObject(roi));
+			else {
+				for (var roi2 : RoiTools.splitROI(roi))
+					pathObjects.add(PathObjects.createAnnotationObject(roi2));
+			}
+		}
+		for (PathObject pathObject : pathObjects)
+			((PathAnnotationObject)pathObject).setLocked(true);
+		return pathObjects;
+	}
+	
+	
 	private static List<PathObject> convertToPathObjects(ByteProcessor bp, double minArea, boolean smoothCoordinates, Calibration cal, double downsample, double maxHoleArea, boolean excludeOnBoundary, boolean singleAnnotation, ImagePlane plane, List<PathObject> pathObjects) {
 //		
 //		var roiIJ = new ThresholdToSelection().convert(bp);
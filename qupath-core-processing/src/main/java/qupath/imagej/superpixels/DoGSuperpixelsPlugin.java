@@ -23,8 +23,6 @@
 
 package qupath.imagej.superpixels;
 
-import ij.ImagePlus;
-import ij.gui.PolygonRoi;
 import ij.plugin.filter.MaximumFinder;
 import ij.plugin.filter.RankFilters;
 import ij.process.Blitter;
@@ -33,7 +31,6 @@ import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -42,10 +39,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.imagej.processing.RoiLabeling;
-import qupath.imagej.tools.IJTools;
+import qupath.lib.analysis.images.ContourTracing;
+import qupath.lib.analysis.images.SimpleImages;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.images.ImageData;
-import qupath.lib.images.PathImage;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.PixelCalibration;
 import qupath.lib.objects.PathObject;
@@ -63,6 +60,10 @@ import qupath.lib.roi.interfaces.ROI;
  * <p>
  * This provides tile objects that generally correspond to regions containing reasonably similar 
  * intensities or textures, which might then be classified.
+ * <p>
+ * Large regions are split into tiles that are processed in parallel. 
+ * Each tile is computed from a larger, padded region and then cropped to the tile, so that superpixels near tile 
+ * boundaries match those in the neighboring tile and superpixels from different tiles don't overlap.
  * 
  * @author Pete Bankhead
  *
@@ -96,11 +97,26 @@ public class DoGSuperpixelsPlugin extends AbstractTileableDetectionPlugin<Buffer
 		return new DoGSuperpixelDetector();
 	}
 
+	/**
+	 * Tiles don't overlap, because each tile is padded by {@link #getContextPadding(ImageData, ParameterList)} 
+	 * and the superpixels are then cropped to the tile.
+	 */
 	@Override
 	protected int getTileOverlap(ImageData<BufferedImage> imageData, ParameterList params) {
 		return 0;
 	}
 
+	/**
+	 * Get the padding to add around each tile, so that the filtered image close to tile boundaries is the same 
+	 * as in the neighboring tile.
+	 * @return the padding in full-resolution pixels, based upon the Gaussian sigma
+	 */
+	static int getContextPadding(ImageData<BufferedImage> imageData, ParameterList params) {
+		double downsample = params.getDoubleParameterValue("downsampleFactor");
+		double sigma = DoGSuperpixelDetector.getSigma(imageData.getServer().getPixelCalibration(), downsample, params);
+		return (int)Math.ceil(sigma * downsample * 8);
+	}
+
 	@Override
 	public ParameterList getDefaultParameterList(ImageData<BufferedImage> imageData) {
 		ParameterList params = new ParameterList().
@@ -122,86 +138,55 @@ public class DoGSuperpixelsPlugin extends AbstractTileableDetectionPlugin<Buffer
 	
 	
 	static class DoGSuperpixelDetector implements ObjectDetector<BufferedImage> {
-		
-		private PathImage<ImagePlus> pathImage = null;
-		private ROI pathROI = null;
-		
+
 		private String lastResultSummary = null;
 
 		@Override
 		public Collection<PathObject> runDetection(final ImageData<BufferedImage> imageData, final ParameterList params, final ROI pathROI) throws IOException {
-			
+
 			// TODO: Give a sensible error
 			if (pathROI == null) {
 				lastResultSummary = "No ROI selected!";
 				return null;
 			}
-			// Get a PathImage if we have a new ROI
-			if (!pathROI.equals(this.pathROI) || true) {
-				ImageServer<BufferedImage> server = imageData.getServer();
-				
-
-				double downsample = params.getDoubleParameterValue("downsampleFactor");
-				
-				// Create an expanded request (we will clip to the actual ROI later)
-				var request = RegionRequest.createInstance(server.getPath(), downsample, pathROI)
-						.pad2D((int)Math.ceil(downsample * 2), (int)Math.ceil(downsample * 2))
-						.intersect2D(0, 0, server.getWidth(), server.getHeight());
-				
-				this.pathImage = IJTools.convertToImagePlus(server, request);
-				
-//				this.pathImage = IJTools.createPathImage(server, pathROI, params.getDoubleParameterValue("downsampleFactor"));
-				this.pathROI = pathROI;
-			}
-			
-//			String imageName = "Grayscale";
-			
-			// Get a float processor
-			ImageProcessor ipOrig = this.pathImage.getImage().getProcessor();
-			FloatProcessor fp;
-//			if (imageData.isBrightfield() && ipOrig instanceof ColorProcessor) {
-//				ImageProcessor ipTemp = ColorTransforms.doTransform((ColorProcessor)ipOrig, ColorMethod.Optical_density_sum);
-//				imageName = "OD sum";
-//				if (ipTemp instanceof FloatProcessor)
-//					fp = (FloatProcessor)ipTemp;
-//				else
-//					fp = ipTemp.convertToFloatProcessor();
-//			} else {
-				fp = ipOrig.convertToFloatProcessor();
-//			}
-			
+			ImageServer<BufferedImage> server = imageData.getServer();
+			double downsample = params.getDoubleParameterValue("downsampleFactor");
+
+			// Create an expanded request, with enough context for superpixels at the boundary (we will clip to the actual ROI later)
+			int pad = Math.max((int)Math.ceil(downsample * 2), getContextPadding(imageData, params));
+			var request = RegionRequest.createInstance(server.getPath(), downsample, pathROI)
+					.pad2D(pad, pad)
+					.intersect2D(0, 0, server.getWidth(), server.getHeight());
+
+			BufferedImage img = server.readRegion(request);
+			int w = img.getWidth();
+			int h = img.getHeight();
+
+			// Get a float processor, wrapping the grayscale pixels
+			FloatProcessor fpOrig = new FloatProcessor(w, h, getGrayscalePixels(img, server.isRGB()));
+
 			// Apply DoG filter
-			FloatProcessor fpOrig = (FloatProcessor)fp.duplicate();
+			FloatProcessor fp = (FloatProcessor)fpOrig.duplicate();
 			FloatProcessor fp2 = (FloatProcessor)fpOrig.duplicate();
-			double sigma = getSigma(pathImage, params);
+			double sigma = getSigma(server.getPixelCalibration(), downsample, params);
 			fp.blurGaussian(sigma);
 			fp2.blurGaussian(sigma*1.6);
 			fp.copyBits(fp2, 0, 0, Blitter.SUBTRACT);
-			
-			fp.resetRoi();
-			
-			// Normalizing to std dev would ensure some data-dependence... which has fors an againsts
-//			double stdDev = fp.getStatistics().stdDev;
-			
+
 			// Compute absolute value
 			fp.abs();
-			
-//			fp.multiply(1.0/stdDev);
-			
+
 			// Apply Find Maxima
 			ByteProcessor bp = new MaximumFinder().findMaxima(fp, params.getDoubleParameterValue("noiseThreshold"), MaximumFinder.SEGMENTED, false);
-			
+
 			// Dilate to remove outlines
 			bp.setThreshold(128, Double.POSITIVE_INFINITY, ImageProcessor.NO_LUT_UPDATE);
 			ImageProcessor ipLabels = RoiLabeling.labelImage(bp, 0.5f, false);
 			new RankFilters().rank(ipLabels, 1, RankFilters.MAX);
-			
+
 			if (Thread.currentThread().isInterrupted())
 				return Collections.emptyList();
-			
-			// Convert to tiles & create a labelled image for later
-			PolygonRoi[] polygons = RoiLabeling.labelsToFilledROIs(ipLabels, (int)ipLabels.getMax());
-			List<PathObject> pathObjects = new ArrayList<>(polygons.length);
+
 			// Set thresholds - regions means must be within specified range
 			double minThreshold = params.getDoubleParameterValue("minThreshold");
 			double maxThreshold = params.getDoubleParameterValue("maxThreshold");
@@ -210,54 +195,78 @@ public class DoGSuperpixelsPlugin extends AbstractTileableDetectionPlugin<Buffer
 			if (!Double.isFinite(maxThreshold))
 				maxThreshold = Double.POSITIVE_INFINITY;
 			boolean hasThreshold = (minThreshold != maxThreshold) && (Double.isFinite(minThreshold) || Double.isFinite(maxThreshold));
-			try {
-				Collection<ROI> superpixelROIs = new ArrayList<>();
-				for (PolygonRoi roi : polygons) {
-					if (roi == null)
-						continue;
-					if (hasThreshold) {
-						fpOrig.setRoi(roi);
-						double meanValue = fpOrig.getStatistics().mean;
-						if (meanValue < minThreshold || meanValue > maxThreshold)
-							continue;
-					}
-					if (Thread.currentThread().isInterrupted())
-						return Collections.emptyList();
-
-					superpixelROIs.add(IJTools.convertToROI(roi, pathImage));
+
+			// Compute the mean value for each label, and remove any regions outside the threshold range
+			int nLabels = (int)ipLabels.getMax();
+			float[] labels = new float[w * h];
+			for (int i = 0; i < labels.length; i++)
+				labels[i] = ipLabels.getf(i);
+			if (hasThreshold) {
+				double[] sums = new double[nLabels + 1];
+				long[] counts = new long[nLabels + 1];
+				for (int i = 0; i < labels.length; i++) {
+					int label = (int)labels[i];
+					sums[label] += fpOrig.getf(i);
+					counts[label]++;
 				}
-				if (pathROI != null)
-					superpixelROIs = RoiTools.clipToROI(pathROI, superpixelROIs);
-				
-				for (var superpixelROI : superpixelROIs) {
-					PathObject tile = PathObjects.createTileObject(superpixelROI);
-					pathObjects.add(tile);
+				for (int i = 0; i < labels.length; i++) {
+					int label = (int)labels[i];
+					double meanValue = sums[label] / counts[label];
+					if (meanValue < minThreshold || meanValue > maxThreshold)
+						labels[i] = 0;
 				}
+			}
+
+			// Convert to tiles
+			List<PathObject> pathObjects;
+			try {
+				var superpixelROIs = ContourTracing.createROIs(SimpleImages.createFloatImage(labels, w, h), request, 1, -1).values();
+				pathObjects = RoiTools.clipToROI(pathROI, superpixelROIs).stream()
+						.map(r -> PathObjects.createTileObject(r))
+						.toList();
 			} catch (Exception e) {
 				logger.error("Error creating superpixels", e);
+				pathObjects = Collections.emptyList();
 			}
-			fpOrig.resetRoi();
-			
+
 			lastResultSummary = pathObjects.size() + " tiles created";
-			
+
 			return pathObjects;
 		}
-		
-		
-		static double getSigma(final PathImage<?> pathImage, final ParameterList params) {
-			double pixelSizeMicrons = pathImage.getPixelCalibration().getAveragedPixelSizeMicrons();
+
+
+		/**
+		 * Get grayscale pixels, either by averaging RGB values or by taking the first channel.
+		 */
+		private static float[] getGrayscalePixels(BufferedImage img, boolean isRGB) {
+			int w = img.getWidth();
+			int h = img.getHeight();
+			if (!isRGB)
+				return img.getRaster().getSamples(0, 0, w, h, 0, (float[])null);
+			int[] rgb = img.getRGB(0, 0, w, h, null, 0, w);
+			float[] pixels = new float[rgb.length];
+			for (int i = 0; i < rgb.length; i++) {
+				int val = rgb[i];
+				pixels[i] = (((val >> 16) & 0xff) + ((val >> 8) & 0xff) + (val & 0xff)) / 3f;
+			}
+			return pixels;
+		}
+
+
+		static double getSigma(final PixelCalibration cal, final double downsample, final ParameterList params) {
+			double pixelSizeMicrons = cal.getAveragedPixelSizeMicrons() * downsample;
 			if (Double.isNaN(pixelSizeMicrons)) {
-				return params.getDoubleParameterValue("sigmaPixels") * params.getDoubleParameterValue("downsampleFactor");				
+				return params.getDoubleParameterValue("sigmaPixels") * params.getDoubleParameterValue("downsampleFactor");
 			} else
 				return params.getDoubleParameterValue("sigmaMicrons") / pixelSizeMicrons;
 		}
-		
+
 
 		@Override
 		public String getLastResultsDescription() {
 			return lastResultSummary;
 		}
-		
+
 	}
 	
 	
@@ -0,0 +1,298 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.imagej.superpixels;
+
+import java.util.Arrays;
+
+/**
+ * SLIC superpixel segmentation of images stored as float arrays (one per channel).
+ * <p>
+ * Cluster centers are initialized on a regular grid, which can be offset so that the grid is aligned across
+ * neighboring (overlapping) tiles of a larger image.
+ * This helps ensure that superpixels computed for the overlapping parts of different tiles match one another.
+ * <p>
+ * Each iteration assigns every pixel to the nearest cluster center within a 2S x 2S window,
+ * and then updates all the centers.
+ * Afterwards, connectivity is enforced by relabelling small, disconnected fragments.
+ *
+ * @since v0.6.0
+ */
+final class SLICSegmenter {
+
+	private final int spacing;
+	private final double regularization;
+	private final boolean adaptRegularization;
+	private final int maxIterations;
+
+	/**
+	 * Constructor.
+	 * @param spacing the spacing between initial cluster centers, in pixels
+	 * @param regularization the regularization (compactness) value, in the same units as the pixel values
+	 * @param adaptRegularization if true, adapt the regularization for each superpixel based upon its color variation
+	 * @param maxIterations the number of iterations
+	 */
+	SLICSegmenter(int spacing, double regularization, boolean adaptRegularization, int maxIterations) {
+		if (spacing < 1)
+			throw new IllegalArgumentException("Spacing must be at least 1, but was " + spacing);
+		this.spacing = spacing;
+		this.regularization = regularization;
+		this.adaptRegularization = adaptRegularization;
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Compute superpixel labels.
+	 * @param channels pixel values for each channel, each with length width * height
+	 * @param width image width
+	 * @param height image height
+	 * @param offsetX x-coordinate of the first column of cluster centers; should be between 0 and spacing-1
+	 * @param offsetY y-coordinate of the first row of cluster centers; should be between 0 and spacing-1
+	 * @return a labelled image, with length width * height and labels starting from 1
+	 */
+	int[] computeLabels(float[][] channels, int width, int height, int offsetX, int offsetY) {
+		int n = width * height;
+		int nChannels = channels.length;
+		int s = spacing;
+
+		// Initialize centers on a grid
+		int nx = offsetX >= width ? 0 : (width - 1 - offsetX) / s + 1;
+		int ny = offsetY >= height ? 0 : (height - 1 - offsetY) / s + 1;
+		int nCenters = nx * ny;
+		double[] cx = new double[nCenters];
+		double[] cy = new double[nCenters];
+		double[] cf = new double[nCenters * nChannels];
+		double[] mSquared = new double[nCenters];
+		Arrays.fill(mSquared, regularization * regularization);
+		int k = 0;
+		for (int y = offsetY; y < height; y += s) {
+			for (int x = offsetX; x < width; x += s) {
+				cx[k] = x;
+				cy[k] = y;
+				int ind = y * width + x;
+				for (int c = 0; c < nChannels; c++)
+					cf[k * nChannels + c] = channels[c][ind];
+				k++;
+			}
+		}
+
+		int[] labels = new int[n];
+		Arrays.fill(labels, -1);
+		double[] distances = new double[n];
+		double sSquared = (double)s * s;
+
+		long[] counts = new long[nCenters];
+		double[] sumX = new double[nCenters];
+		double[] sumY = new double[nCenters];
+		double[] sumF = new double[nCenters * nChannels];
+
+		for (int iter = 0; iter < maxIterations; iter++) {
+			if (Thread.currentThread().isInterrupted())
+				return null;
+
+			// Assign pixels to the nearest center within a local window
+			Arrays.fill(distances, Double.POSITIVE_INFINITY);
+			for (k = 0; k < nCenters; k++) {
+				if (Double.isNaN(cx[k]))
+					continue;
+				int x1 = (int)Math.max(0, cx[k] - s);
+				int x2 = (int)Math.min(width, cx[k] + s);
+				int y1 = (int)Math.max(0, cy[k] - s);
+				int y2 = (int)Math.min(height, cy[k] + s);
+				double m2 = mSquared[k];
+				int fOffset = k * nChannels;
+				for (int y = y1; y < y2; y++) {
+					double dy = cy[k] - y;
+					double dy2 = dy * dy;
+					int row = y * width;
+					for (int x = x1; x < x2; x++) {
+						int ind = row + x;
+						double dc2 = 0;
+						for (int c = 0; c < nChannels; c++) {
+							double d = channels[c][ind] - cf[fOffset + c];
+							if (Double.isFinite(d))
+								dc2 += d * d;
+						}
+						double dx = cx[k] - x;
+						double distance = dc2 / m2 + (dx * dx + dy2) / sSquared;
+						if (distance < distances[ind]) {
+							distances[ind] = distance;
+							labels[ind] = k;
+						}
+					}
+				}
+			}
+
+			// Update centers
+			Arrays.fill(counts, 0L);
+			Arrays.fill(sumX, 0);
+			Arrays.fill(sumY, 0);
+			Arrays.fill(sumF, 0);
+			for (int y = 0; y < height; y++) {
+				int row = y * width;
+				for (int x = 0; x < width; x++) {
+					int ind = row + x;
+					int label = labels[ind];
+					if (label < 0)
+						continue;
+					counts[label]++;
+					sumX[label] += x;
+					sumY[label] += y;
+					int fOffset = label * nChannels;
+					for (int c = 0; c < nChannels; c++)
+						sumF[fOffset + c] += channels[c][ind];
+				}
+			}
+			for (k = 0; k < nCenters; k++) {
+				long count = counts[k];
+				if (count == 0) {
+					cx[k] = Double.NaN;
+					cy[k] = Double.NaN;
+					continue;
+				}
+				cx[k] = sumX[k] / count;
+				cy[k] = sumY[k] / count;
+				for (int c = 0; c < nChannels; c++)
+					cf[k * nChannels + c] = sumF[k * nChannels + c] / count;
+			}
+
+			if (adaptRegularization)
+				updateRegularization(channels, labels, cf, mSquared);
+		}
+
+		return enforceConnectivity(labels, width, height, s * s / 4);
+	}
+
+	/**
+	 * Set the regularization for each superpixel to be its maximum squared color distance.
+	 */
+	private static void updateRegularization(float[][] channels, int[] labels, double[] cf, double[] mSquared) {
+		int nChannels = channels.length;
+		double[] maxDistance = new double[mSquared.length];
+		for (int ind = 0; ind < labels.length; ind++) {
+			int label = labels[ind];
+			if (label < 0)
+				continue;
+			double dc2 = 0;
+			for (int c = 0; c < nChannels; c++) {
+				double d = channels[c][ind] - cf[label * nChannels + c];
+				if (Double.isFinite(d))
+					dc2 += d * d;
+			}
+			if (dc2 > maxDistance[label])
+				maxDistance[label] = dc2;
+		}
+		for (int k = 0; k < mSquared.length; k++) {
+			if (maxDistance[k] > 0)
+				mSquared[k] = maxDistance[k];
+		}
+	}
+
+	/**
+	 * Relabel 4-connected regions, merging regions with no more than minSize pixels into the previously-labelled region.
+	 */
+	static int[] enforceConnectivity(int[] labels, int width, int height, int minSize) {
+		int[] newLabels = new int[labels.length];
+		int[] stack = new int[labels.length];
+		int label = 1;
+		for (int y = 0; y < height; y++) {
+			// Maintain a reference to the previous label
+			int lastNewLabel = y > 0 ? newLabels[(y-1)*width] : 1;
+			for (int x = 0; x < width; x++) {
+				int i = y * width + x;
+				// Check if we've already labelled this
+				if (newLabels[i] != 0) {
+					lastNewLabel = newLabels[i];
+					continue;
+				}
+
+				// Determine pixels for the current region
+				int oldLabel = labels[i];
+				int count = 1;
+				stack[0] = i;
+				newLabels[i] = label;
+				int c = 0;
+				while (c < count) {
+					int ii = stack[c++];
+					int xx = ii % width;
+					int yy = ii / width;
+					if (xx > 0 && newLabels[ii-1] == 0 && labels[ii-1] == oldLabel) {
+						stack[count++] = ii-1;
+						newLabels[ii-1] = label;
+					}
+					if (yy > 0 && newLabels[ii-width] == 0 && labels[ii-width] == oldLabel) {
+						stack[count++] = ii-width;
+						newLabels[ii-width] = label;
+					}
+					if (xx < width-1 && newLabels[ii+1] == 0 && labels[ii+1] == oldLabel) {
+						stack[count++] = ii+1;
+						newLabels[ii+1] = label;
+					}
+					if (yy < height-1 && newLabels[ii+width] == 0 && labels[ii+width] == oldLabel) {
+						stack[count++] = ii+width;
+						newLabels[ii+width] = label;
+					}
+				}
+				// Check if small, relabelling if required
+				if (count <= minSize && lastNewLabel < label) {
+					for (c = 0; c < count; c++)
+						newLabels[stack[c]] = lastNewLabel;
+				} else {
+					lastNewLabel = label;
+					label++;
+				}
+			}
+		}
+		return newLabels;
+	}
+
+	/**
+	 * Convert packed RGB values to CIELAB, assuming sRGB and a D65 white point.
+	 * @param rgb packed RGB values
+	 * @return an array containing L, a and b channels
+	 */
+	static float[][] rgbToLab(int[] rgb) {
+		double[] linear = new double[256];
+		for (int i = 0; i < 256; i++) {
+			double v = i / 255.0;
+			linear[i] = v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+		}
+		float[][] lab = new float[3][rgb.length];
+		for (int i = 0; i < rgb.length; i++) {
+			int val = rgb[i];
+			double r = linear[(val >> 16) & 0xff];
+			double g = linear[(val >> 8) & 0xff];
+			double b = linear[val & 0xff];
+			double fx = labF((r*0.4124 + g*0.3576 + b*0.1805) / 0.95047);
+			double fy = labF(r*0.2126 + g*0.7152 + b*0.0722);
+			double fz = labF((r*0.0193 + g*0.1192 + b*0.9505) / 1.08883);
+			lab[0][i] = (float)(116 * fy - 16);
+			lab[1][i] = (float)(500 * (fx - fy));
+			lab[2][i] = (float)(200 * (fy - fz));
+		}
+		return lab;
+	}
+
+	private static double labF(double t) {
+		return t > 0.008856 ? Math.cbrt(t) : 7.787 * t + 16.0 / 116.0;
+	}
+
+}
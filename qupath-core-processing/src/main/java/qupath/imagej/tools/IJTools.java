@@ -71,7 +71,6 @@ import qupath.lib.color.ColorDeconvolutionHelper;
 import qupath.lib.color.ColorDeconvolutionStains;
 import qupath.lib.color.ColorToolsAwt;
 import qupath.lib.color.ColorTransformer;
-import qupath.lib.color.ColorTransformer.ColorTransformMethod;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.geom.Point2;
 import qupath.lib.images.ImageData;
@@ -1208,9 +1207,10 @@ public class IJTools {
 		int width = cp.getWidth();
 		int height = cp.getHeight();
 		int[] rgb = (int[])cp.getPixels();
-		FloatProcessor fpStain1 = new FloatProcessor(width, height, ColorTransformer.getTransformedPixels(rgb, ColorTransformMethod.Stain_1, null, stains));
-		FloatProcessor fpStain2 = new FloatProcessor(width, height, ColorTransformer.getTransformedPixels(rgb, ColorTransformMethod.Stain_2, null, stains));
-		FloatProcessor fpStain3 = new FloatProcessor(width, height, ColorTransformer.getTransformedPixels(rgb, ColorTransformMethod.Stain_3, null, stains));
+		float[][] pixels = ColorTransformer.getDeconvolvedPixels(rgb, stains, null, 1, 2, 3);
+		FloatProcessor fpStain1 = new FloatProcessor(width, height, pixels[0]);
+		FloatProcessor fpStain2 = new FloatProcessor(width, height, pixels[1]);
+		FloatProcessor fpStain3 = new FloatProcessor(width, height, pixels[2]);
 		return new FloatProcessor[] {fpStain1, fpStain2, fpStain3};
 	}
 
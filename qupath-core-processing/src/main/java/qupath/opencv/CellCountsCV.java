@@ -44,7 +44,6 @@ import org.slf4j.LoggerFactory;
 
 import qupath.lib.color.ColorDeconvolutionStains;
 import qupath.lib.color.ColorTransformer;
-import qupath.lib.color.ColorTransformer.ColorTransformMethod;
 import qupath.lib.common.ColorTools;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.images.ImageData;
@@ -160,8 +159,9 @@ public class CellCountsCV extends AbstractTileableDetectionPlugin<BufferedImage>
 			ColorDeconvolutionStains stains = imageData.getColorDeconvolutionStains();
 			int[] rgb = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
 			
-			float[] pxNucleusStain = ColorTransformer.getTransformedPixels(rgb, ColorTransformMethod.Stain_1, null, stains);
-			float[] pxStain2 = ColorTransformer.getTransformedPixels(rgb, ColorTransformMethod.Stain_2, null, stains);
+			float[][] pxStains = ColorTransformer.getDeconvolvedPixels(rgb, stains, null, 1, 2);
+			float[] pxNucleusStain = pxStains[0];
+			float[] pxStain2 = pxStains[1];
 
 //			float[] pxNucleusStain = ColorDeconvolution.colorDeconvolveRGBArray(rgb, stains, 0, null);
 //			float[] pxStain2 = ColorDeconvolution.colorDeconvolveRGBArray(rgb, stains, 1, null);
@@ -0,0 +1,375 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.ml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.bytedeco.opencv.opencv_core.FileStorage;
+import org.bytedeco.opencv.opencv_ml.Boost;
+import org.bytedeco.opencv.opencv_ml.DTrees;
+import org.bytedeco.opencv.opencv_ml.RTrees;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * A pure-Java representation of a trained OpenCV {@link RTrees}, {@link DTrees} or {@link Boost} classifier.
+ * <p>
+ * All trees are flattened into a small number of primitive arrays, so that predictions can be made without
+ * creating any native {@code Mat} objects - and from any number of threads.
+ * Predictions should be identical to those of {@link OpenCVClassifiers.OpenCVStatModel#predict(org.bytedeco.opencv.opencv_core.Mat, org.bytedeco.opencv.opencv_core.Mat, org.bytedeco.opencv.opencv_core.Mat)}
+ * for the same model.
+ * <p>
+ * Only classifiers using ordered (i.e. not categorical) features are supported.
+ * Surrogate splits are ignored, since these aren't used by QuPath.
+ *
+ * @since v0.6.0
+ */
+public final class FlattenedTreeEnsemble {
+
+	/**
+	 * Number of ints used to store each node: the feature index (or -1 for a leaf), followed by
+	 * the left and right child indices. For leaves, the second value gives the class index instead.
+	 */
+	private static final int NODE_STRIDE = 3;
+
+	/**
+	 * Number of samples per parallel task.
+	 */
+	private static final int BLOCK_SIZE = 4096;
+
+	private final boolean sumValues;
+	private final int nFeatures;
+	private final int[] classLabels;
+	private final int[] roots;
+	private final int[] nodes;
+	private final float[] thresholds;
+	private final double[] values;
+
+	private FlattenedTreeEnsemble(boolean sumValues, int nFeatures, int[] classLabels, int[] roots, int[] nodes, float[] thresholds, double[] values) {
+		this.sumValues = sumValues;
+		this.nFeatures = nFeatures;
+		this.classLabels = classLabels;
+		this.roots = roots;
+		this.nodes = nodes;
+		this.thresholds = thresholds;
+		this.values = values;
+	}
+
+	/**
+	 * Create a flattened tree ensemble from a trained OpenCV model.
+	 * @param model the model; this should be an instance of {@link RTrees}, {@link DTrees} or {@link Boost}
+	 * @return
+	 * @throws IllegalArgumentException if the model is not trained, or uses features that are not supported
+	 */
+	public static FlattenedTreeEnsemble create(DTrees model) throws IllegalArgumentException {
+		if (!model.isTrained())
+			throw new IllegalArgumentException("Model is not trained!");
+		String json;
+		try (FileStorage fs = new FileStorage()) {
+			fs.open("anything.json", FileStorage.FORMAT_JSON + FileStorage.WRITE + FileStorage.MEMORY);
+			model.write(fs, model.getDefaultName());
+			json = fs.releaseAndGetString().getString();
+		}
+		var element = JsonParser.parseString(json.trim()).getAsJsonObject();
+		return fromJson(element, model instanceof Boost);
+	}
+
+	/**
+	 * Create a flattened tree ensemble from the JSON representation of a tree-based OpenCV StatModel.
+	 * @param json the JSON, as written by OpenCV's FileStorage
+	 * @param sumValues true if the values of the leaves should be summed (as for {@link Boost}), false if
+	 *                  each tree should vote for a class (as for {@link RTrees} and {@link DTrees})
+	 * @return
+	 * @throws IllegalArgumentException if the model is not supported
+	 */
+	static FlattenedTreeEnsemble fromJson(JsonObject json, boolean sumValues) throws IllegalArgumentException {
+		// The model might be stored as the root, or inside a named element
+		if (!json.has("format")) {
+			var first = json.entrySet().stream().map(e -> e.getValue()).filter(JsonElement::isJsonObject).findFirst().orElse(null);
+			if (first == null)
+				throw new IllegalArgumentException("No tree model found");
+			json = first.getAsJsonObject();
+		}
+		if (json.has("is_classifier") && json.get("is_classifier").getAsInt() == 0)
+			throw new IllegalArgumentException("Only tree classifiers are supported, not regression");
+		if (json.has("global_var_idx"))
+			throw new IllegalArgumentException("Models trained with a subset of features are not supported");
+		int nFeatures = json.get("var_count").getAsInt();
+		if (json.has("var_type")) {
+			var varType = toIntArray(json.get("var_type"));
+			for (int i = 0; i < nFeatures; i++) {
+				if (varType[i] != 0)
+					throw new IllegalArgumentException("Categorical features are not supported");
+			}
+		}
+		var classLabels = toIntArray(json.get("class_labels"));
+		if (sumValues && classLabels.length != 2)
+			throw new IllegalArgumentException("Boosted trees require 2 classes, but " + classLabels.length + " found");
+
+		// Single decision trees store the nodes at the top level, ensembles have an array of trees
+		List<JsonArray> trees = new ArrayList<>();
+		if (json.has("trees")) {
+			for (var tree : json.getAsJsonArray("trees"))
+				trees.add(tree.getAsJsonObject().getAsJsonArray("nodes"));
+		} else if (json.has("nodes")) {
+			trees.add(json.getAsJsonArray("nodes"));
+		}
+		if (trees.isEmpty())
+			throw new IllegalArgumentException("No trees found");
+
+		int nNodes = trees.stream().mapToInt(JsonArray::size).sum();
+		var roots = new int[trees.size()];
+		var nodes = new int[nNodes * NODE_STRIDE];
+		var thresholds = new float[nNodes];
+		var values = new double[nNodes];
+		int ind = 0;
+		for (int t = 0; t < trees.size(); t++) {
+			var tree = trees.get(t);
+			roots[t] = ind;
+			// Nodes are written depth-first, with the left child following its parent directly;
+			// we use the depth to find the parent of each node
+			var lastAtDepth = new int[16];
+			for (var element : tree) {
+				var node = element.getAsJsonObject();
+				int depth = node.get("depth").getAsInt();
+				if (depth > 0) {
+					if (depth > lastAtDepth.length)
+						throw new IllegalArgumentException("Invalid tree structure");
+					int parent = lastAtDepth[depth - 1];
+					if (nodes[parent * NODE_STRIDE + 1] == 0)
+						nodes[parent * NODE_STRIDE + 1] = ind;
+					else
+						nodes[parent * NODE_STRIDE + 2] = ind;
+				} else if (ind != roots[t])
+					throw new IllegalArgumentException("Invalid tree structure");
+				if (depth >= lastAtDepth.length)
+					lastAtDepth = Arrays.copyOf(lastAtDepth, lastAtDepth.length * 2);
+				lastAtDepth[depth] = ind;
+
+				values[ind] = node.get("value").getAsDouble();
+				if (node.has("splits")) {
+					// Use the primary split only - any others are surrogates
+					var split = node.getAsJsonArray("splits").get(0).getAsJsonObject();
+					int varIdx = split.get("var").getAsInt();
+					if (varIdx < 0 || varIdx >= nFeatures)
+						throw new IllegalArgumentException("Invalid feature index " + varIdx);
+					nodes[ind * NODE_STRIDE] = varIdx;
+					if (split.has("le")) {
+						thresholds[ind] = split.get("le").getAsFloat();
+					} else if (split.has("ge")) {
+						// Inverted splits go right if value <= threshold; we swap the children later
+						thresholds[ind] = split.get("ge").getAsFloat();
+						nodes[ind * NODE_STRIDE] = -2 - varIdx;
+					} else
+						throw new IllegalArgumentException("Unsupported split " + split);
+				} else {
+					nodes[ind * NODE_STRIDE] = -1;
+					nodes[ind * NODE_STRIDE + 1] = node.has("norm_class_idx") ? node.get("norm_class_idx").getAsInt() : 0;
+				}
+				ind++;
+			}
+		}
+		// Swap the children of inverted splits, and check all splits have both children
+		for (int i = 0; i < nNodes; i++) {
+			int feature = nodes[i * NODE_STRIDE];
+			if (feature == -1)
+				continue;
+			if (feature < -1) {
+				nodes[i * NODE_STRIDE] = -2 - feature;
+				int temp = nodes[i * NODE_STRIDE + 1];
+				nodes[i * NODE_STRIDE + 1] = nodes[i * NODE_STRIDE + 2];
+				nodes[i * NODE_STRIDE + 2] = temp;
+			}
+			if (nodes[i * NODE_STRIDE + 1] <= i || nodes[i * NODE_STRIDE + 2] <= i)
+				throw new IllegalArgumentException("Invalid tree structure");
+		}
+		return new FlattenedTreeEnsemble(sumValues, nFeatures, classLabels, roots, nodes, thresholds, values);
+	}
+
+	private static int[] toIntArray(JsonElement element) {
+		if (element == null)
+			return new int[0];
+		if (!element.isJsonArray())
+			return new int[] {element.getAsInt()};
+		var array = element.getAsJsonArray();
+		var output = new int[array.size()];
+		for (int i = 0; i < output.length; i++)
+			output[i] = array.get(i).getAsInt();
+		return output;
+	}
+
+	/**
+	 * Get the number of features required for each sample.
+	 * @return
+	 */
+	public int nFeatures() {
+		return nFeatures;
+	}
+
+	/**
+	 * Get the number of trees.
+	 * @return
+	 */
+	public int nTrees() {
+		return roots.length;
+	}
+
+	/**
+	 * Get the total number of nodes, across all trees.
+	 * @return
+	 */
+	public int nNodes() {
+		return thresholds.length;
+	}
+
+	/**
+	 * Get the class labels that may be output by the classifier.
+	 * @return
+	 */
+	public int[] getClassLabels() {
+		return classLabels.clone();
+	}
+
+	/**
+	 * Check if the ensemble can estimate probabilities.
+	 * This is true for voting ensembles (RTrees, DTrees), but not for Boost.
+	 * @return
+	 */
+	public boolean supportsProbabilities() {
+		return !sumValues;
+	}
+
+	/**
+	 * Predict the class label for a single sample.
+	 * @param samples array containing the features
+	 * @param offset offset of the first feature for the sample within the array
+	 * @return the predicted class label
+	 */
+	public int predict(float[] samples, int offset) {
+		if (sumValues)
+			return classLabels[sumLeaves(samples, offset) > 0 ? 1 : 0];
+		var votes = new int[classLabels.length];
+		return classLabels[vote(samples, offset, votes)];
+	}
+
+	/**
+	 * Predict class labels for many samples, optionally estimating probabilities.
+	 * Large numbers of samples are processed in parallel.
+	 * <p>
+	 * Probabilities are estimated as the proportion of trees that vote for each class, and are stored in the
+	 * column given by the class label - as for QuPath's RTrees classifier.
+	 *
+	 * @param samples features for all samples, stored row-wise with {@link #nFeatures()} values per sample
+	 * @param nSamples the number of samples
+	 * @param results array to store the predicted label for each sample
+	 * @param probabilities optional array to store probabilities, with {@code nSamples * getClassLabels().length} values; may be null
+	 * @throws IllegalArgumentException if arrays are too short, or probabilities are requested but not supported
+	 */
+	public void predict(float[] samples, int nSamples, int[] results, float[] probabilities) throws IllegalArgumentException {
+		int nClasses = classLabels.length;
+		if (samples.length < nSamples * nFeatures)
+			throw new IllegalArgumentException("Expected at least " + nSamples * nFeatures + " feature values, but found " + samples.length);
+		if (results.length < nSamples)
+			throw new IllegalArgumentException("Results array is too short for " + nSamples + " samples");
+		if (probabilities != null) {
+			if (!supportsProbabilities())
+				throw new IllegalArgumentException("Probabilities are not supported for summed trees");
+			if (probabilities.length < nSamples * nClasses)
+				throw new IllegalArgumentException("Probabilities array is too short for " + nSamples + " samples");
+		}
+		int nBlocks = (nSamples + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		var stream = IntStream.range(0, nBlocks);
+		if (nBlocks > 1)
+			stream = stream.parallel();
+		stream.forEach(b -> predictBlock(samples, b * BLOCK_SIZE, Math.min(nSamples, (b + 1) * BLOCK_SIZE), results, probabilities));
+	}
+
+	private void predictBlock(float[] samples, int start, int end, int[] results, float[] probabilities) {
+		int nClasses = classLabels.length;
+		var votes = sumValues ? null : new int[nClasses];
+		for (int i = start; i < end; i++) {
+			int offset = i * nFeatures;
+			if (sumValues) {
+				results[i] = classLabels[sumLeaves(samples, offset) > 0 ? 1 : 0];
+				continue;
+			}
+			int best = vote(samples, offset, votes);
+			results[i] = classLabels[best];
+			if (probabilities != null) {
+				double sum = roots.length;
+				for (int c = 0; c < nClasses; c++)
+					probabilities[i * nClasses + classLabels[c]] = (float)(votes[c] / sum);
+			}
+		}
+	}
+
+	/**
+	 * Count the votes for each class, returning the index of the class with the most votes.
+	 * Ties are resolved by choosing the lowest index.
+	 */
+	private int vote(float[] samples, int offset, int[] votes) {
+		Arrays.fill(votes, 0);
+		for (int root : roots)
+			votes[nodes[findLeaf(root, samples, offset) * NODE_STRIDE + 1]]++;
+		int best = 0;
+		for (int c = 1; c < votes.length; c++) {
+			if (votes[c] > votes[best])
+				best = c;
+		}
+		return best;
+	}
+
+	private double sumLeaves(float[] samples, int offset) {
+		double sum = 0;
+		for (int root : roots)
+			sum += values[findLeaf(root, samples, offset)];
+		return sum;
+	}
+
+	/**
+	 * Find the leaf node reached by a sample.
+	 * Following OpenCV, a sample goes left if its feature value is less than or equal to the threshold -
+	 * which means that NaNs always go right (after inverted splits have been swapped).
+	 */
+	private int findLeaf(int root, float[] samples, int offset) {
+		int node = root;
+		int feature;
+		while ((feature = nodes[node * NODE_STRIDE]) >= 0) {
+			int child = samples[offset + feature] <= thresholds[node] ? 1 : 2;
+			node = nodes[node * NODE_STRIDE + child];
+		}
+		return node;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Flattened tree ensemble (%d trees, %d nodes, %d features, %d classes)",
+				nTrees(), nNodes(), nFeatures(), classLabels.length);
+	}
+
+}
@@ -642,6 +642,21 @@ public class OpenCVClassifiers {
 			model.setUse1SERule(use1SERule);
 		}
 		
+		/**
+		 * Create a pure-Java copy of the trained trees, which can be used to make the same predictions
+		 * without calling OpenCV.
+		 * @return
+		 * @throws IllegalArgumentException if the classifier is not trained, or cannot be flattened
+		 * @since v0.6.0
+		 */
+		public FlattenedTreeEnsemble createFlattenedTrees() throws IllegalArgumentException {
+			lock.readLock().lock();
+			try {
+				return FlattenedTreeEnsemble.create(getStatModel());
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
 		
 	}
 	
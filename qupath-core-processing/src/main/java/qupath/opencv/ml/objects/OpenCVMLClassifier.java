@@ -28,6 +28,15 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.bytedeco.javacpp.indexer.FloatIndexer;
 import org.bytedeco.javacpp.indexer.IntIndexer;
@@ -39,8 +48,11 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Lists;
 
 import qupath.lib.classifiers.object.AbstractObjectClassifier;
+import qupath.lib.classifiers.object.MeasurementTable;
+import qupath.lib.classifiers.object.MeasurementTableClassifier;
 import qupath.lib.classifiers.object.ObjectClassifier;
 import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectFilter;
@@ -57,10 +69,15 @@ import qupath.opencv.ml.OpenCVClassifiers.OpenCVStatModel;
  *
  * @param <T>
  */
-public class OpenCVMLClassifier<T> extends AbstractObjectClassifier<T> {
+public class OpenCVMLClassifier<T> extends AbstractObjectClassifier<T> implements MeasurementTableClassifier<T> {
 	
 	private static final Logger logger = LoggerFactory.getLogger(OpenCVMLClassifier.class);
 	
+	/**
+	 * Minimum number of objects per chunk when working in parallel, to avoid the overhead of many small predictions.
+	 */
+	private static final int MIN_PARALLEL_CHUNK_SIZE = 1000;
+	
 	/**
 	 * Extract features from objects
 	 */
@@ -139,49 +156,280 @@ public class OpenCVMLClassifier<T> extends AbstractObjectClassifier<T> {
 			Collection<? extends PathObject> pathObjects,
 			boolean resetExistingClass,
 			boolean requestProbabilityEstimate) {
+		return classifyObjects(featureExtractor, classifier, pathClasses, imageData, pathObjects, resetExistingClass, requestProbabilityEstimate,
+				ThreadTools.getParallelism());
+	}
+
+	/**
+	 * Classify objects, working through them in chunks.
+	 * <p>
+	 * If there is more than one chunk and more than one thread is requested, chunks are processed by multiple workers.
+	 * Each worker extracts features and then predicts for one chunk at a time, so that feature extraction for one chunk
+	 * overlaps with prediction for others. Workers reuse their own {@link Mat}s across chunks.
+	 * Classifications are only applied after all chunks have been processed.
+	 */
+	static <T> int classifyObjects(
+			FeatureExtractor<T> featureExtractor,
+			OpenCVStatModel classifier,
+			List<PathClass> pathClasses,
+			ImageData<T> imageData,
+			Collection<? extends PathObject> pathObjects,
+			boolean resetExistingClass,
+			boolean requestProbabilityEstimate,
+			int nThreads) {
 
 		if (featureExtractor == null) {
 			logger.warn("No feature extractor! Cannot classify {} objects", pathObjects.size());
 			return 0;
 		}
+		if (pathObjects.isEmpty())
+			return 0;
 		
-		int counter = 0;
+		int nObjects = pathObjects.size();
+		var chunks = Lists.partition(new ArrayList<>(pathObjects), getChunkSize(nObjects, featureExtractor.nFeatures(), nThreads));
 		
-		List<Reclassifier> reclassifiers = new ArrayList<>();
+		var progress = new ChunkProgress(nObjects);
+		var chunkReclassifiers = new AtomicReferenceArray<List<Reclassifier>>(chunks.size());
+		long startTime = System.currentTimeMillis();
+		boolean completed = processChunks(chunks.size(), nThreads,
+				() -> new ChunkPredictor<>(featureExtractor, classifier, pathClasses, imageData, requestProbabilityEstimate),
+				(predictor, ind) -> chunkReclassifiers.set(ind, predictor.classify(chunks.get(ind), resetExistingClass, progress)));
+		if (!completed) {
+			logger.warn("Classification interrupted - will not be applied");
+			return 0;
+		}
+		long predictTime = System.currentTimeMillis() - startTime;
+		logger.info("Prediction time: {} ms for {} objects ({} ns per object)",
+				predictTime, nObjects,
+				GeneralTools.formatNumber((double)predictTime/nObjects * 1000.0, 2));
 
-		// Try not to have more than ~10 million entries per list
-		int subListSize = (int)Math.max(1, Math.min(pathObjects.size(), (1024 * 1024 * 10 / featureExtractor.nFeatures())));
+		// Apply classifications now
+		int counter = 0;
+		for (int i = 0; i < chunks.size(); i++) {
+			var reclassifiers = chunkReclassifiers.get(i);
+			if (reclassifiers != null)
+				reclassifiers.forEach(Reclassifier::apply);
+			counter += chunks.get(i).size();
+		}
+		return counter;
+	}
+	
+	@Override
+	public Collection<String> getRequiredMeasurements() {
+		return featureExtractor == null ? null : featureExtractor.getRequiredMeasurements();
+	}
+	
+	@Override
+	public void classifyTable(ImageData<T> imageData, MeasurementTable table, PathClass[] pathClasses, double[] probabilities) {
+		classifyTable(featureExtractor, classifier, this.pathClasses, imageData, table, pathClasses, probabilities,
+				requestProbabilityEstimate, ThreadTools.getParallelism());
+	}
+	
+	/**
+	 * Classify the objects in a {@link MeasurementTable}, updating the arrays rather than the objects.
+	 * This uses the same chunks and workers as {@link #classifyObjects(FeatureExtractor, OpenCVStatModel, List, ImageData, Collection, boolean, boolean, int)}, 
+	 * but each chunk is a range of rows in the table.
+	 * Since each chunk covers different rows, workers can update the arrays directly.
+	 */
+	static <T> void classifyTable(
+			FeatureExtractor<T> featureExtractor,
+			OpenCVStatModel classifier,
+			List<PathClass> availableClasses,
+			ImageData<T> imageData,
+			MeasurementTable table,
+			PathClass[] pathClasses,
+			double[] probabilities,
+			boolean requestProbabilityEstimate,
+			int nThreads) {
 		
-		Mat samples = new Mat();
+		int nObjects = table.size();
+		if (featureExtractor == null || nObjects == 0)
+			return;
 		
-		Mat results = new Mat();
-		Mat probabilities = requestProbabilityEstimate ? new Mat() : null;
-
-		// Work through the objects in chunks
-		long startTime = System.currentTimeMillis();
-		long lastTime = startTime;
-		int nComplete = 0;
-		for (var tempObjectList : Lists.partition(new ArrayList<>(pathObjects), subListSize)) {
+		int chunkSize = getChunkSize(nObjects, featureExtractor.nFeatures(), nThreads);
+		int nChunks = (nObjects + chunkSize - 1) / chunkSize;
+		var progress = new ChunkProgress(nObjects);
+		boolean completed = processChunks(nChunks, nThreads,
+				() -> new ChunkPredictor<>(featureExtractor, classifier, availableClasses, imageData, requestProbabilityEstimate),
+				(predictor, ind) -> {
+					int from = ind * chunkSize;
+					int to = Math.min(nObjects, from + chunkSize);
+					var prediction = predictor.predict(to - from, 
+							buffer -> featureExtractor.extractFeatures(imageData, table, from, to, buffer));
+					progress.featuresCalculated(to - from);
+					if (prediction == null)
+						return;
+					for (int i = 0; i < prediction.pathClasses.length; i++) {
+						int row = from + i;
+						var pathClass = PathClassTools.mergeClasses(pathClasses[row], prediction.pathClasses[i]);
+						pathClasses[row] = Reclassifier.getUpdatedClass(pathClasses[row], pathClass, !prediction.multiclass);
+						probabilities[row] = Double.NaN;
+					}
+				});
+		if (!completed)
+			logger.warn("Classification interrupted");
+	}
+	
+	private static int getChunkSize(int nObjects, int nFeatures, int nThreads) {
+		// Try not to have more than ~10 million entries per list - but use smaller chunks if we can work in parallel
+		int maxChunkSize = (int)Math.max(1, Math.min(nObjects, (1024 * 1024 * 10 / Math.max(1, nFeatures))));
+		if (nThreads > 1)
+			return Math.min(maxChunkSize, Math.max(MIN_PARALLEL_CHUNK_SIZE, (int)Math.ceil(nObjects / (nThreads * 4.0))));
+		return maxChunkSize;
+	}
+	
+	/**
+	 * Process chunks by index, possibly with multiple workers.
+	 * Each worker creates its own {@link ChunkPredictor}, and then pulls chunks until none remain.
+	 * @return true if all chunks were processed, false if the thread was interrupted
+	 */
+	private static <T> boolean processChunks(int nChunks, int nThreads, 
+			Supplier<ChunkPredictor<T>> predictorSupplier, BiConsumer<ChunkPredictor<T>, Integer> task) {
+		int nWorkers = Math.max(1, Math.min(nThreads, nChunks));
+		var nextChunk = new AtomicInteger(0);
+		Runnable worker = () -> {
+			try (var predictor = predictorSupplier.get()) {
+				int ind;
+				while ((ind = nextChunk.getAndIncrement()) < nChunks) {
+					if (Thread.currentThread().isInterrupted())
+						return;
+					task.accept(predictor, ind);
+				}
+			}
+		};
 
-			if (Thread.interrupted()) {
-				logger.warn("Classification interrupted - will not be applied");
-				return 0;
+		if (nWorkers == 1) {
+			worker.run();
+			return !Thread.currentThread().isInterrupted();
+		}
+		logger.debug("Classifying {} chunks with {} workers", nChunks, nWorkers);
+		var pool = Executors.newFixedThreadPool(nWorkers, ThreadTools.createThreadFactory("object-classifier", true));
+		try {
+			var futures = new ArrayList<Future<?>>();
+			for (int i = 0; i < nWorkers; i++)
+				futures.add(pool.submit(worker));
+			for (var future : futures)
+				future.get();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Helper class to log progress when calculating features, possibly from multiple threads.
+	 */
+	private static class ChunkProgress {
+		
+		private final int nObjects;
+		private final long startTime = System.currentTimeMillis();
+		private final AtomicInteger nComplete = new AtomicInteger(0);
+		private final AtomicLong lastTime = new AtomicLong(startTime);
+		
+		private ChunkProgress(int nObjects) {
+			this.nObjects = nObjects;
+		}
+		
+		private void featuresCalculated(int n) {
+			int complete = nComplete.addAndGet(n);
+			long time = System.currentTimeMillis();
+			long last = lastTime.get();
+			if (time - last > 1000L && lastTime.compareAndSet(last, time)) {
+				logger.debug("Calculated features for {}/{} objects in {} ms ({} ms per object, {}% complete)", complete, nObjects, 
+						(time - startTime),
+						GeneralTools.formatNumber((time - startTime)/(double)complete, 2),
+						GeneralTools.formatNumber(complete * 100.0 / nObjects, 1));
 			}
+		}
+		
+	}
+	
+	/**
+	 * Predicted classifications for a chunk, before merging with any existing classifications.
+	 * Ignored classes are replaced by null, in which case the probability is NaN.
+	 */
+	private static class ChunkPrediction {
+		
+		private final PathClass[] pathClasses;
+		private final double[] probabilities;
+		private final boolean multiclass;
+		
+		private ChunkPrediction(int n, boolean multiclass) {
+			this.pathClasses = new PathClass[n];
+			this.probabilities = new double[n];
+			this.multiclass = multiclass;
+		}
+		
+	}
+	
+	/**
+	 * Extract features and apply predictions for chunks of objects, reusing the same {@link Mat}s for each chunk.
+	 * Instances are not thread-safe, and should be used by a single worker.
+	 * <p>
+	 * The {@link OpenCVStatModel} itself can be shared, since prediction only acquires a read lock
+	 * and OpenCV's StatModel prediction doesn't modify the model.
+	 */
+	private static class ChunkPredictor<T> implements AutoCloseable {
+		
+		private final FeatureExtractor<T> featureExtractor;
+		private final OpenCVStatModel classifier;
+		private final List<PathClass> pathClasses;
+		private final ImageData<T> imageData;
+		
+		private final Mat samples = new Mat();
+		private final Mat results = new Mat();
+		private final Mat probabilities;
+		
+		private ChunkPredictor(FeatureExtractor<T> featureExtractor, OpenCVStatModel classifier, List<PathClass> pathClasses,
+				ImageData<T> imageData, boolean requestProbabilityEstimate) {
+			this.featureExtractor = featureExtractor;
+			this.classifier = classifier;
+			this.pathClasses = pathClasses;
+			this.imageData = imageData;
+			this.probabilities = requestProbabilityEstimate ? new Mat() : null;
+		}
+		
+		private List<Reclassifier> classify(List<? extends PathObject> tempObjectList, boolean resetExistingClass, ChunkProgress progress) {
+			var prediction = predict(tempObjectList.size(), buffer -> featureExtractor.extractFeatures(imageData, tempObjectList, buffer));
+			progress.featuresCalculated(tempObjectList.size());
+			if (prediction == null)
+				return Collections.emptyList();
 			
-			samples.create(tempObjectList.size(), featureExtractor.nFeatures(), opencv_core.CV_32FC1);
-			FloatBuffer buffer = samples.createBuffer();
-			featureExtractor.extractFeatures(imageData, tempObjectList, buffer);
-			
-			// Possibly log time taken
-			nComplete += tempObjectList.size();
-			long intermediateTime = System.currentTimeMillis();
-			if (intermediateTime - lastTime > 1000L) {
-				logger.debug("Calculated features for {}/{} objects in {} ms ({} ms per object, {}% complete)", nComplete, pathObjects.size(), 
-						(intermediateTime - startTime),
-						GeneralTools.formatNumber((intermediateTime - startTime)/(double)nComplete, 2),
-						GeneralTools.formatNumber(nComplete * 100.0 / pathObjects.size(), 1));
-				lastTime = startTime;
+			List<Reclassifier> reclassifiers = new ArrayList<>(tempObjectList.size());
+			int row = 0;
+			for (var pathObject : tempObjectList) {
+				var pathClass = prediction.pathClasses[row];
+				double probability = prediction.probabilities[row];
+				if (!resetExistingClass) {
+					pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
+					probability = Double.NaN;
+				}
+				if (prediction.multiclass)
+					reclassifiers.add(new Reclassifier(pathObject, pathClass, false));
+				else
+					reclassifiers.add(new Reclassifier(pathObject, pathClass, true, probability));
+				row++;
 			}
+			return reclassifiers;
+		}
+		
+		/**
+		 * Extract features for a chunk and predict classifications.
+		 * @param nRows number of rows (objects) in the chunk
+		 * @param extractor consumer to add the features for all rows to a buffer
+		 * @return the predictions, or null if prediction failed
+		 */
+		private ChunkPrediction predict(int nRows, Consumer<FloatBuffer> extractor) {
+			
+			// Mat.create only reallocates if the size has changed, so memory is recycled across chunks
+			samples.create(nRows, featureExtractor.nFeatures(), opencv_core.CV_32FC1);
+			FloatBuffer buffer = samples.createBuffer();
+			extractor.accept(buffer);
 			
 			boolean doMulticlass = classifier.supportsMulticlass();
 			double threshold = 0.5;
@@ -194,12 +442,13 @@ public class OpenCVMLClassifier<T> extends AbstractObjectClassifier<T> {
 				if (probabilities != null && !probabilities.empty())
 					idxProbabilities = probabilities.createIndexer();
 
+				ChunkPrediction prediction;
 				if (doMulticlass && idxProbabilities != null) {
 					// Use probabilities if we require multiclass outputs
-					long row = 0;
+					prediction = new ChunkPrediction(nRows, true);
 					int nCols = (int)idxProbabilities.size(2); // Previously .cols()
 					List<String> classifications = new ArrayList<>();
-					for (var pathObject : tempObjectList) {
+					for (int row = 0; row < nRows; row++) {
 						classifications.clear();
 						for (int col = 0; col < nCols; col++) {
 							double prob = idxProbabilities.get(row, col);
@@ -213,54 +462,43 @@ public class OpenCVMLClassifier<T> extends AbstractObjectClassifier<T> {
 						if (PathClassTools.isIgnoredClass(pathClass)) {
 							pathClass = null;
 						}
-						if (!resetExistingClass) {
-							pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
-						}
-						reclassifiers.add(new Reclassifier(pathObject, pathClass, false));
-						row++;
+						prediction.pathClasses[row] = pathClass;
+						prediction.probabilities[row] = Double.NaN;
 					}
 				} else {
 					// Use results (indexed values) if we do not require multiclass outputs
-					long row = 0;
-					for (var pathObject : tempObjectList) {
-						int prediction = idxResults.get(row);
-						var pathClass = pathClasses.get(prediction);
-						double probability = idxProbabilities == null ? Double.NaN : idxProbabilities.get(row, prediction);
+					prediction = new ChunkPrediction(nRows, false);
+					for (int row = 0; row < nRows; row++) {
+						int ind = idxResults.get(row);
+						var pathClass = pathClasses.get(ind);
+						double probability = idxProbabilities == null ? Double.NaN : idxProbabilities.get(row, ind);
 						if (PathClassTools.isIgnoredClass(pathClass)) {
 							pathClass = null;
 							probability = Double.NaN;
-						} 
-						if (!resetExistingClass) {
-							pathClass = PathClassTools.mergeClasses(pathObject.getPathClass(), pathClass);
-							probability = Double.NaN;
 						}
-						reclassifiers.add(new Reclassifier(pathObject, pathClass, true, probability));							
-						row++;
+						prediction.pathClasses[row] = pathClass;
+						prediction.probabilities[row] = probability;
 					}
 				}
 				idxResults.release();
 				if (idxProbabilities != null)
 					idxProbabilities.release();
+				return prediction;
 			} catch (Exception e) {
 				logger.warn("Error with samples: {}", samples);
 				logger.error(e.getLocalizedMessage(), e);
+				return null;
 			}
-			counter += tempObjectList.size();
 		}
-		long predictTime = System.currentTimeMillis() - startTime;
-		logger.info("Prediction time: {} ms for {} objects ({} ns per object)",
-				predictTime, pathObjects.size(),
-				GeneralTools.formatNumber((double)predictTime/pathObjects.size() * 1000.0, 2));
-
-		samples.close();
-		results.close();
-		if (probabilities != null)
-			probabilities.close();
 
-		// Apply classifications now
-		reclassifiers.stream().forEach(p -> p.apply());
-
-		return counter;
+		@Override
+		public void close() {
+			samples.close();
+			results.close();
+			if (probabilities != null)
+				probabilities.close();
+		}
+		
 	}
 	
 	@Override
@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import qupath.lib.classifiers.object.MeasurementTable;
 import qupath.lib.images.ImageData;
 import qupath.lib.measurements.MeasurementList;
 import qupath.lib.objects.PathObject;
@@ -52,6 +53,31 @@ class DefaultFeatureExtractor<T> implements FeatureExtractor<T> {
 			extractFeatures(pathObject, buffer);
 	}
 	
+	@Override
+	public void extractFeatures(ImageData<T> imageData, MeasurementTable table, int fromRow, int toRow, FloatBuffer buffer) {
+		// Use the table columns where available, and fall back to the measurement list otherwise
+		var columns = new double[measurements.size()][];
+		boolean allColumns = true;
+		for (int j = 0; j < columns.length; j++) {
+			columns[j] = table.getColumn(measurements.get(j));
+			if (columns[j] == null)
+				allColumns = false;
+		}
+		var pathObjects = table.getPathObjects();
+		for (int row = fromRow; row < toRow; row++) {
+			var measurementList = allColumns ? null : pathObjects.get(row).getMeasurementList();
+			for (int j = 0; j < columns.length; j++) {
+				double value = columns[j] == null ? measurementList.get(measurements.get(j)) : columns[j][row];
+				buffer.put((float)value);
+			}
+		}
+	}
+	
+	@Override
+	public Collection<String> getRequiredMeasurements() {
+		return getFeatureNames();
+	}
+	
 	@Override
 	public List<String> getFeatureNames() {
 		return Collections.unmodifiableList(measurements);
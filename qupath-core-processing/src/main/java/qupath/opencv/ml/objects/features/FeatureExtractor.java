@@ -25,6 +25,7 @@ import java.nio.FloatBuffer;
 import java.util.Collection;
 import java.util.List;
 
+import qupath.lib.classifiers.object.MeasurementTable;
 import qupath.lib.classifiers.object.ObjectClassifier;
 import qupath.lib.images.ImageData;
 import qupath.lib.objects.PathObject;
@@ -60,6 +61,39 @@ public interface FeatureExtractor<T> {
 	 */
 	public void extractFeatures(ImageData<T> imageData, Collection<? extends PathObject> pathObjects, FloatBuffer buffer);
 	
+	/**
+	 * Extract features for a range of rows in a {@link MeasurementTable}, adding the corresponding values to a {@link FloatBuffer}.
+	 * This should give the same result as {@link #extractFeatures(ImageData, Collection, FloatBuffer)} for the objects in the table, 
+	 * but can avoid reading the same measurements multiple times.
+	 * <p>
+	 * The default implementation ignores the table values, and extracts features from the objects.
+	 * 
+	 * @param imageData image data, used by some implementations to determine feature values (e.g. if these depend upon pixels).
+	 * @param table table containing the objects, and possibly their measurements
+	 * @param fromRow first row for which features should be extracted (inclusive)
+	 * @param toRow last row for which features should be extracted (exclusive)
+	 * @param buffer buffer into which feature values should be added
+	 * @since v0.6.0
+	 * @see #getRequiredMeasurements()
+	 */
+	public default void extractFeatures(ImageData<T> imageData, MeasurementTable table, int fromRow, int toRow, FloatBuffer buffer) {
+		extractFeatures(imageData, table.getPathObjects().subList(fromRow, toRow), buffer);
+	}
+	
+	/**
+	 * Get the names of the measurements required to extract features.
+	 * If a {@link MeasurementTable} contains all these measurements, then features can be extracted from the table 
+	 * rather than the objects.
+	 * <p>
+	 * The default implementation returns null, indicating that features are not (only) determined from measurements.
+	 * 
+	 * @return the names of the required measurements, or null if features are not determined from measurements
+	 * @since v0.6.0
+	 */
+	public default Collection<String> getRequiredMeasurements() {
+		return null;
+	}
+	
 	/**
 	 * Check for missing features, returning the names.
 	 * This is useful as a warning that the input for the feature extractor may not be valid.
@@ -25,6 +25,7 @@ import java.nio.FloatBuffer;
 import java.util.Collection;
 import java.util.List;
 
+import qupath.lib.classifiers.object.MeasurementTable;
 import qupath.lib.images.ImageData;
 import qupath.lib.objects.PathObject;
 
@@ -52,10 +53,26 @@ class NormalizedFeatureExtractor<T> implements FeatureExtractor<T> {
 	public void extractFeatures(ImageData<T> imageData, Collection<? extends PathObject> pathObjects, FloatBuffer buffer) {
 		int pos = buffer.position();
 		featureExtractor.extractFeatures(imageData, pathObjects, buffer);
+		normalize(buffer, pos, pathObjects.size());
+	}
+	
+	@Override
+	public void extractFeatures(ImageData<T> imageData, MeasurementTable table, int fromRow, int toRow, FloatBuffer buffer) {
+		int pos = buffer.position();
+		featureExtractor.extractFeatures(imageData, table, fromRow, toRow, buffer);
+		normalize(buffer, pos, toRow - fromRow);
+	}
+	
+	@Override
+	public Collection<String> getRequiredMeasurements() {
+		return featureExtractor.getRequiredMeasurements();
+	}
+	
+	private void normalize(FloatBuffer buffer, int pos, int nObjects) {
 		int n = nFeatures();
-		assert (buffer.position() - pos) == pathObjects.size() * n;
+		assert (buffer.position() - pos) == nObjects * n;
 		int ind = pos;
-		for (int i = 0; i < pathObjects.size(); i++) {
+		for (int i = 0; i < nObjects; i++) {
 			for (int j = 0; j < n; j++) {
 				double val = buffer.get(ind);
 				val = normalizer.normalizeFeature(j, val);				
@@ -29,6 +29,7 @@ import java.util.stream.IntStream;
 import org.bytedeco.opencv.global.opencv_core;
 import org.bytedeco.opencv.opencv_core.Mat;
 
+import qupath.lib.classifiers.object.MeasurementTable;
 import qupath.lib.images.ImageData;
 import qupath.lib.objects.PathObject;
 import qupath.opencv.ml.objects.features.Preprocessing.PCAProjector;
@@ -60,8 +61,25 @@ class PCAProjectFeatureExtractor<T> implements FeatureExtractor<T> {
 		Mat mat = new Mat(pathObjects.size(), featureExtractor.nFeatures(), opencv_core.CV_32FC1);
 		FloatBuffer temp = mat.createBuffer();
 		featureExtractor.extractFeatures(imageData, pathObjects, temp);
+		project(mat, buffer);
+	}
+	
+	@Override
+	public void extractFeatures(ImageData<T> imageData, MeasurementTable table, int fromRow, int toRow, FloatBuffer buffer) {
+		Mat mat = new Mat(toRow - fromRow, featureExtractor.nFeatures(), opencv_core.CV_32FC1);
+		FloatBuffer temp = mat.createBuffer();
+		featureExtractor.extractFeatures(imageData, table, fromRow, toRow, temp);
+		project(mat, buffer);
+	}
+	
+	@Override
+	public Collection<String> getRequiredMeasurements() {
+		return featureExtractor.getRequiredMeasurements();
+	}
+	
+	private void project(Mat mat, FloatBuffer buffer) {
 		pca.project(mat, mat);
-		buffer.put(mat.createBuffer());
+		buffer.put(mat.<FloatBuffer>createBuffer());
 		mat.close();
 	}
 	
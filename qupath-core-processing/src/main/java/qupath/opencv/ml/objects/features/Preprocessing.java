@@ -225,16 +225,23 @@ public class Preprocessing {
 				doNormalize(result);
 		}
 
-		void doNormalize(Mat result) {
+		// Synchronized because features may be projected from multiple threads
+		private synchronized Mat getEigenvaluesSqrt() {
 			if (eigenvaluesSqrt == null) {
-				eigenvaluesSqrt = new Mat();
-				eigenvalues.copyTo(eigenvaluesSqrt);
-				opencv_core.add(eigenvaluesSqrt, Scalar.all(DEFAULT_EPSILON));
-				opencv_core.sqrt(eigenvaluesSqrt, eigenvaluesSqrt);
-				eigenvaluesSqrt.put(eigenvaluesSqrt.t());
+				var temp = new Mat();
+				eigenvalues.copyTo(temp);
+				opencv_core.add(temp, Scalar.all(DEFAULT_EPSILON));
+				opencv_core.sqrt(temp, temp);
+				temp.put(temp.t());
 				//				eigenvaluesSqrt.convertTo(eigenvaluesSqrt, opencv_core.CV_64FC1);
 				//				eigenvaluesSqrt.put(opencv_core.divide(1.0, eigenvaluesSqrt));
+				eigenvaluesSqrt = temp;
 			}
+			return eigenvaluesSqrt;
+		}
+
+		void doNormalize(Mat result) {
+			var eigenvaluesSqrt = getEigenvaluesSqrt();
 			//			var indexer = result.createIndexer();
 			//			var before = indexer.getDouble(0L);
 
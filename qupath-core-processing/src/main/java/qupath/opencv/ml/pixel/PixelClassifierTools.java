@@ -21,7 +21,11 @@
 
 package qupath.opencv.ml.pixel;
 
+import org.locationtech.jts.algorithm.Area;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.index.quadtree.Quadtree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +37,7 @@ import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerMetadata;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
+import qupath.lib.images.servers.TileRequest;
 import qupath.lib.objects.DefaultPathObjectComparator;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
@@ -45,22 +50,28 @@ import qupath.lib.regions.ImagePlane;
 import qupath.lib.regions.RegionRequest;
 import qupath.lib.roi.GeometryTools;
 import qupath.lib.roi.interfaces.ROI;
+import qupath.lib.scripting.QP;
 import qupath.opencv.ml.pixel.PixelClassifiers.ClassifierFunction;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -423,6 +434,12 @@ public class PixelClassifierTools {
 		// Loop through region requests (usually 1, unless we have a z-stack or time series)
 		for (RegionRequest regionRequest : regionRequests) {
 			
+			// Split objects can be created as polygons are traced, without needing a geometry for each classification
+			if (doSplit) {
+				pathObjects.addAll(createSplitObjects(server, regionRequest, clipArea, creator, labels, minAreaPixels, minHoleAreaPixels, thresholds));
+				continue;
+			}
+			
 			Map<Integer, Geometry> geometryMap = ContourTracing.traceGeometries(server, regionRequest, clipArea, thresholds);
 			
 			var labelMap = labels;
@@ -439,6 +456,66 @@ public class PixelClassifierTools {
 	
 	
 	
+	/**
+	 * Create separate objects for each connected region, passing polygons from {@link ContourTracing} to the 
+	 * creator as soon as they are complete.
+	 * This gives the same objects as calling {@link #geometryToObjects(Geometry, Function, PathClass, double, double, boolean, ImagePlane)} 
+	 * with the geometry for each classification, but without needing to create these geometries for the entire region.
+	 */
+	private static List<PathObject> createSplitObjects(ImageServer<BufferedImage> server, RegionRequest regionRequest, Geometry clipArea, 
+			Function<ROI, ? extends PathObject> creator, Map<Integer, PathClass> labels, double minAreaPixels, double minHoleAreaPixels, 
+			ChannelThreshold... thresholds) throws IOException {
+		
+		var plane = regionRequest.getImagePlane();
+		var pathObjects = new ArrayList<PathObject>();
+		
+		// Small polygons are swallowed if they are inside a hole that is filled, which might be traced later - 
+		// so we need to retain these until the end
+		var smallPolygons = new ArrayList<Map.Entry<Integer, Polygon>>();
+		var filledHoles = new HashMap<Integer, Quadtree>();
+		
+		ContourTracing.tracePolygons(server, regionRequest, clipArea, (label, polygon) -> {
+			if (Area.ofRing(polygon.getExteriorRing().getCoordinateSequence()) < minAreaPixels)
+				return;
+			if (minHoleAreaPixels > 0) {
+				for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+					var ring = polygon.getInteriorRingN(i);
+					if (Area.ofRing(ring.getCoordinateSequence()) < minHoleAreaPixels)
+						filledHoles.computeIfAbsent(label, k -> new Quadtree()).insert(ring.getEnvelopeInternal(), ring);
+				}
+				polygon = (Polygon)GeometryTools.removeInteriorRings(polygon, minHoleAreaPixels);
+				if (Area.ofRing(polygon.getExteriorRing().getCoordinateSequence()) < minHoleAreaPixels) {
+					smallPolygons.add(Map.entry(label, polygon));
+					return;
+				}
+			}
+			pathObjects.add(polygonToObject(polygon, creator, labels.get(label), plane));
+		}, thresholds);
+		
+		for (var entry : smallPolygons) {
+			var polygon = entry.getValue();
+			var tree = filledHoles.get(entry.getKey());
+			if (tree != null && isInsideRing(polygon, tree))
+				continue;
+			pathObjects.add(polygonToObject(polygon, creator, labels.get(entry.getKey()), plane));
+		}
+		return pathObjects;
+	}
+	
+	private static boolean isInsideRing(Polygon polygon, Quadtree tree) {
+		for (var ring : (List<LinearRing>)tree.query(polygon.getEnvelopeInternal())) {
+			if (ring.getFactory().createPolygon(ring).covers(polygon))
+				return true;
+		}
+		return false;
+	}
+	
+	private static PathObject polygonToObject(Polygon polygon, Function<ROI, ? extends PathObject> creator, PathClass pathClass, ImagePlane plane) {
+		var newObject = creator.apply(GeometryTools.geometryToROI(polygon, plane));
+		newObject.setPathClass(pathClass);
+		return newObject;
+	}
+	
 	private static List<PathObject> geometryToObjects(Geometry geometry, Function<ROI, ? extends PathObject> creator, PathClass pathClass, double minAreaPixels, double minHoleAreaPixels, boolean doSplit, ImagePlane plane) {
 		// Apply size filters
 		geometry = GeometryTools.refineAreas(geometry, minAreaPixels, minHoleAreaPixels);
@@ -467,8 +544,67 @@ public class PixelClassifierTools {
 	
 	
 	
+	private static Function<ImageData<BufferedImage>, Path> predictionCacheResolver = null;
+	
+	/**
+	 * Set the function used to find the directory where predictions should be stored for an image.
+	 * <p>
+	 * By default, predictions are not stored on disk.
+	 * Setting the resolver to {@link #getProjectPredictionCacheDirectory(ImageData)} stores them within the entry 
+	 * directory for the image in the current project, so that they can be reused by the live overlay, measurements 
+	 * and object creation - and when the same classifier is applied again later.
+	 * The function may return null if predictions should not be stored for a specific image.
+	 * <p>
+	 * Stored predictions are not removed automatically; see {@link #clearPredictionCache(ImageData)}.
+	 * 
+	 * @param resolver function to return the directory; may be null to turn off storing predictions entirely
+	 * @see PixelClassificationImageServer#setPersistentCacheDirectory(Path)
+	 * @since v0.6.0
+	 */
+	public static void setPredictionCacheResolver(Function<ImageData<BufferedImage>, Path> resolver) {
+		predictionCacheResolver = resolver;
+	}
+	
+	/**
+	 * Get the directory used to store predictions within the entry directory for an image in the current project.
+	 * This can be passed to {@link #setPredictionCacheResolver(Function)} to turn on storing predictions.
+	 * @param imageData
+	 * @return the directory, or null if the image is not part of the current project
+	 * @since v0.6.0
+	 */
+	public static Path getProjectPredictionCacheDirectory(ImageData<BufferedImage> imageData) {
+		var project = QP.getProject();
+		var entry = project == null ? null : project.getEntry(imageData);
+		var path = entry == null ? null : entry.getEntryPath();
+		return path == null ? null : path.resolve("predictions");
+	}
+	
+	/**
+	 * Delete all predictions stored for an image, using the directory given by the current prediction cache resolver.
+	 * This includes the predictions of all classifiers, and of earlier QuPath versions.
+	 * @param imageData
+	 * @throws IOException if the stored predictions could not be deleted
+	 * @see #setPredictionCacheResolver(Function)
+	 * @since v0.6.0
+	 */
+	public static void clearPredictionCache(ImageData<BufferedImage> imageData) throws IOException {
+		var resolver = predictionCacheResolver;
+		var directory = resolver == null ? null : resolver.apply(imageData);
+		if (directory == null || !Files.isDirectory(directory))
+			return;
+		logger.info("Deleting stored predictions in {}", directory);
+		List<Path> paths;
+		try (var stream = Files.walk(directory)) {
+			paths = stream.sorted(Comparator.reverseOrder()).toList();
+		}
+		for (var path : paths)
+			Files.deleteIfExists(path);
+	}
+	
 	/**
 	 * Create an {@link ImageServer} that displays the results of applying a {@link PixelClassifier} to an image.
+	 * <p>
+	 * Predictions are stored on disk if this has been turned on with {@link #setPredictionCacheResolver(Function)}.
 	 * @param imageData the image to which the classifier should apply
 	 * @param classifier the pixel classifier
 	 * @return the classification {@link ImageServer}
@@ -482,6 +618,7 @@ public class PixelClassifierTools {
 	 * @param imageData the image to which the classifier should apply
 	 * @param classifier the pixel classifier
 	 * @param id an ID to use for the {@link ImageServer}; this may be null, in which case an ID will be derived (if possible from a JSON representation of the classifier)
+	 *           and predictions may be stored on disk (see {@link #setPredictionCacheResolver(Function)})
 	 * @param colorModel optional colormodel for the classifier (may be null to use the default)
 	 * @param cacheAllTiles optionally request that all tiles are computed immediately as the classifier is created. This is useful for images that are 'small' and where 
 	 *                      the classification can comfortably be held in RAM.
@@ -489,6 +626,9 @@ public class PixelClassifierTools {
 	 */
 	public static ImageServer<BufferedImage> createPixelClassificationServer(ImageData<BufferedImage> imageData, PixelClassifier classifier, String id, ColorModel colorModel, boolean cacheAllTiles) {
 		var server = new PixelClassificationImageServer(imageData, classifier, id, colorModel);
+		var resolver = predictionCacheResolver;
+		if (id == null && resolver != null)
+			server.setPersistentCacheDirectory(resolver.apply(imageData));
 		if (cacheAllTiles) {
 			logger.debug("Caching all tiles for {}", server);
 			server.readAllTiles();
@@ -599,6 +739,9 @@ public class PixelClassifierTools {
 
 	/**
 	 * Apply classification from a server to a collection of objects.
+	 * <p>
+	 * Objects for which no classification can be read (e.g. because the tile containing their centroid 
+	 * could not be read) have their classification reset.
 	 * 
 	 * @param classifierServer an {@link ImageServer} with output type 
 	 * @param pathObjects
@@ -606,18 +749,57 @@ public class PixelClassifierTools {
 	 */
 	public static void classifyObjectsByCentroid(ImageServer<BufferedImage> classifierServer, Collection<PathObject> pathObjects, boolean preferNucleusROI) {
 		var labels = classifierServer.getMetadata().getClassificationLabels();
-		var reclassifiers = pathObjects.parallelStream().map(p -> {
+		var type = classifierServer.getMetadata().getChannelType();
+		
+		// Objects without a classification result have their classification reset
+		Map<PathObject, Reclassifier> reclassifiers = new LinkedHashMap<>();
+		for (var p : pathObjects)
+			reclassifiers.put(p, new Reclassifier(p, null, false));
+		
+		// Group objects by the tile containing their centroid, so that each tile only needs to be requested once
+		var tileManager = classifierServer.getTileRequestManager();
+		Map<RegionRequest, List<PathObject>> objectsForTile = new LinkedHashMap<>();
+		Map<RegionRequest, TileRequest> tiles = new HashMap<>();
+		for (var p : pathObjects) {
+			var roi = PathObjectTools.getROI(p, preferNucleusROI);
+			if (roi == null)
+				continue;
+			var tile = tileManager.getTileRequest(0, (int)roi.getCentroidX(), (int)roi.getCentroidY(), roi.getZ(), roi.getT());
+			if (tile == null)
+				continue;
+			var request = tile.getRegionRequest();
+			tiles.putIfAbsent(request, tile);
+			objectsForTile.computeIfAbsent(request, r -> new ArrayList<>()).add(p);
+		}
+		
+		Set<RegionRequest> remaining = new LinkedHashSet<>(objectsForTile.keySet());
+		BiConsumer<RegionRequest, BufferedImage> consumer = (request, img) -> {
+			remaining.remove(request);
+			if (img == null)
+				return;
+			var tile = tiles.get(request);
+			for (var p : objectsForTile.get(request)) {
+				var roi = PathObjectTools.getROI(p, preferNucleusROI);
+				int xx = (int)Math.floor((int)roi.getCentroidX() / tile.getDownsample() - tile.getTileX());
+				int yy = (int)Math.floor((int)roi.getCentroidY() / tile.getDownsample() - tile.getTileY());
+				int ind = getClassification(img, type, xx, yy);
+				reclassifiers.put(p, new Reclassifier(p, labels.getOrDefault(ind, null), false));
+			}
+		};
+		try {
+			classifierServer.readRegions(objectsForTile.keySet(), consumer);
+		} catch (IOException e) {
+			// Request the remaining tiles individually, so that only objects in tiles that can't be read are reset
+			logger.warn("Error requesting classifications: {}", e.getLocalizedMessage());
+			for (var request : new ArrayList<>(remaining)) {
 				try {
-					var roi = PathObjectTools.getROI(p, preferNucleusROI);
-					int x = (int)roi.getCentroidX();
-					int y = (int)roi.getCentroidY();
-					int ind = getClassification(classifierServer, x, y, roi.getZ(), roi.getT());
-					return new Reclassifier(p, labels.getOrDefault(ind, null), false);
-				} catch (Exception e) {
-					return new Reclassifier(p, null, false);
+					consumer.accept(request, classifierServer.readRegion(request));
+				} catch (IOException e2) {
+					logger.error("Error requesting classifications for " + request + ": " + e2.getLocalizedMessage(), e2);
 				}
-			}).toList();
-		reclassifiers.parallelStream().forEach(r -> r.apply());
+			}
+		}
+		reclassifiers.values().parallelStream().forEach(r -> r.apply());
 	}
 	
 	
@@ -649,6 +831,16 @@ public class PixelClassifierTools {
 		int xx = (int)Math.floor(x / tile.getDownsample() - tile.getTileX());
 		int yy = (int)Math.floor(y / tile.getDownsample() - tile.getTileY());
 		var img = server.readRegion(tile.getRegionRequest());
+		return getClassification(img, type, xx, yy);
+	}
+	
+	
+	/**
+	 * Get the classification for a pixel within a tile, clamping the coordinates to the tile bounds.
+	 */
+	private static int getClassification(BufferedImage img, ChannelType type, int xx, int yy) {
+		if (type != ImageServerMetadata.ChannelType.CLASSIFICATION && type != ImageServerMetadata.ChannelType.PROBABILITY)
+			return -1;
 		
 		if (xx >= img.getWidth())
 			xx = img.getWidth() - 1;
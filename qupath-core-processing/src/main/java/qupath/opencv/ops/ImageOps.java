@@ -55,6 +55,7 @@ import org.bytedeco.opencv.opencv_ml.StatModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import qupath.lib.analysis.images.ImageHistograms;
 import qupath.lib.color.ColorDeconvolutionStains;
 import qupath.lib.common.ColorTools;
 import qupath.lib.common.GeneralTools;
@@ -537,6 +538,45 @@ public class ImageOps {
 		}
 		
 		
+		/**
+		 * Normalize the image using low and high percentiles computed from histograms of the whole image, 
+		 * rather than from each tile separately.
+		 * <p>
+		 * This is similar to {@link #percentile(double, double, boolean, double)}, but means that every tile is normalized 
+		 * in the same way, and the result doesn't depend upon how the image is tiled.
+		 * The percentile values are calculated when the op is created, so it can be serialized without the histograms.
+		 * 
+		 * @param histograms histograms for all channels of the image (e.g. computed from the tissue at a low resolution)
+		 * @param percentileMin lower percentile
+		 * @param percentileMax upper percentile
+		 * @param perChannel if true, each channel is normalized separately; if false, channels are normalized jointly
+		 * @param eps used to calculate the denominator (percentileMax - percentileMin + eps)
+		 * @return
+		 * @since v0.6.0
+		 * @see ImageHistograms
+		 */
+		public static ImageOp percentile(ImageHistograms histograms, double percentileMin, double percentileMax, boolean perChannel, double eps) {
+			if (percentileMin == percentileMax)
+				throw new IllegalArgumentException("Percentile min and max values cannot be identical!");
+			double[] minValues, maxValues;
+			if (perChannel) {
+				int n = histograms.nChannels();
+				minValues = new double[n];
+				maxValues = new double[n];
+				for (int c = 0; c < n; c++) {
+					var histogram = histograms.getHistogram(c);
+					minValues[c] = histogram.getPercentile(percentileMin);
+					maxValues[c] = histogram.getPercentile(percentileMax);
+				}
+			} else {
+				var histogram = histograms.getJointHistogram();
+				minValues = new double[] {histogram.getPercentile(percentileMin)};
+				maxValues = new double[] {histogram.getPercentile(percentileMax)};
+			}
+			return new NormalizeRangeOp(minValues, maxValues, eps);
+		}
+		
+		
 		/**
 		 * Normalize channels so that they sum to the specified value.
 		 * <p>
@@ -816,6 +856,51 @@ public class ImageOps {
 			
 	    }
 		
+		
+		/**
+		 * Normalize using fixed values for each channel, e.g. percentiles computed from a whole image.
+		 */
+		@OpType("range")
+		static class NormalizeRangeOp implements ImageOp {
+			
+			private double[] minValues;
+			private double[] maxValues;
+			private double eps = 0.0;
+			
+			NormalizeRangeOp(double[] minValues, double[] maxValues, double eps) {
+				if (minValues.length != maxValues.length)
+					throw new IllegalArgumentException("Number of min and max values must be the same!");
+				this.minValues = minValues.clone();
+				this.maxValues = maxValues.clone();
+				this.eps = eps;
+			}
+
+			@Override
+			public Mat apply(Mat input) {
+				if (minValues.length == 1)
+					apply(input, minValues[0], maxValues[0]);
+				else if (minValues.length == input.channels()) {
+					var channels = OpenCVTools.splitChannels(input);
+					for (int i = 0; i < channels.size(); i++)
+						apply(channels.get(i), minValues[i], maxValues[i]);
+					OpenCVTools.mergeChannels(channels, input);
+				} else
+					throw new IllegalArgumentException("Normalization requires " + minValues.length + " channels, but Mat has " + input.channels());
+				return input;
+			}
+			
+			private void apply(Mat mat, double minValue, double maxValue) {
+				double scale;
+				if (maxValue == minValue && eps == 0.0) {
+					logger.warn("Normalization values are the same ({}), scale will be Infinity", minValue);
+					scale = Double.POSITIVE_INFINITY;
+				} else
+					scale = 1.0/(maxValue - minValue + eps);
+				mat.convertTo(mat, mat.type(), scale, -minValue*scale);
+			}
+			
+		}
+		
 	}
 	
 	/**
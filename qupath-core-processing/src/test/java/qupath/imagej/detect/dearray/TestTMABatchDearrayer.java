@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.imagej.detect.dearray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import ij.process.ByteProcessor;
+
+@SuppressWarnings("javadoc")
+public class TestTMABatchDearrayer {
+
+	@Test
+	public void test_findTissueCenter() {
+		double diameter = 40;
+		var bp = createCore(200, 200, 110, 95, diameter / 2);
+
+		// Start from a position within the core
+		double[] center = TMABatchDearrayer.findTissueCenter(bp, 100, 100, diameter);
+		assertNotNull(center);
+		assertEquals(110, center[0], 0.5);
+		assertEquals(95, center[1], 0.5);
+
+		// Too far from any tissue
+		assertNull(TMABatchDearrayer.findTissueCenter(bp, 30, 30, diameter));
+
+		// No tissue at all
+		assertNull(TMABatchDearrayer.findTissueCenter(new ByteProcessor(200, 200), 100, 100, diameter));
+	}
+
+	@Test
+	public void test_builder() {
+		var dearrayer = TMABatchDearrayer.builder()
+				.labels("1-4", "A-C")
+				.parallelism(2)
+				.build();
+		assertEquals(2, dearrayer.getParallelism());
+		assertThrows(IllegalArgumentException.class, () -> TMABatchDearrayer.builder().parallelism(0));
+	}
+
+	private static ByteProcessor createCore(int width, int height, double x, double y, double radius) {
+		var bp = new ByteProcessor(width, height);
+		for (int yy = 0; yy < height; yy++) {
+			for (int xx = 0; xx < width; xx++) {
+				double dx = xx + 0.5 - x;
+				double dy = yy + 0.5 - y;
+				if (dx*dx + dy*dy <= radius*radius)
+					bp.set(xx, yy, 255);
+			}
+		}
+		return bp;
+	}
+
+}
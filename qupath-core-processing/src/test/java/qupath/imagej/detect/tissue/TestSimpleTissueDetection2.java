@@ -0,0 +1,167 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.imagej.detect.tissue;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ij.ImagePlus;
+import ij.filter.RankFilters;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import qupath.imagej.processing.SimpleThresholding;
+
+@SuppressWarnings("javadoc")
+public class TestSimpleTissueDetection2 {
+
+	@Test
+	public void test_rawThreshold() {
+		var sp = new ShortProcessor(10, 10);
+		sp.set(0, 0, 100);
+		sp.set(9, 9, 1120);
+		sp.resetMinAndMax();
+		assertEquals(100 + 51 / 255.0 * 1020, SimpleTissueDetection2.getRawThreshold(sp, 51), 1e-6);
+		assertEquals(51, SimpleTissueDetection2.getRawThreshold(new ByteProcessor(10, 10), 51), 1e-6);
+	}
+
+	@Test
+	public void test_tilesMatchFullImage() {
+		// 16-bit fluorescence-like image, with noisy background, a tissue region and a very bright spot far away
+		int w = 400, h = 200;
+		var sp = new ShortProcessor(w, h);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int value = (x + y) % 2 == 0 ? 100 : 200;
+				if (x >= 50 && x < 150 && y >= 50 && y < 150)
+					value = 1000;
+				else if (x >= 380 && y >= 180)
+					value = 60000;
+				sp.set(x, y, value);
+			}
+		}
+		sp.resetMinAndMax();
+		double rawThreshold = SimpleTissueDetection2.getRawThreshold(sp, 2);
+		var full = SimpleTissueDetection2.createBinaryImage(new ImagePlus("Full", sp), rawThreshold, true, true, true, false, 1.0);
+
+		// A tile around the tissue boundary should give the same result, even though it has a very different range
+		int tx = 20, ty = 20, tw = 100, th = 100;
+		sp.setRoi(tx, ty, tw, th);
+		var tile = SimpleTissueDetection2.createBinaryImage(new ImagePlus("Tile", sp.crop()), rawThreshold, true, true, true, false, 1.0);
+		int nForeground = 0;
+		for (int y = 3; y < th - 3; y++) {
+			for (int x = 3; x < tw - 3; x++) {
+				assertEquals(full.get(tx + x, ty + y), tile.get(x, y));
+				if (tile.get(x, y) != 0)
+					nForeground++;
+			}
+		}
+		// Only the tissue should be foreground (allowing for the median filter rounding the corner)
+		int nTissue = (tx + tw - 3 - 50) * (ty + th - 3 - 50);
+		assertTrue(Math.abs(nForeground - nTissue) <= 4, "Unexpected foreground " + nForeground);
+	}
+
+	@Test
+	public void test_radiusScale() {
+		// The same square at two resolutions
+		var bpCoarse = new ByteProcessor(100, 100);
+		bpCoarse.setValue(255);
+		bpCoarse.fill();
+		bpCoarse.setValue(0);
+		bpCoarse.setRoi(40, 40, 20, 20);
+		bpCoarse.fill();
+		bpCoarse.resetRoi();
+		var bpFine = (ByteProcessor)bpCoarse.resize(200, 200, false);
+
+		var coarse = SimpleTissueDetection2.createBinaryImage(new ImagePlus("Coarse", bpCoarse), 127, false, false, false, true, 1.0);
+		var fine = SimpleTissueDetection2.createBinaryImage(new ImagePlus("Fine", bpFine), 127, false, false, false, true, 2.0);
+		double areaCoarse = countForeground(coarse);
+		double areaFine = countForeground(fine);
+		// Dilation should expand the region by the same distance in full-resolution pixels
+		assertEquals(22 * 22, areaCoarse, 1e-6);
+		assertTrue(Math.abs(areaFine / 4.0 - areaCoarse) < areaCoarse * 0.05, "Unexpected refined area " + areaFine);
+	}
+
+	@Test
+	public void test_baselineMask() {
+		// Noisy images, so that smoothing and rounding affect the result
+		var rng = new Random(38L);
+		int w = 120, h = 90;
+		var sp = new ShortProcessor(w, h);
+		var cp = new ColorProcessor(w, h);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				double value = (x > 40 && x < 90 && y > 20 && y < 70 ? 800 : 300) + rng.nextGaussian() * 150;
+				sp.set(x, y, (int)Math.max(0, value));
+				int v = (int)Math.max(0, Math.min(255, value / 4));
+				cp.set(x, y, (v << 16) | ((255 - v) << 8) | (v / 2));
+			}
+		}
+		sp.setMinAndMax(100, 1300);
+
+		for (var ip : new ImageProcessor[] {sp, cp}) {
+			for (boolean darkBackground : new boolean[] {true, false}) {
+				for (int threshold : new int[] {64, 101, 127}) {
+					var expected = createBaselineBinaryImage(ip.duplicate(), threshold, true, darkBackground, true, true);
+					var actual = SimpleTissueDetection2.createBinaryImage8Bit(new ImagePlus("Test", ip.duplicate()), threshold, true, darkBackground, true, true);
+					assertArrayEquals((byte[])expected.getPixels(), (byte[])actual.getPixels());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Thresholding method used before boundary refinement was introduced, to check results are unchanged.
+	 */
+	private static ByteProcessor createBaselineBinaryImage(ImageProcessor ip, double threshold, boolean smoothImage, boolean darkBackground, boolean medianCleanup, boolean dilateBoundaries) {
+		ByteProcessor bp = ip.convertToByteProcessor();
+		if (smoothImage)
+			bp.smooth();
+		if (darkBackground)
+			bp = SimpleThresholding.thresholdAbove(bp, threshold);
+		else
+			bp = SimpleThresholding.thresholdBelow(bp, threshold);
+		if (medianCleanup) {
+			RankFilters rf = new RankFilters();
+			rf.rank(bp, 1, RankFilters.MEDIAN);
+		}
+		if (dilateBoundaries)
+			bp.filter(ImageProcessor.MAX);
+		return bp;
+	}
+
+	private static int countForeground(ByteProcessor bp) {
+		int n = 0;
+		for (int i = 0; i < bp.getPixelCount(); i++) {
+			if (bp.get(i) != 0)
+				n++;
+		}
+		return n;
+	}
+
+}
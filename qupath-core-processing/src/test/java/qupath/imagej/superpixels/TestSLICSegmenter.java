@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.imagej.superpixels;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+public class TestSLICSegmenter {
+
+	@Test
+	public void test_labels() {
+		int w = 200;
+		int h = 150;
+		// Left and right halves with very different values
+		float[] pixels = new float[w * h];
+		var rng = new Random(100L);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++)
+				pixels[y*w+x] = (x < w/2 ? 10f : 200f) + (float)rng.nextGaussian();
+		}
+		var segmenter = new SLICSegmenter(20, 10, false, 10);
+		int[] labels = segmenter.computeLabels(new float[][] {pixels}, w, h, 10, 10);
+
+		int maxLabel = 0;
+		for (int label : labels) {
+			assertTrue(label >= 1);
+			maxLabel = Math.max(maxLabel, label);
+		}
+		// Expect roughly one superpixel per grid position
+		assertTrue(maxLabel > (w/20) * (h/20) / 2);
+		assertTrue(maxLabel < (w/20) * (h/20) * 2);
+
+		// Superpixels shouldn't cross the strong edge
+		for (int y = 0; y < h; y++)
+			assertNotEquals(labels[y*w + w/2 - 1], labels[y*w + w/2]);
+	}
+
+	@Test
+	public void test_alignedTiles() {
+		int s = 20;
+		int nIterations = 10;
+		int w = 600;
+		int h = 200;
+		float[] pixels = new float[w * h];
+		var rng = new Random(200L);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++)
+				pixels[y*w+x] = (float)(100 + 50 * Math.sin(x / 17.0) * Math.cos(y / 23.0) + rng.nextGaussian());
+		}
+		var segmenter = new SLICSegmenter(s, 10, false, nIterations);
+
+		// Compute for two overlapping tiles, with initial centers aligned to the same grid
+		// (the influence of the tile boundary spreads by up to about one superpixel per iteration)
+		int overlap = (nIterations + 2) * s;
+		int w1 = w/2 + overlap/2;
+		int x2 = w/2 - overlap/2;
+		int[] labels1 = segmenter.computeLabels(new float[][] {crop(pixels, w, 0, w1, h)}, w1, h, s/2, s/2);
+		int[] labels2 = segmenter.computeLabels(new float[][] {crop(pixels, w, x2, w - x2, h)}, w - x2, h, Math.floorMod(s/2 - x2, s), s/2);
+
+		// Within the middle of the overlap, the superpixels should (almost always) match
+		var mapping = new HashMap<Integer, Integer>();
+		int nPixels = 0;
+		int nMatched = 0;
+		for (int y = 0; y < h; y++) {
+			for (int x = w/2 - s; x < w/2 + s; x++) {
+				int label1 = labels1[y*w1 + x];
+				int label2 = labels2[y*(w-x2) + x - x2];
+				if (mapping.computeIfAbsent(label1, k -> label2) == label2)
+					nMatched++;
+				nPixels++;
+			}
+		}
+		assertTrue(nMatched > nPixels * 0.99, "Only " + nMatched + "/" + nPixels + " pixels matched");
+	}
+
+	@Test
+	public void test_rgbToLab() {
+		float[][] lab = SLICSegmenter.rgbToLab(new int[] {0xffffff, 0x000000, 0xff0000});
+		assertEquals(100, lab[0][0], 0.1);
+		assertEquals(0, lab[1][0], 0.1);
+		assertEquals(0, lab[2][0], 0.1);
+		assertEquals(0, lab[0][1], 0.1);
+		// Red
+		assertEquals(53.2, lab[0][2], 0.1);
+		assertEquals(80.1, lab[1][2], 0.2);
+		assertEquals(67.2, lab[2][2], 0.2);
+	}
+
+	private static float[] crop(float[] pixels, int width, int x, int w, int h) {
+		float[] cropped = new float[w * h];
+		for (int y = 0; y < h; y++)
+			System.arraycopy(pixels, y * width + x, cropped, y * w, w);
+		return cropped;
+	}
+
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.imagej.superpixels;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.plugins.TaskRunnerUtils;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestSLICSuperpixelsPlugin {
+
+	@Test
+	public void test_tilesCoverParent() throws Exception {
+		// Wide enough to be split into more than one tile
+		int w = 3300, h = 400;
+		var img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		var rng = new Random(46L);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int val = ((x / 70 + y / 50) % 2 == 0 ? 80 : 180) + (int)(rng.nextGaussian() * 10);
+				val = Math.max(0, Math.min(255, val));
+				img.setRGB(x, y, (val << 16) | ((255 - val) << 8) | 128);
+			}
+		}
+		var imageData = new ImageData<>(new WrappedBufferedImageServer("superpixels", img));
+		var hierarchy = imageData.getHierarchy();
+		var parent = PathObjects.createAnnotationObject(ROIs.createRectangleROI(10, 10, w - 20, h - 20, ImagePlane.getDefaultPlane()));
+		hierarchy.addObject(parent);
+		hierarchy.getSelectionModel().setSelectedObject(parent);
+
+		var plugin = new SLICSuperpixelsPlugin();
+		String arg = "{\"sigmaPixels\": 2.0, \"spacingPixels\": 20.0, \"maxIterations\": 5, \"regularization\": 0.25, \"adaptRegularization\": false, \"useDeconvolved\": false}";
+		assertTrue(plugin.runPlugin(TaskRunnerUtils.getDefaultInstance().createHeadlessTaskRunner(), imageData, arg));
+
+		var superpixels = parent.getChildObjects();
+		assertTrue(superpixels.size() > 100);
+		assertTrue(superpixels.stream().allMatch(PathObject::isTile));
+
+		// The superpixels should cover the parent exactly, without any gaps or overlaps
+		var geometries = superpixels.stream().map(p -> p.getROI().getGeometry()).toList();
+		double sumAreas = geometries.stream().mapToDouble(g -> g.getArea()).sum();
+		double unionArea = GeometryTools.union(geometries).getArea();
+		double parentArea = parent.getROI().getArea();
+		assertEquals(parentArea, unionArea, parentArea * 1e-6);
+		assertEquals(parentArea, sumAreas, parentArea * 1e-6);
+	}
+
+}
@@ -0,0 +1,225 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.ml;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_ml.Boost;
+import org.bytedeco.opencv.opencv_ml.DTrees;
+import org.bytedeco.opencv.opencv_ml.RTrees;
+import org.bytedeco.opencv.opencv_ml.StatModel;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonParser;
+
+@SuppressWarnings("javadoc")
+public class TestFlattenedTreeEnsemble {
+
+	private static final Logger logger = LoggerFactory.getLogger(TestFlattenedTreeEnsemble.class);
+
+	@Test
+	public void test_votingTree() {
+		// Root splits on feature 0; its right child has an inverted split on feature 1
+		var json = """
+				{"opencv_ml_dtrees": {
+					"format": 3, "is_classifier": 1, "var_count": 2, "var_type": [0, 0, 1], "class_labels": [0, 1, 2],
+					"nodes": [
+						{"depth": 0, "value": 0, "norm_class_idx": 0, "splits": [{"var": 0, "quality": 1, "le": 0.5}]},
+						{"depth": 1, "value": 0, "norm_class_idx": 0},
+						{"depth": 1, "value": 1, "norm_class_idx": 1, "splits": [{"var": 1, "quality": 1, "ge": 2.0}]},
+						{"depth": 2, "value": 1, "norm_class_idx": 1},
+						{"depth": 2, "value": 2, "norm_class_idx": 2}
+					]
+				}}
+				""";
+		var trees = FlattenedTreeEnsemble.fromJson(JsonParser.parseString(json).getAsJsonObject(), false);
+		assertEquals(1, trees.nTrees());
+		assertEquals(5, trees.nNodes());
+		assertEquals(2, trees.nFeatures());
+
+		var samples = new float[] {
+				0.2f, 10f,
+				1.0f, 3.0f,
+				1.0f, 1.0f,
+				1.0f, Float.NaN,
+				Float.NaN, 1.0f
+		};
+		var expected = new int[] {0, 1, 2, 1, 2};
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], trees.predict(samples, i * 2));
+
+		var results = new int[expected.length];
+		var probabilities = new float[expected.length * 3];
+		trees.predict(samples, expected.length, results, probabilities);
+		assertArrayEquals(expected, results);
+		for (int i = 0; i < expected.length; i++) {
+			for (int c = 0; c < 3; c++)
+				assertEquals(c == expected[i] ? 1f : 0f, probabilities[i * 3 + c]);
+		}
+	}
+
+	@Test
+	public void test_summedTrees() {
+		var json = """
+				{"opencv_ml_boost": {
+					"format": 3, "is_classifier": 1, "var_count": 2, "class_labels": [0, 1], "ntrees": 2,
+					"trees": [
+						{"nodes": [
+							{"depth": 0, "value": 0, "splits": [{"var": 0, "quality": 1, "le": 0}]},
+							{"depth": 1, "value": -1},
+							{"depth": 1, "value": 0.5}
+						]},
+						{"nodes": [
+							{"depth": 0, "value": 0, "splits": [{"var": 1, "quality": 1, "le": 0}]},
+							{"depth": 1, "value": -0.25},
+							{"depth": 1, "value": 0.75}
+						]}
+					]
+				}}
+				""";
+		var trees = FlattenedTreeEnsemble.fromJson(JsonParser.parseString(json).getAsJsonObject(), true);
+		assertEquals(2, trees.nTrees());
+		var samples = new float[] {1, 1, -1, 1, 1, -1, -1, -1};
+		var results = new int[4];
+		trees.predict(samples, 4, results, null);
+		assertArrayEquals(new int[] {1, 0, 1, 0}, results);
+		assertThrows(IllegalArgumentException.class, () -> trees.predict(samples, 4, results, new float[8]));
+	}
+
+	@Test
+	public void test_matchesOpenCV() {
+		int nFeatures = 5;
+		var rng = new Random(100L);
+		var trainSamples = createSamples(rng, 2000, nFeatures);
+		var testSamples = createSamples(rng, 20_000, nFeatures);
+		for (var cls : new Class[] {RTrees.class, DTrees.class, Boost.class}) {
+			@SuppressWarnings("unchecked")
+			var model = OpenCVClassifiers.createStatModel((Class<? extends StatModel>)cls);
+			// Boost only supports 2 classes
+			int nClasses = cls == Boost.class ? 2 : 3;
+			var targets = createTargets(trainSamples, nFeatures, nClasses);
+			try (var matSamples = createMat(trainSamples, nFeatures);
+					var matTargets = new Mat(targets.length, 1, opencv_core.CV_32SC1)) {
+				matTargets.<IntBuffer>createBuffer().put(targets);
+				model.train(model.createTrainData(matSamples, matTargets, null, false));
+			}
+			var flattened = ((OpenCVClassifiers.AbstractTreeClassifier<?>)model).createFlattenedTrees();
+
+			int nSamples = testSamples.length / nFeatures;
+			var results = new int[nSamples];
+			boolean doProbabilities = cls == RTrees.class;
+			var probabilities = doProbabilities ? new float[nSamples * nClasses] : null;
+			flattened.predict(testSamples, nSamples, results, probabilities);
+
+			try (var matSamples = createMat(testSamples, nFeatures);
+					var matResults = new Mat();
+					var matProbabilities = new Mat()) {
+				model.predict(matSamples, matResults, doProbabilities ? matProbabilities : null);
+				var expected = new int[nSamples];
+				matResults.<IntBuffer>createBuffer().get(expected);
+				assertArrayEquals(expected, results, "Predictions differ for " + cls.getSimpleName());
+				if (doProbabilities) {
+					var expectedProbabilities = new float[nSamples * nClasses];
+					matProbabilities.<FloatBuffer>createBuffer().get(expectedProbabilities);
+					assertArrayEquals(expectedProbabilities, probabilities);
+				}
+			}
+		}
+	}
+
+	private static float[] createSamples(Random rng, int n, int nFeatures) {
+		var samples = new float[n * nFeatures];
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = (float)rng.nextGaussian();
+		return samples;
+	}
+
+	private static int[] createTargets(float[] samples, int nFeatures, int nClasses) {
+		var targets = new int[samples.length / nFeatures];
+		for (int i = 0; i < targets.length; i++) {
+			double val = samples[i * nFeatures] + samples[i * nFeatures + 1] * 0.5 - samples[i * nFeatures + 2] * samples[i * nFeatures + 3];
+			targets[i] = nClasses == 2 ? (val > 0 ? 1 : 0) : (val < -0.5 ? 0 : val < 0.5 ? 1 : 2);
+		}
+		return targets;
+	}
+
+	private static Mat createMat(float[] samples, int nFeatures) {
+		var mat = new Mat(samples.length / nFeatures, nFeatures, opencv_core.CV_32FC1);
+		FloatBuffer buffer = mat.createBuffer();
+		buffer.put(samples);
+		return mat;
+	}
+
+	/**
+	 * This test is ignored, but can be used to compare the performance of the flattened trees and OpenCV.
+	 */
+	@Test
+	@Disabled
+	public void test_timing() {
+		int nFeatures = 200;
+		var rng = new Random(200L);
+		var trainSamples = createSamples(rng, 10_000, nFeatures);
+		var testSamples = createSamples(rng, 500_000, nFeatures);
+		var targets = createTargets(trainSamples, nFeatures, 3);
+		var model = OpenCVClassifiers.createStatModel(RTrees.class);
+		try (var matSamples = createMat(trainSamples, nFeatures);
+				var matTargets = new Mat(targets.length, 1, opencv_core.CV_32SC1)) {
+			matTargets.<IntBuffer>createBuffer().put(targets);
+			model.train(model.createTrainData(matSamples, matTargets, null, false));
+		}
+		int nSamples = testSamples.length / nFeatures;
+
+		long startTime = System.currentTimeMillis();
+		var flattened = ((OpenCVClassifiers.RTreesClassifier)model).createFlattenedTrees();
+		long endTime = System.currentTimeMillis();
+		logger.info("Flattening: {} ms ({})", endTime - startTime, flattened);
+
+		for (int i = 0; i < 3; i++) {
+			startTime = System.currentTimeMillis();
+			var results = new int[nSamples];
+			flattened.predict(testSamples, nSamples, results, new float[nSamples * 3]);
+			endTime = System.currentTimeMillis();
+			logger.info("Flattened prediction: {} ms", endTime - startTime);
+
+			startTime = System.currentTimeMillis();
+			try (var matSamples = createMat(testSamples, nFeatures);
+					var matResults = new Mat();
+					var matProbabilities = new Mat()) {
+				model.predict(matSamples, matResults, matProbabilities);
+			}
+			endTime = System.currentTimeMillis();
+			logger.info("OpenCV prediction: {} ms", endTime - startTime);
+		}
+	}
+
+}
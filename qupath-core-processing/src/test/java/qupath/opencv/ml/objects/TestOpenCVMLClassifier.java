@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.opencv.ml.objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_ml.RTrees;
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.classifiers.object.ObjectClassifiers;
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectFilter;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+import qupath.opencv.ml.OpenCVClassifiers;
+import qupath.opencv.ml.OpenCVClassifiers.OpenCVStatModel;
+import qupath.opencv.ml.objects.features.FeatureExtractors;
+import qupath.opencv.ml.objects.features.Normalizer;
+
+@SuppressWarnings("javadoc")
+public class TestOpenCVMLClassifier {
+
+	private static final List<PathClass> PATH_CLASSES = List.of(
+			PathClass.StandardPathClasses.TUMOR,
+			PathClass.StandardPathClasses.STROMA
+			);
+
+	@Test
+	public void test_parallelMatchesSequential() {
+		var rng = new Random(100L);
+		var features = List.of("A", "B");
+		var extractor = FeatureExtractors.<BufferedImage>createMeasurementListFeatureExtractor(features);
+
+		var model = trainModel(rng);
+
+		// Use enough objects to create many chunks
+		int n = 25_000;
+		var sequential = createDetections(new Random(200L), n);
+		var parallel = createDetections(new Random(200L), n);
+		assertEquals(n, OpenCVMLClassifier.classifyObjects(extractor, model, PATH_CLASSES, null, sequential, true, false, 1));
+		assertEquals(n, OpenCVMLClassifier.classifyObjects(extractor, model, PATH_CLASSES, null, parallel, true, false, 4));
+		int nCorrect = 0;
+		for (int i = 0; i < n; i++) {
+			var pathObject = sequential.get(i);
+			assertEquals(pathObject.getPathClass(), parallel.get(i).getPathClass());
+			var ml = pathObject.getMeasurementList();
+			var expected = ml.get("A") > ml.get("B") ? PATH_CLASSES.get(0) : PATH_CLASSES.get(1);
+			if (expected == pathObject.getPathClass())
+				nCorrect++;
+		}
+		assertEquals(n, nCorrect, n * 0.05);
+
+		// Probabilities should also match
+		OpenCVMLClassifier.classifyObjects(extractor, model, PATH_CLASSES, null, sequential, true, true, 1);
+		OpenCVMLClassifier.classifyObjects(extractor, model, PATH_CLASSES, null, parallel, true, true, 4);
+		for (int i = 0; i < n; i++) {
+			assertEquals(sequential.get(i).getPathClass(), parallel.get(i).getPathClass());
+			assertEquals(sequential.get(i).getClassProbability(), parallel.get(i).getClassProbability());
+		}
+	}
+
+	@Test
+	public void test_compositeMatchesSequential() {
+		var rng = new Random(100L);
+		var classifierAB = OpenCVMLClassifier.<BufferedImage>create(trainModel(rng), PathObjectFilter.DETECTIONS_ALL,
+				FeatureExtractors.createMeasurementListFeatureExtractor(List.of("A", "B")), PATH_CLASSES);
+		var other = List.of(PathClass.fromString("Other"), PathClass.fromString("Another"));
+		var extractorBC = FeatureExtractors.<BufferedImage>createNormalizingFeatureExtractor(
+				FeatureExtractors.createMeasurementListFeatureExtractor(List.of("B", "C")),
+				Normalizer.createNormalizer(new double[] {-0.5, -0.5}, new double[] {2, 2}, 0));
+		var classifierBC = OpenCVMLClassifier.<BufferedImage>create(trainModel(rng), PathObjectFilter.DETECTIONS_ALL,
+				extractorBC, other);
+		var classifierC = ObjectClassifiers.<BufferedImage>createChannelClassifier(PathObjectFilter.DETECTIONS_ALL,
+				ImageChannel.getInstance("C", null), "C", 0.5);
+		var classifiers = List.of(classifierAB, classifierBC, classifierC);
+		var composite = ObjectClassifiers.createCompositeClassifier(classifiers);
+
+		var existingClass = PathClass.fromString("Existing");
+		for (boolean reset : new boolean[] {true, false}) {
+			var expected = createDetections(new Random(200L), 25_000);
+			var actual = createDetections(new Random(200L), 25_000);
+			for (int i = 0; i < expected.size(); i += 7) {
+				expected.get(i).setPathClass(existingClass, 0.25);
+				actual.get(i).setPathClass(existingClass, 0.25);
+				// Include some missing values
+				expected.get(i).getMeasurementList().remove("B");
+				actual.get(i).getMeasurementList().remove("B");
+			}
+
+			// Apply each classifier separately, without sharing measurements
+			if (reset)
+				expected.forEach(PathObject::resetPathClass);
+			for (var classifier : classifiers)
+				classifier.classifyObjects(null, expected, false);
+
+			composite.classifyObjects(null, actual, reset);
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getPathClass(), actual.get(i).getPathClass());
+				assertEquals(expected.get(i).getClassProbability(), actual.get(i).getClassProbability());
+			}
+		}
+	}
+
+	/**
+	 * Train a model using a simple rule, where the class depends upon which of two features is larger.
+	 */
+	private static OpenCVStatModel trainModel(Random rng) {
+		int nTrain = 500;
+		var samples = new Mat(nTrain, 2, opencv_core.CV_32FC1);
+		var targets = new Mat(nTrain, 1, opencv_core.CV_32SC1);
+		FloatIndexer idxSamples = samples.createIndexer();
+		IntIndexer idxTargets = targets.createIndexer();
+		for (int i = 0; i < nTrain; i++) {
+			double a = rng.nextDouble();
+			double b = rng.nextDouble();
+			idxSamples.put(i, 0, (float)a);
+			idxSamples.put(i, 1, (float)b);
+			idxTargets.put(i, 0, a > b ? 0 : 1);
+		}
+		idxSamples.release();
+		idxTargets.release();
+		var model = OpenCVClassifiers.createStatModel(RTrees.class);
+		model.train(model.createTrainData(samples, targets, null, false));
+		samples.close();
+		targets.close();
+		return model;
+	}
+
+	private static List<PathObject> createDetections(Random rng, int n) {
+		var list = new ArrayList<PathObject>();
+		for (int i = 0; i < n; i++) {
+			var pathObject = PathObjects.createDetectionObject(ROIs.createRectangleROI(i, 0, 1, 1, ImagePlane.getDefaultPlane()));
+			try (var ml = pathObject.getMeasurementList()) {
+				ml.put("A", rng.nextDouble());
+				ml.put("B", rng.nextDouble());
+				ml.put("C", rng.nextDouble());
+			}
+			list.add(pathObject);
+		}
+		return list;
+	}
+
+}
@@ -34,10 +34,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import javax.imageio.ImageIO;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.locationtech.jts.operation.valid.IsValidOp;
@@ -52,9 +54,13 @@ import qupath.lib.images.servers.ImageServerMetadata;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
 import qupath.lib.images.servers.ImageServers;
 import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjects;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.ROIs;
 import qupath.opencv.ml.pixel.PixelClassifierTools.CreateObjectOptions;
 
 /**
@@ -162,6 +168,57 @@ class TestPixelClassifierTools {
 	}
 	
 	
+	@Test
+	void testClassifyObjectsByCentroid() throws Exception {
+		// Three 64x64 tiles, with labels 0, 1 and 0
+		var img = new BufferedImage(192, 64, BufferedImage.TYPE_BYTE_GRAY);
+		var raster = img.getRaster();
+		for (int y = 0; y < img.getHeight(); y++) {
+			for (int x = 64; x < 128; x++)
+				raster.setSample(x, y, 0, 1);
+		}
+		var classA = PathClass.getInstance("Class A");
+		var classB = PathClass.getInstance("Class B");
+		var classOld = PathClass.getInstance("Old class");
+		
+		// Fail whenever the middle tile is requested
+		ImageServer<BufferedImage> server = new WrappedBufferedImageServer(UUID.randomUUID().toString(), img) {
+			@Override
+			public BufferedImage readRegion(RegionRequest request) throws IOException {
+				if (request.getX() < 128 && request.getMaxX() > 64)
+					throw new IOException("Unable to read " + request);
+				return super.readRegion(request);
+			}
+		};
+		server.setMetadata(
+				new ImageServerMetadata.Builder(server.getOriginalMetadata())
+				.channelType(ChannelType.CLASSIFICATION)
+				.classificationLabels(Map.of(0, classA, 1, classB))
+				.build()
+				);
+		var serverTiled = ImageServers.pyramidalizeTiled(server, 64, 64, 1.0);
+		
+		List<PathObject> pathObjects = new ArrayList<>();
+		for (int x = 10; x < 192; x += 20) {
+			var detection = PathObjects.createDetectionObject(ROIs.createRectangleROI(x - 2, 30, 4, 4, ImagePlane.getDefaultPlane()));
+			detection.setPathClass(classOld);
+			pathObjects.add(detection);
+		}
+		PixelClassifierTools.classifyObjectsByCentroid(serverTiled, pathObjects, false);
+		
+		// Only objects in the tile that can't be read should have their classification reset
+		for (var pathObject : pathObjects) {
+			double x = pathObject.getROI().getCentroidX();
+			if (x < 64 || x >= 128)
+				assertEquals(classA, pathObject.getPathClass());
+			else
+				assertNull(pathObject.getPathClass());
+		}
+		serverTiled.close();
+		server.close();
+	}
+	
+
 	private void checkCreateObjects(ImageServer<BufferedImage> server, int[] hist, Map<PathClass, Integer> classificationLabelsReverse) throws IOException {
 		var hierarchy = new PathObjectHierarchy();
 		boolean success = PixelClassifierTools.createObjectsFromPredictions(
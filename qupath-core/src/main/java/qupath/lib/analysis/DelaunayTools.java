@@ -419,7 +419,7 @@ public class DelaunayTools {
 	}
 	
 	
-	private static QuadEdgeSubdivision createSubdivision(Collection<Coordinate> coords, double tolerance) {
+	static QuadEdgeSubdivision createSubdivision(Collection<Coordinate> coords, double tolerance) {
 		var envelope = DelaunayTriangulationBuilder.envelope(coords);
 		var subdiv = new QuadEdgeSubdivision(envelope, tolerance);
 		var triangulator = new IncrementalDelaunayTriangulator(subdiv);
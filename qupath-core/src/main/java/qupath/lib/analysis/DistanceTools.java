@@ -24,7 +24,9 @@ package qupath.lib.analysis;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
@@ -50,11 +52,13 @@ import org.locationtech.jts.index.strtree.STRtree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import qupath.lib.common.GeneralTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.classes.PathClassTools;
+import qupath.lib.regions.ImagePlane;
 import qupath.lib.roi.GeometryTools;
 
 /**
@@ -204,6 +208,65 @@ public class DistanceTools {
 		}
 		hierarchy.fireObjectMeasurementsChangedEvent(DistanceTools.class, detections);
 	}
+
+	/**
+	 * Count the number of detections with each valid, not-ignored classification within one or more radii of every
+	 * detection centroid, and add the result to the detection measurement list.
+	 * A detection is never counted as its own neighbor.
+	 * @param imageData
+	 * @param splitClassNames if true, split the classification name. For example, if an image contains classifications for both "CD3: CD4" and "CD3: CD8",
+	 *                        counts will be calculated for all components (e.g. "CD3", "CD4" and "CD8").
+	 * @param radii the radii within which detections should be counted, in calibrated units
+	 * @since v0.6.0
+	 */
+	public static void detectionNeighborCounts(ImageData<?> imageData, boolean splitClassNames, double... radii) {
+		var server = imageData.getServer();
+		var hierarchy = imageData.getHierarchy();
+		var detections = hierarchy.getCellObjects();
+		if (detections.isEmpty())
+			detections = hierarchy.getDetectionObjects();
+
+		// TODO: Support TMA cores
+		if (hierarchy.getTMAGrid() != null)
+			logger.warn("Detection neighbor counts command currently ignores TMA grid information!");
+
+		var pathClasses = detections.stream()
+				.map(p -> p.getPathClass())
+				.filter(p -> p != null && p.isValid() && !PathClassTools.isIgnoredClass(p))
+				.collect(Collectors.toSet());
+
+		var cal = server.getPixelCalibration();
+		String xUnit = cal.getPixelWidthUnit();
+		String yUnit = cal.getPixelHeightUnit();
+		double pixelWidth = cal.getPixelWidth().doubleValue();
+		double pixelHeight = cal.getPixelHeight().doubleValue();
+		if (!xUnit.equals(yUnit))
+			throw new IllegalArgumentException("Pixel width & height units do not match! Width " + xUnit + ", height " + yUnit);
+		String unit = xUnit;
+
+		// Group targets by name, so that we can compute counts for all radii with a single search per target group
+		Map<String, List<PathObject>> targets = new LinkedHashMap<>();
+		for (PathClass pathClass : pathClasses) {
+			if (splitClassNames) {
+				for (var name : PathClassTools.splitNames(pathClass)) {
+					if (!targets.containsKey("with " + name))
+						targets.put("with " + name, detections.stream().filter(a -> PathClassTools.containsName(a.getPathClass(), name)).toList());
+				}
+			} else {
+				targets.put(pathClass.toString(), detections.stream().filter(a -> a.getPathClass() == pathClass).toList());
+			}
+		}
+		for (var entry : targets.entrySet()) {
+			if (entry.getValue().isEmpty())
+				continue;
+			logger.debug("Computing neighbor counts for {}", entry.getKey());
+			var names = new String[radii.length];
+			for (int i = 0; i < radii.length; i++)
+				names[i] = "Detections " + entry.getKey() + " within " + GeneralTools.formatNumber(radii[i], 2) + " " + unit;
+			centroidNeighborCounts2D(detections, entry.getValue(), pixelWidth, pixelHeight, radii, names);
+		}
+		hierarchy.fireObjectMeasurementsChangedEvent(DistanceTools.class, detections);
+	}
 	
 	/**
 	 * Calculate the distance between source object centroids and the boundary of specified target objects, adding the result to the measurement list of the source objects.
@@ -248,6 +311,12 @@ public class DistanceTools {
 	}
 
 	private static void centroidToObjectsDistance2D(Collection<PathObject> sourceObjects, Collection<PathObject> targetObjects, double pixelWidth, double pixelHeight, String measurementName, boolean signedDistances, DistanceType distanceType) {
+		// Centroid distances don't need any geometries, so can use a k-d tree directly
+		if (distanceType == DistanceType.CENTROID_TO_CENTROID) {
+			centroidToCentroidDistance2DKdTree(sourceObjects, targetObjects, pixelWidth, pixelHeight, measurementName);
+			return;
+		}
+
 		// Use the nucleus ROI, if available, for all centroids (source and target)
 		boolean preferNucleusForCentroids = true;
 		// Use the nucleus ROI, if available, for targets where we aren't looking for the centroid
@@ -337,7 +406,7 @@ public class DistanceTools {
 					temp = lineGeometries.size() == 1 ? lineGeometries.get(0) : GeometryCombiner.combine(lineGeometries);
 				Geometry lineGeometry = temp;
 				
-				// Identify points, and create an STRtree to find nearest neighbors more quickly if there are a lot of them
+				// Identify points, and create a k-d tree to find nearest neighbors more quickly if there are a lot of them
 				if (!pointGeometries.isEmpty()) {
 					for (var geom : pointGeometries) {
 						for (var coord : geom.getCoordinates()) {
@@ -346,8 +415,7 @@ public class DistanceTools {
 						}
 					}
 				}
-				STRtree pointTree = pointCoords != null && pointCoords.size() > 1000 ? createCoordinateCache(pointCoords) : null;
-				CoordinateDistance coordinateDistance = new CoordinateDistance();
+				KdTree2D pointTree = pointCoords.size() > 1000 ? createKdTree(pointCoords) : null;
 				
 				int zi = z;
 				int ti = t;
@@ -374,7 +442,7 @@ public class DistanceTools {
 						Coordinate coord = new Coordinate(roi.getCentroidX() * pixelWidth, roi.getCentroidY() * pixelHeight);
 						precisionModel.makePrecise(coord);
 
-						double pointDistance = pointCoords == null ? Double.POSITIVE_INFINITY : computeCoordinateDistance(coord, pointCoords, pointTree, coordinateDistance);
+						double pointDistance = pointTree != null ? pointTree.nearestDistance(coord.x, coord.y) : computeCoordinateDistance(coord, pointCoords);
 						double lineDistance = lineGeometry == null ? Double.POSITIVE_INFINITY : computeDistance(coord, lineGeometry, null, false);
 						double shapeDistance = shapeGeometry == null ? Double.POSITIVE_INFINITY : computeDistance(coord, shapeGeometry, locator, signedDistances);
 						distance = Math.min(lineDistance, Math.min(pointDistance, shapeDistance));
@@ -389,6 +457,121 @@ public class DistanceTools {
 	}
 	
 	
+	/**
+	 * Centroid-to-centroid distances using a k-d tree per image plane.
+	 * Source objects that are also targets are assigned a distance of zero.
+	 */
+	private static void centroidToCentroidDistance2DKdTree(Collection<PathObject> sourceObjects, Collection<PathObject> targetObjects, double pixelWidth, double pixelHeight, String measurementName) {
+		if (targetObjects.size() > 50 && !(targetObjects instanceof Set))
+			targetObjects = new HashSet<>(targetObjects);
+		var finalTargets = targetObjects;
+		var precisionModel = GeometryTools.getDefaultFactory().getPrecisionModel();
+		var targetsByPlane = groupCentroidsByPlane(targetObjects);
+		for (var entry : groupCentroidsByPlane(sourceObjects).entrySet()) {
+			var planeTargets = targetsByPlane.get(entry.getKey());
+			if (planeTargets == null)
+				continue;
+			var tree = createCentroidTree(planeTargets, pixelWidth, pixelHeight, precisionModel);
+			entry.getValue().parallelStream().forEach(p -> {
+				double distance;
+				if (finalTargets.contains(p)) {
+					// If we are getting distances between centroids, then we know it's zero if the centroids are the same
+					distance = 0.0;
+				} else {
+					var roi = PathObjectTools.getROI(p, true);
+					double x = precisionModel.makePrecise(roi.getCentroidX() * pixelWidth);
+					double y = precisionModel.makePrecise(roi.getCentroidY() * pixelHeight);
+					distance = tree.nearestDistance(x, y);
+				}
+				try (var ml = p.getMeasurementList()) {
+					ml.put(measurementName, distance);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Count the number of target objects with centroids within specified radii of the centroids of source objects, adding the results to
+	 * the measurement lists of the source objects.
+	 * Calculations are all made in 2D; objects occurring on different z-planes or at different timepoints are not counted.
+	 * Source objects are never counted as their own neighbors, even if they are also included in the targets.
+	 *
+	 * @param sourceObjects source objects; measurements will be added based on centroid distances
+	 * @param targetObjects target objects; no measurements will be added
+	 * @param pixelWidth pixel width to use when computing distances (use 1 for pixel units)
+	 * @param pixelHeight pixel height to use when computing distances (use 1 for pixel units)
+	 * @param radii the search radii, in the same units as the pixel width and height
+	 * @param measurementNames the names of the measurements to add to the measurement list; one name is required for each radius
+	 * @since v0.6.0
+	 */
+	public static void centroidNeighborCounts2D(Collection<PathObject> sourceObjects, Collection<PathObject> targetObjects, double pixelWidth, double pixelHeight, double[] radii, String[] measurementNames) {
+		if (radii.length != measurementNames.length)
+			throw new IllegalArgumentException("Number of radii (" + radii.length + ") and measurement names (" + measurementNames.length + ") must match");
+		if (!(targetObjects instanceof Set))
+			targetObjects = new HashSet<>(targetObjects);
+		var finalTargets = targetObjects;
+		var precisionModel = GeometryTools.getDefaultFactory().getPrecisionModel();
+		var targetsByPlane = groupCentroidsByPlane(targetObjects);
+		for (var entry : groupCentroidsByPlane(sourceObjects).entrySet()) {
+			var planeTargets = targetsByPlane.getOrDefault(entry.getKey(), List.of());
+			var tree = createCentroidTree(planeTargets, pixelWidth, pixelHeight, precisionModel);
+			entry.getValue().parallelStream().forEach(p -> {
+				var counts = new int[radii.length];
+				if (!tree.isEmpty()) {
+					var roi = PathObjectTools.getROI(p, true);
+					double x = precisionModel.makePrecise(roi.getCentroidX() * pixelWidth);
+					double y = precisionModel.makePrecise(roi.getCentroidY() * pixelHeight);
+					tree.countWithinRadii(x, y, radii, counts);
+					// Don't count the object itself
+					if (finalTargets.contains(p)) {
+						for (int i = 0; i < counts.length; i++) {
+							if (radii[i] >= 0)
+								counts[i]--;
+						}
+					}
+				}
+				try (var ml = p.getMeasurementList()) {
+					for (int i = 0; i < counts.length; i++)
+						ml.put(measurementNames[i], counts[i]);
+				}
+			});
+		}
+	}
+
+	private static Map<ImagePlane, List<PathObject>> groupCentroidsByPlane(Collection<PathObject> pathObjects) {
+		Map<ImagePlane, List<PathObject>> map = new LinkedHashMap<>();
+		for (var pathObject : pathObjects) {
+			var roi = PathObjectTools.getROI(pathObject, true);
+			if (roi != null)
+				map.computeIfAbsent(roi.getImagePlane(), k -> new ArrayList<>()).add(pathObject);
+		}
+		return map;
+	}
+
+	private static KdTree2D createCentroidTree(List<PathObject> pathObjects, double pixelWidth, double pixelHeight, PrecisionModel precisionModel) {
+		int n = pathObjects.size();
+		var x = new double[n];
+		var y = new double[n];
+		for (int i = 0; i < n; i++) {
+			var roi = PathObjectTools.getROI(pathObjects.get(i), true);
+			x[i] = precisionModel.makePrecise(roi.getCentroidX() * pixelWidth);
+			y[i] = precisionModel.makePrecise(roi.getCentroidY() * pixelHeight);
+		}
+		return KdTree2D.create(x, y);
+	}
+
+	private static KdTree2D createKdTree(List<Coordinate> coords) {
+		int n = coords.size();
+		var x = new double[n];
+		var y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = coords.get(i).x;
+			y[i] = coords.get(i).y;
+		}
+		return KdTree2D.create(x, y);
+	}
+
+
 	/**
 	 * Calculate the distance between source object centroids and the centroid of specified target objects, adding the result to the measurement list of the source objects.
 	 * Calculations are all made in 2D; distances will not be calculated between objects occurring on different z-planes of at different timepoints.
@@ -452,16 +635,6 @@ public class DistanceTools {
 		return nearest == null ? Double.POSITIVE_INFINITY : coord.distance(nearest);
 	}
 	
-	private static double computeCoordinateDistance(Coordinate coord, Collection<Coordinate> targets, STRtree tree, ItemDistance distance) {
-		if (tree != null) {
-			return computeCoordinateDistance(coord, tree, distance);
-		}
-		double d = Double.POSITIVE_INFINITY;
-		for (var target : targets)
-			d = Math.min(d, coord.distance(target));
-		return d;
-	}
-	
 	private static class CoordinateDistance implements ItemDistance {
 
 		@Override
@@ -0,0 +1,440 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * A static 2D k-d tree for fast nearest neighbor and radius queries.
+ * <p>
+ * Points are stored in primitive arrays, and identified by their index in the arrays used to create the tree.
+ * This avoids the overhead of creating a {@code Coordinate} and tree node for every point, and makes it
+ * practical to query millions of points.
+ * <p>
+ * The tree cannot be modified after it has been created, and is safe to query from multiple threads.
+ * Batch query methods are provided that run in parallel.
+ *
+ * @since v0.6.0
+ */
+public class KdTree2D {
+
+	/**
+	 * Maximum number of points in a leaf; these are searched exhaustively.
+	 */
+	private static final int LEAF_SIZE = 8;
+
+	/**
+	 * Subtrees larger than this are built in parallel.
+	 */
+	private static final int PARALLEL_BUILD_SIZE = 65_536;
+
+	private final double[] x;
+	private final double[] y;
+	private final int[] ids;
+
+	private KdTree2D(double[] x, double[] y) {
+		if (x.length != y.length)
+			throw new IllegalArgumentException("Number of x (" + x.length + ") and y (" + y.length + ") coordinates must match");
+		this.x = x.clone();
+		this.y = y.clone();
+		this.ids = IntStream.range(0, x.length).toArray();
+		if (ids.length > PARALLEL_BUILD_SIZE)
+			new BuildTask(0, ids.length, 0).invoke();
+		else
+			build(0, ids.length, 0);
+	}
+
+	/**
+	 * Create a tree containing the specified points.
+	 * The arrays are copied, so can be modified afterwards.
+	 * Coordinates should be finite.
+	 *
+	 * @param x x coordinates
+	 * @param y y coordinates
+	 * @return the tree
+	 * @throws IllegalArgumentException if the arrays have different lengths
+	 */
+	public static KdTree2D create(double[] x, double[] y) throws IllegalArgumentException {
+		return new KdTree2D(x, y);
+	}
+
+	/**
+	 * Get the number of points in the tree.
+	 * @return
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Query if the tree is empty.
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return ids.length == 0;
+	}
+
+	/**
+	 * Find the nearest point to a query location.
+	 * @param qx query x coordinate
+	 * @param qy query y coordinate
+	 * @return index of the nearest point, or -1 if the tree is empty
+	 */
+	public int nearest(double qx, double qy) {
+		return nearest(qx, qy, -1);
+	}
+
+	/**
+	 * Find the nearest point to a query location, optionally excluding one point.
+	 * This is useful to find the nearest neighbor of a point that is itself in the tree.
+	 * @param qx query x coordinate
+	 * @param qy query y coordinate
+	 * @param excludeIndex index of a point to exclude, or -1 if no point should be excluded
+	 * @return index of the nearest point, or -1 if no point is found
+	 */
+	public int nearest(double qx, double qy, int excludeIndex) {
+		var result = new Neighbors(1);
+		search(0, ids.length, 0, qx, qy, excludeIndex, result);
+		return result.n == 0 ? -1 : result.indices[0];
+	}
+
+	/**
+	 * Find the distance from a query location to the nearest point.
+	 * @param qx query x coordinate
+	 * @param qy query y coordinate
+	 * @return the distance to the nearest point, or {@code Double.POSITIVE_INFINITY} if the tree is empty
+	 */
+	public double nearestDistance(double qx, double qy) {
+		var result = new Neighbors(1);
+		search(0, ids.length, 0, qx, qy, -1, result);
+		return result.n == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(result.distSq[0]);
+	}
+
+	/**
+	 * Find the k nearest points to a query location.
+	 * @param qx query x coordinate
+	 * @param qy query y coordinate
+	 * @param k maximum number of points to return
+	 * @param excludeIndex index of a point to exclude, or -1 if no point should be excluded
+	 * @return indices of up to k points, sorted by increasing distance
+	 */
+	public int[] kNearest(double qx, double qy, int k, int excludeIndex) {
+		if (k <= 0)
+			return new int[0];
+		var result = new Neighbors(k);
+		search(0, ids.length, 0, qx, qy, excludeIndex, result);
+		return Arrays.copyOf(result.indices, result.n);
+	}
+
+	/**
+	 * Find all points within a specified radius of a query location.
+	 * @param qx query x coordinate
+	 * @param qy query y coordinate
+	 * @param radius the search radius (inclusive)
+	 * @return indices of the points found, in no particular order
+	 */
+	public int[] findWithinRadius(double qx, double qy, double radius) {
+		var found = new IntList();
+		visitWithinRadius(0, ids.length, 0, qx, qy, radius * radius, (ind, distSq) -> found.add(ind));
+		return found.toArray();
+	}
+
+	/**
+	 * Count the points within a specified radius of a query location.
+	 * @param qx query x coordinate
+	 * @param qy query y coordinate
+	 * @param radius the search radius (inclusive)
+	 * @return the number of points found
+	 */
+	public int countWithinRadius(double qx, double qy, double radius) {
+		var counts = new int[1];
+		countWithinRadii(qx, qy, new double[] {radius}, counts);
+		return counts[0];
+	}
+
+	/**
+	 * Count the points within several radii of a query location, using a single search.
+	 * @param qx query x coordinate
+	 * @param qy query y coordinate
+	 * @param radii the search radii (inclusive)
+	 * @param counts array with the same length as radii; the number of points found within each radius is <i>added</i> to the corresponding entry
+	 */
+	public void countWithinRadii(double qx, double qy, double[] radii, int[] counts) {
+		if (radii.length != counts.length)
+			throw new IllegalArgumentException("Number of radii and counts must match");
+		double maxRadius = Double.NEGATIVE_INFINITY;
+		var radiiSq = new double[radii.length];
+		for (int i = 0; i < radii.length; i++) {
+			maxRadius = Math.max(maxRadius, radii[i]);
+			radiiSq[i] = radii[i] * radii[i];
+		}
+		if (!(maxRadius >= 0))
+			return;
+		visitWithinRadius(0, ids.length, 0, qx, qy, maxRadius * maxRadius, (ind, distSq) -> {
+			for (int i = 0; i < radiiSq.length; i++) {
+				if (distSq <= radiiSq[i])
+					counts[i]++;
+			}
+		});
+	}
+
+	/**
+	 * Find the nearest point for many query locations in parallel.
+	 * @param qx query x coordinates
+	 * @param qy query y coordinates
+	 * @return array containing the index of the nearest point for each query, or -1 if the tree is empty
+	 */
+	public int[] nearest(double[] qx, double[] qy) {
+		checkLength(qx, qy);
+		var result = new int[qx.length];
+		IntStream.range(0, qx.length).parallel().forEach(i -> result[i] = nearest(qx[i], qy[i]));
+		return result;
+	}
+
+	/**
+	 * Find the distance to the nearest point for many query locations in parallel.
+	 * @param qx query x coordinates
+	 * @param qy query y coordinates
+	 * @return array containing the distance to the nearest point for each query, or {@code Double.POSITIVE_INFINITY} if the tree is empty
+	 */
+	public double[] nearestDistances(double[] qx, double[] qy) {
+		checkLength(qx, qy);
+		var result = new double[qx.length];
+		IntStream.range(0, qx.length).parallel().forEach(i -> result[i] = nearestDistance(qx[i], qy[i]));
+		return result;
+	}
+
+	/**
+	 * Count the points within several radii for many query locations in parallel.
+	 * @param qx query x coordinates
+	 * @param qy query y coordinates
+	 * @param radii the search radii (inclusive)
+	 * @return array with one entry per query, each containing the counts for each radius
+	 */
+	public int[][] countWithinRadii(double[] qx, double[] qy, double[] radii) {
+		checkLength(qx, qy);
+		var result = new int[qx.length][];
+		IntStream.range(0, qx.length).parallel().forEach(i -> {
+			var counts = new int[radii.length];
+			countWithinRadii(qx[i], qy[i], radii, counts);
+			result[i] = counts;
+		});
+		return result;
+	}
+
+	private static void checkLength(double[] qx, double[] qy) {
+		if (qx.length != qy.length)
+			throw new IllegalArgumentException("Number of x (" + qx.length + ") and y (" + qy.length + ") coordinates must match");
+	}
+
+
+	private void search(int lo, int hi, int depth, double qx, double qy, int excludeIndex, Neighbors result) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi; i++) {
+				if (ids[i] != excludeIndex)
+					result.offer(ids[i], distanceSq(i, qx, qy));
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		if (ids[mid] != excludeIndex)
+			result.offer(ids[mid], distanceSq(mid, qx, qy));
+		double diff = (depth & 1) == 0 ? qx - x[mid] : qy - y[mid];
+		if (diff < 0) {
+			search(lo, mid, depth + 1, qx, qy, excludeIndex, result);
+			if (diff * diff < result.maxDistSq())
+				search(mid + 1, hi, depth + 1, qx, qy, excludeIndex, result);
+		} else {
+			search(mid + 1, hi, depth + 1, qx, qy, excludeIndex, result);
+			if (diff * diff < result.maxDistSq())
+				search(lo, mid, depth + 1, qx, qy, excludeIndex, result);
+		}
+	}
+
+	private void visitWithinRadius(int lo, int hi, int depth, double qx, double qy, double radiusSq, PointVisitor visitor) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi; i++) {
+				double distSq = distanceSq(i, qx, qy);
+				if (distSq <= radiusSq)
+					visitor.visit(ids[i], distSq);
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		double distSq = distanceSq(mid, qx, qy);
+		if (distSq <= radiusSq)
+			visitor.visit(ids[mid], distSq);
+		double diff = (depth & 1) == 0 ? qx - x[mid] : qy - y[mid];
+		if (diff <= 0 || diff * diff <= radiusSq)
+			visitWithinRadius(lo, mid, depth + 1, qx, qy, radiusSq, visitor);
+		if (diff >= 0 || diff * diff <= radiusSq)
+			visitWithinRadius(mid + 1, hi, depth + 1, qx, qy, radiusSq, visitor);
+	}
+
+	private double distanceSq(int i, double qx, double qy) {
+		double dx = x[i] - qx;
+		double dy = y[i] - qy;
+		return dx * dx + dy * dy;
+	}
+
+
+	/**
+	 * Arrange points so that the median (along the split dimension) is in the middle of the range,
+	 * with smaller values before and larger values after, then recurse into both halves.
+	 */
+	private void build(int lo, int hi, int depth) {
+		if (hi - lo <= LEAF_SIZE)
+			return;
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi, mid, (depth & 1) == 0 ? x : y);
+		build(lo, mid, depth + 1);
+		build(mid + 1, hi, depth + 1);
+	}
+
+	private void select(int lo, int hi, int k, double[] values) {
+		hi--;
+		while (hi > lo) {
+			double pivot = values[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (values[i] < pivot)
+					i++;
+				while (values[j] > pivot)
+					j--;
+				if (i <= j) {
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double tx = x[i];
+		x[i] = x[j];
+		x[j] = tx;
+		double ty = y[i];
+		y[i] = y[j];
+		y[j] = ty;
+		int tid = ids[i];
+		ids[i] = ids[j];
+		ids[j] = tid;
+	}
+
+	private class BuildTask extends RecursiveAction {
+
+		private final int lo;
+		private final int hi;
+		private final int depth;
+
+		private BuildTask(int lo, int hi, int depth) {
+			this.lo = lo;
+			this.hi = hi;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= PARALLEL_BUILD_SIZE) {
+				build(lo, hi, depth);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi, mid, (depth & 1) == 0 ? x : y);
+			invokeAll(new BuildTask(lo, mid, depth + 1), new BuildTask(mid + 1, hi, depth + 1));
+		}
+
+	}
+
+
+	@FunctionalInterface
+	private interface PointVisitor {
+
+		void visit(int index, double distSq);
+
+	}
+
+	/**
+	 * The k closest points found so far, sorted by distance.
+	 */
+	private static class Neighbors {
+
+		private final int[] indices;
+		private final double[] distSq;
+		private int n = 0;
+
+		private Neighbors(int k) {
+			indices = new int[k];
+			distSq = new double[k];
+		}
+
+		private double maxDistSq() {
+			return n < indices.length ? Double.POSITIVE_INFINITY : distSq[n - 1];
+		}
+
+		private void offer(int index, double d) {
+			if (n == indices.length) {
+				if (d >= distSq[n - 1])
+					return;
+				n--;
+			}
+			int i = n;
+			while (i > 0 && distSq[i - 1] > d) {
+				indices[i] = indices[i - 1];
+				distSq[i] = distSq[i - 1];
+				i--;
+			}
+			indices[i] = index;
+			distSq[i] = d;
+			n++;
+		}
+
+	}
+
+	private static class IntList {
+
+		private int[] values = new int[16];
+		private int n = 0;
+
+		private void add(int value) {
+			if (n == values.length)
+				values = Arrays.copyOf(values, n * 2);
+			values[n++] = value;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(values, n);
+		}
+
+	}
+
+}
@@ -0,0 +1,555 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.Triangle;
+import org.locationtech.jts.triangulate.quadedge.QuadEdge;
+import org.locationtech.jts.triangulate.quadedge.QuadEdgeSubdivision;
+import org.locationtech.jts.triangulate.quadedge.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.GeometryTools;
+
+/**
+ * Neighbor relationships based on a Delaunay triangulation of object centroids, computed in tiles.
+ * <p>
+ * This is intended for very large numbers of objects (e.g. millions of cells), for which a single
+ * triangulation with {@link DelaunayTools} is slow and memory-hungry.
+ * Each tile is triangulated independently (and in parallel) using all the points within the tile
+ * plus a surrounding halo.
+ * The neighbors of a point are accepted only if every triangle around the point can be shown to be
+ * part of the global Delaunay triangulation, i.e. the circumcircle falls entirely inside the
+ * region that was triangulated.
+ * Any remaining points are handled by repeating the triangulation with a larger halo.
+ * <p>
+ * Neighbor relationships are then stitched across tiles so that they are symmetric.
+ * Objects can be added or removed with {@link #update(Collection, Collection)}, in which case only the
+ * tiles affected by the change are recomputed.
+ * <p>
+ * Unlike {@link DelaunayTools.Subdivision}, this does not provide access to Voronoi faces or triangle edges -
+ * only neighbors.
+ *
+ * @since v0.6.0
+ */
+public class TiledSubdivision {
+
+	private static final Logger logger = LoggerFactory.getLogger(TiledSubdivision.class);
+
+	/**
+	 * Approximate number of points per tile, used to determine a default tile size.
+	 */
+	private static final int DEFAULT_POINTS_PER_TILE = 10_000;
+
+	/**
+	 * Default halo, as a multiple of the mean spacing between points.
+	 */
+	private static final double DEFAULT_HALO_SPACING = 4.0;
+
+	private final ImagePlane plane;
+	private final boolean preferNucleus;
+	private final double tileSize;
+	private final double halo;
+	private final PrecisionModel precisionModel = GeometryTools.getDefaultFactory().getPrecisionModel();
+
+	private final Map<Long, Tile> tiles = new HashMap<>();
+	private final Map<PathObject, Site> sites = new HashMap<>();
+	private final Map<Coordinate, Site> sitesByCoordinate = new HashMap<>();
+
+	// Neighbors determined from the triangulation around each point, and the reverse lookup used for stitching
+	private final Map<PathObject, List<PathObject>> ownNeighbors = new HashMap<>();
+	private final Map<PathObject, List<PathObject>> reverseNeighbors = new HashMap<>();
+
+	private Envelope envelope = new Envelope();
+
+	private TiledSubdivision(ImagePlane plane, boolean preferNucleus, double tileSize, double halo) {
+		this.plane = plane;
+		this.preferNucleus = preferNucleus;
+		this.tileSize = tileSize;
+		this.halo = halo;
+	}
+
+	/**
+	 * Create a tiled subdivision using the centroids of ROIs, using a tile size and halo determined from
+	 * the number and density of the objects.
+	 * <p>
+	 * Note: as with {@link DelaunayTools#createFromCentroids(Collection, boolean)}, centroids must be distinct.
+	 * If multiple objects have identical centroids, one or more objects will have no neighbors.
+	 *
+	 * @param pathObjects the objects; all should have ROIs on the same image plane
+	 * @param preferNucleusROI if true, prefer the nucleus ROI when extracting the centroid from a cell
+	 * @return a new tiled subdivision
+	 */
+	public static TiledSubdivision createFromCentroids(Collection<? extends PathObject> pathObjects, boolean preferNucleusROI) {
+		var env = new Envelope();
+		for (var pathObject : pathObjects) {
+			var roi = PathObjectTools.getROI(pathObject, preferNucleusROI);
+			if (roi != null)
+				env.expandToInclude(roi.getCentroidX(), roi.getCentroidY());
+		}
+		int n = Math.max(1, pathObjects.size());
+		double area = Math.max(1.0, env.getArea());
+		double spacing = Math.sqrt(area / n);
+		double tileSize = Math.sqrt(area * DEFAULT_POINTS_PER_TILE / n);
+		return createFromCentroids(pathObjects, preferNucleusROI, Math.max(tileSize, 1.0), Math.max(spacing * DEFAULT_HALO_SPACING, 1.0));
+	}
+
+	/**
+	 * Create a tiled subdivision using the centroids of ROIs, with a specified tile size and halo.
+	 * @param pathObjects the objects; all should have ROIs on the same image plane
+	 * @param preferNucleusROI if true, prefer the nucleus ROI when extracting the centroid from a cell
+	 * @param tileSize width and height of each tile
+	 * @param halo initial size of the halo around each tile; this will be increased for individual tiles if needed
+	 * @return a new tiled subdivision
+	 */
+	public static TiledSubdivision createFromCentroids(Collection<? extends PathObject> pathObjects, boolean preferNucleusROI, double tileSize, double halo) {
+		if (!(tileSize > 0) || !(halo > 0))
+			throw new IllegalArgumentException("Tile size and halo must be > 0");
+		var plane = pathObjects.stream()
+				.filter(PathObject::hasROI)
+				.map(p -> p.getROI().getImagePlane())
+				.findFirst()
+				.orElse(ImagePlane.getDefaultPlane());
+		var subdivision = new TiledSubdivision(plane, preferNucleusROI, tileSize, halo);
+		subdivision.update(Collections.emptyList(), pathObjects);
+		return subdivision;
+	}
+
+	/**
+	 * Get the {@link ImagePlane} for this subdivision.
+	 * @return
+	 */
+	public ImagePlane getImagePlane() {
+		return plane;
+	}
+
+	/**
+	 * Get the width and height of each tile.
+	 * @return
+	 */
+	public double getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Get the number of objects in this subdivision.
+	 * @return
+	 */
+	public synchronized int size() {
+		return sites.size();
+	}
+
+	/**
+	 * Query if the subdivision is empty, i.e. it contains no objects.
+	 * @return
+	 */
+	public synchronized boolean isEmpty() {
+		return sites.isEmpty();
+	}
+
+	/**
+	 * Get all the objects associated with this subdivision.
+	 * @return
+	 */
+	public synchronized Collection<PathObject> getObjects() {
+		return List.copyOf(sites.keySet());
+	}
+
+	/**
+	 * Get all neighbors for a specified object, sorted by centroid distance.
+	 * @param pathObject object for which neighbors are requested
+	 * @return list of neighbors
+	 */
+	public synchronized List<PathObject> getNeighbors(PathObject pathObject) {
+		var site = sites.get(pathObject);
+		if (site == null)
+			return Collections.emptyList();
+		var own = ownNeighbors.getOrDefault(pathObject, Collections.emptyList());
+		var reverse = reverseNeighbors.getOrDefault(pathObject, Collections.emptyList());
+		if (reverse.isEmpty() || own.containsAll(reverse))
+			return own;
+		var set = new LinkedHashSet<PathObject>(own);
+		set.addAll(reverse);
+		var list = new ArrayList<>(set);
+		list.sort(Comparator.comparingDouble(p -> distanceSq(site, sites.get(p))));
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Get the nearest neighbor for the specified object.
+	 * @param pathObject the object whose neighbor is requested
+	 * @return the nearest neighbor, or null if no neighbor can be found
+	 */
+	public PathObject getNearestNeighbor(PathObject pathObject) {
+		var neighbors = getNeighbors(pathObject);
+		return neighbors.isEmpty() ? null : neighbors.get(0);
+	}
+
+	/**
+	 * Get a list of neighbors for all objects.
+	 * @return map in which keys correspond to objects and values represent all corresponding neighbors
+	 */
+	public synchronized Map<PathObject, List<PathObject>> getAllNeighbors() {
+		var map = new LinkedHashMap<PathObject, List<PathObject>>();
+		for (var pathObject : sites.keySet()) {
+			var neighbors = getNeighbors(pathObject);
+			if (!neighbors.isEmpty())
+				map.put(pathObject, neighbors);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Update the subdivision by removing and adding objects.
+	 * Only tiles that could be affected by the changes are recomputed.
+	 * Objects on a different image plane are ignored.
+	 *
+	 * @param toRemove objects to remove
+	 * @param toAdd objects to add
+	 */
+	public synchronized void update(Collection<? extends PathObject> toRemove, Collection<? extends PathObject> toAdd) {
+		long startTime = System.currentTimeMillis();
+		List<Coordinate> changes = new ArrayList<>();
+		boolean envelopeExpanded = false;
+
+		for (var pathObject : toRemove) {
+			var site = sites.remove(pathObject);
+			if (site == null)
+				continue;
+			tiles.get(site.tileKey).sites.remove(site);
+			if (sitesByCoordinate.get(site.coordinate) == site)
+				sitesByCoordinate.remove(site.coordinate);
+			setOwnNeighbors(pathObject, Collections.emptyList());
+			reverseNeighbors.remove(pathObject);
+			changes.add(site.coordinate);
+		}
+
+		for (var pathObject : toAdd) {
+			if (sites.containsKey(pathObject))
+				continue;
+			var roi = PathObjectTools.getROI(pathObject, preferNucleus);
+			if (roi == null || !plane.equals(roi.getImagePlane()))
+				continue;
+			double x = precisionModel.makePrecise(roi.getCentroidX());
+			double y = precisionModel.makePrecise(roi.getCentroidY());
+			if (!Double.isFinite(x) || !Double.isFinite(y))
+				continue;
+			int tx = (int)Math.floor(x / tileSize);
+			int ty = (int)Math.floor(y / tileSize);
+			long key = tileKey(tx, ty);
+			var site = new Site(pathObject, new Coordinate(x, y), key);
+			sites.put(pathObject, site);
+			tiles.computeIfAbsent(key, k -> new Tile(tx, ty)).sites.add(site);
+			// As with DelaunayTools, the most recent object wins if centroids are identical
+			var previous = sitesByCoordinate.put(site.coordinate, site);
+			if (previous != null)
+				setOwnNeighbors(previous.pathObject, Collections.emptyList());
+			if (!envelope.isNull() && !envelope.covers(site.coordinate))
+				envelopeExpanded = true;
+			envelope.expandToInclude(site.coordinate);
+			changes.add(site.coordinate);
+		}
+
+		if (changes.isEmpty())
+			return;
+
+		// Determine which tiles need to be recomputed.
+		// If the envelope expanded, the global convex hull may have changed - so recompute everything.
+		List<Tile> affected = new ArrayList<>();
+		tiles.values().removeIf(t -> t.sites.isEmpty());
+		for (var tile : tiles.values()) {
+			if (envelopeExpanded || tile.neverComputed()) {
+				affected.add(tile);
+				continue;
+			}
+			var region = tile.getRegion(tileSize, getHalo(tile.haloLevel));
+			for (var c : changes) {
+				if (region.covers(c)) {
+					affected.add(tile);
+					break;
+				}
+			}
+		}
+
+		// Compute tiles in parallel, then stitch the results
+		var results = affected.parallelStream()
+				.map(this::computeTile)
+				.toList();
+		for (var result : results) {
+			for (var entry : result.entrySet())
+				setOwnNeighbors(entry.getKey(), entry.getValue());
+		}
+
+		long endTime = System.currentTimeMillis();
+		logger.debug("Tiled subdivision updated {} of {} tiles for {} changes ({} objects, {} ms)",
+				affected.size(), tiles.size(), changes.size(), sites.size(), endTime - startTime);
+	}
+
+
+	private void setOwnNeighbors(PathObject pathObject, List<PathObject> neighbors) {
+		var previous = neighbors.isEmpty() ? ownNeighbors.remove(pathObject) : ownNeighbors.put(pathObject, neighbors);
+		if (previous != null) {
+			for (var p : previous) {
+				var reverse = reverseNeighbors.get(p);
+				if (reverse != null) {
+					reverse.remove(pathObject);
+					if (reverse.isEmpty())
+						reverseNeighbors.remove(p);
+				}
+			}
+		}
+		for (var p : neighbors)
+			reverseNeighbors.computeIfAbsent(p, k -> new ArrayList<>(6)).add(pathObject);
+	}
+
+	private double getHalo(int level) {
+		return Math.scalb(halo, level);
+	}
+
+	/**
+	 * Compute the neighbors for all sites in a tile, increasing the halo as needed.
+	 * This only reads the shared state, so can safely be called from multiple threads.
+	 */
+	private Map<PathObject, List<PathObject>> computeTile(Tile tile) {
+		Map<PathObject, List<PathObject>> result = new HashMap<>();
+		List<Site> pending = new ArrayList<>();
+		for (var site : tile.sites) {
+			if (sitesByCoordinate.get(site.coordinate) == site)
+				pending.add(site);
+		}
+		int level = 0;
+		while (!pending.isEmpty()) {
+			var region = tile.getRegion(tileSize, getHalo(level));
+			boolean complete = region.covers(envelope);
+			var localSites = getSitesForRegion(region);
+			var coordMap = new HashMap<Coordinate, Site>();
+			for (var site : localSites)
+				coordMap.put(site.coordinate, site);
+			var subdivision = DelaunayTools.createSubdivision(coordMap.keySet(), 0.01);
+			pending = resolveSites(subdivision, pending, coordMap, region, complete, result);
+			if (!pending.isEmpty())
+				level++;
+		}
+		tile.haloLevel = level;
+		return result;
+	}
+
+	private List<Site> getSitesForRegion(Envelope region) {
+		int tx1 = (int)Math.floor(region.getMinX() / tileSize);
+		int tx2 = (int)Math.floor(region.getMaxX() / tileSize);
+		int ty1 = (int)Math.floor(region.getMinY() / tileSize);
+		int ty2 = (int)Math.floor(region.getMaxY() / tileSize);
+		List<Site> list = new ArrayList<>();
+		if ((long)(tx2 - tx1 + 1) * (ty2 - ty1 + 1) > tiles.size()) {
+			for (var tile : tiles.values())
+				addSitesInRegion(tile, region, list);
+		} else {
+			for (int ty = ty1; ty <= ty2; ty++) {
+				for (int tx = tx1; tx <= tx2; tx++) {
+					var tile = tiles.get(tileKey(tx, ty));
+					if (tile != null)
+						addSitesInRegion(tile, region, list);
+				}
+			}
+		}
+		return list;
+	}
+
+	private void addSitesInRegion(Tile tile, Envelope region, List<Site> list) {
+		for (var site : tile.sites) {
+			if (region.covers(site.coordinate) && sitesByCoordinate.get(site.coordinate) == site)
+				list.add(site);
+		}
+	}
+
+	/**
+	 * Determine the neighbors of sites from a local triangulation.
+	 * @return the sites that could not be resolved
+	 */
+	private List<Site> resolveSites(QuadEdgeSubdivision subdivision, List<Site> pending, Map<Coordinate, Site> coordMap,
+			Envelope region, boolean complete, Map<PathObject, List<PathObject>> result) {
+
+		Map<Coordinate, QuadEdge> vertexEdges = new HashMap<>();
+		for (var item : subdivision.getVertexUniqueEdges(false)) {
+			var edge = (QuadEdge)item;
+			vertexEdges.put(edge.orig().getCoordinate(), edge);
+		}
+
+		List<Site> unresolved = new ArrayList<>();
+		List<Site> neighbors = new ArrayList<>();
+		for (var site : pending) {
+			var start = vertexEdges.get(site.coordinate);
+			if (start == null) {
+				// Can happen if the point was merged with another within the triangulation tolerance
+				result.put(site.pathObject, Collections.emptyList());
+				continue;
+			}
+			neighbors.clear();
+			boolean resolved = true;
+			var p = start.orig();
+			var edge = start;
+			do {
+				var a = edge.dest();
+				var b = edge.oNext().dest();
+				if (!complete && !isFinal(subdivision, p, a, b, region))
+					resolved = false;
+				if (!subdivision.isFrameVertex(a)) {
+					var neighbor = coordMap.get(a.getCoordinate());
+					if (neighbor != null && neighbor != site)
+						neighbors.add(neighbor);
+				}
+				edge = edge.oNext();
+			} while (resolved && edge != start);
+
+			if (resolved) {
+				var array = neighbors.toArray(Site[]::new);
+				Arrays.sort(array, Comparator.comparingDouble(s -> distanceSq(site, s)));
+				result.put(site.pathObject, Arrays.stream(array).map(s -> s.pathObject).distinct().toList());
+			} else
+				unresolved.add(site);
+		}
+		return unresolved;
+	}
+
+	/**
+	 * Check whether a triangle of the local triangulation must also be part of the global triangulation.
+	 * For finite triangles, this requires that the circumcircle is inside the region.
+	 * For triangles involving a single frame vertex (i.e. beyond an edge of the local convex hull),
+	 * this requires that the part of the global envelope beyond the edge is inside the region.
+	 */
+	private boolean isFinal(QuadEdgeSubdivision subdivision, Vertex p, Vertex a, Vertex b, Envelope region) {
+		boolean frameA = subdivision.isFrameVertex(a);
+		boolean frameB = subdivision.isFrameVertex(b);
+		if (frameA && frameB)
+			return true;
+		if (!frameA && !frameB) {
+			var c = Triangle.circumcentre(p.getCoordinate(), a.getCoordinate(), b.getCoordinate());
+			double r = c.distance(p.getCoordinate());
+			return Double.isFinite(r) &&
+					c.x - r >= region.getMinX() && c.x + r <= region.getMaxX() &&
+					c.y - r >= region.getMinY() && c.y + r <= region.getMaxY();
+		}
+		var u = p.getCoordinate();
+		var v = frameA ? b.getCoordinate() : a.getCoordinate();
+		var f = frameA ? a.getCoordinate() : b.getCoordinate();
+		return halfPlaneInRegion(u, v, f, region);
+	}
+
+	/**
+	 * Check whether the intersection of the global envelope with the half-plane on the side of the line uv
+	 * containing f is inside the region.
+	 */
+	private boolean halfPlaneInRegion(Coordinate u, Coordinate v, Coordinate f, Envelope region) {
+		int side = Orientation.index(u, v, f);
+		if (side == Orientation.COLLINEAR)
+			return false;
+		var env = envelope;
+		var corners = new Coordinate[] {
+				new Coordinate(env.getMinX(), env.getMinY()),
+				new Coordinate(env.getMaxX(), env.getMinY()),
+				new Coordinate(env.getMaxX(), env.getMaxY()),
+				new Coordinate(env.getMinX(), env.getMaxY())
+		};
+		for (int i = 0; i < corners.length; i++) {
+			var c1 = corners[i];
+			var c2 = corners[(i + 1) % corners.length];
+			int side1 = Orientation.index(u, v, c1);
+			int side2 = Orientation.index(u, v, c2);
+			if (side1 == side && !region.covers(c1))
+				return false;
+			// Check where the line crosses the envelope boundary
+			if (side1 != side2 && side1 != Orientation.COLLINEAR && side2 != Orientation.COLLINEAR) {
+				double d1 = signedDistance(u, v, c1);
+				double d2 = signedDistance(u, v, c2);
+				double t = d1 / (d1 - d2);
+				double x = c1.x + t * (c2.x - c1.x);
+				double y = c1.y + t * (c2.y - c1.y);
+				if (!region.covers(x, y))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static double signedDistance(Coordinate u, Coordinate v, Coordinate c) {
+		return (v.x - u.x) * (c.y - u.y) - (v.y - u.y) * (c.x - u.x);
+	}
+
+	private static double distanceSq(Site s1, Site s2) {
+		if (s1 == null || s2 == null)
+			return Double.POSITIVE_INFINITY;
+		double dx = s1.coordinate.x - s2.coordinate.x;
+		double dy = s1.coordinate.y - s2.coordinate.y;
+		return dx * dx + dy * dy;
+	}
+
+	private static long tileKey(int tx, int ty) {
+		return ((long)tx << 32) | (ty & 0xffffffffL);
+	}
+
+	private record Site(PathObject pathObject, Coordinate coordinate, long tileKey) {}
+
+	private static class Tile {
+
+		private final int tx;
+		private final int ty;
+		private final List<Site> sites = new ArrayList<>();
+		private int haloLevel = -1;
+
+		private Tile(int tx, int ty) {
+			this.tx = tx;
+			this.ty = ty;
+		}
+
+		private boolean neverComputed() {
+			return haloLevel < 0;
+		}
+
+		private Envelope getRegion(double tileSize, double halo) {
+			return new Envelope(
+					tx * tileSize - halo,
+					(tx + 1) * tileSize + halo,
+					ty * tileSize - halo,
+					(ty + 1) * tileSize + halo);
+		}
+
+	}
+
+}
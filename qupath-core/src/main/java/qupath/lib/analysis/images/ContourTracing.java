@@ -76,7 +76,9 @@ import qupath.lib.objects.PathObjectTools;
 import qupath.lib.objects.PathObjects;
 import qupath.lib.regions.ImagePlane;
 import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.FastPolygonUnion;
 import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.RoiTools;
 import qupath.lib.roi.interfaces.ROI;
 
 /**
@@ -374,12 +376,13 @@ public class ContourTracing {
 	 * @param maxLabel maximum label; if less than minLabel, the maximum label will be found in the image and used
 	 * @param creator function to convert the traced ROI and associated numeric label into a {@link PathObject}
 	 * @return a list of all created objects
+	 * @implNote since v0.6.0 the ROIs are passed through {@link RoiTools#compact(ROI)} to reduce memory use
 	 */
 	public static List<PathObject> createObjects(SimpleImage image, RegionRequest region, int minLabel, int maxLabel, BiFunction<ROI, Number, PathObject> creator) {
 		var rois = createROIs(image, region, minLabel, maxLabel);
 		List<PathObject> pathObjects = new ArrayList<>();
 		for (var entry : rois.entrySet()) {
-			var pathObject = creator.apply(entry.getValue(), entry.getKey());
+			var pathObject = creator.apply(RoiTools.compact(entry.getValue()), entry.getKey());
 			pathObjects.add(pathObject);
 		}
 		return pathObjects;
@@ -481,6 +484,7 @@ public class ContourTracing {
 	 * @param minLabel minimum label; usually 1, but may be 0 if a background ROI should be created
 	 * @param maxLabel maximum label; if less than minLabel, the maximum label will be found in the image and used
 	 * @return a list of all created cells
+	 * @implNote since v0.6.0 the ROIs are passed through {@link RoiTools#compact(ROI)} to reduce memory use
 	 */
 	public static List<PathObject> createCells(SimpleImage imageNuclei, SimpleImage imageCells, RegionRequest region, int minLabel, int maxLabel) {
 		// Sanity check our images; we *should* have all non-zero nucleus pixels with the same labels in the cell image.
@@ -499,8 +503,10 @@ public class ContourTracing {
 		var cellROIs = createROIs(imageCells, region, minLabel, maxLabel);
 		List<PathObject> cells = new ArrayList<>();
 		for (var entry : cellROIs.entrySet()) {
-			var roiCell = entry.getValue();
+			var roiCell = RoiTools.compact(entry.getValue());
 			var roiNucleus = nucleusROIs.getOrDefault(entry.getKey(), null);
+			if (roiNucleus != null)
+				roiNucleus = RoiTools.compact(roiNucleus);
 			var cell = PathObjects.createCellObject(roiCell, roiNucleus, null, null);
 			cell.setName(numberToString(entry.getKey()));
 			cells.add(cell);
@@ -956,6 +962,124 @@ public class ContourTracing {
 	 */
 	public static Map<Integer, Geometry> traceGeometries(ImageServer<BufferedImage> server, RegionRequest regionRequest, Geometry clipArea, ChannelThreshold... thresholds) throws IOException {
 		
+		var tiled = getTiledRegion(server, regionRequest, clipArea);
+		if (thresholds.length == 0 || tiled.tiles().isEmpty())
+			return Collections.emptyMap();
+		
+		return traceGeometriesImpl(tiled.server(), tiled.tiles(), clipArea, thresholds);
+	}
+	
+	
+	/**
+	 * Trace polygons tile by tile, passing each polygon to a consumer as soon as it is complete.
+	 * <p>
+	 * This gives the same polygons as {@link #traceGeometries(ImageServer, RegionRequest, Geometry, ChannelThreshold...)}, 
+	 * but without needing to create geometries for the entire region.
+	 * Tiles are processed row by row (with tiles in each row traced in parallel), and polygons are stitched 
+	 * across tile boundaries as they are found.
+	 * Only polygons touching the bottom of the most recent row are retained until the next row is available, 
+	 * so the memory required depends upon the width of the region rather than its area.
+	 * <p>
+	 * The consumer is always called from the thread that called this method.
+	 * If the thread is interrupted, tracing stops without all polygons being passed to the consumer.
+	 * 
+	 * @param server the input image (usually with integer pixel values that represent classifications)
+	 * @param regionRequest the region request; if null, the entire image is used
+	 * @param clipArea optional clip area; if not null, polygons will be trimmed to this
+	 * @param consumer consumer accepting the label (usually the channel or classification value) and a complete polygon
+	 * @param thresholds the thresholds to apply
+	 * @throws IOException
+	 * @since v0.6.0
+	 */
+	public static void tracePolygons(ImageServer<BufferedImage> server, RegionRequest regionRequest, Geometry clipArea, 
+			BiConsumer<Integer, Polygon> consumer, ChannelThreshold... thresholds) throws IOException {
+		
+		var tiled = getTiledRegion(server, regionRequest, clipArea);
+		if (thresholds.length == 0 || tiled.tiles().isEmpty())
+			return;
+		
+		var tileServer = tiled.server();
+		var rows = tiled.tiles().stream().collect(Collectors.groupingBy(TileRequest::getImageY, TreeMap::new, Collectors.toList()));
+		
+		// Polygons that touch the bottom of the previous row, and so might need to be merged with polygons in the next row
+		Map<Integer, List<Polygon>> openPolygons = new LinkedHashMap<>();
+		
+		var pool = Executors.newFixedThreadPool(ThreadTools.getParallelism());
+		try {
+			int rowCount = 0;
+			for (var row : rows.values()) {
+				rowCount++;
+				if (Thread.currentThread().isInterrupted())
+					return;
+				
+				List<List<GeometryWrapper>> wrappers = invokeAll(pool, row, t -> traceGeometries(tileServer, t, clipArea, thresholds));
+				var rowGeometries = wrappers.stream()
+						.flatMap(p -> p.stream())
+						.collect(Collectors.groupingBy(g -> g.label, LinkedHashMap::new, Collectors.toList()));
+				for (var label : openPolygons.keySet())
+					rowGeometries.computeIfAbsent(label, k -> new ArrayList<>());
+
+				// Polygons only need to be merged if they touch the top of the row, or the boundary between tiles
+				double tol = row.get(0).getDownsample() / 2.0;
+				int rowTop = row.get(0).getImageY();
+				int rowBottom = row.stream().mapToInt(t -> t.getImageY() + t.getImageHeight()).max().getAsInt();
+				int[] xBounds = row.stream().mapToInt(t -> t.getImageX()).sorted().skip(1).toArray();
+				boolean lastRow = rowCount == rows.size();
+				
+				var newOpenPolygons = new LinkedHashMap<Integer, List<Polygon>>();
+				for (var entry : rowGeometries.entrySet()) {
+					int label = entry.getKey();
+					var toMerge = new ArrayList<Polygon>(openPolygons.getOrDefault(label, Collections.emptyList()));
+					var polygons = new ArrayList<Polygon>();
+					for (var wrapper : entry.getValue()) {
+						for (var polygon : (List<Polygon>)PolygonExtracter.getPolygons(wrapper.geometry)) {
+							if (touchesSeam(polygon.getEnvelopeInternal(), rowTop, xBounds, tol))
+								toMerge.add(polygon);
+							else
+								polygons.add(polygon);
+						}
+					}
+					if (toMerge.size() > 1)
+						PolygonExtracter.getPolygons(FastPolygonUnion.union(toMerge), polygons);
+					else
+						polygons.addAll(toMerge);
+					
+					// Pass on complete polygons, retaining those that might continue in the next row
+					for (var polygon : polygons) {
+						if (!lastRow && polygon.getEnvelopeInternal().getMaxY() >= rowBottom - tol) {
+							newOpenPolygons.computeIfAbsent(label, k -> new ArrayList<>()).add(polygon);
+						} else {
+							polygon.normalize();
+							consumer.accept(label, polygon);
+						}
+					}
+				}
+				openPolygons = newOpenPolygons;
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IOException(e);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private static boolean touchesSeam(Envelope envelope, int rowTop, int[] xBounds, double tol) {
+		if (envelope.getMinY() <= rowTop + tol)
+			return true;
+		for (int x : xBounds) {
+			if (envelope.getMinX() <= x + tol && envelope.getMaxX() >= x - tol)
+				return true;
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Server and tile requests needed to trace a region.
+	 */
+	private record TiledRegion(ImageServer<BufferedImage> server, Collection<TileRequest> tiles) {}
+	
+	private static TiledRegion getTiledRegion(ImageServer<BufferedImage> server, RegionRequest regionRequest, Geometry clipArea) throws IOException {
 		RegionRequest region = regionRequest;
 		if (region == null) {
 			if (clipArea == null) {
@@ -971,9 +1095,8 @@ public class ContourTracing {
 		}
 		
 		Collection<TileRequest> tiles = server.getTileRequestManager().getTileRequests(region);
-
-		if (thresholds.length == 0 || tiles.isEmpty())
-			return Collections.emptyMap();
+		if (tiles.isEmpty())
+			return new TiledRegion(server, tiles);
 
 		// If the region downsample doesn't match the tile requests, the scaling may be off
 		// One way to resolve that (without requiring the region to be read in one go) is to generate new tile requests for a pyramidalized server at the correct resolution
@@ -983,7 +1106,7 @@ public class ContourTracing {
 			tiles = server.getTileRequestManager().getTileRequests(region);
 		}
 		
-		return traceGeometriesImpl(server, tiles, clipArea, thresholds);
+		return new TiledRegion(server, tiles);
 	}
 	
 	
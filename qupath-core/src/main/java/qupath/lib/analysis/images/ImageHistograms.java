@@ -0,0 +1,372 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis.images;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonParseException;
+
+import qupath.lib.analysis.stats.HistogramSketch;
+import qupath.lib.awt.common.BufferedImageTools;
+import qupath.lib.common.ThreadTools;
+import qupath.lib.images.servers.ImageServer;
+import qupath.lib.images.servers.ImageServers;
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.io.GsonTools;
+import qupath.lib.projects.ProjectImageEntry;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.RoiTools;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Histograms for all the channels of an image, computed from every pixel within a region at a specified resolution.
+ * <p>
+ * This makes it possible to calculate display ranges and normalization values that are consistent across
+ * a whole slide (or the tissue within it), rather than depending upon thumbnails or individual tiles.
+ * Each channel is summarized with a {@link HistogramSketch}, so memory use doesn't depend upon the size of the image.
+ * <p>
+ * Histograms can be cached in the directory of a {@link ProjectImageEntry}, so they only need to be computed once.
+ *
+ * @since v0.6.0
+ */
+public class ImageHistograms {
+
+	private static final Logger logger = LoggerFactory.getLogger(ImageHistograms.class);
+
+	private static final String CACHE_FILE_NAME = "histograms.json";
+
+	private String serverPath;
+	private double downsample;
+	private String regionKey;
+	private List<String> channels;
+	private List<HistogramSketch> histograms;
+
+	private ImageHistograms(String serverPath, double downsample, String regionKey, List<String> channels, List<HistogramSketch> histograms) {
+		this.serverPath = serverPath;
+		this.downsample = downsample;
+		this.regionKey = regionKey;
+		this.channels = List.copyOf(channels);
+		this.histograms = List.copyOf(histograms);
+	}
+
+	/**
+	 * Compute histograms for all pixels in an image, for the default plane.
+	 * @param server the image
+	 * @param downsample the downsample factor at which pixels should be read
+	 * @return
+	 * @throws IOException if the image could not be read
+	 */
+	public static ImageHistograms compute(ImageServer<BufferedImage> server, double downsample) throws IOException {
+		return compute(server, downsample, null);
+	}
+
+	/**
+	 * Compute histograms for all pixels within a ROI, or within the full image (for the default plane) if no ROI is given.
+	 * <p>
+	 * Tiles are read and processed in parallel. Tiles that don't intersect the ROI are skipped.
+	 * The ROI would usually represent the tissue within a slide, so that the background doesn't dominate the histograms.
+	 *
+	 * @param server the image
+	 * @param downsample the downsample factor at which pixels should be read
+	 * @param roi optional ROI; if not null, only pixels inside the ROI (and in the same plane) are included
+	 * @return
+	 * @throws IOException if the image could not be read
+	 */
+	public static ImageHistograms compute(ImageServer<BufferedImage> server, double downsample, ROI roi) throws IOException {
+		Objects.requireNonNull(server, "Server must not be null!");
+		if (!(downsample >= 1))
+			throw new IllegalArgumentException("Downsample must be >= 1, but was " + downsample);
+
+		RegionRequest region;
+		if (roi == null)
+			region = RegionRequest.createInstance(server, downsample);
+		else
+			region = RegionRequest.createInstance(server.getPath(), downsample, roi);
+
+		var tileServer = server;
+		List<TileRequest> tiles = new ArrayList<>(tileServer.getTileRequestManager().getTileRequests(region));
+		if (!tiles.isEmpty() && Math.abs(tiles.get(0).getDownsample() - downsample) > 1e-3) {
+			tileServer = ImageServers.pyramidalize(server, downsample);
+			tiles = new ArrayList<>(tileServer.getTileRequestManager().getTileRequests(region));
+		}
+		if (roi != null) {
+			var shape = RoiTools.getShape(roi);
+			tiles.removeIf(t -> !shape.intersects(t.getImageX(), t.getImageY(), t.getImageWidth(), t.getImageHeight()));
+		}
+
+		int nChannels = server.nChannels();
+		logger.debug("Computing histograms for {} ({} tiles at downsample {})", server.getPath(), tiles.size(), downsample);
+		long startTime = System.currentTimeMillis();
+
+		// Each worker adds tiles to its own histograms, so that memory use depends upon the number of threads
+		// rather than the number of tiles
+		var readServer = tileServer;
+		var iterator = tiles.iterator();
+		int nThreads = Math.max(1, Math.min(ThreadTools.getParallelism(), tiles.size()));
+		var pool = Executors.newFixedThreadPool(nThreads, ThreadTools.createThreadFactory("image-histograms-", true));
+		List<HistogramSketch> histograms = createHistograms(nChannels);
+		try {
+			List<Future<List<HistogramSketch>>> futures = new ArrayList<>();
+			for (int i = 0; i < nThreads; i++)
+				futures.add(pool.submit(() -> addTiles(readServer, iterator, roi, nChannels)));
+			for (var future : futures) {
+				var workerHistograms = future.get();
+				for (int c = 0; c < nChannels; c++)
+					histograms.get(c).merge(workerHistograms.get(c));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Histogram calculation interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe)
+				throw ioe;
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		logger.debug("Histograms computed in {} ms", System.currentTimeMillis() - startTime);
+
+		var channelNames = server.getMetadata().getChannels().stream().map(c -> c.getName()).toList();
+		return new ImageHistograms(server.getPath(), downsample, createRegionKey(roi), channelNames, histograms);
+	}
+
+	private static List<HistogramSketch> createHistograms(int nChannels) {
+		var list = new ArrayList<HistogramSketch>(nChannels);
+		for (int c = 0; c < nChannels; c++)
+			list.add(new HistogramSketch());
+		return list;
+	}
+
+	private static List<HistogramSketch> addTiles(ImageServer<BufferedImage> server, Iterator<TileRequest> iterator, ROI roi, int nChannels) throws IOException {
+		var histograms = createHistograms(nChannels);
+		float[] values = null;
+		while (true) {
+			TileRequest tile;
+			synchronized (iterator) {
+				if (!iterator.hasNext())
+					break;
+				tile = iterator.next();
+			}
+			var request = tile.getRegionRequest();
+			var img = server.readRegion(request);
+			if (img == null)
+				continue;
+			int width = img.getWidth();
+			int height = img.getHeight();
+			byte[] mask = null;
+			if (roi != null) {
+				var imgMask = BufferedImageTools.createROIMask(width, height, roi, request);
+				mask = ((DataBufferByte)imgMask.getRaster().getDataBuffer()).getData();
+			}
+			var raster = img.getRaster();
+			if (values == null || values.length < width * height)
+				values = new float[width * height];
+			for (int c = 0; c < nChannels; c++) {
+				values = raster.getSamples(0, 0, width, height, c, values);
+				var histogram = histograms.get(c);
+				if (mask == null)
+					histogram.add(values, 0, width * height);
+				else {
+					for (int i = 0; i < width * height; i++) {
+						if (mask[i] != 0)
+							histogram.add(values[i]);
+					}
+				}
+			}
+		}
+		return histograms;
+	}
+
+	/**
+	 * Create a String that identifies a ROI, so that cached histograms aren't used for a different region.
+	 */
+	private static String createRegionKey(ROI roi) {
+		if (roi == null)
+			return "";
+		return Integer.toHexString(GsonTools.getInstance().toJson(roi).hashCode());
+	}
+
+	/**
+	 * Get the path of the server used to compute the histograms.
+	 * @return
+	 */
+	public String getServerPath() {
+		return serverPath;
+	}
+
+	/**
+	 * Get the downsample factor at which pixels were read.
+	 * @return
+	 */
+	public double getDownsample() {
+		return downsample;
+	}
+
+	/**
+	 * Get the number of channels.
+	 * @return
+	 */
+	public int nChannels() {
+		return histograms.size();
+	}
+
+	/**
+	 * Get the names of the channels, in the order of the histograms.
+	 * @return
+	 */
+	public List<String> getChannelNames() {
+		return Collections.unmodifiableList(channels);
+	}
+
+	/**
+	 * Get the histogram for a channel.
+	 * @param channel the channel index
+	 * @return
+	 */
+	public HistogramSketch getHistogram(int channel) {
+		return histograms.get(channel);
+	}
+
+	/**
+	 * Get a histogram that combines the values from all channels.
+	 * @return
+	 */
+	public HistogramSketch getJointHistogram() {
+		var joint = new HistogramSketch();
+		for (var histogram : histograms)
+			joint.merge(histogram);
+		return joint;
+	}
+
+	/**
+	 * Check whether these histograms were computed for the specified server, downsample and region.
+	 * @param server
+	 * @param downsample
+	 * @param roi
+	 * @return
+	 */
+	public boolean matches(ImageServer<?> server, double downsample, ROI roi) {
+		return Objects.equals(serverPath, server.getPath()) &&
+				this.downsample == downsample &&
+				Objects.equals(regionKey, createRegionKey(roi)) &&
+				histograms.size() == server.nChannels();
+	}
+
+
+	/**
+	 * Read histograms that have been cached for a project entry.
+	 * @param entry
+	 * @return the cached histograms, or null if none are available
+	 * @throws IOException if the cached histograms exist, but could not be read
+	 */
+	public static ImageHistograms read(ProjectImageEntry<?> entry) throws IOException {
+		var path = getCachePath(entry);
+		if (path == null || !Files.isRegularFile(path))
+			return null;
+		try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			var histograms = GsonTools.getInstance().fromJson(reader, ImageHistograms.class);
+			if (histograms == null || histograms.histograms == null)
+				return null;
+			return histograms;
+		} catch (JsonParseException e) {
+			throw new IOException("Unable to read histograms from " + path, e);
+		}
+	}
+
+	/**
+	 * Cache histograms for a project entry, replacing any histograms that were cached previously.
+	 * @param entry
+	 * @param histograms
+	 * @throws IOException
+	 */
+	public static void write(ProjectImageEntry<?> entry, ImageHistograms histograms) throws IOException {
+		var path = getCachePath(entry);
+		if (path == null) {
+			logger.debug("Can't cache histograms for {} - no entry path available", entry);
+			return;
+		}
+		Files.createDirectories(path.getParent());
+		var pathTemp = path.resolveSibling(CACHE_FILE_NAME + ".tmp");
+		try (var writer = Files.newBufferedWriter(pathTemp, StandardCharsets.UTF_8)) {
+			GsonTools.getInstance().toJson(histograms, writer);
+		}
+		Files.move(pathTemp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Get the histograms cached for a project entry if they match the server, downsample and ROI, or compute
+	 * (and cache) them if necessary.
+	 * @param entry the project entry used for caching
+	 * @param server the image
+	 * @param downsample the downsample factor at which pixels should be read
+	 * @param roi optional ROI; if not null, only pixels inside the ROI are included
+	 * @return
+	 * @throws IOException if the image could not be read
+	 * @see #compute(ImageServer, double, ROI)
+	 */
+	public static ImageHistograms getOrCompute(ProjectImageEntry<?> entry, ImageServer<BufferedImage> server, double downsample, ROI roi) throws IOException {
+		try {
+			var cached = read(entry);
+			if (cached != null && cached.matches(server, downsample, roi))
+				return cached;
+		} catch (IOException e) {
+			logger.warn("Unable to read cached histograms: {}", e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+		}
+		var histograms = compute(server, downsample, roi);
+		try {
+			write(entry, histograms);
+		} catch (IOException e) {
+			logger.warn("Unable to cache histograms: {}", e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+		}
+		return histograms;
+	}
+
+	private static Path getCachePath(ProjectImageEntry<?> entry) {
+		var entryPath = entry.getEntryPath();
+		return entryPath == null ? null : entryPath.resolve(CACHE_FILE_NAME);
+	}
+
+	@Override
+	public String toString() {
+		return "ImageHistograms [" + serverPath + ", downsample=" + downsample + ", channels=" + channels + "]";
+	}
+
+}
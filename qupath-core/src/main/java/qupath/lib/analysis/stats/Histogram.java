@@ -316,6 +316,31 @@ public class Histogram { // implements Serializable {
 		buildHistogram(values, nBins, minEdge, maxEdge);
 	}
 	
+	/**
+	 * Create a histogram from precomputed bin edges and counts (e.g. from a {@link HistogramSketch}).
+	 * 
+	 * @param edges bin edges (length must be one more than the length of counts, unless there are no counts)
+	 * @param counts bin counts
+	 * @param stats statistics for the values represented in the histogram
+	 * @param isInteger true if all values are integers
+	 */
+	Histogram(double[] edges, long[] counts, RunningStatistics stats, boolean isInteger) {
+		if (counts.length > 0 && edges.length != counts.length + 1)
+			throw new IllegalArgumentException("Number of edges (" + edges.length + ") should be one more than the number of counts (" + counts.length + ")");
+		this.edges = counts.length == 0 ? new double[1] : edges.clone();
+		this.counts = counts.clone();
+		this.stats = stats;
+		this.isInteger = isInteger;
+		// As when building from values, the min and max edges are the min and max values
+		this.edgeMin = stats.getMin();
+		this.edgeMax = stats.getMax();
+		for (long c : counts) {
+			countSum += c;
+			if (c > maxCount)
+				maxCount = c;
+		}
+	}
+	
 	/**
 	 * Create histogram from a double array, using a specified number of bins and the data min/max as the min/max edges.
 	 * @param values
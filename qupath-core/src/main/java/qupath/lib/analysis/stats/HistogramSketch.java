@@ -0,0 +1,399 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis.stats;
+
+/**
+ * Fixed-memory histogram that can be built from a stream of values, and merged with other sketches.
+ * <p>
+ * This is intended for summarizing very large numbers of values (e.g. all pixels in a whole slide image),
+ * where the values are read in parts (e.g. tiles) that may be processed in parallel.
+ * Each part can be added to its own sketch, and the sketches merged afterwards.
+ * <p>
+ * Bins all have the same width, which is always a power of two; bin edges are multiples of the bin width.
+ * Whenever a value falls outside the current bins, the width is doubled (merging pairs of bins) as often as needed.
+ * Because bins are aligned in the same way for every sketch, merging is exact and doesn't depend upon the order in which
+ * values were added.
+ * <p>
+ * The minimum, maximum, mean and variance are computed exactly (allowing for floating point error).
+ * Percentiles are accurate to within one bin width; for integer values where the bin width is no more than 1, they are exact.
+ * <p>
+ * Non-finite values are counted as missing, but otherwise ignored.
+ * Instances are not thread-safe.
+ *
+ * @since v0.6.0
+ */
+public class HistogramSketch {
+
+	private static final int DEFAULT_BINS = 4096;
+
+	/**
+	 * Smallest bin width exponent, i.e. the finest bins have width 2^-32
+	 */
+	private static final int MIN_EXPONENT = -32;
+
+	/**
+	 * Bin indices are kept below 2^MAX_INDEX_BITS in magnitude to avoid overflow
+	 */
+	private static final int MAX_INDEX_BITS = 60;
+
+	private long[] counts;
+
+	/**
+	 * Bin width is 2^exponent
+	 */
+	private int exponent = MIN_EXPONENT;
+
+	/**
+	 * Index of the first bin, i.e. the left edge of the first bin is base * 2^exponent
+	 */
+	private long base = 0;
+
+	private long count = 0;
+	private long nMissing = 0;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum = 0;
+	private double mean = 0;
+	private double m2 = 0;
+	private boolean isInteger = true;
+
+	/**
+	 * Create a sketch with the default number of bins (4096).
+	 */
+	public HistogramSketch() {
+		this(DEFAULT_BINS);
+	}
+
+	/**
+	 * Create a sketch with the specified number of bins.
+	 * Memory use is fixed by the number of bins, and doesn't increase as values are added.
+	 * @param nBins number of bins; must be at least 2
+	 */
+	public HistogramSketch(int nBins) {
+		if (nBins < 2)
+			throw new IllegalArgumentException("Number of bins must be at least 2, but was " + nBins);
+		this.counts = new long[nBins];
+	}
+
+	/**
+	 * Add a single value.
+	 * @param value
+	 */
+	public void add(double value) {
+		if (!Double.isFinite(value)) {
+			nMissing++;
+			return;
+		}
+		long ind = binIndex(value, exponent);
+		if (count == 0 || ind < base || ind >= base + counts.length) {
+			ensureRange(value, value, MIN_EXPONENT);
+			ind = binIndex(value, exponent);
+		}
+		counts[(int)(ind - base)]++;
+
+		count++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		if (isInteger && value != Math.rint(value))
+			isInteger = false;
+	}
+
+	/**
+	 * Add all values in an array.
+	 * @param values
+	 */
+	public void add(float[] values) {
+		add(values, 0, values.length);
+	}
+
+	/**
+	 * Add values from part of an array.
+	 * @param values
+	 * @param offset index of the first value to add
+	 * @param length number of values to add
+	 */
+	public void add(float[] values, int offset, int length) {
+		for (int i = offset; i < offset + length; i++)
+			add(values[i]);
+	}
+
+	/**
+	 * Add all values in an array.
+	 * @param values
+	 */
+	public void add(double[] values) {
+		for (double v : values)
+			add(v);
+	}
+
+	/**
+	 * Merge the values from another sketch into this one.
+	 * The other sketch is unchanged.
+	 * @param other
+	 * @return this sketch
+	 */
+	public HistogramSketch merge(HistogramSketch other) {
+		nMissing += other.nMissing;
+		if (other.count == 0)
+			return this;
+
+		// Our bins can't be finer than those of the other sketch
+		ensureRange(other.min, other.max, other.exponent);
+		int shift = exponent - other.exponent;
+		for (int i = 0; i < other.counts.length; i++) {
+			long c = other.counts[i];
+			if (c != 0)
+				counts[(int)(((other.base + i) >> shift) - base)] += c;
+		}
+
+		long n = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ((double)count * other.count / n);
+		count = n;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		isInteger = isInteger && other.isInteger;
+		return this;
+	}
+
+	/**
+	 * Ensure that the bins cover the range from lo to hi (as well as all values that have already been added),
+	 * and have an exponent of at least minExponent.
+	 */
+	private void ensureRange(double lo, double hi, int minExponent) {
+		int e = Math.max(minExponent, minExponent(lo, hi));
+		if (count > 0) {
+			// Existing bins can only be made coarser
+			lo = Math.min(lo, min);
+			hi = Math.max(hi, max);
+			e = Math.max(e, Math.max(exponent, minExponent(lo, hi)));
+		}
+		while (binIndex(hi, e) - binIndex(lo, e) >= counts.length)
+			e++;
+		if (count == 0) {
+			exponent = e;
+			base = centeredBase(e, lo, hi);
+		} else if (e != exponent || binIndex(lo, e) < base || binIndex(hi, e) >= base + counts.length) {
+			rebin(e, centeredBase(e, lo, hi));
+		}
+	}
+
+	/**
+	 * Get the smallest exponent that avoids overflow when calculating bin indices for the specified values.
+	 */
+	private static int minExponent(double lo, double hi) {
+		return Math.getExponent(Math.max(Math.abs(lo), Math.abs(hi))) - MAX_INDEX_BITS + 2;
+	}
+
+	/**
+	 * Get the first bin index that would leave the range from lo to hi centered within the bins.
+	 */
+	private long centeredBase(int exponent, double lo, double hi) {
+		long indLo = binIndex(lo, exponent);
+		long indHi = binIndex(hi, exponent);
+		return indLo - (counts.length - (indHi - indLo + 1)) / 2;
+	}
+
+	private static long binIndex(double value, int exponent) {
+		return (long)Math.floor(Math.scalb(value, -exponent));
+	}
+
+	/**
+	 * Update the bins to have the specified exponent (which must not be smaller than the current exponent) and base.
+	 */
+	private void rebin(int newExponent, long newBase) {
+		int shift = newExponent - exponent;
+		long[] newCounts = new long[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			long c = counts[i];
+			if (c != 0)
+				newCounts[(int)(((base + i) >> shift) - newBase)] += c;
+		}
+		counts = newCounts;
+		exponent = newExponent;
+		base = newBase;
+	}
+
+	/**
+	 * Get the number of (finite) values that have been added.
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the number of non-finite values that have been added (and ignored).
+	 * @return
+	 */
+	public long getMissingCount() {
+		return nMissing;
+	}
+
+	/**
+	 * Get the minimum value.
+	 * @return the minimum value, or NaN if no values have been added
+	 */
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	/**
+	 * Get the maximum value.
+	 * @return the maximum value, or NaN if no values have been added
+	 */
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	/**
+	 * Get the mean value.
+	 * @return the mean value, or NaN if no values have been added
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/**
+	 * Get the (sample) variance.
+	 * @return the variance, or NaN if fewer than two values have been added
+	 */
+	public double getVariance() {
+		return count <= 1 ? Double.NaN : m2 / (count - 1);
+	}
+
+	/**
+	 * Check whether all values added so far were integers.
+	 * @return
+	 */
+	public boolean isInteger() {
+		return isInteger;
+	}
+
+	/**
+	 * Get the width of the bins currently used by the sketch.
+	 * This is an upper bound for the error in any percentile.
+	 * @return
+	 */
+	public double getBinWidth() {
+		return Math.scalb(1.0, exponent);
+	}
+
+	/**
+	 * Estimate a percentile value.
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the estimated percentile, or NaN if no values have been added
+	 */
+	public double getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100 || Double.isNaN(percentile))
+			throw new IllegalArgumentException("Percentile must be between 0 and 100, but was " + percentile);
+		if (count == 0)
+			return Double.NaN;
+		if (percentile == 0)
+			return min;
+		if (percentile == 100)
+			return max;
+		double target = percentile / 100.0 * count;
+		boolean exact = isInteger && exponent <= 0;
+		double width = getBinWidth();
+		long cumulative = 0;
+		for (int i = 0; i < counts.length; i++) {
+			long c = counts[i];
+			if (c == 0)
+				continue;
+			if (cumulative + c >= target) {
+				double left = Math.scalb((double)(base + i), exponent);
+				double value;
+				if (exact)
+					value = Math.ceil(left);
+				else
+					value = left + (target - cumulative) / c * width;
+				return Math.min(max, Math.max(min, value));
+			}
+			cumulative += c;
+		}
+		return max;
+	}
+
+	/**
+	 * Estimate multiple percentile values.
+	 * @param percentiles the percentiles, each between 0 and 100
+	 * @return the estimated percentiles, in the same order as the input
+	 * @see #getPercentile(double)
+	 */
+	public double[] getPercentiles(double... percentiles) {
+		double[] values = new double[percentiles.length];
+		for (int i = 0; i < percentiles.length; i++)
+			values[i] = getPercentile(percentiles[i]);
+		return values;
+	}
+
+	/**
+	 * Create a {@link Histogram} from the sketch, using no more than the specified number of bins.
+	 * <p>
+	 * Neighboring bins of the sketch are combined until the number of bins is small enough.
+	 * If all values are integers, bins will not be narrower than 1.
+	 * @param maxBins the maximum number of bins
+	 * @return
+	 */
+	public Histogram toHistogram(int maxBins) {
+		if (maxBins < 1)
+			throw new IllegalArgumentException("Number of bins must be at least 1, but was " + maxBins);
+		if (count == 0)
+			return new Histogram(new double[0], new long[0], createStatistics(), isInteger);
+		long lo = binIndex(min, exponent);
+		long hi = binIndex(max, exponent);
+		int shift = 0;
+		while (((hi >> shift) - (lo >> shift) + 1) > maxBins || (isInteger && exponent + shift < 0))
+			shift++;
+		long first = lo >> shift;
+		int nBins = (int)((hi >> shift) - first + 1);
+		long[] histogramCounts = new long[nBins];
+		for (int i = 0; i < counts.length; i++) {
+			long c = counts[i];
+			if (c != 0)
+				histogramCounts[(int)(((base + i) >> shift) - first)] += c;
+		}
+		double[] edges = new double[nBins + 1];
+		for (int i = 0; i <= nBins; i++)
+			edges[i] = Math.scalb((double)(first + i), exponent + shift);
+		return new Histogram(edges, histogramCounts, createStatistics(), isInteger);
+	}
+
+	private RunningStatistics createStatistics() {
+		return new RunningStatistics(count, nMissing, sum, min, max, m2);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("HistogramSketch: Count %d, Min %.2f, Max %.2f, Bin width %s", count, getMin(), getMax(), getBinWidth());
+	}
+
+}
@@ -59,6 +59,25 @@ public class RunningStatistics {
 	 */
 	public RunningStatistics() {}
 	
+	/**
+	 * Create statistics from values that have already been computed (e.g. by a {@link HistogramSketch}).
+	 * @param size number of non-NaN values
+	 * @param numNaNs number of NaN values
+	 * @param sum sum of all non-NaN values
+	 * @param min minimum value
+	 * @param max maximum value
+	 * @param sumSquaredDifferences sum of squared differences from the mean
+	 */
+	RunningStatistics(long size, long numNaNs, double sum, double min, double max, double sumSquaredDifferences) {
+		this.size = size;
+		this.numNaNs = (int)Math.min(Integer.MAX_VALUE, numNaNs);
+		this.sum = sum;
+		this.min = min;
+		this.max = max;
+		this.m1 = size == 0 ? 0 : sum / size;
+		this.s1 = sumSquaredDifferences;
+	}
+	
 	/**
 	 * Get count of the number of non-NaN values added.
 	 * @return
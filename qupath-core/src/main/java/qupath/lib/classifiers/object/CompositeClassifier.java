@@ -22,6 +22,7 @@
 package qupath.lib.classifiers.object;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -70,6 +71,10 @@ class CompositeClassifier<T> implements ObjectClassifier<T> {
 	
 	@Override
 	public int classifyObjects(ImageData<T> imageData, Collection<? extends PathObject> pathObjects, boolean resetExistingClass) {
+		var requiredMeasurements = getRequiredMeasurements();
+		if (requiredMeasurements != null)
+			return classifyWithMeasurementTable(imageData, pathObjects, resetExistingClass, requiredMeasurements);
+		
 		var beforeMap = createMap(pathObjects);
 //		pathObjects.stream().forEach(p -> p.setPathClass(null)); // Reset classifications
 		if (resetExistingClass)
@@ -90,6 +95,72 @@ class CompositeClassifier<T> implements ObjectClassifier<T> {
 		return n;
 	}
 	
+	/**
+	 * Get the union of the measurements required by all classifiers, if all can use a {@link MeasurementTable}.
+	 * @return the required measurements, or null if at least one classifier cannot use a measurement table
+	 */
+	private Collection<String> getRequiredMeasurements() {
+		Set<String> measurements = new LinkedHashSet<>();
+		for (var c : classifiers) {
+			if (!(c instanceof MeasurementTableClassifier<T> tableClassifier))
+				return null;
+			var required = tableClassifier.getRequiredMeasurements();
+			if (required == null)
+				return null;
+			measurements.addAll(required);
+		}
+		return measurements;
+	}
+	
+	/**
+	 * Classify objects by reading all the required measurements once for each chunk of objects, and sharing these 
+	 * between all the classifiers.
+	 * Classifications are only applied to the objects at the end, in a single pass.
+	 */
+	private int classifyWithMeasurementTable(ImageData<T> imageData, Collection<? extends PathObject> pathObjects, boolean resetExistingClass, Collection<String> measurements) {
+		var list = new ArrayList<PathObject>(pathObjects);
+		int n = list.size();
+		var pathClasses = new PathClass[n];
+		var probabilities = new double[n];
+		for (int i = 0; i < n; i++) {
+			var pathObject = list.get(i);
+			if (!resetExistingClass || pathObject.getPathClass() == null) {
+				pathClasses[i] = pathObject.getPathClass();
+				probabilities[i] = pathObject.getClassProbability();
+			} else {
+				probabilities[i] = Double.NaN;
+			}
+		}
+		
+		// Try not to have more than ~10 million measurements per table
+		int chunkSize = (int)Math.max(1, Math.min(n, 1024 * 1024 * 10 / Math.max(1, measurements.size())));
+		for (int start = 0; start < n; start += chunkSize) {
+			int end = Math.min(n, start + chunkSize);
+			var table = MeasurementTable.create(list.subList(start, end), measurements);
+			var chunkClasses = Arrays.copyOfRange(pathClasses, start, end);
+			var chunkProbabilities = Arrays.copyOfRange(probabilities, start, end);
+			for (var c : classifiers) {
+				((MeasurementTableClassifier<T>)c).classifyTable(imageData, table, chunkClasses, chunkProbabilities);
+				if (Thread.currentThread().isInterrupted())
+					return 0;
+			}
+			System.arraycopy(chunkClasses, 0, pathClasses, start, chunkClasses.length);
+			System.arraycopy(chunkProbabilities, 0, probabilities, start, chunkProbabilities.length);
+		}
+		
+		// Apply all classifications
+		int nChanged = 0;
+		for (int i = 0; i < n; i++) {
+			var pathObject = list.get(i);
+			var previousClass = pathObject.getPathClass();
+			if (previousClass != pathClasses[i] || Double.compare(pathObject.getClassProbability(), probabilities[i]) != 0)
+				pathObject.setPathClass(pathClasses[i], probabilities[i]);
+			if (!Objects.equals(previousClass, pathObject.getPathClass()))
+				nChanged++;
+		}
+		return nChanged;
+	}
+	
 	Map<PathObject, PathClass> createMap(Collection<? extends PathObject> pathObjects) {
 		var map = new HashMap<PathObject, PathClass>();
 		for (var pathObject : pathObjects)
@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.classifiers.object;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import qupath.lib.measurements.MeasurementList;
+import qupath.lib.objects.PathObject;
+
+/**
+ * Measurement values for a list of objects, stored by column.
+ * <p>
+ * This makes it possible to read each object's {@link MeasurementList} once, and then share the values
+ * between several classifiers that need overlapping sets of measurements.
+ * Missing measurements are stored as {@code Double.NaN}.
+ *
+ * @since v0.6.0
+ * @see MeasurementTableClassifier
+ */
+public class MeasurementTable {
+
+	/**
+	 * Minimum number of objects per task when reading measurements in parallel.
+	 */
+	private static final int PARALLEL_BLOCK_SIZE = 10_000;
+
+	private final List<PathObject> pathObjects;
+	private final Map<String, double[]> columns;
+
+	private MeasurementTable(List<PathObject> pathObjects, Map<String, double[]> columns) {
+		this.pathObjects = pathObjects;
+		this.columns = columns;
+	}
+
+	/**
+	 * Create a table by reading the specified measurements from each object.
+	 * Large numbers of objects are read in parallel.
+	 * @param pathObjects the objects; each will correspond to a row in the table
+	 * @param measurementNames the names of the measurements; each will correspond to a column in the table
+	 * @return
+	 */
+	public static MeasurementTable create(Collection<? extends PathObject> pathObjects, Collection<String> measurementNames) {
+		var list = Collections.unmodifiableList(new ArrayList<PathObject>(pathObjects));
+		var names = new ArrayList<>(new LinkedHashSet<>(measurementNames));
+		int n = list.size();
+		var values = new double[names.size()][n];
+		int nBlocks = (n + PARALLEL_BLOCK_SIZE - 1) / PARALLEL_BLOCK_SIZE;
+		var stream = IntStream.range(0, nBlocks);
+		if (nBlocks > 1)
+			stream = stream.parallel();
+		stream.forEach(b -> {
+			int end = Math.min(n, (b + 1) * PARALLEL_BLOCK_SIZE);
+			for (int row = b * PARALLEL_BLOCK_SIZE; row < end; row++) {
+				var measurementList = list.get(row).getMeasurementList();
+				for (int col = 0; col < values.length; col++)
+					values[col][row] = measurementList.get(names.get(col));
+			}
+		});
+		var columns = new LinkedHashMap<String, double[]>();
+		for (int col = 0; col < values.length; col++)
+			columns.put(names.get(col), values[col]);
+		return new MeasurementTable(list, Collections.unmodifiableMap(columns));
+	}
+
+	/**
+	 * Get the objects in the table, in row order.
+	 * @return an unmodifiable list of objects
+	 */
+	public List<PathObject> getPathObjects() {
+		return pathObjects;
+	}
+
+	/**
+	 * Get the number of rows (i.e. objects) in the table.
+	 * @return
+	 */
+	public int size() {
+		return pathObjects.size();
+	}
+
+	/**
+	 * Get the names of the measurements in the table.
+	 * @return
+	 */
+	public Collection<String> getMeasurementNames() {
+		return columns.keySet();
+	}
+
+	/**
+	 * Check if the table contains a column for the specified measurement.
+	 * @param name
+	 * @return
+	 */
+	public boolean containsMeasurement(String name) {
+		return columns.containsKey(name);
+	}
+
+	/**
+	 * Get the values for a specified measurement.
+	 * <p>
+	 * Note that this returns a view of the column, rather than a copy: the values must not be modified.
+	 * @param name the measurement name
+	 * @return the values, with one entry per object, or null if the measurement is not included in the table
+	 */
+	public double[] getColumn(String name) {
+		return columns.get(name);
+	}
+
+}
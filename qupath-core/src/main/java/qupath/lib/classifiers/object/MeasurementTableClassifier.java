@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.classifiers.object;
+
+import java.util.Collection;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.classes.PathClass;
+
+/**
+ * An {@link ObjectClassifier} that can take its input from a {@link MeasurementTable}.
+ * <p>
+ * This is used by composite classifiers to read measurements once for all the classifiers they contain,
+ * and to apply all the resulting classifications in a single pass.
+ *
+ * @param <T>
+ * @since v0.6.0
+ */
+public interface MeasurementTableClassifier<T> extends ObjectClassifier<T> {
+
+	/**
+	 * Get the names of the measurements required by this classifier.
+	 * @return the measurement names, or null if the classifier cannot take its input from a {@link MeasurementTable}
+	 */
+	Collection<String> getRequiredMeasurements();
+
+	/**
+	 * Classify the objects in a table, updating classifications stored in arrays rather than the objects themselves.
+	 * <p>
+	 * The result should be the same as calling {@link #classifyObjects(ImageData, Collection, boolean)} with
+	 * {@code resetExistingClass = false}, for objects that have the classifications and probabilities given by the arrays.
+	 *
+	 * @param imageData the image data, if required to determine features
+	 * @param table the measurements for the objects to classify
+	 * @param pathClasses the current classification of each object in the table; this will be updated
+	 * @param probabilities the current classification probability of each object in the table; this will be updated
+	 * @see PathObject#setPathClass(PathClass, double)
+	 */
+	void classifyTable(ImageData<T> imageData, MeasurementTable table, PathClass[] pathClasses, double[] probabilities);
+
+}
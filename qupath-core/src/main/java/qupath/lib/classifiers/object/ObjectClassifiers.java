@@ -412,7 +412,15 @@ public class ObjectClassifiers {
 
 		@Override
 		public PathClass apply(PathObject pathObject) {
-			double val = pathObject.getMeasurementList().get(measurement);
+			return classify(pathObject.getMeasurementList().get(measurement));
+		}
+		
+		/**
+		 * Get the classification for a specific measurement value.
+		 * @param val
+		 * @return
+		 */
+		PathClass classify(double val) {
 			if (Double.isNaN(val))
 				return null;
 			if (val > threshold)
@@ -24,6 +24,7 @@ package qupath.lib.classifiers.object;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -34,7 +35,7 @@ import qupath.lib.objects.PathObjectFilter;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.classes.PathClassTools;
 
-class SimpleClassifier<T> extends AbstractObjectClassifier<T> {
+class SimpleClassifier<T> extends AbstractObjectClassifier<T> implements MeasurementTableClassifier<T> {
 	
 	private Function<PathObject, PathClass> function;
 	private Collection<PathClass> pathClasses;
@@ -74,6 +75,40 @@ class SimpleClassifier<T> extends AbstractObjectClassifier<T> {
 		return n;
 	}
 	
+	/**
+	 * Returns the measurement used for classification, or null if the classification function
+	 * doesn't use a single measurement (since it might then depend upon the current classification of the object).
+	 */
+	@Override
+	public Collection<String> getRequiredMeasurements() {
+		if (function instanceof ClassifyByMeasurementFunction measurementFunction && measurementFunction.getMeasurement() != null)
+			return List.of(measurementFunction.getMeasurement());
+		return null;
+	}
+	
+	@Override
+	public void classifyTable(ImageData<T> imageData, MeasurementTable table, PathClass[] pathClasses, double[] probabilities) {
+		double[] column = null;
+		if (function instanceof ClassifyByMeasurementFunction measurementFunction && measurementFunction.getMeasurement() != null)
+			column = table.getColumn(measurementFunction.getMeasurement());
+		var pathObjects = table.getPathObjects();
+		for (int i = 0; i < pathObjects.size(); i++) {
+			PathClass pathClass;
+			if (column == null)
+				pathClass = function.apply(pathObjects.get(i));
+			else
+				pathClass = ((ClassifyByMeasurementFunction)function).classify(column[i]);
+			if (pathClass != null) {
+				var currentClass = pathClasses[i];
+				if (currentClass == null)
+					pathClasses[i] = pathClass;
+				else
+					pathClasses[i] = PathClassTools.mergeClasses(currentClass, pathClass);
+				probabilities[i] = Double.NaN;
+			}
+		}
+	}
+	
 	@Override
 	public Map<String, Integer> getMissingFeatures(ImageData<T> imageData, Collection<? extends PathObject> pathObjects) {
 		if (function instanceof ClassifyByMeasurementFunction) {
@@ -25,6 +25,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -36,6 +37,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.awt.common.BufferedImageTools;
+import qupath.lib.color.ColorDeconvolutionStains;
+import qupath.lib.color.ColorModelFactory;
+import qupath.lib.common.GeneralTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.AbstractTileableImageServer;
 import qupath.lib.images.servers.ImageServer;
@@ -79,6 +83,11 @@ public class PixelClassificationImageServer extends AbstractTileableImageServer
 	 */
 	private Map<TileRequest, BufferedImage> tileMap;
 	
+	/**
+	 * Optional on-disk store of tiles, so that predictions can be reused across servers and sessions.
+	 */
+	private PixelClassificationTileStore tileStore;
+	
 
 	/**
 	 * Constructor.
@@ -201,6 +210,55 @@ public class PixelClassificationImageServer extends AbstractTileableImageServer
 	}
 	
 	
+	/**
+	 * Request that tiles are stored on disk, so that they can be reused by any other server that applies the same 
+	 * classifier to the same image - including after QuPath is restarted.
+	 * This also means that a long-running classification can resume where it left off.
+	 * <p>
+	 * Tiles are stored within a subdirectory of the specified directory, determined by a hash of the QuPath version, 
+	 * image path, classifier, image type and stains. 
+	 * Only 8-bit tiles are stored.
+	 * <p>
+	 * This has no effect if the server was created with a custom ID, since then the output may depend upon 
+	 * more than the classifier and image (e.g. the object hierarchy), or if the classifier can't be serialized to JSON.
+	 * 
+	 * @param directory the directory for stored tiles (e.g. within a project entry directory); may be null to stop storing tiles
+	 * @return true if tiles will be stored, false otherwise
+	 * @since v0.6.0
+	 */
+	public synchronized boolean setPersistentCacheDirectory(Path directory) {
+		if (directory == null || customID != null || getPixelType() != PixelType.UINT8) {
+			tileStore = null;
+			return false;
+		}
+		try {
+			String json = GsonTools.getInstance().toJson(classifier);
+			var stains = imageData.getColorDeconvolutionStains();
+			tileStore = PixelClassificationTileStore.create(directory,
+					GeneralTools.getVersion(),
+					server.getPath(),
+					json,
+					String.valueOf(imageData.getImageType()),
+					stains == null ? null : ColorDeconvolutionStains.getColorDeconvolutionStainsAsString(stains, 8));
+			logger.debug("Pixel classification tiles will be stored in {}", tileStore.getDirectory());
+			return true;
+		} catch (Exception e) {
+			logger.debug("Unable to store pixel classification tiles: {}", e.getLocalizedMessage());
+			tileStore = null;
+			return false;
+		}
+	}
+	
+	/**
+	 * Get the color model to use with stored tiles.
+	 */
+	private ColorModel getStoredTileColorModel() throws IOException {
+		if (colorModel == null && getMetadata().getChannelType() == ChannelType.CLASSIFICATION)
+			return ColorModelFactory.getIndexedClassificationColorModel(getMetadata().getClassificationLabels());
+		return getDefaultColorModel();
+	}
+	
+	
 	private BufferedImage tryToReadTile(TileRequest tile) {
 		try {
 			return readTile(tile);
@@ -294,6 +352,12 @@ public class PixelClassificationImageServer extends AbstractTileableImageServer
 
 	@Override
 	protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+		var store = tileStore;
+		if (store != null) {
+			var img = store.read(tileRequest, getStoredTileColorModel());
+			if (img != null)
+				return img;
+		}
 		try {
 			BufferedImage img;
 			double fullResDownsample = getDownsampleForResolution(0);
@@ -311,6 +375,8 @@ public class PixelClassificationImageServer extends AbstractTileableImageServer
 			if (colorModel != null && colorModel != img.getColorModel() && colorModel.isCompatibleRaster(img.getRaster())) {
 				img = new BufferedImage(colorModel, img.getRaster(), img.isAlphaPremultiplied(), null);
 			}
+			if (store != null)
+				store.write(tileRequest, img);
 			return img;
 		} catch (IOException e) {
 			throw e;
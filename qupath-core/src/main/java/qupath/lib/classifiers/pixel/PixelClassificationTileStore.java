@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.classifiers.pixel;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.images.servers.TileRequest;
+
+/**
+ * On-disk store of the tiles generated by applying a pixel classifier to an image.
+ * <p>
+ * Tiles are stored in a subdirectory named according to a hash of everything that determines the classification
+ * (e.g. the image path, classifier JSON, image type and stains), with one compressed file per tile.
+ * Tiles are identified by their resolution level and location, so that every level of the classification pyramid can be stored.
+ * <p>
+ * Only 8-bit tiles are stored, since these are compact and sufficient for most classifiers.
+ * Files are written to a temporary location and then moved into place, so that several processes
+ * can safely share the same directory.
+ * Problems reading or writing tiles are logged, and the tiles should then be computed as usual.
+ *
+ * @since v0.6.0
+ */
+class PixelClassificationTileStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(PixelClassificationTileStore.class);
+
+	private static final int MAGIC = 0x51505443; // QPTC
+	private static final int VERSION = 1;
+
+	private static final String TILE_EXTENSION = ".tile";
+
+	private final Path directory;
+
+	PixelClassificationTileStore(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Create a store within a parent directory, using a subdirectory determined by the specified key values.
+	 * @param parent the parent directory, shared by all stores (e.g. for an image)
+	 * @param keyValues values that together identify the classification
+	 * @return
+	 */
+	static PixelClassificationTileStore create(Path parent, String... keyValues) {
+		return new PixelClassificationTileStore(parent.resolve(createKey(keyValues)));
+	}
+
+	/**
+	 * Get the directory containing the stored tiles.
+	 * @return
+	 */
+	Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Check whether a tile can be written to the store.
+	 * @param img
+	 * @return true if the tile has 8-bit samples
+	 */
+	static boolean canStore(BufferedImage img) {
+		return img != null && img.getRaster().getTransferType() == DataBuffer.TYPE_BYTE;
+	}
+
+	/**
+	 * Read a tile from the store.
+	 * @param tile the tile request
+	 * @param colorModel the color model for the tile; this should be compatible with a raster containing the stored bands
+	 * @return the tile, or null if it hasn't been stored (or could not be read)
+	 */
+	BufferedImage read(TileRequest tile, ColorModel colorModel) {
+		var path = getPath(tile);
+		if (!Files.isRegularFile(path))
+			return null;
+		try (var stream = new DataInputStream(new InflaterInputStream(new BufferedInputStream(Files.newInputStream(path))))) {
+			if (stream.readInt() != MAGIC || stream.readInt() != VERSION) {
+				logger.debug("Unsupported tile file {}", path);
+				return null;
+			}
+			int width = stream.readInt();
+			int height = stream.readInt();
+			int nBands = stream.readInt();
+			if (width != tile.getTileWidth() || height != tile.getTileHeight()) {
+				logger.debug("Stored tile size {}x{} doesn't match request {}", width, height, tile);
+				return null;
+			}
+			var raster = colorModel.createCompatibleWritableRaster(width, height);
+			if (raster.getNumBands() != nBands || raster.getTransferType() != DataBuffer.TYPE_BYTE) {
+				logger.debug("Color model is not compatible with stored tile {}", path);
+				return null;
+			}
+			byte[] bytes = new byte[width * height];
+			int[] samples = new int[bytes.length];
+			for (int b = 0; b < nBands; b++) {
+				stream.readFully(bytes);
+				for (int i = 0; i < bytes.length; i++)
+					samples[i] = bytes[i] & 0xFF;
+				raster.setSamples(0, 0, width, height, b, samples);
+			}
+			return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+		} catch (IOException e) {
+			logger.warn("Unable to read tile from {}: {}", path, e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write a tile to the store.
+	 * Tiles that can't be stored (see {@link #canStore(BufferedImage)}) are ignored.
+	 * @param tile the tile request
+	 * @param img the tile image
+	 */
+	void write(TileRequest tile, BufferedImage img) {
+		if (!canStore(img))
+			return;
+		var path = getPath(tile);
+		Path temp = null;
+		try {
+			Files.createDirectories(path.getParent());
+			temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+			var raster = img.getRaster();
+			int width = raster.getWidth();
+			int height = raster.getHeight();
+			int nBands = raster.getNumBands();
+			var deflater = new Deflater(Deflater.BEST_SPEED);
+			try (var stream = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), deflater))) {
+				stream.writeInt(MAGIC);
+				stream.writeInt(VERSION);
+				stream.writeInt(width);
+				stream.writeInt(height);
+				stream.writeInt(nBands);
+				int[] samples = null;
+				byte[] bytes = new byte[width * height];
+				for (int b = 0; b < nBands; b++) {
+					samples = raster.getSamples(0, 0, width, height, b, samples);
+					for (int i = 0; i < bytes.length; i++)
+						bytes[i] = (byte)samples[i];
+					stream.write(bytes);
+				}
+			} finally {
+				deflater.end();
+			}
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.warn("Unable to write tile to {}: {}", path, e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+		} finally {
+			try {
+				if (temp != null)
+					Files.deleteIfExists(temp);
+			} catch (IOException e) {
+				logger.debug("Unable to delete {}", temp);
+			}
+		}
+	}
+
+	/**
+	 * Get the path to the file for a tile, using a subdirectory for each resolution level.
+	 */
+	Path getPath(TileRequest tile) {
+		String name = String.format("z%d-t%d-x%d-y%d%s", tile.getZ(), tile.getT(), tile.getImageX(), tile.getImageY(), TILE_EXTENSION);
+		return directory.resolve("level-" + tile.getLevel()).resolve(name);
+	}
+
+	/**
+	 * Create a key from a hash of the specified values.
+	 */
+	static String createKey(String... values) {
+		try {
+			var digest = MessageDigest.getInstance("SHA-256");
+			for (var value : values) {
+				digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+				digest.update((byte)0);
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is required for all Java implementations
+			throw new RuntimeException(e);
+		}
+	}
+
+}
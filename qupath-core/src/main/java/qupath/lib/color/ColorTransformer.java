@@ -29,6 +29,7 @@ import java.awt.image.IndexColorModel;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import qupath.lib.color.ColorDeconvolutionStains.DefaultColorDeconvolutionStains;
 import qupath.lib.common.ColorTools;
@@ -396,59 +397,29 @@ public class ColorTransformer {
 				throw new IllegalArgumentException("No valid H&E stains supplied!");
 			}
 		case Stain_1:
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 1);
-			}
+			getDeconvolvedPixels(buf, stains, new float[][] {pixels}, 1);
 			break;
 		case Eosin_H_E:
 			if (stains == null || !stains.isH_E()) {
 				throw new IllegalArgumentException("No valid H&E stains supplied!");
 			}
 		case Stain_2:
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 2);
-			}
+			getDeconvolvedPixels(buf, stains, new float[][] {pixels}, 2);
 			break;
 		case Stain_3:
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 3);
-			}
+			getDeconvolvedPixels(buf, stains, new float[][] {pixels}, 3);
 			break;
 		case Hematoxylin_H_DAB:
 			if (stains == null || !stains.isH_DAB()) {
 				throw new IllegalArgumentException("No valid H-DAB stains supplied!");
 			}
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 1);
-			}
+			getDeconvolvedPixels(buf, stains, new float[][] {pixels}, 1);
 			break;
 		case DAB_H_DAB:
 			if (stains == null || !stains.isH_DAB()) {
 				throw new IllegalArgumentException("No valid H-DAB stains supplied!");
 			}
-			od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
-			od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
-			od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
-			inverse = stains.getMatrixInverse();
-			for (int i = 0; i < buf.length; i++) {
-				pixels[i] = ColorTransformer.deconvolve(buf[i], inverse, od_lut_red, od_lut_green, od_lut_blue, 2);
-			}
+			getDeconvolvedPixels(buf, stains, new float[][] {pixels}, 2);
 			break;
 			
 		case Hematoxylin_H_E_8_bit:
@@ -566,6 +537,73 @@ public class ColorTransformer {
 	}
 	
 	
+	/**
+	 * Apply color deconvolution to all pixels in a packed (A)RGB array, computing one or more stains.
+	 * <p>
+	 * This gives the same result as calling {@link #deconvolve(int, double[][], double[], double[], double[], int)} for each pixel, 
+	 * but the optical density lookup tables are combined with the inverse stain matrix in advance (and shared between stains), 
+	 * so that each stain value requires only three lookups and two additions.
+	 * 
+	 * @param buf the input pixel buffer to be transformed
+	 * @param stains the stains to use for deconvolution
+	 * @param pixels optional output arrays to store the results (one per stain); if null or of the wrong length, new arrays will be created
+	 * @param stainNumbers the stains to calculate (1, 2 or 3); if empty, all three stains will be calculated
+	 * @return either the input array {@code pixels}, or a new array if required
+	 * @since v0.6.0
+	 */
+	public static float[][] getDeconvolvedPixels(final int[] buf, final ColorDeconvolutionStains stains, float[][] pixels, int... stainNumbers) {
+		Objects.requireNonNull(stains, "Stains are required for color deconvolution!");
+		if (stainNumbers.length == 0)
+			stainNumbers = new int[] {1, 2, 3};
+		int nStains = stainNumbers.length;
+		if (pixels == null || pixels.length != nStains)
+			pixels = new float[nStains][];
+		
+		double[] od_lut_red = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
+		double[] od_lut_green = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
+		double[] od_lut_blue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
+		double[][] inverse = stains.getMatrixInverse();
+		
+		double[][] lutRed = new double[nStains][];
+		double[][] lutGreen = new double[nStains][];
+		double[][] lutBlue = new double[nStains][];
+		for (int s = 0; s < nStains; s++) {
+			int stain = stainNumbers[s];
+			if (stain < 1 || stain > 3)
+				throw new IllegalArgumentException("Invalid stain number " + stain + ", must be >= 1 and <= 3");
+			if (pixels[s] == null || pixels[s].length != buf.length)
+				pixels[s] = new float[buf.length];
+			lutRed[s] = weightedLUT(od_lut_red, inverse[0][stain-1]);
+			lutGreen[s] = weightedLUT(od_lut_green, inverse[1][stain-1]);
+			lutBlue[s] = weightedLUT(od_lut_blue, inverse[2][stain-1]);
+		}
+		
+		// Computing each stain separately is faster than interleaving them, because the lookup tables and output
+		// array for a single stain can be kept in registers
+		for (int s = 0; s < nStains; s++) {
+			float[] px = pixels[s];
+			double[] lr = lutRed[s], lg = lutGreen[s], lb = lutBlue[s];
+			for (int i = 0; i < buf.length; i++) {
+				int rgb = buf[i];
+				px[i] = (float)(lr[(rgb >> 16) & 0xff] + lg[(rgb >> 8) & 0xff] + lb[rgb & 0xff]);
+			}
+		}
+		return pixels;
+	}
+	
+	/**
+	 * Multiply all values in an optical density lookup table by a weight (from the inverse stain matrix).
+	 * The products are the same as those calculated by {@link #deconvolve(int, double[][], double[], double[], double[], int)}, 
+	 * so results are identical.
+	 */
+	private static double[] weightedLUT(double[] od_lut, double weight) {
+		double[] lut = new double[od_lut.length];
+		for (int i = 0; i < lut.length; i++)
+			lut[i] = od_lut[i] * weight;
+		return lut;
+	}
+	
+	
 	/**
 	 * Calculate magnitude of rejection of pixel OD onto stain OD.
 	 * 
@@ -28,22 +28,34 @@ import java.awt.image.ColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.awt.common.BufferedImageTools;
 import qupath.lib.color.ColorModelFactory;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
 import qupath.lib.regions.RegionRequest;
 
@@ -294,6 +306,147 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 		// Ensure all tiles are either cached or pending before we continue
 		prerequestTiles(tiles);
 
+		return assembleRegion(request, tiles, this::getTile);
+	}
+	
+	
+	/**
+	 * Read multiple regions, reading each of the tiles that they require only once.
+	 * <p>
+	 * The distinct tiles are read in parallel, ordered by resolution level, plane and then position (row by row).
+	 * Each region is assembled and passed to the consumer as soon as all its tiles are available, 
+	 * and tiles are only retained until all the regions that require them have been assembled.
+	 */
+	@Override
+	public void readRegions(Collection<RegionRequest> requests, BiConsumer<RegionRequest, ? super BufferedImage> consumer) throws IOException {
+		var cache = getCache();
+		
+		// Identify the tiles needed for each request, and the requests that need each tile
+		Map<RegionRequest, Collection<TileRequest>> tilesForRequest = new LinkedHashMap<>();
+		Map<TileRequest, List<RegionRequest>> requestsForTile = new HashMap<>();
+		for (var request : new LinkedHashSet<>(requests)) {
+			BufferedImage img = request.getPath().equals(getPath()) && cache != null ? cache.get(request) : null;
+			if (img != null) {
+				consumer.accept(request, BufferedImageTools.duplicate(img));
+				continue;
+			}
+			var tiles = getTileRequestManager().getTileRequests(request);
+			if (tiles.isEmpty()) {
+				consumer.accept(request, null);
+				continue;
+			}
+			tilesForRequest.put(request, tiles);
+			for (var tile : tiles)
+				requestsForTile.computeIfAbsent(tile, t -> new ArrayList<>()).add(request);
+		}
+		if (tilesForRequest.isEmpty())
+			return;
+		
+		// Nothing to gain from reading in parallel if we only need one tile
+		if (requestsForTile.size() == 1) {
+			for (var request : tilesForRequest.keySet())
+				consumer.accept(request, readRegion(request));
+			return;
+		}
+		
+		var tiles = new ArrayList<>(requestsForTile.keySet());
+		tiles.sort(TILE_LOCALITY_COMPARATOR);
+		logger.trace("Reading {} tiles for {} regions", tiles.size(), tilesForRequest.size());
+
+		Map<RegionRequest, Integer> remainingTiles = new HashMap<>();
+		for (var entry : tilesForRequest.entrySet())
+			remainingTiles.put(entry.getKey(), entry.getValue().size());
+		Map<TileRequest, Integer> remainingRequests = new HashMap<>();
+		for (var entry : requestsForTile.entrySet())
+			remainingRequests.put(entry.getKey(), entry.getValue().size());
+		Map<TileRequest, BufferedImage> tileImages = new HashMap<>();
+		
+		// Avoid blocking common pool threads waiting on other tasks in the same pool (e.g. if called when reading a tile)
+		Executor executor = Thread.currentThread() instanceof ForkJoinWorkerThread ? Runnable::run : ForkJoinPool.commonPool();
+		var service = new ExecutorCompletionService<TileResult>(executor);
+		int maxPending = ThreadTools.getParallelism();
+		List<Future<TileResult>> futures = new ArrayList<>();
+		var iterator = tiles.iterator();
+		int nPending = 0;
+		try {
+			while (iterator.hasNext() || nPending > 0) {
+				while (iterator.hasNext() && nPending < maxPending) {
+					var tile = iterator.next();
+					futures.add(service.submit(() -> new TileResult(tile, getTile(tile))));
+					nPending++;
+				}
+				var result = service.take().get();
+				nPending--;
+				tileImages.put(result.tile(), result.img());
+				for (var request : requestsForTile.get(result.tile())) {
+					if (remainingTiles.merge(request, -1, Integer::sum) > 0)
+						continue;
+					var requestTiles = tilesForRequest.get(request);
+					consumer.accept(request, createRegion(request, requestTiles, tileImages::get));
+					for (var tile : requestTiles) {
+						if (remainingRequests.merge(tile, -1, Integer::sum) == 0)
+							tileImages.remove(tile);
+					}
+				}
+			}
+		} catch (ExecutionException | InterruptedException e) {
+			if (e instanceof InterruptedException)
+				Thread.currentThread().interrupt();
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException(e);
+		} finally {
+			// Don't interrupt running tasks, since some readers close their files when interrupted
+			for (var future : futures)
+				future.cancel(false);
+		}
+	}
+	
+	private record TileResult(TileRequest tile, BufferedImage img) {}
+	
+	private static final Comparator<TileRequest> TILE_LOCALITY_COMPARATOR = Comparator.comparingInt(TileRequest::getLevel)
+			.thenComparingInt(TileRequest::getT)
+			.thenComparingInt(TileRequest::getZ)
+			.thenComparingInt(TileRequest::getTileY)
+			.thenComparingInt(TileRequest::getTileX);
+	
+	/**
+	 * Create the image for a region request from tiles that have already been read.
+	 */
+	private BufferedImage createRegion(RegionRequest request, Collection<TileRequest> tiles, TileSupplier tileSupplier) throws IOException {
+		if (tiles.size() == 1) {
+			var tile = tiles.iterator().next();
+			if (tile.getRegionRequest().equals(request)) {
+				var imgTile = tileSupplier.getTile(tile);
+				return imgTile == null ? null : BufferedImageTools.duplicate(imgTile);
+			}
+		}
+		return assembleRegion(request, tiles, tileSupplier);
+	}
+	
+	
+	/**
+	 * Function to supply the image for a tile.
+	 */
+	@FunctionalInterface
+	private interface TileSupplier {
+		
+		BufferedImage getTile(TileRequest tile) throws IOException;
+		
+	}
+	
+	
+	/**
+	 * Create the image for a region request from the tiles that it requires.
+	 * @param request the region being requested
+	 * @param tiles the tiles that overlap the region
+	 * @param tileSupplier supplier for the image of each tile
+	 * @return the image for the region
+	 * @throws IOException
+	 */
+	private BufferedImage assembleRegion(RegionRequest request, Collection<TileRequest> tiles, TileSupplier tileSupplier) throws IOException {
+		boolean singleTile = tiles.size() == 1;
+
 		// Determine output image size
 		int width = (int)Math.max(1, Math.round(request.getWidth() / request.getDownsample()));
 		int height = (int)Math.max(1, Math.round(request.getHeight() / request.getDownsample()));
@@ -310,7 +463,7 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 				g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
 			
 			for (TileRequest tileRequest : tiles) {
-				BufferedImage imgTile = getTile(tileRequest);
+				BufferedImage imgTile = tileSupplier.getTile(tileRequest);
 				g2d.drawImage(imgTile, tileRequest.getImageX(), tileRequest.getImageY(), tileRequest.getImageWidth(), tileRequest.getImageHeight(), null);
 			}
 			g2d.dispose();
@@ -345,7 +498,7 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 			boolean isEmptyRegion = true;
 			if (singleTile) {
 				// Use the raster directly, if appropriate (because copying can be expensive)
-				BufferedImage imgTile = getTile(tiles.iterator().next());
+				BufferedImage imgTile = tileSupplier.getTile(tiles.iterator().next());
 				if (imgTile != null) {
 					raster = imgTile.getRaster();
 					colorModel = imgTile.getColorModel();
@@ -354,7 +507,7 @@ public abstract class AbstractTileableImageServer extends AbstractImageServer<Bu
 				}
 			} else {
 				for (var tileRequest : tiles) {
-					BufferedImage imgTile = getTile(tileRequest);
+					BufferedImage imgTile = tileSupplier.getTile(tileRequest);
 					if (imgTile != null && !isEmptyTile(imgTile)) {
 						isEmptyRegion = false;
 						// Figure out coordinates
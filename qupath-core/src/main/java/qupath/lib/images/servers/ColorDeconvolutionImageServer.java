@@ -28,9 +28,9 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferFloat;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
-import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
@@ -115,6 +115,10 @@ class ColorDeconvolutionImageServer extends TransformingImageServer<BufferedImag
 				.build();
 	}
 	
+	private int[] getValidStainNumbers() {
+		return Arrays.stream(stainNumbers).filter(s -> s >= 1 && s <= 3).toArray();
+	}
+	
 	private ColorModel getColorModel() {
 		if (colorModel == null)
 			this.colorModel = ColorModelFactory.getProbabilityColorModel32Bit(getMetadata().getChannels());
@@ -170,16 +174,11 @@ class ColorDeconvolutionImageServer extends TransformingImageServer<BufferedImag
 		int nChannels = methods.size();
 		
 		SampleModel model = new BandedSampleModel(DataBuffer.TYPE_FLOAT, w, h, nChannels);
-		float[][] bytes = new float[nChannels][w*h];
-		DataBufferFloat buffer = new DataBufferFloat(bytes, w*h);
-		WritableRaster raster = Raster.createWritableRaster(model, buffer, null);
 		
+		// All stains are deconvolved in a single pass, directly into the banks of the output buffer
 		int[] rgb = img.getRGB(0, 0, w, h, null, 0, img.getWidth());
-		float[] pixels = new float[w * h];
-		for (int b = 0; b < methods.size(); b++) {
-			ColorTransformer.getTransformedPixels(rgb, methods.get(b), pixels, stains);			
-			raster.setSamples(0, 0, img.getWidth(), img.getHeight(), b, pixels);
-		}
+		float[][] bytes = ColorTransformer.getDeconvolvedPixels(rgb, stains, null, getValidStainNumbers());
+		DataBufferFloat buffer = new DataBufferFloat(bytes, w*h);
 		return new BufferedImage(getColorModel(), Raster.createWritableRaster(model, buffer, null), false, null);
 		
 //		WritableRaster raster = WritableRaster.createInterleavedRaster(DataBuffer.TYPE_FLOAT, img.getWidth(), img.getHeight(), 1, null);
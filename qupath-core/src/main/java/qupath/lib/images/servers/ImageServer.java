@@ -26,8 +26,12 @@ package qupath.lib.images.servers;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 
 import org.slf4j.LoggerFactory;
 
@@ -275,6 +279,49 @@ public interface ImageServer<T> extends AutoCloseable {
 		return readRegion(downsample, x, y, width, height, 0, 0);
 	}
 
+	/**
+	 * Read multiple image regions, passing each to a consumer as soon as it is available.
+	 * <p>
+	 * This can be much more efficient than calling {@link #readRegion(RegionRequest)} for each request 
+	 * whenever requests are small and overlapping, because implementations can avoid reading the same pixels 
+	 * more than once and may read pixels in parallel.
+	 * <p>
+	 * The consumer is always called from the calling thread, once for each distinct request, but not necessarily 
+	 * in the order of the requests.
+	 * As with {@link #readRegion(RegionRequest)}, the image passed to the consumer may be null if no pixels are 
+	 * available for a region.
+	 * 
+	 * @param requests the regions for which pixels are requested
+	 * @param consumer consumer to accept each request and its pixels
+	 * @throws IOException if any region could not be read
+	 * @see #readRegions(Collection)
+	 * @since v0.6.0
+	 * 
+	 * @implNote The default implementation calls {@link #readRegion(RegionRequest)} for each distinct request in turn.
+	 */
+	public default void readRegions(Collection<RegionRequest> requests, BiConsumer<RegionRequest, ? super T> consumer) throws IOException {
+		for (var request : new LinkedHashSet<>(requests))
+			consumer.accept(request, readRegion(request));
+	}
+	
+	/**
+	 * Read multiple image regions, returning a map containing the pixels for each distinct request.
+	 * The iteration order of the map matches the order of the requests.
+	 * 
+	 * @param requests the regions for which pixels are requested
+	 * @return a map from each request to its pixels (which may be null if no pixels are available)
+	 * @throws IOException if any region could not be read
+	 * @see #readRegions(Collection, BiConsumer)
+	 * @since v0.6.0
+	 */
+	public default Map<RegionRequest, T> readRegions(Collection<RegionRequest> requests) throws IOException {
+		Map<RegionRequest, T> results = new LinkedHashMap<>();
+		for (var request : requests)
+			results.put(request, null);
+		readRegions(results.keySet(), results::put);
+		return results;
+	}
+
 	
 	/**
 	 * A string describing the type of server, for example the name of the library used (Openslide, Bioformats...)
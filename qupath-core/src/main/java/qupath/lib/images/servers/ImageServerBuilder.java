@@ -361,7 +361,7 @@ public interface ImageServerBuilder<T> {
 		protected ImageServer<T> buildOriginal() throws Exception {
 			boolean failedWithRequestedProvider = false;
 			if (providerClassName != null) {
-				for (ImageServerBuilder<?> provider : ImageServerProvider.getInstalledImageServerBuilders()) {
+				for (ImageServerBuilder<?> provider : ImageServerProvider.getImageServerBuildersByClassName(providerClassName)) {
 					if (provider.getClass().getName().equals(providerClassName)) {
 						ImageServer<T> server = (ImageServer<T>)provider.buildServer(uri, args);
 						if (server != null)
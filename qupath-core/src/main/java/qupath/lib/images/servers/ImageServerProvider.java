@@ -63,6 +63,12 @@ public class ImageServerProvider {
 	@SuppressWarnings("rawtypes")
 	private static ServiceLoader<ImageServerBuilder> serviceLoader = ServiceLoader.load(ImageServerBuilder.class);
 	
+	/**
+	 * Builders instantiated on request by class name, so that we don't need to instantiate all of them.
+	 * Access should be synchronized on the service loader.
+	 */
+	private static Map<Class<?>, ImageServerBuilder<?>> lazyBuilders = new HashMap<>();
+	
 	/**
 	 * Set the cache to be used for image tiles of a specific type.
 	 * @param <T>
@@ -94,6 +100,7 @@ public class ImageServerProvider {
 	 */
 	public static void setServiceLoader(@SuppressWarnings("rawtypes") final ServiceLoader<ImageServerBuilder> newLoader) {
 		serviceLoader = newLoader;
+		lazyBuilders = new HashMap<>();
 	}
 
 	/**
@@ -110,6 +117,38 @@ public class ImageServerProvider {
 		return builders;
 	}
 	
+	/**
+	 * Request the available {@link ImageServerBuilder ImageServerBuilders} with any of the specified class names.
+	 * <p>
+	 * Unlike {@link #getInstalledImageServerBuilders()}, this avoids instantiating builders unless their 
+	 * fully-qualified or simple class name matches.
+	 * This can considerably reduce startup time when many image readers are installed, but only one is needed.
+	 * <p>
+	 * Because builders can also match alternative names through {@link ImageServerBuilder#matchClassName(String...)}, 
+	 * all builders are instantiated and checked if none has a matching class name.
+	 * 
+	 * @param classNames the requested class names
+	 * @return a list of matching builders; this may be empty
+	 * @since v0.6.0
+	 */
+	public static List<ImageServerBuilder<?>> getImageServerBuildersByClassName(String... classNames) {
+		var names = new HashSet<>(Arrays.asList(classNames));
+		List<ImageServerBuilder<?>> builders = new ArrayList<>();
+		synchronized (serviceLoader) {
+			serviceLoader.stream()
+				.filter(p -> names.contains(p.type().getName()) || names.contains(p.type().getSimpleName()))
+				.forEach(p -> builders.add(lazyBuilders.computeIfAbsent(p.type(), t -> p.get())));
+		}
+		if (builders.isEmpty()) {
+			logger.debug("No builder classes found matching {} - will check all builders", names);
+			for (var builder : getInstalledImageServerBuilders()) {
+				if (builder.matchClassName(classNames))
+					builders.add(builder);
+			}
+		}
+		return builders;
+	}
+	
 	/**
 	 * Request all available {@link ImageServerBuilder ImageServerBuilders} supporting a given image class.
 	 * @param imageClass 
@@ -185,22 +224,22 @@ public class ImageServerProvider {
 			args = Arrays.copyOfRange(args, i, args.length);
 		}
 		
-		// Check which providers we can use
+		// Check which providers we can use (only instantiating those requested, if possible)
+		List<ImageServerBuilder<?>> providers = requestedClassnames.isEmpty() ? getInstalledImageServerBuilders() :
+			getImageServerBuildersByClassName(requestedClassnames.toArray(String[]::new));
 		List<UriImageSupport<T>> supports = new ArrayList<>();
-		synchronized(serviceLoader) {
-			for (ImageServerBuilder<?> provider : serviceLoader) {
-				try {
-					if (!cls.isAssignableFrom(provider.getImageType()))
-						continue;
-					// Check classnames
-					if (!requestedClassnames.isEmpty() && !requestedClassnames.contains(provider.getClass().getName()) && !requestedClassnames.contains(provider.getClass().getSimpleName()))
-						continue;
-					UriImageSupport<T> support = (UriImageSupport<T>)provider.checkImageSupport(uri, args);
-					if (support != null && support.getSupportLevel() > 0f)
-						supports.add(support);
-				} catch (Exception e) {
-					logger.error("Error testing provider " + provider, e);
-				}
+		for (ImageServerBuilder<?> provider : providers) {
+			try {
+				if (!cls.isAssignableFrom(provider.getImageType()))
+					continue;
+				// Check classnames
+				if (!requestedClassnames.isEmpty() && !requestedClassnames.contains(provider.getClass().getName()) && !requestedClassnames.contains(provider.getClass().getSimpleName()))
+					continue;
+				UriImageSupport<T> support = (UriImageSupport<T>)provider.checkImageSupport(uri, args);
+				if (support != null && support.getSupportLevel() > 0f)
+					supports.add(support);
+			} catch (Exception e) {
+				logger.error("Error testing provider " + provider, e);
 			}
 		}
 		
@@ -25,6 +25,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -102,6 +103,7 @@ public class ImageServers {
 			.registerSubtype(NormalizedImageServerBuilder.class, "normalized")
 			.registerSubtype(TypeConvertImageServerBuilder.class, "typeConvert")
 			.registerSubtype(SlicedImageServerBuilder.class, "sliced")
+			.registerSubtype(MappedTileImageServerBuilder.class, "mappedTiles")
 			;
 
 	private static GsonTools.SubTypeAdapterFactory<BufferedImageNormalizer> normalizerFactory =
@@ -347,21 +349,21 @@ public class ImageServers {
 	 * @return a list or {@link UriImageSupport}, ranked in descending order of support level.
 	 * @throws IOException
 	 */
+	@SuppressWarnings("unchecked")
 	public static List<UriImageSupport<BufferedImage>> getAllImageSupports(URI uri, String... args) throws IOException {
 		
 		var serverArgs = parseServerArgs(args);
 		String[] requestedClassnames = serverArgs.requestedClassnames;
 		
 		List<UriImageSupport<BufferedImage>> supports = new ArrayList<>();
-		var availableBuilders = ImageServerProvider.getInstalledImageServerBuilders(BufferedImage.class);
 		List<Exception> exceptions = new ArrayList<>();
 		
-		// If we've requested a particular builder, only check that
+		// If we've requested a particular builder, only check that (and avoid instantiating the others)
 		if (requestedClassnames.length > 0) {
-			for (var builder : availableBuilders) {
-				if (builder.matchClassName(requestedClassnames)) {
+			for (var builder : ImageServerProvider.getImageServerBuildersByClassName(requestedClassnames)) {
+				if (BufferedImage.class.equals(builder.getImageType()) && builder.matchClassName(requestedClassnames)) {
 					try {
-						var support = getImageSupport(builder, uri, serverArgs);
+						var support = getImageSupport((ImageServerBuilder<BufferedImage>)builder, uri, serverArgs);
 						if (support != null)
 							supports.add(support);
 						else
@@ -376,7 +378,7 @@ public class ImageServers {
 			}
 		} else {
 			// If we don't know what builder we want, check all of them
-			for (var builder : availableBuilders) {
+			for (var builder : ImageServerProvider.getInstalledImageServerBuilders(BufferedImage.class)) {
 				try {
 					var support = getImageSupport(builder, uri, serverArgs);
 					if (support != null && support.getSupportLevel() > 0f)
@@ -531,6 +533,35 @@ public class ImageServers {
 		
 	}
 
+	static class MappedTileImageServerBuilder extends AbstractServerBuilder<BufferedImage> {
+
+		private URI uri;
+
+		MappedTileImageServerBuilder(ImageServerMetadata metadata, URI uri) {
+			super(metadata);
+			this.uri = uri;
+		}
+
+		@Override
+		protected ImageServer<BufferedImage> buildOriginal() throws Exception {
+			return MappedTileImageServer.open(Paths.get(uri));
+		}
+
+		@Override
+		public Collection<URI> getURIs() {
+			return Collections.singletonList(uri);
+		}
+
+		@Override
+		public ServerBuilder<BufferedImage> updateURIs(Map<URI, URI> updateMap) {
+			var newURI = updateMap.get(uri);
+			if (newURI == null)
+				return this;
+			return new MappedTileImageServerBuilder(getMetadata().orElse(null), newURI);
+		}
+
+	}
+
 	static class SlicedImageServerBuilder extends AbstractServerBuilder<BufferedImage> {
 
 		private final ServerBuilder<BufferedImage> builder;
@@ -21,30 +21,29 @@
 
 package qupath.lib.images.servers;
 
-import java.awt.BasicStroke;
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BandedSampleModel;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -54,7 +53,6 @@ import org.slf4j.LoggerFactory;
 
 import qupath.lib.color.ColorMaps;
 import qupath.lib.color.ColorModelFactory;
-import qupath.lib.color.ColorToolsAwt;
 import qupath.lib.common.ColorTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
@@ -92,6 +90,17 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 	private static final ColorModel COLOR_MODEL_GRAY_UINT8 = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY).getColorModel();
 	private static final ColorModel COLOR_MODEL_GRAY_UINT16 = new BufferedImage(1, 1, BufferedImage.TYPE_USHORT_GRAY).getColorModel();
 
+	/**
+	 * Offset applied to wide lines (in output pixels), so that lines with integer coordinates are drawn
+	 * on the same pixels as with Java2D's default stroke normalization.
+	 */
+	private static final double STROKE_OFFSET = 0.25;
+
+	/**
+	 * Offset applied to thin lines (in output pixels), so that coordinates are rounded to the nearest pixel as with Java2D.
+	 */
+	private static final double THIN_LINE_OFFSET = 0.5;
+
 	private PathObjectHierarchy hierarchy;
 
 	private ColorModel colorModel;
@@ -105,7 +114,12 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 	private int maxLabel;
 
 	private Map<PathObject, Integer> instanceClassMap = null;
-	private Map<Integer, PathObject> instanceClassMapInverse = null;
+
+	/**
+	 * Cached edges for ROIs that span multiple tiles, so that these don't need to be flattened (or stroked) for every tile.
+	 */
+	private final Map<ROI, ScanlineRasterizer.Edges> fillEdgeCache = Collections.synchronizedMap(new WeakHashMap<>());
+	private final Map<ROI, StrokeEdges> strokeEdgeCache = Collections.synchronizedMap(new WeakHashMap<>());
 
 	private LabeledImageServer(final ImageData<BufferedImage> imageData, double downsample, int tileWidth, int tileHeight, LabeledServerParameters params, boolean multichannelOutput) {
 		super();
@@ -128,11 +142,9 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 				Collections.shuffle(pathObjects, new Random(100L));
 			Integer count = multichannelOutput ? 0 : 1;
 			instanceClassMap = new HashMap<>();
-			instanceClassMapInverse = new HashMap<>();
 			for (var pathObject : pathObjects) {
 				var pathClass = instanceLabelToClass(count);
 				instanceClassMap.put(pathObject, count);
-				instanceClassMapInverse.put(count, pathObject);
 				classificationLabels.put(count, pathClass);
 				params.labelColors.put(count, pathClass.getColor());
 				params.labels.put(pathClass, count);
@@ -906,12 +918,7 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 		}
 		DataBuffer buffer = new DataBufferByte(dataArray, tileWidth * tileHeight);
 
-		int[] offsets = new int[nChannels];
-		for (int b = 0; b < nChannels; b++)
-			offsets[b] = b * tileWidth * tileHeight;
-
 		var sampleModel = new BandedSampleModel(buffer.getDataType(), tileWidth, tileHeight, nChannels);
-//		var sampleModel = new ComponentSampleModel(buffer.getDataType(), tileWidth, tileHeight, 1, tileWidth, offsets);
 
 		var raster = WritableRaster.createWritableRaster(sampleModel, buffer, null);
 
@@ -922,22 +929,12 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 		int width = tileRequest.getTileWidth();
 		int height = tileRequest.getTileHeight();
 		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-		WritableRaster raster = img.getRaster();
-		Graphics2D g2d = img.createGraphics();
+		byte[] data = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
 
 		if (!pathObjects.isEmpty()) {
 
 			RegionRequest request = tileRequest.getRegionRequest();
-			double downsampleFactor = request.getDownsample();
-
-			g2d.setClip(0, 0, width, height);
-			double scale = 1.0/downsampleFactor;
-			g2d.scale(scale, scale);
-			g2d.translate(-request.getX(), -request.getY());
-			g2d.setColor(Color.WHITE);
-
-			BasicStroke stroke = new BasicStroke((float)(params.lineThickness * tileRequest.getDownsample()));
-			g2d.setStroke(stroke);
+			ScanlineRasterizer.SpanConsumer consumer = (y, x0, x1) -> Arrays.fill(data, y * width + x0, y * width + x1, (byte)255);
 
 			// We want to order consistently to avoid confusing overlaps
 			for (var entry : params.labels.entrySet()) {
@@ -947,19 +944,7 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 				for (var pathObject : pathObjects) {
 					if (getPathClass(pathObject) == pathClass) {
 						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea())
-							g2d.fill(roi.getShape());
-						else if (roi.isLine())
-							g2d.draw(roi.getShape());
-						else if (roi.isPoint()) {
-							for (var p : roi.getAllPoints()) {
-								int x = (int)((p.getX() - request.getX()) / downsampleFactor);
-								int y = (int)((p.getY() - request.getY()) / downsampleFactor);
-								if (x >= 0 && x < width && y >= 0 && y < height) {
-									raster.setSample(x, y, 0, 255);
-								}
-							}
-						}
+						rasterize(roi, request, width, height, consumer);
 					}
 				}
 			}
@@ -970,165 +955,185 @@ public class LabeledImageServer extends AbstractTileableImageServer implements G
 					var pathClass = getPathClass(pathObject);
 					if (params.labels.containsKey(pathClass)) { // && !PathClassTools.isIgnoredClass(pathObject.getPathClass())) {
 						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea()) {
-							var shape = roi.getShape();
-							g2d.draw(shape);
-						}
+						if (roi.isArea())
+							rasterizeBoundary(roi, request, width, height, consumer);
 					}
 				}
 			}
 		}
 
-		g2d.dispose();
 		return img;
 	}
 
 
-	private static Color getColorForLabel(int label, boolean doRGB) {
-		if (doRGB)
-			return new Color(label, false);
-		return ColorToolsAwt.getCachedColor(label, label, label);
-	}
-
-
 	private BufferedImage createIndexedColorTile(TileRequest tileRequest, Collection<PathObject> pathObjects) {
 
 		RegionRequest request = tileRequest.getRegionRequest();
 
-		double downsampleFactor = request.getDownsample();
-
-		// Fill in the background color
+		// Fill in the background label
 		int width = tileRequest.getTileWidth();
 		int height = tileRequest.getTileHeight();
-		boolean doRGB = maxLabel > 255;
-		// If we have > 255 labels, we can only use Graphics2D if we pretend to have an RGB image
-		BufferedImage img = doRGB ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB) : new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-		WritableRaster raster = img.getRaster();
-
-		Graphics2D g2d = img.createGraphics();
+		int[] labels = new int[width * height];
 		int bgLabel = params.labels.get(params.unannotatedClass);
-		Color color = getColorForLabel(bgLabel, doRGB);
-		g2d.setColor(color);
-		g2d.fillRect(0, 0, width, height);
-
-		// Optimization... for instance maps with large numbers of objects, we'll test for 'contains'
-		// so we want to ensure we have a set
-		if (instanceClassMapInverse != null && pathObjects.size() > 5 && !(pathObjects instanceof Set))
-			pathObjects = new HashSet<>(pathObjects);
-
+		if (bgLabel != 0)
+			Arrays.fill(labels, bgLabel);
 
 		if (!pathObjects.isEmpty()) {
-			g2d.setClip(0, 0, width, height);
-			double scale = 1.0/downsampleFactor;
-			g2d.scale(scale, scale);
-			g2d.translate(-request.getX(), -request.getY());
-
-			BasicStroke stroke = new BasicStroke((float)(params.lineThickness * tileRequest.getDownsample()));
-			g2d.setStroke(stroke);
-
 			// We want to order consistently to avoid confusing overlaps
-			for (var entry : params.labels.entrySet()) {
-				var pathClass = getPathClass(entry.getKey());
-				int c = entry.getValue();
-				color = getColorForLabel(c, doRGB);
-				List<PathObject> toDraw;
-				if (instanceClassMapInverse != null) {
-					var temp = instanceClassMapInverse.get(c);
-					if (temp == null || !pathObjects.contains(temp))
-						continue;
-					toDraw = Collections.singletonList(temp);
-				} else
-					toDraw = pathObjects
-							.stream()
-							.filter(p -> getPathClass(p) == pathClass)
-							.toList();
-
+			if (instanceClassMap != null) {
+				// For instance labels, there is one label per object - so only consider the objects in this tile,
+				// sorted by label (which gives the same order as iterating through all the labels)
+				var toDraw = pathObjects.stream()
+						.filter(instanceClassMap::containsKey)
+						.sorted(Comparator.comparingInt(instanceClassMap::get))
+						.toList();
 				for (var pathObject : toDraw) {
+					int c = instanceClassMap.get(pathObject);
 					var roi = params.roiFunction.apply(pathObject);
-					g2d.setColor(color);
-					if (roi.isArea())
-						g2d.fill(roi.getShape());
-					else if (roi.isLine())
-						g2d.draw(roi.getShape());
-					else if (roi.isPoint()) {
-						for (var p : roi.getAllPoints()) {
-							int x = (int)((p.getX() - request.getX()) / downsampleFactor);
-							int y = (int)((p.getY() - request.getY()) / downsampleFactor);
-							if (x >= 0 && x < width && y >= 0 && y < height) {
-								if (doRGB)
-									img.setRGB(x, y, color.getRGB());
-								else
-									raster.setSample(x, y, 0, c);
-							}
-						}
+					rasterize(roi, request, width, height, (y, x0, x1) -> Arrays.fill(labels, y * width + x0, y * width + x1, c));
+				}
+			} else {
+				for (var entry : params.labels.entrySet()) {
+					var pathClass = getPathClass(entry.getKey());
+					int c = entry.getValue();
+					ScanlineRasterizer.SpanConsumer consumer = (y, x0, x1) -> Arrays.fill(labels, y * width + x0, y * width + x1, c);
+					for (var pathObject : pathObjects) {
+						if (getPathClass(pathObject) == pathClass)
+							rasterize(params.roiFunction.apply(pathObject), request, width, height, consumer);
 					}
 				}
 			}
 			for (var entry : params.boundaryLabels.entrySet()) {
 				int c = entry.getValue();
-				color = getColorForLabel(c, doRGB);
+				ScanlineRasterizer.SpanConsumer consumer = (y, x0, x1) -> Arrays.fill(labels, y * width + x0, y * width + x1, c);
 				for (var pathObject : pathObjects) {
-//					if (pathObject.getPathClass() == pathClass) {
 					var pathClass = getPathClass(pathObject);
 					if (params.labels.containsKey(pathClass)) {// && !PathClassTools.isIgnoredClass(pathObject.getPathClass())) {
 						var roi = params.roiFunction.apply(pathObject);
-						if (roi.isArea()) {
-							g2d.setColor(color);
-							g2d.draw(roi.getShape());
-						}
+						if (roi.isArea())
+							rasterizeBoundary(roi, request, width, height, consumer);
 					}
 				}
 			}
 		}
-		g2d.dispose();
-		if (doRGB) {
-			// Resort to RGB if we have to
-			WritableRaster shortRaster = null;
-			int w = img.getWidth();
-			int h = img.getHeight();
-			switch (getPixelType()) {
-				case UINT8:
-					return img;
-				case FLOAT32:
-					shortRaster = WritableRaster.createWritableRaster(
-							new BandedSampleModel(DataBuffer.TYPE_FLOAT, w, h, 1),
-							null);
-					break;
-				case FLOAT64:
-					shortRaster = WritableRaster.createWritableRaster(
-							new BandedSampleModel(DataBuffer.TYPE_DOUBLE, w, h, 1),
-							null);
-					break;
-				case INT16:
-					shortRaster = WritableRaster.createWritableRaster(
-							new BandedSampleModel(DataBuffer.TYPE_SHORT, w, h, 1),
-							null);
-					break;
-				case INT8:
-				case UINT16:
-					shortRaster = WritableRaster.createWritableRaster(
-							new BandedSampleModel(DataBuffer.TYPE_USHORT, w, h, 1),
-							null);
-					break;
-				case INT32:
-				case UINT32:
-					shortRaster = WritableRaster.createWritableRaster(
-							new BandedSampleModel(DataBuffer.TYPE_INT, w, h, 1),
-							null);
-					break;
-				default:
-					break;
-			}
-			if (maxLabel >= 65536 || shortRaster == null) {
-				return img;
-			}
-			// Transfer RGB values as labels to the new raster
-			int[] samples = img.getRGB(0, 0, width, height, null, 0, width);
-			shortRaster.setSamples(0, 0, width, height, 0, samples);
-			raster = shortRaster;
+
+		if (maxLabel >= 65536 && params.grayscaleLut) {
+			// Store labels as 32-bit float to match the metadata (exact up to 2^24)
+			var raster = WritableRaster.createWritableRaster(
+					new BandedSampleModel(DataBuffer.TYPE_FLOAT, width, height, 1),
+					null);
+			raster.setSamples(0, 0, width, height, 0, labels);
+			return new BufferedImage(colorModel, raster, false, null);
+		} else if (maxLabel >= 65536) {
+			// Labels can only be stored in an RGB image
+			var img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			int[] data = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+			for (int i = 0; i < labels.length; i++)
+				data[i] = labels[i] & 0xFFFFFF;
+			return img;
+		}
+		WritableRaster raster;
+		if (maxLabel > 255) {
+			raster = WritableRaster.createWritableRaster(
+					new BandedSampleModel(DataBuffer.TYPE_USHORT, width, height, 1),
+					null);
+			raster.setSamples(0, 0, width, height, 0, labels);
+		} else {
+			raster = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY).getRaster();
+			byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+			for (int i = 0; i < labels.length; i++)
+				data[i] = (byte)labels[i];
 		}
 		return new BufferedImage(colorModel, raster, false, null);
 	}
 
 
+	/**
+	 * Rasterize a ROI, filling areas and drawing lines and points.
+	 */
+	private void rasterize(ROI roi, RegionRequest request, int width, int height, ScanlineRasterizer.SpanConsumer consumer) {
+		double downsampleFactor = request.getDownsample();
+		if (roi.isPoint()) {
+			for (var p : roi.getAllPoints()) {
+				int x = (int)((p.getX() - request.getX()) / downsampleFactor);
+				int y = (int)((p.getY() - request.getY()) / downsampleFactor);
+				if (x >= 0 && x < width && y >= 0 && y < height)
+					consumer.fillSpan(y, x, x + 1);
+			}
+			return;
+		}
+		if (roi.isArea())
+			fillEdges(getFillEdges(roi, request), request, 0, width, height, consumer);
+		else if (roi.isLine())
+			rasterizeBoundary(roi, request, width, height, consumer);
+	}
+
+	/**
+	 * Rasterize a line ROI, or the boundary of an area ROI, using the line thickness.
+	 * Thin lines are drawn as connected 1-pixel paths; thicker lines are stroked and filled.
+	 */
+	private void rasterizeBoundary(ROI roi, RegionRequest request, int width, int height, ScanlineRasterizer.SpanConsumer consumer) {
+		if (params.lineThickness <= 1) {
+			double scale = 1.0 / request.getDownsample();
+			ScanlineRasterizer.draw(getStrokeEdges(roi, request), scale,
+					THIN_LINE_OFFSET - request.getX() * scale, THIN_LINE_OFFSET - request.getY() * scale,
+					width, height, consumer);
+		} else
+			fillEdges(getStrokeEdges(roi, request), request, STROKE_OFFSET, width, height, consumer);
+	}
+
+	private static void fillEdges(ScanlineRasterizer.Edges edges, RegionRequest request, double offset, int width, int height, ScanlineRasterizer.SpanConsumer consumer) {
+		double scale = 1.0 / request.getDownsample();
+		ScanlineRasterizer.fill(edges, scale, offset - request.getX() * scale, offset - request.getY() * scale, width, height, consumer);
+	}
+
+	private double getFlatness() {
+		return ScanlineRasterizer.DEFAULT_FLATNESS * getDownsampleForResolution(0);
+	}
+
+	/**
+	 * Check if a ROI is likely to span multiple tiles, in which case its edges are worth caching.
+	 */
+	private boolean spansMultipleTiles(ROI roi, RegionRequest request) {
+		double downsample = request.getDownsample();
+		return roi.getBoundsWidth() / downsample > getMetadata().getPreferredTileWidth() ||
+				roi.getBoundsHeight() / downsample > getMetadata().getPreferredTileHeight();
+	}
+
+	private ScanlineRasterizer.Edges getFillEdges(ROI roi, RegionRequest request) {
+		if (!spansMultipleTiles(roi, request))
+			return ScanlineRasterizer.createEdges(roi.getShape(), getFlatness());
+		var edges = fillEdgeCache.get(roi);
+		if (edges == null) {
+			edges = ScanlineRasterizer.createEdges(roi.getShape(), getFlatness());
+			fillEdgeCache.put(roi, edges);
+		}
+		return edges;
+	}
+
+	/**
+	 * Get the edges needed to draw a line or boundary.
+	 * For thin lines, these are the line segments themselves; otherwise, they are the edges of the stroked shape.
+	 */
+	private ScanlineRasterizer.Edges getStrokeEdges(ROI roi, RegionRequest request) {
+		float lineWidth = params.lineThickness <= 1 ? 0f : (float)(params.lineThickness * request.getDownsample());
+		if (!spansMultipleTiles(roi, request))
+			return createStrokeEdges(roi, lineWidth);
+		var stroke = strokeEdgeCache.get(roi);
+		if (stroke == null || stroke.lineWidth() != lineWidth) {
+			stroke = new StrokeEdges(lineWidth, createStrokeEdges(roi, lineWidth));
+			strokeEdgeCache.put(roi, stroke);
+		}
+		return stroke.edges();
+	}
+
+	private ScanlineRasterizer.Edges createStrokeEdges(ROI roi, float lineWidth) {
+		if (lineWidth == 0f)
+			return ScanlineRasterizer.createSegments(roi.getShape(), getFlatness());
+		return ScanlineRasterizer.createStrokeEdges(roi.getShape(), lineWidth, getFlatness());
+	}
+
+	private record StrokeEdges(float lineWidth, ScanlineRasterizer.Edges edges) {}
+
+
 }
@@ -0,0 +1,601 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import java.awt.image.BandedSampleModel;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.awt.common.BufferedImageTools;
+import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
+import qupath.lib.io.GsonTools;
+
+/**
+ * An {@link ImageServer} backed by a single memory-mapped file containing uncompressed tiles.
+ * <p>
+ * This is intended for intermediate images (e.g. feature stacks or probability maps) that should be written once
+ * and then read quickly, possibly by several processes.
+ * <p>
+ * The file contains a header with the metadata, an index with one entry per tile, and one fixed-size slot
+ * for every tile returned by the {@link TileRequestManager} (for every resolution level, z-slice and timepoint).
+ * Tile pixels are stored uncompressed in a banded layout, so that each band can be copied directly into the
+ * array of a {@link DataBuffer}.
+ * <p>
+ * Tiles can be written concurrently from multiple threads or processes, provided that each tile is written by
+ * only one writer.
+ * The index entry for a tile is only updated after its pixels have been written, and tiles that have not yet
+ * been written are returned as empty tiles.
+ * Note that tiles that are rewritten by another process may continue to be returned from the tile cache.
+ * <p>
+ * RGB images are stored as packed ARGB values; otherwise, all pixel types supported by {@link DataBuffer} can be used.
+ * <p>
+ * Java provides no way to unmap a file explicitly.
+ * Closing the server releases its references to the mapped buffers, but the memory is only unmapped once they 
+ * have been garbage collected.
+ * Until then, the file may remain locked on some platforms (notably Windows), so that it can't be deleted.
+ *
+ * @since v0.6.0
+ */
+public class MappedTileImageServer extends AbstractTileableImageServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(MappedTileImageServer.class);
+
+	private static final int MAGIC = 0x51504D54; // QPMT
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int DATA_ALIGNMENT = 4096;
+
+	/**
+	 * Maximum number of bytes to map at once (tiles never span more than one mapping).
+	 */
+	private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+	private static final int TILE_WRITTEN = 1;
+
+	private static final VarHandle INDEX_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private final Path path;
+	private final ImageServerMetadata originalMetadata;
+	private final FileChannel channel;
+	private final boolean isWritable;
+	private final ByteOrder byteOrder;
+
+	private final TileLayout layout;
+	private final long indexOffset;
+	private final long dataOffset;
+	private final int tilesPerChunk;
+
+	private volatile MappedByteBuffer header;
+	private final AtomicReferenceArray<MappedByteBuffer> chunks;
+	private volatile boolean closed = false;
+
+	private MappedTileImageServer(Path path, FileChannel channel, boolean isWritable) throws IOException {
+		super();
+		this.path = path;
+		this.channel = channel;
+		this.isWritable = isWritable;
+
+		var buffer = ByteBuffer.allocate(HEADER_SIZE);
+		channel.read(buffer, 0);
+		buffer.flip();
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+			throw new IOException(path + " is not a mapped tile file");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported mapped tile file version " + version);
+		byteOrder = buffer.get() == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+		buffer.position(buffer.position() + 3);
+		int nTiles = buffer.getInt();
+		indexOffset = buffer.getLong();
+		dataOffset = buffer.getLong();
+		int metadataLength = buffer.getInt();
+
+		var metadataBuffer = ByteBuffer.allocate(metadataLength);
+		channel.read(metadataBuffer, HEADER_SIZE);
+		var json = new String(metadataBuffer.array(), StandardCharsets.UTF_8);
+		originalMetadata = GsonTools.getInstance().fromJson(json, ImageServerMetadata.class);
+
+		layout = new TileLayout(originalMetadata);
+		if (layout.nTiles != nTiles)
+			throw new IOException("Expected " + layout.nTiles + " tiles, but file has " + nTiles);
+
+		tilesPerChunk = (int)Math.max(1, Math.min(nTiles, MAX_CHUNK_BYTES / layout.slotBytes));
+		chunks = new AtomicReferenceArray<>((nTiles + tilesPerChunk - 1) / tilesPerChunk);
+		header = channel.map(isWritable ? MapMode.READ_WRITE : MapMode.READ_ONLY, 0, dataOffset);
+	}
+
+	/**
+	 * Create a new file to store tiles, using the metadata of an existing server.
+	 * @param path the file to create; this must not already exist
+	 * @param server the server supplying the metadata
+	 * @return a server that can be used to write and read tiles
+	 * @throws IOException if the file could not be created
+	 * @see #writeTiles(ImageServer)
+	 */
+	public static MappedTileImageServer create(Path path, ImageServer<BufferedImage> server) throws IOException {
+		return create(path, server.getMetadata());
+	}
+
+	/**
+	 * Create a new file to store tiles with the specified metadata.
+	 * The resolution levels and tile size of the metadata determine the tiles that can be stored.
+	 * @param path the file to create; this must not already exist
+	 * @param metadata the metadata for the image
+	 * @return a server that can be used to write and read tiles
+	 * @throws IOException if the file could not be created
+	 * @throws IllegalArgumentException if the pixel type is not supported
+	 */
+	public static MappedTileImageServer create(Path path, ImageServerMetadata metadata) throws IOException, IllegalArgumentException {
+		var layout = new TileLayout(metadata);
+		byte[] json = GsonTools.getInstance().toJson(metadata).getBytes(StandardCharsets.UTF_8);
+		long indexOffset = align(HEADER_SIZE + json.length, 8);
+		long dataOffset = align(indexOffset + layout.nTiles * 4L, DATA_ALIGNMENT);
+		if (dataOffset > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many tiles: " + layout.nTiles);
+
+		var buffer = ByteBuffer.allocate(HEADER_SIZE + json.length);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.put((byte)(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0));
+		buffer.position(buffer.position() + 3);
+		buffer.putInt(layout.nTiles);
+		buffer.putLong(indexOffset);
+		buffer.putLong(dataOffset);
+		buffer.putInt(json.length);
+		buffer.position(HEADER_SIZE);
+		buffer.put(json);
+		buffer.flip();
+
+		var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			channel.write(buffer, 0);
+			// Extend the file to its full size (this is usually a sparse file, so doesn't need to be filled)
+			channel.write(ByteBuffer.allocate(1), dataOffset + layout.nTiles * layout.slotBytes - 1);
+			logger.debug("Created mapped tile file {} ({} tiles of {} bytes)", path, layout.nTiles, layout.slotBytes);
+			return new MappedTileImageServer(path, channel, true);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			Files.deleteIfExists(path);
+			throw e;
+		}
+	}
+
+	/**
+	 * Open an existing file containing tiles.
+	 * The file is opened for writing if possible, so that tiles can be added.
+	 * @param path the file to open
+	 * @return a server to read (and possibly write) tiles
+	 * @throws IOException if the file could not be opened
+	 */
+	public static MappedTileImageServer open(Path path) throws IOException {
+		boolean isWritable = Files.isWritable(path);
+		var channel = isWritable ?
+				FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE) :
+				FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return new MappedTileImageServer(path, channel, isWritable);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static long align(long value, int alignment) {
+		return (value + alignment - 1) / alignment * alignment;
+	}
+
+	/**
+	 * Get the file containing the tiles.
+	 * @return
+	 */
+	public Path getFilePath() {
+		return path;
+	}
+
+	/**
+	 * Returns true if tiles can be written to this server.
+	 * @return
+	 */
+	public boolean isWritable() {
+		return isWritable;
+	}
+
+	/**
+	 * Check whether a tile has been written.
+	 * @param tile the tile
+	 * @return true if the pixels for the tile have been written, false otherwise
+	 */
+	public boolean containsTile(TileRequest tile) {
+		int ind = layout.getTileIndex(tile);
+		return (int)INDEX_HANDLE.getAcquire(getHeader(), (int)(indexOffset + ind * 4L)) == TILE_WRITTEN;
+	}
+
+	/**
+	 * Get the mapped header, throwing an exception if the server has been closed.
+	 */
+	private MappedByteBuffer getHeader() throws IllegalStateException {
+		var header = this.header;
+		if (header == null)
+			throw new IllegalStateException(path + " has been closed");
+		return header;
+	}
+
+	/**
+	 * Write pixels for a single tile.
+	 * The tile should be one of those returned by the {@link TileRequestManager} of this server,
+	 * and the image should have the same size as the tile and compatible pixels.
+	 * @param tile the tile to write
+	 * @param img the pixels for the tile
+	 * @throws IOException if the tile could not be written
+	 */
+	public void writeTile(TileRequest tile, BufferedImage img) throws IOException {
+		if (!isWritable)
+			throw new IOException(path + " is not writable");
+		int ind = layout.getTileIndex(tile);
+		int w = tile.getTileWidth();
+		int h = tile.getTileHeight();
+		if (img.getWidth() != w || img.getHeight() != h)
+			throw new IllegalArgumentException("Image size " + img.getWidth() + "x" + img.getHeight() + " does not match tile size " + w + "x" + h);
+
+		var slot = getSlot(ind);
+		int n = w * h;
+		if (layout.isRGB) {
+			slot.asIntBuffer().put(img.getRGB(0, 0, w, h, null, 0, w));
+		} else {
+			var raster = img.getRaster();
+			if (raster.getNumBands() != layout.nBands)
+				throw new IllegalArgumentException("Expected " + layout.nBands + " bands, but image has " + raster.getNumBands());
+			int bandBytes = n * layout.bytesPerSample;
+			int[] samples = null;
+			for (int b = 0; b < layout.nBands; b++) {
+				var band = slot.slice(b * bandBytes, bandBytes).order(byteOrder);
+				switch (layout.dataType) {
+				case DataBuffer.TYPE_FLOAT:
+					band.asFloatBuffer().put(raster.getSamples(0, 0, w, h, b, (float[])null));
+					break;
+				case DataBuffer.TYPE_DOUBLE:
+					band.asDoubleBuffer().put(raster.getSamples(0, 0, w, h, b, (double[])null));
+					break;
+				case DataBuffer.TYPE_INT:
+					band.asIntBuffer().put(raster.getSamples(0, 0, w, h, b, samples));
+					break;
+				case DataBuffer.TYPE_SHORT:
+				case DataBuffer.TYPE_USHORT:
+					samples = raster.getSamples(0, 0, w, h, b, samples);
+					short[] shorts = new short[n];
+					for (int i = 0; i < n; i++)
+						shorts[i] = (short)samples[i];
+					band.asShortBuffer().put(shorts);
+					break;
+				case DataBuffer.TYPE_BYTE:
+				default:
+					samples = raster.getSamples(0, 0, w, h, b, samples);
+					byte[] bytes = new byte[n];
+					for (int i = 0; i < n; i++)
+						bytes[i] = (byte)samples[i];
+					band.put(bytes);
+					break;
+				}
+			}
+		}
+		INDEX_HANDLE.setRelease(getHeader(), (int)(indexOffset + ind * 4L), TILE_WRITTEN);
+
+		var cache = getCache();
+		if (cache != null)
+			cache.remove(tile.getRegionRequest());
+	}
+
+	/**
+	 * Write all tiles that have not yet been written, reading pixels from another server.
+	 * Tiles are written in parallel.
+	 * @param server the server supplying the pixels; this should have the same dimensions and resolution levels
+	 * @throws IOException if a tile could not be read or written
+	 */
+	public void writeTiles(ImageServer<BufferedImage> server) throws IOException {
+		try {
+			getTileRequestManager().getAllTileRequests().parallelStream()
+				.filter(tile -> !containsTile(tile))
+				.forEach(tile -> {
+					try {
+						var img = server.readRegion(tile.getRegionRequest());
+						if (img != null)
+							writeTile(tile, img);
+					} catch (IOException e) {
+						throw new TileWriteException(e);
+					}
+				});
+		} catch (TileWriteException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Force any changes to be written to the storage device.
+	 */
+	public void flush() {
+		for (int i = 0; i < chunks.length(); i++) {
+			var chunk = chunks.get(i);
+			if (chunk != null)
+				chunk.force();
+		}
+		var header = this.header;
+		if (isWritable && header != null)
+			header.force();
+	}
+
+	@Override
+	protected BufferedImage getTile(TileRequest tileRequest) throws IOException {
+		// Don't cache tiles that haven't been written yet, since they may be written later
+		if (!containsTile(tileRequest))
+			return getEmptyTile(tileRequest.getTileWidth(), tileRequest.getTileHeight());
+		return super.getTile(tileRequest);
+	}
+
+	@Override
+	protected BufferedImage readTile(TileRequest tileRequest) throws IOException {
+		int ind = layout.getTileIndex(tileRequest);
+		int w = tileRequest.getTileWidth();
+		int h = tileRequest.getTileHeight();
+		if (!containsTile(tileRequest))
+			return getEmptyTile(w, h);
+
+		var slot = getSlot(ind);
+		int n = w * h;
+		if (layout.isRGB) {
+			var img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			slot.asIntBuffer().get(((DataBufferInt)img.getRaster().getDataBuffer()).getData());
+			return img;
+		}
+
+		int nBands = layout.nBands;
+		int bandBytes = n * layout.bytesPerSample;
+		DataBuffer buffer;
+		switch (layout.dataType) {
+		case DataBuffer.TYPE_FLOAT:
+			float[][] floats = new float[nBands][n];
+			for (int b = 0; b < nBands; b++)
+				slot.slice(b * bandBytes, bandBytes).order(byteOrder).asFloatBuffer().get(floats[b]);
+			buffer = new DataBufferFloat(floats, n);
+			break;
+		case DataBuffer.TYPE_DOUBLE:
+			double[][] doubles = new double[nBands][n];
+			for (int b = 0; b < nBands; b++)
+				slot.slice(b * bandBytes, bandBytes).order(byteOrder).asDoubleBuffer().get(doubles[b]);
+			buffer = new DataBufferDouble(doubles, n);
+			break;
+		case DataBuffer.TYPE_INT:
+			int[][] ints = new int[nBands][n];
+			for (int b = 0; b < nBands; b++)
+				slot.slice(b * bandBytes, bandBytes).order(byteOrder).asIntBuffer().get(ints[b]);
+			buffer = new DataBufferInt(ints, n);
+			break;
+		case DataBuffer.TYPE_SHORT:
+		case DataBuffer.TYPE_USHORT:
+			short[][] shorts = new short[nBands][n];
+			for (int b = 0; b < nBands; b++)
+				slot.slice(b * bandBytes, bandBytes).order(byteOrder).asShortBuffer().get(shorts[b]);
+			buffer = layout.dataType == DataBuffer.TYPE_SHORT ? new DataBufferShort(shorts, n) : new DataBufferUShort(shorts, n);
+			break;
+		case DataBuffer.TYPE_BYTE:
+		default:
+			byte[][] bytes = new byte[nBands][n];
+			for (int b = 0; b < nBands; b++)
+				slot.get(b * bandBytes, bytes[b]);
+			buffer = new DataBufferByte(bytes, n);
+			break;
+		}
+		var sampleModel = new BandedSampleModel(layout.dataType, w, h, nBands);
+		var raster = WritableRaster.createWritableRaster(sampleModel, buffer, null);
+		return new BufferedImage(getDefaultColorModel(), raster, false, null);
+	}
+
+	/**
+	 * Get a buffer for the slot of a specified tile.
+	 */
+	private ByteBuffer getSlot(int ind) throws IOException {
+		int c = ind / tilesPerChunk;
+		var chunk = chunks.get(c);
+		if (chunk == null) {
+			synchronized (chunks) {
+				if (closed)
+					throw new IOException(path + " has been closed");
+				chunk = chunks.get(c);
+				if (chunk == null) {
+					long start = dataOffset + (long)c * tilesPerChunk * layout.slotBytes;
+					int nChunkTiles = Math.min(tilesPerChunk, layout.nTiles - c * tilesPerChunk);
+					chunk = channel.map(isWritable ? MapMode.READ_WRITE : MapMode.READ_ONLY, start, (long)nChunkTiles * layout.slotBytes);
+					chunks.set(c, chunk);
+				}
+			}
+		}
+		return chunk.slice((ind % tilesPerChunk) * (int)layout.slotBytes, (int)layout.slotBytes).order(byteOrder);
+	}
+
+	/**
+	 * Close the server, flushing any changes.
+	 * <p>
+	 * References to the mapped buffers are dropped, so that they can be unmapped when garbage collected; 
+	 * tiles can no longer be read or written afterwards.
+	 */
+	@Override
+	public void close() throws Exception {
+		synchronized (chunks) {
+			if (closed)
+				return;
+			super.close();
+			if (isWritable)
+				flush();
+			closed = true;
+			for (int i = 0; i < chunks.length(); i++)
+				chunks.set(i, null);
+			header = null;
+			channel.close();
+		}
+	}
+
+	@Override
+	public Collection<URI> getURIs() {
+		return Collections.singletonList(path.toUri());
+	}
+
+	@Override
+	protected String createID() {
+		return getClass().getName() + ": " + path.toUri();
+	}
+
+	@Override
+	public String getServerType() {
+		return "Mapped tile server";
+	}
+
+	@Override
+	public ImageServerMetadata getOriginalMetadata() {
+		return originalMetadata;
+	}
+
+	@Override
+	protected ServerBuilder<BufferedImage> createServerBuilder() {
+		return new ImageServers.MappedTileImageServerBuilder(getMetadata(), path.toUri());
+	}
+
+
+	/**
+	 * Helper class to determine the slot for each tile, based upon the metadata.
+	 */
+	private static class TileLayout {
+
+		private final int tileWidth, tileHeight;
+		private final int nZ, nT;
+		private final int[] levelWidths;
+		private final int[] levelHeights;
+		private final int[] nTilesX;
+		private final int[] levelStarts;
+		private final int nTiles;
+
+		private final boolean isRGB;
+		private final int dataType;
+		private final int nBands;
+		private final int bytesPerSample;
+		private final long slotBytes;
+
+		private TileLayout(ImageServerMetadata metadata) {
+			tileWidth = metadata.getPreferredTileWidth();
+			tileHeight = metadata.getPreferredTileHeight();
+			nZ = metadata.getSizeZ();
+			nT = metadata.getSizeT();
+			isRGB = metadata.isRGB();
+			if (isRGB) {
+				dataType = DataBuffer.TYPE_INT;
+				nBands = 1;
+			} else {
+				dataType = BufferedImageTools.getDataBufferType(metadata.getPixelType());
+				nBands = metadata.getSizeC();
+			}
+			bytesPerSample = DataBuffer.getDataTypeSize(dataType) / 8;
+			slotBytes = (long)tileWidth * tileHeight * nBands * bytesPerSample;
+			if (slotBytes > MAX_CHUNK_BYTES)
+				throw new IllegalArgumentException("Tile size " + tileWidth + "x" + tileHeight + " with " + nBands + " channels is too large");
+
+			int nLevels = metadata.nLevels();
+			levelWidths = new int[nLevels];
+			levelHeights = new int[nLevels];
+			nTilesX = new int[nLevels];
+			levelStarts = new int[nLevels];
+			long count = 0;
+			for (int level = 0; level < nLevels; level++) {
+				var resolution = metadata.getLevel(level);
+				levelWidths[level] = resolution.getWidth();
+				levelHeights[level] = resolution.getHeight();
+				nTilesX[level] = (levelWidths[level] + tileWidth - 1) / tileWidth;
+				int nTilesY = (levelHeights[level] + tileHeight - 1) / tileHeight;
+				levelStarts[level] = (int)count;
+				count += (long)nTilesX[level] * nTilesY * nZ * nT;
+				if (count > Integer.MAX_VALUE)
+					throw new IllegalArgumentException("Too many tiles for a mapped tile file");
+			}
+			nTiles = (int)count;
+		}
+
+		private int getTileIndex(TileRequest tile) {
+			int level = tile.getLevel();
+			int x = tile.getTileX();
+			int y = tile.getTileY();
+			if (level < 0 || level >= levelStarts.length || x % tileWidth != 0 || y % tileHeight != 0
+					|| x < 0 || y < 0 || x >= levelWidths[level] || y >= levelHeights[level]
+					|| tile.getTileWidth() != Math.min(tileWidth, levelWidths[level] - x)
+					|| tile.getTileHeight() != Math.min(tileHeight, levelHeights[level] - y)
+					|| tile.getZ() < 0 || tile.getZ() >= nZ || tile.getT() < 0 || tile.getT() >= nT)
+				throw new IllegalArgumentException("Tile " + tile + " does not match the tile layout");
+			int nTilesLevel = nTilesX[level] * ((levelHeights[level] + tileHeight - 1) / tileHeight);
+			return levelStarts[level]
+					+ (tile.getT() * nZ + tile.getZ()) * nTilesLevel
+					+ (y / tileHeight) * nTilesX[level] + x / tileWidth;
+		}
+
+	}
+
+
+	/**
+	 * Wrap an {@link IOException} thrown when writing tiles within a stream.
+	 */
+	private static class TileWriteException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private TileWriteException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException)super.getCause();
+		}
+
+	}
+
+}
@@ -0,0 +1,385 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * Scanline polygon rasterizer for filling shapes directly into label arrays, without Java2D rendering.
+ * <p>
+ * A pixel is filled if its center falls inside the shape, using the winding rule of the shape.
+ * Curves are flattened to line segments.
+ * Rather than writing pixels itself, the rasterizer passes horizontal spans to a {@link SpanConsumer}; this makes it
+ * easy to write into any kind of array, with any label value.
+ */
+final class ScanlineRasterizer {
+
+	/**
+	 * Default flatness when converting curves to line segments, in the coordinate space of the shape.
+	 */
+	static final double DEFAULT_FLATNESS = 0.1;
+
+	private ScanlineRasterizer() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Consumer for horizontal spans of pixels that should be filled.
+	 */
+	@FunctionalInterface
+	interface SpanConsumer {
+
+		/**
+		 * Fill pixels in a row.
+		 * @param y the row
+		 * @param x0 the first column to fill (inclusive)
+		 * @param x1 the last column to fill (exclusive)
+		 */
+		void fillSpan(int y, int x0, int x1);
+
+	}
+
+	/**
+	 * Edges of a flattened shape, stored in primitive arrays.
+	 * These can be created once and then rasterized into many tiles.
+	 */
+	static final class Edges {
+
+		private final double[] coords;
+		private final int nEdges;
+		private final boolean evenOdd;
+		private final double minX, minY, maxX, maxY;
+
+		private Edges(double[] coords, int nEdges, boolean evenOdd) {
+			this.coords = coords;
+			this.nEdges = nEdges;
+			this.evenOdd = evenOdd;
+			double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < nEdges * 4; i += 2) {
+				minX = Math.min(minX, coords[i]);
+				maxX = Math.max(maxX, coords[i]);
+				minY = Math.min(minY, coords[i+1]);
+				maxY = Math.max(maxY, coords[i+1]);
+			}
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		/**
+		 * Get the number of (non-horizontal) edges.
+		 * @return
+		 */
+		int size() {
+			return nEdges;
+		}
+
+	}
+
+	/**
+	 * Create edges for filling a shape.
+	 * @param shape the shape
+	 * @param flatness the maximum distance between curves and the line segments used to approximate them
+	 * @return
+	 */
+	static Edges createEdges(Shape shape, double flatness) {
+		return flatten(shape, flatness, true);
+	}
+
+	/**
+	 * Create line segments for drawing the outline of a shape with thin (1 pixel) lines, using {@link #draw(Edges, double, double, double, int, int, SpanConsumer)}.
+	 * @param shape the shape
+	 * @param flatness the maximum distance between curves and the line segments used to approximate them
+	 * @return
+	 */
+	static Edges createSegments(Shape shape, double flatness) {
+		return flatten(shape, flatness, false);
+	}
+
+	/**
+	 * Flatten a shape to line segments.
+	 * When filling, horizontal segments are dropped (since they never cross a scanline) and open subpaths are closed.
+	 */
+	private static Edges flatten(Shape shape, double flatness, boolean forFill) {
+		var iterator = shape.getPathIterator(null, flatness);
+		var coords = new double[64];
+		int n = 0;
+		var seg = new double[6];
+		double startX = 0, startY = 0, lastX = 0, lastY = 0;
+		boolean open = false;
+		while (!iterator.isDone()) {
+			int type = iterator.currentSegment(seg);
+			double x = lastX, y = lastY;
+			switch (type) {
+			case PathIterator.SEG_MOVETO:
+				// Subpaths are closed implicitly when filling
+				if (forFill && open && lastY != startY)
+					coords = addEdge(coords, n++, lastX, lastY, startX, startY);
+				startX = seg[0];
+				startY = seg[1];
+				x = startX;
+				y = startY;
+				open = true;
+				break;
+			case PathIterator.SEG_LINETO:
+				x = seg[0];
+				y = seg[1];
+				if (y != lastY || !forFill)
+					coords = addEdge(coords, n++, lastX, lastY, x, y);
+				break;
+			case PathIterator.SEG_CLOSE:
+				if (open && (lastY != startY || (!forFill && lastX != startX)))
+					coords = addEdge(coords, n++, lastX, lastY, startX, startY);
+				x = startX;
+				y = startY;
+				open = false;
+				break;
+			default:
+				// Curves shouldn't occur with a flattening iterator
+				throw new IllegalArgumentException("Unexpected segment type " + type);
+			}
+			lastX = x;
+			lastY = y;
+			iterator.next();
+		}
+		if (forFill && open && lastY != startY)
+			coords = addEdge(coords, n++, lastX, lastY, startX, startY);
+		return new Edges(coords, n, iterator.getWindingRule() == PathIterator.WIND_EVEN_ODD);
+	}
+
+	/**
+	 * Create edges for filling the outline of a shape, drawn with a line of the specified width.
+	 * @param shape the shape
+	 * @param lineWidth the line width, in the coordinate space of the shape
+	 * @param flatness the maximum distance between curves and the line segments used to approximate them
+	 * @return
+	 */
+	static Edges createStrokeEdges(Shape shape, float lineWidth, double flatness) {
+		var stroked = new BasicStroke(lineWidth).createStrokedShape(shape);
+		return createEdges(stroked, flatness);
+	}
+
+	private static double[] addEdge(double[] coords, int ind, double x0, double y0, double x1, double y1) {
+		int i = ind * 4;
+		if (i + 4 > coords.length)
+			coords = Arrays.copyOf(coords, coords.length * 2);
+		coords[i] = x0;
+		coords[i+1] = y0;
+		coords[i+2] = x1;
+		coords[i+3] = y1;
+		return coords;
+	}
+
+	/**
+	 * Rasterize edges into an image.
+	 * Coordinates are transformed as {@code x * scale + translateX} and {@code y * scale + translateY}.
+	 * Only spans within the image bounds are passed to the consumer.
+	 *
+	 * @param edges the edges to rasterize
+	 * @param scale scale factor to apply to coordinates
+	 * @param translateX translation to apply to x coordinates, after scaling
+	 * @param translateY translation to apply to y coordinates, after scaling
+	 * @param width the image width
+	 * @param height the image height
+	 * @param consumer consumer for spans that should be filled
+	 */
+	static void fill(Edges edges, double scale, double translateX, double translateY, int width, int height, SpanConsumer consumer) {
+		int n = edges.nEdges;
+		if (n == 0)
+			return;
+		// Quick check for whether anything could be drawn
+		if (edges.maxX * scale + translateX < 0 || edges.minX * scale + translateX > width ||
+				edges.maxY * scale + translateY < 0 || edges.minY * scale + translateY > height)
+			return;
+
+		// Determine the range of rows for each edge
+		// A row is included if its center falls within [yStart, yEnd)
+		var firstRow = new int[n];
+		var lastRow = new int[n];
+		var xFirst = new double[n];
+		var dxdy = new double[n];
+		var direction = new int[n];
+		var order = new long[n];
+		int nValid = 0;
+		var coords = edges.coords;
+		for (int e = 0; e < n; e++) {
+			double x0 = coords[e*4] * scale + translateX;
+			double y0 = coords[e*4+1] * scale + translateY;
+			double x1 = coords[e*4+2] * scale + translateX;
+			double y1 = coords[e*4+3] * scale + translateY;
+			if (y0 == y1)
+				continue;
+			double yStart = Math.min(y0, y1);
+			double yEnd = Math.max(y0, y1);
+			int first = Math.max(0, (int)Math.ceil(yStart - 0.5));
+			int last = Math.min(height - 1, (int)Math.ceil(yEnd - 0.5) - 1);
+			if (first > last)
+				continue;
+			double slope = (x1 - x0) / (y1 - y0);
+			firstRow[nValid] = first;
+			lastRow[nValid] = last;
+			dxdy[nValid] = slope;
+			xFirst[nValid] = x0 + (first + 0.5 - y0) * slope;
+			direction[nValid] = y1 > y0 ? 1 : -1;
+			order[nValid] = ((long)first << 32) | nValid;
+			nValid++;
+		}
+		if (nValid == 0)
+			return;
+		Arrays.sort(order, 0, nValid);
+
+		// Scan rows, maintaining a list of active edges
+		var active = new int[nValid];
+		int nActive = 0;
+		var xs = new double[nValid];
+		var dirs = new int[nValid];
+		int next = 0;
+		int row = (int)(order[0] >>> 32);
+		while (row < height) {
+			while (next < nValid && (int)(order[next] >>> 32) == row)
+				active[nActive++] = (int)order[next++];
+			// Remove edges that have ended
+			int nKeep = 0;
+			for (int i = 0; i < nActive; i++) {
+				if (lastRow[active[i]] >= row)
+					active[nKeep++] = active[i];
+			}
+			nActive = nKeep;
+			if (nActive == 0) {
+				if (next >= nValid)
+					break;
+				row = (int)(order[next] >>> 32);
+				continue;
+			}
+
+			// Compute & sort crossings
+			for (int i = 0; i < nActive; i++) {
+				int e = active[i];
+				double x = xFirst[e] + (row - firstRow[e]) * dxdy[e];
+				int d = direction[e];
+				int j = i;
+				while (j > 0 && xs[j-1] > x) {
+					xs[j] = xs[j-1];
+					dirs[j] = dirs[j-1];
+					j--;
+				}
+				xs[j] = x;
+				dirs[j] = d;
+			}
+
+			// Fill spans according to the winding rule
+			if (edges.evenOdd) {
+				for (int i = 0; i + 1 < nActive; i += 2)
+					fillSpan(row, xs[i], xs[i+1], width, consumer);
+			} else {
+				int winding = 0;
+				double xStart = 0;
+				for (int i = 0; i < nActive; i++) {
+					int previous = winding;
+					winding += dirs[i];
+					if (previous == 0 && winding != 0)
+						xStart = xs[i];
+					else if (previous != 0 && winding == 0)
+						fillSpan(row, xStart, xs[i], width, consumer);
+				}
+			}
+			row++;
+		}
+	}
+
+	/**
+	 * Draw line segments with a width of 1 pixel, ensuring that lines are connected.
+	 * Coordinates are transformed as for {@link #fill(Edges, double, double, double, int, int, SpanConsumer)}, and a pixel
+	 * is drawn if it contains the (transformed) line.
+	 *
+	 * @param segments the segments to draw, created with {@link #createSegments(Shape, double)}
+	 * @param scale scale factor to apply to coordinates
+	 * @param translateX translation to apply to x coordinates, after scaling
+	 * @param translateY translation to apply to y coordinates, after scaling
+	 * @param width the image width
+	 * @param height the image height
+	 * @param consumer consumer for pixels that should be filled
+	 */
+	static void draw(Edges segments, double scale, double translateX, double translateY, int width, int height, SpanConsumer consumer) {
+		if (segments.nEdges == 0)
+			return;
+		if (segments.maxX * scale + translateX < 0 || segments.minX * scale + translateX >= width ||
+				segments.maxY * scale + translateY < 0 || segments.minY * scale + translateY >= height)
+			return;
+		var coords = segments.coords;
+		for (int e = 0; e < segments.nEdges; e++) {
+			double x0 = coords[e*4] * scale + translateX;
+			double y0 = coords[e*4+1] * scale + translateY;
+			double x1 = coords[e*4+2] * scale + translateX;
+			double y1 = coords[e*4+3] * scale + translateY;
+			if (Math.max(x0, x1) < 0 || Math.min(x0, x1) >= width || Math.max(y0, y1) < 0 || Math.min(y0, y1) >= height)
+				continue;
+			double dx = x1 - x0;
+			double dy = y1 - y0;
+			if (Math.abs(dx) >= Math.abs(dy)) {
+				// Step along columns, restricted to those within the image
+				if (dx < 0) {
+					double temp = x0; x0 = x1; x1 = temp;
+					temp = y0; y0 = y1; y1 = temp;
+				}
+				double slope = dx == 0 ? 0 : (y1 - y0) / (x1 - x0);
+				int first = Math.max(0, (int)Math.floor(x0));
+				int last = Math.min(width - 1, (int)Math.floor(x1));
+				for (int x = first; x <= last; x++) {
+					double xc = Math.min(Math.max(x + 0.5, x0), x1);
+					int y = (int)Math.floor(y0 + (xc - x0) * slope);
+					if (y >= 0 && y < height)
+						consumer.fillSpan(y, x, x + 1);
+				}
+			} else {
+				// Step along rows
+				if (dy < 0) {
+					double temp = x0; x0 = x1; x1 = temp;
+					temp = y0; y0 = y1; y1 = temp;
+				}
+				double slope = (x1 - x0) / (y1 - y0);
+				int first = Math.max(0, (int)Math.floor(y0));
+				int last = Math.min(height - 1, (int)Math.floor(y1));
+				for (int y = first; y <= last; y++) {
+					double yc = Math.min(Math.max(y + 0.5, y0), y1);
+					int x = (int)Math.floor(x0 + (yc - y0) * slope);
+					if (x >= 0 && x < width)
+						consumer.fillSpan(y, x, x + 1);
+				}
+			}
+		}
+	}
+
+	private static void fillSpan(int row, double xLeft, double xRight, int width, SpanConsumer consumer) {
+		// A pixel is included if its center falls within [xLeft, xRight)
+		int x0 = Math.max(0, (int)Math.ceil(xLeft - 0.5));
+		int x1 = Math.min(width, (int)Math.ceil(xRight - 0.5));
+		if (x0 < x1)
+			consumer.fillSpan(row, x0, x1);
+	}
+
+}
@@ -22,6 +22,7 @@
 package qupath.lib.images.servers;
 
 import java.util.Collection;
+import java.util.function.Predicate;
 
 import qupath.lib.regions.RegionRequest;
 
@@ -81,4 +82,47 @@ public interface TileRequestManager {
 	 */
 	TileRequest getTileRequest(int level, int x, int y, int z, int t);
 	
+	/**
+	 * Get a view of this manager that only enumerates tiles accepted by a filter, 
+	 * e.g. to skip background tiles identified using a {@link TissueMap}.
+	 * <p>
+	 * The filter is only applied to {@link #getAllTileRequests()} and {@link #getTileRequestsForLevel(int)}.
+	 * Requests for specific regions or pixels are passed to this manager unchanged, 
+	 * so that reading a region still returns all its pixels.
+	 * 
+	 * @param filter predicate that returns true for tiles that should be retained
+	 * @return a tile request manager that applies the filter
+	 * @since v0.6.0
+	 */
+	default TileRequestManager filterTiles(Predicate<? super TileRequest> filter) {
+		var manager = this;
+		return new TileRequestManager() {
+			
+			private Collection<TileRequest> allTiles;
+
+			@Override
+			public synchronized Collection<TileRequest> getAllTileRequests() {
+				if (allTiles == null)
+					allTiles = manager.getAllTileRequests().stream().filter(filter).toList();
+				return allTiles;
+			}
+
+			@Override
+			public Collection<TileRequest> getTileRequestsForLevel(int level) {
+				return getAllTileRequests().stream().filter(t -> t.getLevel() == level).toList();
+			}
+
+			@Override
+			public Collection<TileRequest> getTileRequests(RegionRequest request) {
+				return manager.getTileRequests(request);
+			}
+
+			@Override
+			public TileRequest getTileRequest(int level, int x, int y, int z, int t) {
+				return manager.getTileRequest(level, x, y, z, t);
+			}
+			
+		};
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,420 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.awt.common.BufferedImageTools;
+import qupath.lib.common.ColorTools;
+import qupath.lib.common.GeneralTools;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+import qupath.lib.regions.RegionRequest;
+
+/**
+ * A coarse map indicating which parts of an image contain tissue (or any other foreground), and which contain only background.
+ * <p>
+ * The map is computed from a low-resolution version of each image plane the first time the plane is needed,
+ * and is intended to make it possible to skip background regions without reading them at full resolution.
+ * <p>
+ * For RGB images, pixels are considered to be foreground if any channel is substantially darker than the bright background;
+ * for all other images, pixels are foreground if any channel is substantially brighter than the dark background.
+ * In both cases, the thresholds are determined automatically for each plane using Otsu's method, 
+ * and channels for which the mean foreground and background values differ by less than 20% are ignored.
+ * The map is then dilated slightly, so that regions at the boundary of the tissue are retained.
+ * <p>
+ * If the map cannot be computed for any reason, all regions are considered to contain tissue.
+ * <p>
+ * A tissue map can be used to enumerate only the tiles that contain tissue, e.g. with
+ * <pre>
+ * var tiles = server.getTileRequestManager().filterTiles(t -> tissueMap.containsTissue(t.getRegionRequest()));
+ * </pre>
+ *
+ * @since v0.6.0
+ * @see TileRequestManager#filterTiles(java.util.function.Predicate)
+ */
+public class TissueMap {
+
+	private static final Logger logger = LoggerFactory.getLogger(TissueMap.class);
+
+	/**
+	 * Maximum width or height of the map for any plane.
+	 */
+	private static final int MAX_SIZE = 2048;
+
+	private static final int N_BINS = 256;
+
+	/**
+	 * Minimum relative difference between the mean foreground and background values for a channel to be used.
+	 */
+	private static final double MIN_CONTRAST = 0.2;
+
+	private static final Map<ImageServer<?>, TissueMap> cache = Collections.synchronizedMap(new WeakHashMap<>());
+
+	// Use a weak reference, so that cached maps don't prevent servers from being garbage collected
+	private final WeakReference<ImageServer<BufferedImage>> serverRef;
+	private final String path;
+	private final int width;
+	private final int height;
+	private final boolean isRGB;
+	private final PixelType pixelType;
+	private final int nChannels;
+	private final double downsample;
+
+	private final Map<ImagePlane, PlaneMask> masks = new HashMap<>();
+
+	private TissueMap(ImageServer<BufferedImage> server) {
+		this.serverRef = new WeakReference<>(server);
+		this.path = server.getPath();
+		this.width = server.getWidth();
+		this.height = server.getHeight();
+		this.isRGB = server.isRGB();
+		this.pixelType = server.getPixelType();
+		this.nChannels = server.nChannels();
+		this.downsample = computeDownsample(server);
+	}
+
+	/**
+	 * Create a new tissue map for the specified server.
+	 * No pixels are requested until the map is first queried for a plane.
+	 * @param server
+	 * @return
+	 * @see #getInstance(ImageServer)
+	 */
+	public static TissueMap create(ImageServer<BufferedImage> server) {
+		return new TissueMap(server);
+	}
+
+	/**
+	 * Get a cached tissue map for the specified server, creating a new one if necessary.
+	 * This avoids needing to compute the map again whenever it is needed for the same server.
+	 * @param server
+	 * @return
+	 */
+	public static TissueMap getInstance(ImageServer<BufferedImage> server) {
+		return cache.computeIfAbsent(server, s -> create(server));
+	}
+
+	/**
+	 * Get the downsample factor at which the map is computed.
+	 * @return
+	 */
+	public double getDownsample() {
+		return downsample;
+	}
+
+	/**
+	 * Query whether a region may contain tissue.
+	 * This is conservative: it returns true if the region includes any foreground pixel in the map,
+	 * or if the map could not be computed.
+	 * Regions that fall entirely outside the image do not contain tissue.
+	 * @param region
+	 * @return true if the region may contain tissue, false if it contains only background
+	 */
+	public boolean containsTissue(ImageRegion region) {
+		var mask = getMask(ImagePlane.getPlane(region.getZ(), region.getT()));
+		if (mask.tissue() == null)
+			return true;
+		double scaleX = (double)mask.width() / width;
+		double scaleY = (double)mask.height() / height;
+		int x0 = GeneralTools.clipValue((int)Math.floor(region.getX() * scaleX), 0, mask.width());
+		int x1 = GeneralTools.clipValue((int)Math.ceil(region.getMaxX() * scaleX), 0, mask.width());
+		int y0 = GeneralTools.clipValue((int)Math.floor(region.getY() * scaleY), 0, mask.height());
+		int y1 = GeneralTools.clipValue((int)Math.ceil(region.getMaxY() * scaleY), 0, mask.height());
+		for (int y = y0; y < y1; y++) {
+			for (int x = x0; x < x1; x++) {
+				if (mask.tissue()[y * mask.width() + x])
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the estimated background value for each channel of the specified plane.
+	 * For RGB images, these are the red, green and blue values.
+	 * @param plane
+	 * @return
+	 */
+	public double[] getBackgroundValues(ImagePlane plane) {
+		return getMask(ImagePlane.getPlane(plane.getZ(), plane.getT())).background().clone();
+	}
+
+	/**
+	 * Create an image of the specified size, filled with the background values for the plane.
+	 * This can be used in place of pixels read from the server for regions that do not contain tissue.
+	 * @param width
+	 * @param height
+	 * @param plane
+	 * @return
+	 * @see #getBackgroundValues(ImagePlane)
+	 */
+	public BufferedImage createBackgroundImage(int width, int height, ImagePlane plane) {
+		double[] background = getBackgroundValues(plane);
+		if (isRGB) {
+			var img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			int rgb = ColorTools.packRGB(
+					ColorTools.do8BitRangeCheck(background[0]),
+					ColorTools.do8BitRangeCheck(background[1]),
+					ColorTools.do8BitRangeCheck(background[2]));
+			Arrays.fill(((DataBufferInt)img.getRaster().getDataBuffer()).getData(), rgb);
+			return img;
+		}
+		var img = BufferedImageTools.createImage(width, height, pixelType, nChannels);
+		var raster = img.getRaster();
+		double[] values = new double[width * height];
+		for (int c = 0; c < nChannels; c++) {
+			Arrays.fill(values, background[c]);
+			raster.setSamples(0, 0, width, height, c, values);
+		}
+		return img;
+	}
+
+
+	private static double computeDownsample(ImageServer<?> server) {
+		double downsample = server.getDownsampleForResolution(server.nResolutions()-1);
+		double maxDim = Math.max(server.getWidth(), server.getHeight());
+		if (maxDim / downsample > MAX_SIZE)
+			downsample = maxDim / MAX_SIZE;
+		return downsample;
+	}
+
+	private synchronized PlaneMask getMask(ImagePlane plane) {
+		var mask = masks.get(plane);
+		if (mask == null) {
+			mask = computeMask(plane);
+			masks.put(plane, mask);
+		}
+		return mask;
+	}
+
+	private PlaneMask computeMask(ImagePlane plane) {
+		var server = serverRef.get();
+		if (server == null) {
+			logger.warn("Unable to compute tissue map for {} - server is no longer available", path);
+			return createDefaultMask();
+		}
+		BufferedImage img;
+		try {
+			var request = RegionRequest.createInstance(server.getPath(), downsample, 0, 0, width, height, plane.getZ(), plane.getT());
+			img = server.readRegion(request);
+		} catch (IOException e) {
+			logger.warn("Unable to compute tissue map for {}: {}", path, e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+			return createDefaultMask();
+		}
+		if (img == null)
+			return createDefaultMask();
+
+		long startTime = System.currentTimeMillis();
+		int w = img.getWidth();
+		int h = img.getHeight();
+		int n = w * h;
+
+		// Get the channel values, and the features used for thresholding
+		float[][] channels;
+		float[][] features;
+		if (isRGB) {
+			int[] rgb = img.getRGB(0, 0, w, h, null, 0, w);
+			channels = new float[3][n];
+			float[] darkness = new float[n];
+			for (int i = 0; i < n; i++) {
+				int r = ColorTools.red(rgb[i]);
+				int g = ColorTools.green(rgb[i]);
+				int b = ColorTools.blue(rgb[i]);
+				channels[0][i] = r;
+				channels[1][i] = g;
+				channels[2][i] = b;
+				darkness[i] = 255 - Math.min(r, Math.min(g, b));
+			}
+			features = new float[][] {darkness};
+		} else {
+			var raster = img.getRaster();
+			channels = new float[raster.getNumBands()][];
+			for (int c = 0; c < channels.length; c++)
+				channels[c] = raster.getSamples(0, 0, w, h, c, (float[])null);
+			features = channels;
+		}
+
+		// Pixels are foreground if any feature exceeds its threshold
+		boolean[] foreground = new boolean[n];
+		boolean anyUsed = false;
+		for (float[] feature : features) {
+			double threshold = otsuThreshold(feature);
+			if (Double.isNaN(threshold) || !hasContrast(feature, threshold))
+				continue;
+			anyUsed = true;
+			for (int i = 0; i < n; i++) {
+				if (feature[i] > threshold)
+					foreground[i] = true;
+			}
+		}
+		// If we couldn't separate anything, we can't tell tissue from background - so don't skip anything
+		if (!anyUsed) {
+			logger.debug("Unable to find tissue for {} in {} - all regions will be treated as tissue", plane, path);
+			return createDefaultMask();
+		}
+
+		// Estimate the background from the pixels that aren't foreground
+		double[] background = new double[channels.length];
+		int nBackground = 0;
+		for (int i = 0; i < n; i++) {
+			if (foreground[i])
+				continue;
+			nBackground++;
+			for (int c = 0; c < channels.length; c++)
+				background[c] += channels[c][i];
+		}
+		for (int c = 0; c < channels.length; c++)
+			background[c] = nBackground == 0 ? getDefaultBackground() : background[c] / nBackground;
+
+		var tissue = dilate(foreground, w, h);
+		logger.debug("Tissue map computed for {} ({}x{}, downsample={}) in {} ms", plane, w, h, downsample, System.currentTimeMillis() - startTime);
+		return new PlaneMask(w, h, tissue, background);
+	}
+
+	/**
+	 * Create a mask for which all regions are considered to contain tissue.
+	 */
+	private PlaneMask createDefaultMask() {
+		double[] background = new double[isRGB ? 3 : nChannels];
+		Arrays.fill(background, getDefaultBackground());
+		return new PlaneMask(0, 0, null, background);
+	}
+
+	private double getDefaultBackground() {
+		return isRGB ? 255 : 0;
+	}
+
+	/**
+	 * Dilate a binary image with a 3x3 square structuring element.
+	 */
+	private static boolean[] dilate(boolean[] mask, int w, int h) {
+		boolean[] output = new boolean[mask.length];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				if (!mask[y * w + x])
+					continue;
+				for (int yy = Math.max(0, y-1); yy <= Math.min(h-1, y+1); yy++) {
+					for (int xx = Math.max(0, x-1); xx <= Math.min(w-1, x+1); xx++)
+						output[yy * w + xx] = true;
+				}
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Check whether the mean of the values above a threshold is sufficiently different from the mean of the values below, 
+	 * so that the threshold is likely to separate foreground from background rather than just split the noise.
+	 */
+	private static boolean hasContrast(float[] values, double threshold) {
+		double sumBelow = 0, sumAbove = 0;
+		long nBelow = 0, nAbove = 0;
+		for (float v : values) {
+			if (!Float.isFinite(v))
+				continue;
+			if (v > threshold) {
+				sumAbove += v;
+				nAbove++;
+			} else {
+				sumBelow += v;
+				nBelow++;
+			}
+		}
+		if (nBelow == 0 || nAbove == 0)
+			return false;
+		double meanAbove = sumAbove / nAbove;
+		double meanBelow = sumBelow / nBelow;
+		return meanAbove - meanBelow >= MIN_CONTRAST * Math.abs(meanAbove);
+	}
+
+	/**
+	 * Compute a threshold using Otsu's method, or NaN if all values are the same.
+	 */
+	static double otsuThreshold(float[] values) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (float v : values) {
+			if (!Float.isFinite(v))
+				continue;
+			if (v < min)
+				min = v;
+			if (v > max)
+				max = v;
+		}
+		if (!(max > min))
+			return Double.NaN;
+
+		double binWidth = (max - min) / N_BINS;
+		long[] counts = new long[N_BINS];
+		long total = 0;
+		double sum = 0;
+		for (float v : values) {
+			if (!Float.isFinite(v))
+				continue;
+			int bin = Math.min(N_BINS-1, (int)((v - min) / binWidth));
+			counts[bin]++;
+			total++;
+			sum += bin;
+		}
+
+		double sumBelow = 0;
+		long countBelow = 0;
+		double bestVariance = -1;
+		int bestBin = 0;
+		for (int b = 0; b < N_BINS-1; b++) {
+			countBelow += counts[b];
+			sumBelow += (double)b * counts[b];
+			long countAbove = total - countBelow;
+			if (countBelow == 0 || countAbove == 0)
+				continue;
+			double meanBelow = sumBelow / countBelow;
+			double meanAbove = (sum - sumBelow) / countAbove;
+			double variance = (double)countBelow * countAbove * (meanBelow - meanAbove) * (meanBelow - meanAbove);
+			if (variance > bestVariance) {
+				bestVariance = variance;
+				bestBin = b;
+			}
+		}
+		// Values above the upper edge of the best bin are foreground
+		return min + (bestBin + 1) * binWidth;
+	}
+
+
+	/**
+	 * Foreground mask for a single plane; if tissue is null, all pixels are considered to be foreground.
+	 */
+	private record PlaneMask(int width, int height, boolean[] tissue, double[] background) {}
+
+}
@@ -51,6 +51,7 @@ import qupath.lib.common.ThreadTools;
 import qupath.lib.images.ImageData;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.LabeledImageServer;
+import qupath.lib.images.servers.TissueMap;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
 import qupath.lib.images.servers.TransformedServerBuilder;
 import qupath.lib.io.GsonTools;
@@ -89,6 +90,7 @@ public class TileExporter  {
 	private boolean includePartialTiles = false;
 	private boolean annotatedTilesOnly = false;
 	private boolean annotatedCentroidTilesOnly = false;
+	private boolean tissueTilesOnly = false;
 	
 	private int minZ = 0, minT = 0;
 	private int maxZ = -1, maxT = -1;
@@ -360,6 +362,21 @@ public class TileExporter  {
 		this.annotatedCentroidTilesOnly = annotatedCentroidTilesOnly;
 		return this;
 	}
+	
+	/**
+	 * Specify whether tiles that contain only background should be skipped.
+	 * Background is identified using a {@link TissueMap} computed from a low-resolution version of the image, 
+	 * so this is much faster than exporting all tiles and discarding the empty ones afterwards.
+	 * <p>
+	 * Default is false.
+	 * @param tissueTilesOnly
+	 * @return this exporter
+	 * @since v0.6.0
+	 */
+	public TileExporter tissueTilesOnly(boolean tissueTilesOnly) {
+		this.tissueTilesOnly = tissueTilesOnly;
+		return this;
+	}
 
 	/**
 	 * Specify a file extension for the original pixels, which determines the export file format.
@@ -506,10 +523,16 @@ public class TileExporter  {
 			}
 		}
 		
-		// If we want only annotated tiles, skip regions that lack annotations
+		// Skip background regions, and regions that lack annotations if we want only annotated tiles
+		var tissueMap = tissueTilesOnly ? TissueMap.getInstance(imageData.getServer()) : null;
 		var iterator = requests.iterator();
 		while (iterator.hasNext()) {
 			var r = iterator.next().request;
+			if (tissueMap != null && !tissueMap.containsTissue(r)) {
+				logger.trace("Skipping background region {}", r);
+				iterator.remove();
+				continue;
+			}
 			if (annotatedCentroidTilesOnly) {
 				double cx = (r.getMinX() + r.getMaxX()) / 2.0;
 				double cy = (r.getMinY() + r.getMaxY()) / 2.0;
@@ -209,6 +209,39 @@ public class PathIO {
 	}
 	
 	
+	/**
+	 * Extract the {@link ImageData.ImageType} from a serialized .qpdata file, without reading the object hierarchy.
+	 * This is much faster than reading the full {@link ImageData} if the hierarchy is large.
+	 * @param file
+	 * @return the image type, or null if none was found
+	 * @throws IOException if the file is not a valid QuPath data file, or could not be read
+	 * @since v0.6.0
+	 */
+	public static ImageData.ImageType extractImageType(Path file) throws IOException {
+		try (InputStream fileIn = Files.newInputStream(file)) {
+			ObjectInputStream inStream = createObjectInputStream(new BufferedInputStream(fileIn));
+			
+			// Check the first line, then skip the server until we reach the image type
+			String firstLine = inStream.readUTF();
+			if (!firstLine.startsWith("Data file version"))
+				throw new IOException(file + " does not appear to be a valid QuPath data file");
+			inStream.readObject();
+			while (true) {
+				// The image type is written before the hierarchy, so we shouldn't need to read far
+				Object input = inStream.readObject();
+				if (input instanceof ImageData.ImageType imageType)
+					return imageType;
+				if (input instanceof PathObjectHierarchy || "EOF".equals(input))
+					return null;
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+	
+	
 	/**
 	 * Create a new {@link ObjectInputStream}, setting the default {@link ObjectInputFilter} for core QuPath-related 
 	 * and Java classes only.
@@ -71,16 +71,30 @@ public class Reclassifier {
 	 */
 	public boolean apply() {
 		var previousClass = pathObject.getPathClass();
-		var pathClass = this.pathClass;
+		var pathClass = getUpdatedClass(previousClass, this.pathClass, retainIntensityClass);
+		pathObject.setPathClass(pathClass, probability);
+		return previousClass != pathClass;
+	}
+	
+	/**
+	 * Get the classification that would be set by {@link #apply()}, given the previous classification of an object.
+	 * This is useful to determine classifications without updating any objects.
+	 * 
+	 * @param previousClass the previous classification of the object
+	 * @param pathClass the classification to apply
+	 * @param retainIntensityClass if the previous classification is an intensity classification, optionally retain this and only update the base class
+	 * @return the updated classification
+	 * @since v0.6.0
+	 */
+	public static PathClass getUpdatedClass(PathClass previousClass, PathClass pathClass, boolean retainIntensityClass) {
 		if (pathClass == PathClass.NULL_CLASS)
-			pathClass = null;
-		else if (retainIntensityClass && previousClass != null &&
+			return null;
+		if (retainIntensityClass && previousClass != null &&
 				(PathClassTools.isPositiveOrGradedIntensityClass(previousClass) || PathClassTools.isNegativeClass(previousClass)) && 
 				(!previousClass.isDerivedClass() || previousClass.getBaseClass() == previousClass.getParentClass())) {
-			pathClass = PathClass.getInstance(pathClass, previousClass.getName(), null);
+			return PathClass.getInstance(pathClass, previousClass.getName(), null);
 		}
-		pathObject.setPathClass(pathClass, probability);
-		return previousClass != pathClass;
+		return pathClass;
 	}
 	
 	/**
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.objects.hierarchy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.objects.PathAnnotationObject;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectTools;
+import qupath.lib.objects.TMACoreObject;
+import qupath.lib.regions.ImageRegion;
+
+/**
+ * Helper class to find the parents of many detections at once.
+ * <p>
+ * Detections are partitioned into spatial tiles according to their centroids.
+ * The candidate parents (annotations and, optionally, TMA cores) are requested from the tile cache once
+ * per tile, and the cached point locators of these candidates are then used to assign parents
+ * to the detections in each tile concurrently.
+ * <p>
+ * This gives the same result as inserting detections one at a time, since detections can never be
+ * the parent of another detection during insertion - and so the candidate parents don't change.
+ * However, it does not modify the hierarchy: applying the parent assignments is the responsibility
+ * of the caller, so that this can be done in a single batched step while holding the hierarchy lock.
+ */
+class DetectionParentResolver {
+
+	private static final Logger logger = LoggerFactory.getLogger(DetectionParentResolver.class);
+
+	private final PathObjectTileCache tileCache;
+	private final PathObject rootObject;
+	private final boolean includeTMACores;
+	private final int tileSize;
+
+	DetectionParentResolver(PathObjectTileCache tileCache, PathObject rootObject, boolean includeTMACores, int tileSize) {
+		this.tileCache = tileCache;
+		this.rootObject = rootObject;
+		this.includeTMACores = includeTMACores;
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Compute the parent for each detection.
+	 * @param detections the detections; these should not currently be part of the hierarchy
+	 * @return a map with parents as keys and children as values; iteration order of both follows
+	 *         the order of the detections provided
+	 */
+	Map<PathObject, List<PathObject>> resolveParents(List<? extends PathObject> detections) {
+		long startTime = System.currentTimeMillis();
+
+		// Group detections by tile, using the centroid (since this determines the parent)
+		Map<TileKey, List<Integer>> tiles = new HashMap<>();
+		for (int i = 0; i < detections.size(); i++) {
+			var roi = PathObjectTools.getROI(detections.get(i), true);
+			if (roi == null)
+				continue;
+			var key = new TileKey(
+					(int)Math.floor(roi.getCentroidX() / tileSize),
+					(int)Math.floor(roi.getCentroidY() / tileSize),
+					roi.getZ(),
+					roi.getT());
+			tiles.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+		}
+
+		// Ensure the cache is constructed before we query it from multiple threads
+		tileCache.hasObjectsForRegion(PathAnnotationObject.class, null, true);
+
+		// Determine parents in parallel - each tile writes to distinct indices of the array
+		var parents = new PathObject[detections.size()];
+		tiles.entrySet().parallelStream().forEach(entry -> resolveTile(entry.getKey(), entry.getValue(), detections, parents));
+
+		// Group by parent, retaining the original order
+		Map<PathObject, List<PathObject>> map = new LinkedHashMap<>();
+		for (int i = 0; i < parents.length; i++) {
+			var parent = parents[i] == null ? rootObject : parents[i];
+			map.computeIfAbsent(parent, p -> new ArrayList<>()).add(detections.get(i));
+		}
+		long endTime = System.currentTimeMillis();
+		logger.debug("Parents resolved for {} detections in {} tiles ({} ms)", detections.size(), tiles.size(), endTime - startTime);
+		return map;
+	}
+
+
+	private void resolveTile(TileKey key, List<Integer> indices, List<? extends PathObject> detections, PathObject[] parents) {
+		var region = ImageRegion.createInstance(key.x() * tileSize, key.y() * tileSize, tileSize, tileSize, key.z(), key.t());
+		var set = new HashSet<PathObject>();
+		tileCache.getObjectsForRegion(PathAnnotationObject.class, region, set, true);
+		if (includeTMACores)
+			tileCache.getObjectsForRegion(TMACoreObject.class, region, set, true);
+
+		if (set.isEmpty())
+			return;
+
+		var candidates = new ArrayList<>(set);
+		candidates.sort(PathObjectHierarchy.HIERARCHY_COMPARATOR);
+
+		var coord = new Coordinate();
+		for (int ind : indices) {
+			var roi = PathObjectTools.getROI(detections.get(ind), true);
+			double x = roi.getCentroidX();
+			double y = roi.getCentroidY();
+			coord.setX(x);
+			coord.setY(y);
+			for (var candidate : candidates) {
+				var parentROI = candidate.getROI();
+				// Cheap bounding box test before using the locator
+				if (x < parentROI.getBoundsX() || y < parentROI.getBoundsY() ||
+						x > parentROI.getBoundsX() + parentROI.getBoundsWidth() ||
+						y > parentROI.getBoundsY() + parentROI.getBoundsHeight())
+					continue;
+				if (tileCache.getLocator(parentROI, true).locate(coord) != Location.EXTERIOR) {
+					parents[ind] = candidate;
+					break;
+				}
+			}
+		}
+	}
+
+
+	private record TileKey(int x, int y, int z, int t) {}
+
+}
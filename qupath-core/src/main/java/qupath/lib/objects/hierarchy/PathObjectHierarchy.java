@@ -44,6 +44,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import qupath.lib.analysis.DelaunayTools;
+import qupath.lib.analysis.KdTree2D;
+import qupath.lib.analysis.TiledSubdivision;
 import qupath.lib.common.LogTools;
 import qupath.lib.objects.DefaultPathObjectComparator;
 import qupath.lib.objects.PathAnnotationObject;
@@ -96,6 +98,9 @@ public final class PathObjectHierarchy implements Serializable {
 	// A map to store subdivisions, useful for finding neighbors
 	private transient SubdivisionManager subdivisionManager = new SubdivisionManager();
 
+	// Minimum number of detections to insert before parents are resolved in parallel, rather than one at a time
+	private static final int MIN_DETECTIONS_FOR_PARALLEL_INSERT = 1000;
+
 	/**
 	 * Default constructor, creates an empty hierarchy.
 	 */
@@ -233,6 +238,11 @@ public final class PathObjectHierarchy implements Serializable {
 		boolean singleObject = selectedObjects.size() == 1;
 		// We don't want to reset caches for every object if we have only detections, since previously-inserted objects don't impact the potential parent
 		boolean allDetections = selectedObjects.stream().allMatch(PathObject::isDetection);
+		if (allDetections && selectedObjects.size() >= MIN_DETECTIONS_FOR_PARALLEL_INSERT) {
+			insertDetectionsInParallel(selectedObjects);
+			fireHierarchyChangedEvent(this);
+			return true;
+		}
 		for (var pathObject : selectedObjects) {
 //			hierarchy.insertPathObject(pathObject, true);
 			insertPathObject(getRootObject(), pathObject, singleObject, !singleObject && !allDetections);
@@ -243,6 +253,21 @@ public final class PathObjectHierarchy implements Serializable {
 		return true;
 	}
 	
+	/**
+	 * Insert detections by computing all the parents first (in parallel), and then adding the detections
+	 * to their parents in a single batch.
+	 * This should only be called for detections that have already been removed from the hierarchy.
+	 * @param detections
+	 */
+	private synchronized void insertDetectionsInParallel(List<? extends PathObject> detections) {
+		var resolver = new DetectionParentResolver(tileCache, getRootObject(), tmaGrid != null, PathObjectTileCache.DEFAULT_TILE_SIZE);
+		var parentMap = resolver.resolveParents(detections);
+		for (var entry : parentMap.entrySet()) {
+			entry.getKey().addChildObjects(entry.getValue());
+		}
+		tileCache.resetCache();
+	}
+	
 	/**
 	 * Attempt to resolve the parent-child relationships between all objects within the hierarchy.
 	 */
@@ -254,6 +279,20 @@ public final class PathObjectHierarchy implements Serializable {
 			return;
 		}
 		var detections = getDetectionObjects();
+		if (detections.size() >= MIN_DETECTIONS_FOR_PARALLEL_INSERT) {
+			// Remove detections first, so that inserting annotations doesn't require checking every detection
+			// as a potential child - then insert the detections in a single batch.
+			// Only detections that aren't inside other detections need to be reinserted; nested detections 
+			// (e.g. subcellular objects) stay with their parent detection.
+			var detectionList = detections.stream()
+					.filter(p -> p.getParent() != null && !p.getParent().isDetection())
+					.toList();
+			removeObjects(detectionList, false);
+			if (!annotations.isEmpty())
+				insertPathObjects(annotations);
+			insertPathObjects(detectionList);
+			return;
+		}
 		if (annotations.size() > 1 && detections.size() > 1000) {
 			logger.warn("Resolving hierarchy that contains {} annotations and {} detections - this may be slow!",
 					annotations.size(), detections.size());
@@ -1133,6 +1172,8 @@ public final class PathObjectHierarchy implements Serializable {
 					var classes = changed.stream().map(PathObject::getClass).distinct().toList();
 					if (classes.isEmpty() || classes.contains(PathRootObject.class))
 						resetNeighbors();
+					else if (event.isAddedOrRemovedEvent())
+						subdivisionManager.updateNeighbors(changed, event.getEventType() == HierarchyEventType.ADDED);
 					else {
 						for (var cls : classes) {
 							resetNeighborsForClass(cls);
@@ -1165,13 +1206,13 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @since v0.6.0
 	 */
 	public synchronized List<PathObject> findAllNeighbors(PathObject pathObject) {
-		var subdivision = getSubdivision(pathObject);
+		var subdivision = subdivisionManager.getTiledSubdivision(pathObject);
 		return subdivision == null ? Collections.emptyList() : subdivision.getNeighbors(pathObject);
 	}
 
 	/**
 	 * Find the nearest neighbor of a PathObject, having the same class as the object (e.g. detection, cell, annotation).
-	 * This is based on centroids and Delaunay triangulation.
+	 * This is based on centroids, using a k-d tree.
 	 * It also assumes 'square' pixels, and searches for neighbors only on the same 2D plane (z and t).
 	 * <p>
 	 * This is an <i>experimental method</i> added in v0.6.0, subject to change.
@@ -1180,8 +1221,8 @@ public final class PathObjectHierarchy implements Serializable {
 	 * @since v0.6.0
 	 */
 	public synchronized PathObject findNearestNeighbor(PathObject pathObject) {
-		var subdivision = getSubdivision(pathObject);
-		return subdivision == null ? null : subdivision.getNearestNeighbor(pathObject);
+		var index = subdivisionManager.getNearestNeighborIndex(pathObject);
+		return index == null ? null : index.findNearestNeighbor(pathObject);
 	}
 
 	/**
@@ -1268,20 +1309,126 @@ public final class PathObjectHierarchy implements Serializable {
 			return map.computeIfAbsent(plane, k -> computeSubdivision(cls, plane));
 		}
 
-		private DelaunayTools.Subdivision computeSubdivision(Class<? extends PathObject> cls, ImagePlane plane) {
-			var pathObjects = tileCache.getObjectsForRegion(cls,
+		/**
+		 * Tiled subdivisions used for neighbor queries; unlike full subdivisions, these can be updated
+		 * incrementally when objects are added or removed.
+		 */
+		private final Map<Class<? extends PathObject>,
+				Map<ImagePlane, TiledSubdivision>> tiledSubdivisionMap = new ConcurrentHashMap<>();
+
+		/**
+		 * k-d trees used for nearest neighbor queries; these are much faster to build than a triangulation,
+		 * so are simply rebuilt when needed after objects are added or removed.
+		 */
+		private final Map<Class<? extends PathObject>,
+				Map<ImagePlane, NearestNeighborIndex>> nearestNeighborMap = new ConcurrentHashMap<>();
+
+		synchronized NearestNeighborIndex getNearestNeighborIndex(PathObject pathObject) {
+			if (pathObject == null || !pathObject.hasROI())
+				return null;
+			var cls = pathObject.getClass();
+			var plane = pathObject.getROI().getImagePlane();
+			var map = nearestNeighborMap.computeIfAbsent(cls, k -> new ConcurrentHashMap<>());
+			return map.computeIfAbsent(plane, k -> new NearestNeighborIndex(getObjectsForPlane(cls, plane)));
+		}
+
+		synchronized TiledSubdivision getTiledSubdivision(PathObject pathObject) {
+			if (pathObject == null || !pathObject.hasROI())
+				return null;
+			var cls = pathObject.getClass();
+			var plane = pathObject.getROI().getImagePlane();
+			var map = tiledSubdivisionMap.computeIfAbsent(cls, k -> new ConcurrentHashMap<>());
+			return map.computeIfAbsent(plane, k -> TiledSubdivision.createFromCentroids(getObjectsForPlane(cls, plane), true));
+		}
+
+		private Collection<PathObject> getObjectsForPlane(Class<? extends PathObject> cls, ImagePlane plane) {
+			return tileCache.getObjectsForRegion(cls,
 					ImageRegion.createInstance(-Integer.MAX_VALUE/2, -Integer.MAX_VALUE/2,
 							Integer.MAX_VALUE, Integer.MAX_VALUE, plane.getZ(), plane.getT()),
 					null, false);
-			return DelaunayTools.createFromCentroids(pathObjects, true);
+		}
+
+		private DelaunayTools.Subdivision computeSubdivision(Class<? extends PathObject> cls, ImagePlane plane) {
+			return DelaunayTools.createFromCentroids(getObjectsForPlane(cls, plane), true);
+		}
+
+		/**
+		 * Update neighbors after objects have been added or removed.
+		 * Full subdivisions are discarded, while existing tiled subdivisions are updated incrementally.
+		 * @param changed the objects that were added or removed (descendants are also checked)
+		 * @param added true if the objects were added, false if they were removed
+		 */
+		synchronized void updateNeighbors(Collection<? extends PathObject> changed, boolean added) {
+			subdivisionMap.clear();
+			nearestNeighborMap.clear();
+			if (tiledSubdivisionMap.isEmpty())
+				return;
+			Map<TiledSubdivision, List<PathObject>> updates = new HashMap<>();
+			var objects = new ArrayList<PathObject>();
+			for (var pathObject : changed) {
+				objects.add(pathObject);
+				pathObject.getDescendantObjects(objects);
+			}
+			for (var pathObject : objects) {
+				if (!pathObject.hasROI())
+					continue;
+				// Objects can be 'added' when they are moved, or retained when a parent is removed
+				if (added != PathObjectTools.hierarchyContainsObject(PathObjectHierarchy.this, pathObject))
+					continue;
+				var map = tiledSubdivisionMap.get(pathObject.getClass());
+				var subdivision = map == null ? null : map.get(pathObject.getROI().getImagePlane());
+				if (subdivision != null)
+					updates.computeIfAbsent(subdivision, k -> new ArrayList<>()).add(pathObject);
+			}
+			for (var entry : updates.entrySet()) {
+				if (added)
+					entry.getKey().update(Collections.emptyList(), entry.getValue());
+				else
+					entry.getKey().update(entry.getValue(), Collections.emptyList());
+			}
 		}
 
 		private synchronized void clear() {
 			subdivisionMap.clear();
+			tiledSubdivisionMap.clear();
+			nearestNeighborMap.clear();
 		}
 
 		private synchronized void clearClass(Class<? extends PathObject> cls) {
 			subdivisionMap.getOrDefault(cls, Collections.emptyMap()).clear();
+			tiledSubdivisionMap.getOrDefault(cls, Collections.emptyMap()).clear();
+			nearestNeighborMap.getOrDefault(cls, Collections.emptyMap()).clear();
+		}
+
+	}
+
+	/**
+	 * Helper class to find the nearest neighbor of an object based on centroids.
+	 */
+	private static class NearestNeighborIndex {
+
+		private final PathObject[] pathObjects;
+		private final Map<PathObject, Integer> indices = new HashMap<>();
+		private final KdTree2D tree;
+
+		private NearestNeighborIndex(Collection<? extends PathObject> pathObjects) {
+			this.pathObjects = pathObjects.toArray(PathObject[]::new);
+			int n = this.pathObjects.length;
+			var x = new double[n];
+			var y = new double[n];
+			for (int i = 0; i < n; i++) {
+				var roi = PathObjectTools.getROI(this.pathObjects[i], true);
+				x[i] = roi.getCentroidX();
+				y[i] = roi.getCentroidY();
+				indices.put(this.pathObjects[i], i);
+			}
+			this.tree = KdTree2D.create(x, y);
+		}
+
+		private PathObject findNearestNeighbor(PathObject pathObject) {
+			var roi = PathObjectTools.getROI(pathObject, true);
+			int ind = tree.nearest(roi.getCentroidX(), roi.getCentroidY(), indices.getOrDefault(pathObject, -1));
+			return ind < 0 ? null : pathObjects[ind];
 		}
 
 	}
@@ -85,13 +85,15 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	
 	/**
 	 * Keep a map of envelopes per ROI; ROIs should be immutable.
+	 * This is synchronized because it is updated by queries that only hold the read lock.
 	 */
-	private Map<ROI, Envelope> envelopeMap = new WeakHashMap<>();
+	private Map<ROI, Envelope> envelopeMap = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	/**
 	 * Keep a map of envelopes per object, because potentially an object might have its ROI replaced behind our back...
+	 * This is synchronized because it is updated by queries that only hold the read lock.
 	 */
-	private Map<PathObject, Envelope> lastEnvelopeMap = new WeakHashMap<>();
+	private Map<PathObject, Envelope> lastEnvelopeMap = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	/**
 	 * Store a spatial index according to the class of PathObject.
@@ -301,13 +303,8 @@ class PathObjectTileCache implements PathObjectHierarchyListener {
 	}
 	
 	private Envelope getEnvelope(ROI roi) {
-		var envelope = envelopeMap.get(roi);
-		if (envelope == null) {
-			envelope = new Envelope(roi.getBoundsX(), roi.getBoundsX() + roi.getBoundsWidth(),
-					roi.getBoundsY(), roi.getBoundsY() + roi.getBoundsHeight());
-			envelopeMap.put(roi, envelope);
-		}
-		return envelope;
+		return envelopeMap.computeIfAbsent(roi, r -> new Envelope(r.getBoundsX(), r.getBoundsX() + r.getBoundsWidth(),
+				r.getBoundsY(), r.getBoundsY() + r.getBoundsHeight()));
 	}
 	
 	private Envelope getEnvelope(ImageRegion region) {
@@ -26,6 +26,8 @@ package qupath.lib.projects;
 import java.awt.Desktop;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
@@ -127,6 +129,11 @@ class DefaultProject implements Project<BufferedImage> {
 	private long creationTimestamp;
 	private long modificationTimestamp;
 	
+	/**
+	 * Single-file store for thumbnails, to avoid reading from every entry directory.
+	 */
+	private final ThumbnailAtlas thumbnailAtlas;
+	
 	DefaultProject(final File file) {
 		this.file = file;
 		if (file.isDirectory()) {
@@ -137,6 +144,7 @@ class DefaultProject implements Project<BufferedImage> {
 		creationTimestamp = System.currentTimeMillis();
 		modificationTimestamp = System.currentTimeMillis();
 		this.metadata = Collections.synchronizedMap(getStoredMetadata(this.dirBase.toPath()));
+		this.thumbnailAtlas = new ThumbnailAtlas(Paths.get(this.dirBase.getAbsolutePath(), "data", "thumbnails.atlas"), () -> getFile().toPath());
 	}
 	
 	@Override
@@ -341,6 +349,18 @@ class DefaultProject implements Project<BufferedImage> {
 		writeProject(getFile());
 		writePathClasses(pathClasses);
 		setStoredMetadata(getBasePath(), metadata);
+		writeThumbnailAtlas();
+	}
+	
+	private void writeThumbnailAtlas() {
+		try {
+			thumbnailAtlas.retainAll(images.stream().map(DefaultProjectImageEntry::getUniqueName).toList());
+			thumbnailAtlas.writeIfChanged();
+		} catch (IOException e) {
+			// The atlas is only a cache, so failing to write it isn't critical
+			logger.warn("Unable to write thumbnail atlas: {}", e.getMessage());
+			logger.debug(e.getMessage(), e);
+		}
 	}
 	
 	@Override
@@ -687,6 +707,21 @@ class DefaultProject implements Project<BufferedImage> {
 			return imageData;
 		}
 
+		@Override
+		public synchronized ImageType readImageType() throws IOException {
+			for (var path : List.of(getImageDataPath(), getBackupImageDataPath())) {
+				if (!Files.exists(path))
+					continue;
+				try {
+					var imageType = PathIO.extractImageType(path);
+					return imageType == null ? ImageType.UNSET : imageType;
+				} catch (IOException e) {
+					logger.error("Error reading image type from {}", path, e);
+				}
+			}
+			return ImageType.UNSET;
+		}
+
 		@Override
 		public synchronized void saveImageData(ImageData<BufferedImage> imageData) throws IOException {
 			// Get entry path, creating if needed
@@ -803,13 +838,19 @@ class DefaultProject implements Project<BufferedImage> {
 			var thumbnail = cachedThumbnail == null ? null : cachedThumbnail.get();
 			boolean cached = thumbnail != null;
 			if (thumbnail == null) {
-				var path = getThumbnailPath();
-				if (Files.exists(path)) {
-					try (var stream = Files.newInputStream(path)) {
-						thumbnail = ImageIO.read(stream);
-						cachedThumbnail = new SoftReference<>(thumbnail);
+				// Use the atlas if possible, otherwise read the file & update the atlas
+				var bytes = thumbnailAtlas.get(getUniqueName());
+				if (bytes == null) {
+					var path = getThumbnailPath();
+					if (Files.exists(path)) {
+						bytes = Files.readAllBytes(path);
+						thumbnailAtlas.put(getUniqueName(), bytes);
 					}
 				}
+				if (bytes != null) {
+					thumbnail = ImageIO.read(new ByteArrayInputStream(bytes));
+					cachedThumbnail = new SoftReference<>(thumbnail);
+				}
 			}
 			long endTime = System.nanoTime();
 			if (cached)
@@ -830,12 +871,15 @@ class DefaultProject implements Project<BufferedImage> {
 					logger.debug("Deleting thumbnail for {}", path);
 					Files.delete(path);
 				}
+				thumbnailAtlas.remove(getUniqueName());
 			} else {
 				// Save the thumbnail
-				try (var stream = Files.newOutputStream(path)) {
-					logger.debug("Writing thumbnail to {}", path);
-					ImageIO.write(img, "JPEG", stream);
-				}
+				var stream = new ByteArrayOutputStream();
+				ImageIO.write(img, "JPEG", stream);
+				var bytes = stream.toByteArray();
+				logger.debug("Writing thumbnail to {}", path);
+				Files.write(path, bytes);
+				thumbnailAtlas.put(getUniqueName(), bytes);
 			}
 		}
 
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import qupath.lib.images.ImageData;
+import qupath.lib.images.ImageData.ImageType;
 import qupath.lib.images.servers.ImageServer;
 import qupath.lib.images.servers.ImageServerBuilder.ServerBuilder;
 import qupath.lib.interfaces.MinimalMetadataStore;
@@ -232,6 +233,27 @@ public interface ProjectImageEntry<T> extends UriResource, MinimalMetadataStore
 	 */
 	PathObjectHierarchy readHierarchy() throws IOException;
 	
+	/**
+	 * Read the {@link ImageType} for this entry, without reading the object hierarchy if possible.
+	 * <p>
+	 * The default implementation reads the full {@link ImageData}; subclasses should override this 
+	 * if the image type can be read more efficiently.
+	 * @return the image type, or {@link ImageType#UNSET} if none is available
+	 * @throws IOException 
+	 * @since v0.6.0
+	 * @see #readImageData()
+	 */
+	default ImageType readImageType() throws IOException {
+		try (var imageData = readImageData()) {
+			var imageType = imageData.getImageType();
+			return imageType == null ? ImageType.UNSET : imageType;
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+	
 	/**
 	 * Check if this entry has saved {@link ImageData} already available.
 	 * 
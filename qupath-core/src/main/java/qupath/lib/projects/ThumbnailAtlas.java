@@ -0,0 +1,322 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.projects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single file containing the encoded thumbnails for all entries in a project.
+ * <p>
+ * Reading one thumbnail per entry directory can be slow for large projects (especially on network drives),
+ * so the atlas makes it possible to find all thumbnails with one file.
+ * Only the index is read when the atlas is first accessed; the bytes for each thumbnail are read when requested.
+ * <p>
+ * Thumbnails set through the project update the atlas directly, so individual thumbnail files don't need to be checked.
+ * To detect changes made by other software (e.g. an older version of QuPath that doesn't know about the atlas), 
+ * the atlas stores the last modified time of a reference file (the project file) when it is written.
+ * If the reference file has been modified since, the whole atlas is discarded.
+ * Each thumbnail is also stored with a checksum, so that corrupt entries are ignored.
+ * <p>
+ * Changes are only written when {@link #writeIfChanged()} is called.
+ */
+class ThumbnailAtlas {
+
+	private static final Logger logger = LoggerFactory.getLogger(ThumbnailAtlas.class);
+
+	private static final int MAGIC = 0x51505441; // QPTA
+	private static final int VERSION = 2;
+	
+	// Magic number, version, reference time, index offset
+	private static final int HEADER_SIZE = 24;
+	private static final int REFERENCE_TIME_OFFSET = 8;
+	private static final int INDEX_OFFSET_OFFSET = 16;
+
+	private final Path path;
+	private final Supplier<Path> referencePath;
+
+	// Thumbnails stored in the atlas file
+	private Map<String, AtlasEntry> index;
+	// Thumbnails added since the atlas was last written
+	private final Map<String, byte[]> pending = new LinkedHashMap<>();
+	private long referenceTime = Long.MIN_VALUE;
+	private boolean changed = false;
+
+	/**
+	 * Create an atlas.
+	 * @param path path to the atlas file
+	 * @param referencePath supplier for the path to a file that is expected to change whenever the project is saved; 
+	 *                      if this has been changed by anything other than the project, the atlas is discarded
+	 */
+	ThumbnailAtlas(Path path, Supplier<Path> referencePath) {
+		this.path = path;
+		this.referencePath = referencePath;
+	}
+
+	/**
+	 * Get the encoded bytes for a thumbnail, if available.
+	 * @param key unique key for the entry
+	 * @return the encoded thumbnail, or null if none is available
+	 */
+	synchronized byte[] get(String key) {
+		ensureRead();
+		var bytes = pending.get(key);
+		if (bytes != null)
+			return bytes;
+		var entry = index.get(key);
+		if (entry == null)
+			return null;
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			bytes = readBytes(channel, entry);
+		} catch (IOException e) {
+			logger.debug("Unable to read thumbnail from atlas: {}", e.getMessage());
+		}
+		if (bytes == null) {
+			index.remove(key);
+			changed = true;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Store the encoded bytes for a thumbnail.
+	 * @param key unique key for the entry
+	 * @param bytes the encoded thumbnail
+	 */
+	synchronized void put(String key, byte[] bytes) {
+		ensureRead();
+		index.remove(key);
+		pending.put(key, bytes);
+		changed = true;
+	}
+
+	/**
+	 * Remove the thumbnail for an entry.
+	 * @param key unique key for the entry
+	 */
+	synchronized void remove(String key) {
+		ensureRead();
+		if (index.remove(key) != null | pending.remove(key) != null)
+			changed = true;
+	}
+
+	/**
+	 * Remove thumbnails for all entries that are not included in the specified keys.
+	 * @param keys
+	 */
+	synchronized void retainAll(Collection<String> keys) {
+		ensureRead();
+		var set = new HashSet<>(keys);
+		if (index.keySet().retainAll(set) | pending.keySet().retainAll(set))
+			changed = true;
+	}
+	
+	/**
+	 * Get the number of thumbnails in the atlas.
+	 * @return
+	 */
+	synchronized int size() {
+		ensureRead();
+		return index.size() + pending.size();
+	}
+
+	/**
+	 * Write the atlas, if it has been changed since it was read or last written, or if the reference file has changed.
+	 * This should be called after the reference file has been written.
+	 * @return true if the atlas was written, false otherwise
+	 * @throws IOException
+	 */
+	synchronized boolean writeIfChanged() throws IOException {
+		if (index == null)
+			return false;
+		long currentReferenceTime = getReferenceTime();
+		if (!changed) {
+			if (currentReferenceTime == referenceTime || !Files.isRegularFile(path))
+				return false;
+			// Only the reference has changed, so we just need to update the header
+			try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				writeFully(channel, ByteBuffer.allocate(Long.BYTES).putLong(0, currentReferenceTime), REFERENCE_TIME_OFFSET);
+			}
+			referenceTime = currentReferenceTime;
+			return true;
+		}
+		
+		var parent = path.getParent();
+		if (parent != null && !Files.isDirectory(parent))
+			Files.createDirectories(parent);
+		var pathTemp = path.resolveSibling(path.getFileName().toString() + ".tmp");
+		Map<String, AtlasEntry> newIndex = new LinkedHashMap<>();
+		try (var channel = FileChannel.open(pathTemp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				var input = index.isEmpty() ? null : FileChannel.open(path, StandardOpenOption.READ)) {
+			var stream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			stream.writeLong(currentReferenceTime);
+			stream.writeLong(0L); // Index offset, set later
+			// Copy existing thumbnails one at a time, so that they don't all need to be in memory
+			for (var mapEntry : index.entrySet()) {
+				var bytes = readBytes(input, mapEntry.getValue());
+				if (bytes != null)
+					newIndex.put(mapEntry.getKey(), writeBytes(stream, bytes));
+			}
+			for (var mapEntry : pending.entrySet())
+				newIndex.put(mapEntry.getKey(), writeBytes(stream, mapEntry.getValue()));
+			
+			long indexOffset = stream.size();
+			stream.writeInt(newIndex.size());
+			for (var mapEntry : newIndex.entrySet()) {
+				var entry = mapEntry.getValue();
+				stream.writeUTF(mapEntry.getKey());
+				stream.writeLong(entry.offset());
+				stream.writeInt(entry.length());
+				stream.writeLong(entry.checksum());
+			}
+			stream.flush();
+			writeFully(channel, ByteBuffer.allocate(Long.BYTES).putLong(0, indexOffset), INDEX_OFFSET_OFFSET);
+		}
+		Files.move(pathTemp, path, StandardCopyOption.REPLACE_EXISTING);
+		logger.debug("Thumbnail atlas with {} entries written to {}", newIndex.size(), path);
+		index = newIndex;
+		pending.clear();
+		referenceTime = currentReferenceTime;
+		changed = false;
+		return true;
+	}
+
+	private void ensureRead() {
+		if (index != null)
+			return;
+		index = new LinkedHashMap<>();
+		if (!Files.isRegularFile(path))
+			return;
+		try {
+			readIndex();
+		} catch (IOException e) {
+			logger.warn("Unable to read thumbnail atlas: {}", e.getMessage());
+			logger.debug(e.getMessage(), e);
+			index.clear();
+			// Ensure that the atlas is rewritten
+			changed = true;
+		}
+	}
+
+	private void readIndex() throws IOException {
+		long startTime = System.currentTimeMillis();
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			var header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, header, 0);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException("Invalid thumbnail atlas " + path);
+			int version = header.getInt(4);
+			if (version != VERSION)
+				throw new IOException("Unsupported thumbnail atlas version " + version);
+			long storedReferenceTime = header.getLong(REFERENCE_TIME_OFFSET);
+			if (storedReferenceTime != getReferenceTime()) {
+				logger.debug("Thumbnail atlas is out of date and will be ignored");
+				changed = true;
+				return;
+			}
+			channel.position(header.getLong(INDEX_OFFSET_OFFSET));
+			var stream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			int n = stream.readInt();
+			for (int i = 0; i < n; i++) {
+				String key = stream.readUTF();
+				index.put(key, new AtlasEntry(stream.readLong(), stream.readInt(), stream.readLong()));
+			}
+			referenceTime = storedReferenceTime;
+		}
+		long endTime = System.currentTimeMillis();
+		logger.debug("Read thumbnail atlas index with {} entries in {} ms", index.size(), endTime - startTime);
+	}
+	
+	private long getReferenceTime() {
+		var path = referencePath == null ? null : referencePath.get();
+		try {
+			if (path != null && Files.isRegularFile(path))
+				return Files.getLastModifiedTime(path).toMillis();
+		} catch (IOException e) {
+			logger.debug("Unable to get last modified time for {}: {}", path, e.getMessage());
+		}
+		return -1L;
+	}
+
+	/**
+	 * Read the bytes for an entry, or return null if the checksum doesn't match.
+	 */
+	private static byte[] readBytes(FileChannel channel, AtlasEntry entry) throws IOException {
+		var buffer = ByteBuffer.allocate(entry.length());
+		readFully(channel, buffer, entry.offset());
+		var bytes = buffer.array();
+		if (computeChecksum(bytes) != entry.checksum()) {
+			logger.debug("Thumbnail atlas checksum mismatch - entry will be ignored");
+			return null;
+		}
+		return bytes;
+	}
+	
+	private static AtlasEntry writeBytes(DataOutputStream stream, byte[] bytes) throws IOException {
+		long offset = stream.size();
+		stream.write(bytes);
+		return new AtlasEntry(offset, bytes.length, computeChecksum(bytes));
+	}
+	
+	private static long computeChecksum(byte[] bytes) {
+		var crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("Unexpected end of thumbnail atlas");
+		}
+	}
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+	}
+
+	private record AtlasEntry(long offset, int length, long checksum) {}
+
+}
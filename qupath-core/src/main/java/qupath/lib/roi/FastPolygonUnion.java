@@ -21,6 +21,7 @@
 
 package qupath.lib.roi;
 
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.util.PolygonExtracter;
@@ -32,11 +33,12 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.IntStream;
 
 /**
@@ -59,14 +61,19 @@ import java.util.stream.IntStream;
  *         each polygon should be represented in only one group
  *     </li>
  *     <li>
- *         Union all the polygon groups
+ *         Union all the polygon groups; large groups are split recursively into spatially-compact
+ *         halves, which are merged in parallel and then combined
  *     </li>
  *     <li>
  *         Combine all resulting polygons into a single polygon or multipolygon
  *     </lI>
  * </ol>
  * This partitioning of the problem makes it possible to parallelize checking for intersections
- * and computing the union of groups.
+ * and computing the union of groups - even when all the polygons belong to a single group, 
+ * as is often the case when merging tiled pixel classification results.
+ * <p>
+ * Unions use the precision model of {@link GeometryTools#getDefaultFactory()}, so that coordinates 
+ * along the seams of the partitions are snapped consistently.
  *
  * @author Pete Bankhead
  */
@@ -74,6 +81,12 @@ public class FastPolygonUnion {
 
     private static final Logger logger = LoggerFactory.getLogger(FastPolygonUnion.class);
 
+    /**
+     * Maximum number of polygons to combine in a single union operation.
+     * Larger groups are split spatially, so that the union can be computed in parallel.
+     */
+    private static final int MAX_POLYGONS_PER_UNION = 256;
+
     /**
      * Compute a union of all polygons contained in an array of geometries.
      * Non-polygon geometries will be ignored.
@@ -101,39 +114,36 @@ public class FastPolygonUnion {
             tree.insert(allPolygons.get(i).getEnvelopeInternal(), i);
         }
 
-        // Check for adjacent objects, restricting search using the tree
-        var matrix = new AdjacencyMatrix(n);
-        IntStream.range(0, n)
+        // Check for intersecting polygons, restricting search using the tree
+        int[][] intersecting = IntStream.range(0, n)
                 .parallel()
-                .forEach(i -> populateAdjacencyMatrix(allPolygons, matrix, tree, i));
+                .mapToObj(i -> findIntersecting(allPolygons, tree, i))
+                .toArray(int[][]::new);
 
         // Gather all the polygons that should be merged
+        var groups = new DisjointSets(n);
+        for (int i = 0; i < n; i++) {
+            for (int j : intersecting[i])
+                groups.merge(i, j);
+        }
+        Map<Integer, List<Geometry>> groupMap = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            groupMap.computeIfAbsent(groups.find(i), k -> new ArrayList<>()).add(allPolygons.get(i));
+        }
         var groupsToMerge = new ArrayList<List<Geometry>>();
         var toKeep = new ArrayList<Geometry>();
-        var visited = new HashSet<Integer>();
-        for (int i = 0; i < n; i++) {
-            if (matrix.getAdjacentCount(i) == 0) {
+        for (var group : groupMap.values()) {
+            if (group.size() == 1) {
                 // Nothing to merge, keep unchanged
-                toKeep.add(allPolygons.get(i));
-                visited.add(i);
-            } else if (visited.contains(i)) {
-                // Already in a group, skip
-                continue;
+                toKeep.add(group.get(0));
             } else {
-                // Generate a new group for merging
-                List<Geometry> temp = new ArrayList<>();
-                for (Integer ind : matrix.getAdjacencyGroup(i)) {
-                    temp.add(allPolygons.get(ind));
-                    if (!visited.add(ind))
-                        logger.warn("Polygon added more than once!");
-                }
-                groupsToMerge.add(temp);
+                groupsToMerge.add(group);
             }
         }
         logger.debug("Number of polygon collections to merge: {}", groupsToMerge.size());
 
         toKeep.addAll(groupsToMerge.parallelStream()
-                .map(list -> unionOpNg(list))
+                .map(list -> new UnionTask(list).invoke())
                 .toList());
 
        return createPolygonalGeometry(toKeep);
@@ -191,91 +201,117 @@ public class FastPolygonUnion {
             return GeometryTools.getDefaultFactory().createMultiPolygon(list.toArray(Polygon[]::new));
     }
 
-    private static void populateAdjacencyMatrix(List<Polygon> allPolygons, AdjacencyMatrix matrix, SpatialIndex tree, int ind) {
+    /**
+     * Find the indices of all polygons with a higher index that intersect the polygon with the specified index.
+     * @param allPolygons
+     * @param tree
+     * @param ind
+     * @return
+     */
+    private static int[] findIntersecting(List<Polygon> allPolygons, SpatialIndex tree, int ind) {
         var poly = allPolygons.get(ind);
-        for (int ind2 : (List<Integer>)tree.query(poly.getEnvelopeInternal())) {
-            // Matrix is symmetric, so only test where needed
-            if (ind2 <= ind || matrix.isAdjacent(ind, ind2))
-                continue;
-            // Check if polygons intersect
-            var poly2 = allPolygons.get(ind2);
-            if (poly.intersects(poly2)) {
-                matrix.setAdjacent(ind, ind2);
-            }
-        }
+        return ((List<Integer>)tree.query(poly.getEnvelopeInternal()))
+                .stream()
+                .mapToInt(Integer::intValue)
+                .filter(ind2 -> ind2 > ind && poly.intersects(allPolygons.get(ind2)))
+                .toArray();
     }
 
     /**
-     * Simple adjacency matrix to help identify polygons that should be merged.
+     * Split geometries into two spatially-compact halves, by sorting along the longest side of their 
+     * combined bounding box.
+     * @param geoms
+     * @return
      */
-    private static class AdjacencyMatrix {
+    static List<List<Geometry>> splitSpatially(List<Geometry> geoms) {
+        var envelope = new Envelope();
+        for (var g : geoms)
+            envelope.expandToInclude(g.getEnvelopeInternal());
+        Comparator<Geometry> comparator;
+        if (envelope.getWidth() >= envelope.getHeight())
+            comparator = Comparator.comparingDouble(g -> g.getEnvelopeInternal().centre().x);
+        else
+            comparator = Comparator.comparingDouble(g -> g.getEnvelopeInternal().centre().y);
+        var sorted = new ArrayList<>(geoms);
+        sorted.sort(comparator);
+        int mid = sorted.size() / 2;
+        return List.of(sorted.subList(0, mid), sorted.subList(mid, sorted.size()));
+    }
 
-        private List<BitSet> bits = new ArrayList<>();
+    /**
+     * Task to compute the union of a group of geometries.
+     * Large groups are split in two, and the halves are merged in parallel before being combined.
+     * Since each half is spatially compact, the final merge only needs to handle the seam between them.
+     */
+    private static class UnionTask extends RecursiveTask<Geometry> {
 
-        private AdjacencyMatrix(int n) {
-            for (int i = 0; i < n; i++) {
-                bits.add(new BitSet(n));
-            }
-        }
+        private final List<Geometry> geoms;
 
-        /**
-         * Flag that two entries are adjacent.
-         * @param i
-         * @param j
-         * @return true if a change was made, false if the entries were already
-         *         flagged as adjacent.
-         */
-        public boolean setAdjacent(int i, int j) {
-            if (bits.get(i).get(j))
-                return false;
-            bits.get(i).set(j);
-            bits.get(j).set(i);
-            return true;
+        private UnionTask(List<Geometry> geoms) {
+            this.geoms = geoms;
         }
 
-        /**
-         * Get indices for all entries that are directly or indirectly adjacent,
-         * i.e. polygons that may need to be merged.
-         * @param i
-         * @return
-         */
-        public Set<Integer> getAdjacencyGroup(int i) {
-            var set = new HashSet<Integer>();
-            accumulateAdjacencyGroup(i, set);
-            return set;
+        @Override
+        protected Geometry compute() {
+            if (geoms.size() <= MAX_POLYGONS_PER_UNION)
+                return unionOpNg(geoms);
+            var halves = splitSpatially(geoms);
+            var first = new UnionTask(halves.get(0));
+            first.fork();
+            var second = new UnionTask(halves.get(1)).compute();
+            return unionOpNg(List.of(first.join(), second));
         }
 
-        /**
-         * Ensure an item is part of a group; if it has not already been added,
-         * any additional adjacent items will be added as well.
-         * @param i
-         * @param group
-         */
-        private void accumulateAdjacencyGroup(int i, Set<Integer> group) {
-            if (group.add(i)) {
-                for (int j : bits.get(i).stream().toArray()) {
-                    accumulateAdjacencyGroup(j, group);
-                }
-            }
+    }
+
+    /**
+     * Disjoint-set (union-find) structure to help identify polygons that should be merged.
+     * This requires memory proportional to the number of polygons, regardless of how many intersect.
+     */
+    private static class DisjointSets {
+
+        private final int[] parent;
+        private final int[] rank;
+
+        private DisjointSets(int n) {
+            parent = new int[n];
+            rank = new int[n];
+            for (int i = 0; i < n; i++)
+                parent[i] = i;
         }
 
         /**
-         * Get the number of directly-adjacent items for the given item index.
+         * Find the representative of the set containing an item.
          * @param i
          * @return
          */
-        public int getAdjacentCount(int i) {
-            return bits.get(i).cardinality();
+        public int find(int i) {
+            while (parent[i] != i) {
+                // Path halving
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
         }
 
         /**
-         * Query whether two items are flagged as adjacent.
+         * Merge the sets containing two items.
          * @param i
          * @param j
-         * @return
          */
-        public boolean isAdjacent(int i, int j) {
-            return bits.get(i).get(j);
+        public void merge(int i, int j) {
+            int ri = find(i);
+            int rj = find(j);
+            if (ri == rj)
+                return;
+            if (rank[ri] < rank[rj]) {
+                parent[ri] = rj;
+            } else if (rank[ri] > rank[rj]) {
+                parent[rj] = ri;
+            } else {
+                parent[rj] = ri;
+                rank[ri]++;
+            }
         }
 
     }
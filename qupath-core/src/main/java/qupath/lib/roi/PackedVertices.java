@@ -0,0 +1,235 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.roi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import qupath.lib.geom.Point2;
+
+/**
+ * Immutable vertices stored compactly as 16-bit offsets from an origin, in units of a power-of-two quantum.
+ * <p>
+ * This is intended for the very large numbers of small polygons that are created for detections (e.g. cell nuclei),
+ * where most of the memory required by {@link DefaultVertices} goes on array headers and 32-bit coordinates.
+ * Coordinates from contour tracing are usually on a regular grid, and so can be represented exactly.
+ * <p>
+ * The offsets for many vertices objects are stored in shared blocks, which avoids the overhead of separate arrays.
+ * A block can only be garbage collected after all the vertices that use it are unreachable.
+ * <p>
+ * Packing is lossless: {@link #create(float[], float[])} returns null if the coordinates cannot be stored exactly.
+ */
+class PackedVertices implements Vertices {
+
+	/**
+	 * Number of values (two per vertex) in each shared block.
+	 */
+	private static final int BLOCK_SIZE = 1 << 14;
+
+	/**
+	 * Maximum number of bits used for fractional coordinates, i.e. the smallest quantum is 1/256 pixel.
+	 */
+	private static final int MAX_SHIFT = 8;
+
+	private static final int MAX_OFFSET = 0xFFFF;
+
+	/**
+	 * Each thread fills its own block, to avoid contention when creating objects in parallel.
+	 */
+	private static final ThreadLocal<Block> currentBlock = ThreadLocal.withInitial(() -> new Block(BLOCK_SIZE));
+
+	private final char[] data;
+	private final int offset;
+	private final int size;
+	private final float originX, originY;
+	private final byte shift;
+
+	private PackedVertices(char[] data, int offset, int size, float originX, float originY, int shift) {
+		this.data = data;
+		this.offset = offset;
+		this.size = size;
+		this.originX = originX;
+		this.originY = originY;
+		this.shift = (byte)shift;
+	}
+
+	/**
+	 * Try to create packed vertices from arrays of coordinates.
+	 * @param x x-coordinates
+	 * @param y y-coordinates
+	 * @return the packed vertices, or null if the coordinates cannot be represented exactly
+	 */
+	static PackedVertices create(float[] x, float[] y) {
+		if (x.length != y.length)
+			throw new IllegalArgumentException("Array lengths " + x.length + " and " + y.length + " do not match!");
+		int n = x.length;
+		if (n == 0)
+			return null;
+		float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			if (!Float.isFinite(x[i]) || !Float.isFinite(y[i]))
+				return null;
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		// Find the coarsest quantum that represents all coordinates exactly
+		// (differences between floats are exact as doubles)
+		int shift = 0;
+		while (shift <= MAX_SHIFT && !(isExact(x, minX, shift) && isExact(y, minY, shift)))
+			shift++;
+		if (shift > MAX_SHIFT)
+			return null;
+		double scale = 1 << shift;
+		if ((maxX - (double)minX) * scale > MAX_OFFSET || (maxY - (double)minY) * scale > MAX_OFFSET)
+			return null;
+
+		char[] data;
+		int offset;
+		if (n * 2 > BLOCK_SIZE / 4) {
+			// Large polygons get their own array, to avoid wasting space at the end of blocks
+			data = new char[n * 2];
+			offset = 0;
+		} else {
+			var block = currentBlock.get();
+			if (block.remaining() < n * 2) {
+				block = new Block(BLOCK_SIZE);
+				currentBlock.set(block);
+			}
+			data = block.data;
+			offset = block.allocate(n * 2);
+		}
+		for (int i = 0; i < n; i++) {
+			data[offset + i * 2] = (char)Math.round((x[i] - (double)minX) * scale);
+			data[offset + i * 2 + 1] = (char)Math.round((y[i] - (double)minY) * scale);
+		}
+		return new PackedVertices(data, offset, n, minX, minY, shift);
+	}
+
+	private static boolean isExact(float[] values, float origin, int shift) {
+		double scale = 1 << shift;
+		for (float v : values) {
+			double d = (v - (double)origin) * scale;
+			if (d != Math.rint(d) || (float)(origin + d / scale) != v)
+				return false;
+		}
+		return true;
+	}
+
+	private float decode(float origin, char value) {
+		return (float)(origin + (double)value / (1 << shift));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public float[] getX(float[] xArray) {
+		if (xArray == null || xArray.length < size)
+			xArray = new float[size];
+		for (int i = 0; i < size; i++)
+			xArray[i] = decode(originX, data[offset + i * 2]);
+		return xArray;
+	}
+
+	@Override
+	public float[] getY(float[] yArray) {
+		if (yArray == null || yArray.length < size)
+			yArray = new float[size];
+		for (int i = 0; i < size; i++)
+			yArray[i] = decode(originY, data[offset + i * 2 + 1]);
+		return yArray;
+	}
+
+	@Override
+	public Point2 get(int idx) {
+		return new Point2(getX(idx), getY(idx));
+	}
+
+	@Override
+	public float getX(int idx) {
+		if (idx >= size)
+			throw new ArrayIndexOutOfBoundsException(idx + " is greater than size " + size);
+		return decode(originX, data[offset + idx * 2]);
+	}
+
+	@Override
+	public float getY(int idx) {
+		if (idx >= size)
+			throw new ArrayIndexOutOfBoundsException(idx + " is greater than size " + size);
+		return decode(originY, data[offset + idx * 2 + 1]);
+	}
+
+	@Override
+	public List<Point2> getPoints() {
+		List<Point2> points = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			points.add(get(i));
+		return points;
+	}
+
+	/**
+	 * Returns {@link DefaultVertices}, since duplicates are usually required to support modification.
+	 */
+	@Override
+	public Vertices duplicate() {
+		return new DefaultVertices(getX(null), getY(null), false);
+	}
+
+	/**
+	 * Does nothing, since packed vertices are already compact.
+	 */
+	@Override
+	public void compact() {}
+
+
+	private static class Block {
+
+		private final char[] data;
+		private int used = 0;
+
+		private Block(int size) {
+			this.data = new char[size];
+		}
+
+		private int remaining() {
+			return data.length - used;
+		}
+
+		private int allocate(int n) {
+			int start = used;
+			used += n;
+			return start;
+		}
+
+	}
+
+}
@@ -123,6 +123,31 @@ public class PolygonROI extends AbstractPathROI implements Serializable {
 	}
 	
 	
+	private PolygonROI(Vertices vertices, ImagePlane plane) {
+		super(plane);
+		this.vertices = vertices;
+	}
+	
+	
+	/**
+	 * Create a polygon with the same vertices, which are stored in a more compact form if possible.
+	 * The polygon is returned unchanged if its vertices cannot be stored more compactly without any loss of precision.
+	 * @return a compact polygon, or this polygon
+	 * @see RoiTools#compact(ROI)
+	 */
+	PolygonROI compact() {
+		if (vertices instanceof PackedVertices)
+			return this;
+		var packed = VerticesFactory.createPackedVertices(vertices.getX(null), vertices.getY(null));
+		if (packed == null)
+			return this;
+		var roi = new PolygonROI(packed, getImagePlane());
+		// Statistics are the same, so we can reuse them if they've been calculated
+		roi.stats = stats;
+		return roi;
+	}
+	
+	
 //	public PolygonROI(Vertices vertices, int c, int z, int t) {
 //		super(c, z, t);
 //		this.vertices = Vertices.createMutableVertices(vertices.size());
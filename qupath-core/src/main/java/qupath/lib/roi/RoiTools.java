@@ -367,6 +367,24 @@ public class RoiTools {
 		return results;
 	}
 	
+	/**
+	 * Get a ROI that represents the same region as the input, but which may require less memory.
+	 * This is useful when creating very large numbers of small ROIs, e.g. for cell detection.
+	 * <p>
+	 * Currently, only polygon ROIs are changed, with vertices stored as 16-bit offsets in shared blocks of memory 
+	 * if this is possible without any loss of precision.
+	 * All other ROIs are returned unchanged.
+	 * 
+	 * @param roi the input ROI
+	 * @return a compact version of the ROI, or the original ROI if no more compact version is available
+	 * @since v0.6.0
+	 */
+	public static ROI compact(ROI roi) {
+		if (roi instanceof PolygonROI polygon)
+			return polygon.compact();
+		return roi;
+	}
+	
 	/**
 	 * Fill the holes of an Area ROI, or return the ROI unchanged if it contains no holes.
 	 * 
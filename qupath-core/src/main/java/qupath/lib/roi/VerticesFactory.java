@@ -51,6 +51,16 @@ class VerticesFactory {
 		return new DefaultMutableVertices(new DefaultVertices(capacity));
 	}
 
+	/**
+	 * Create vertices that are stored as compactly as possible, without any loss of precision.
+	 * @param x
+	 * @param y
+	 * @return the vertices, or null if the coordinates cannot be stored compactly
+	 */
+	public static Vertices createPackedVertices(final float[] x, final float[] y) {
+		return PackedVertices.create(x, y);
+	}
+
 	public static Vertices createMutableVertices(final float[] x, final float[] y, final boolean copyArrays) {
 		return new DefaultMutableVertices(new DefaultVertices(x, y, copyArrays));
 	}
@@ -25,6 +25,7 @@ package qupath.lib.analysis;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.jupiter.api.Test;
@@ -151,4 +152,37 @@ public class TestDistanceTools {
 
 	}
 	
+	@Test
+	public void test_centroidNeighborCounts2D() {
+		double radius = 5;
+		var plane = ImagePlane.getDefaultPlane();
+		var tumorDetections = Arrays.asList(new Point2(100, 100), new Point2(110, 100), new Point2(200, 200)).stream()
+				.map(p -> PathObjects.createDetectionObject(
+						ROIs.createEllipseROI(p.getX()-radius, p.getY()-radius, radius*2, radius*2, plane),
+						PathClass.StandardPathClasses.TUMOR))
+				.toList();
+		var otherPlane = PathObjects.createDetectionObject(
+				ROIs.createEllipseROI(100-radius, 100-radius, radius*2, radius*2, ImagePlane.getPlane(1, 0)),
+				PathClass.StandardPathClasses.TUMOR);
+
+		var targets = new ArrayList<>(tumorDetections);
+		targets.add(otherPlane);
+		DistanceTools.centroidNeighborCounts2D(tumorDetections, targets, 1.0, 1.0,
+				new double[] {5, 10, 100}, new String[] {"Within 5", "Within 10", "Within 100"});
+
+		// Objects should not count themselves, or objects on other planes
+		var first = tumorDetections.get(0).getMeasurementList();
+		assertEquals(0, first.get("Within 5"));
+		assertEquals(1, first.get("Within 10"));
+		assertEquals(1, first.get("Within 100"));
+		var last = tumorDetections.get(2).getMeasurementList();
+		assertEquals(0, last.get("Within 10"));
+		assertEquals(0, last.get("Within 100"));
+
+		// Scaled pixels
+		DistanceTools.centroidNeighborCounts2D(tumorDetections, targets, 0.5, 0.5,
+				new double[] {5}, new String[] {"Within 5"});
+		assertEquals(1, first.get("Within 5"));
+	}
+
 }
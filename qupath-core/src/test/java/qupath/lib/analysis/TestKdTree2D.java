@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+public class TestKdTree2D {
+
+	@Test
+	public void test_empty() {
+		var tree = KdTree2D.create(new double[0], new double[0]);
+		assertEquals(0, tree.size());
+		assertEquals(-1, tree.nearest(1, 2));
+		assertEquals(Double.POSITIVE_INFINITY, tree.nearestDistance(1, 2));
+		assertEquals(0, tree.countWithinRadius(1, 2, 100));
+		assertEquals(0, tree.kNearest(1, 2, 5, -1).length);
+	}
+
+	@Test
+	public void test_invalidInput() {
+		assertThrows(IllegalArgumentException.class, () -> KdTree2D.create(new double[2], new double[3]));
+	}
+
+	@Test
+	public void test_bruteForce() {
+		var rng = new Random(100L);
+		// Include sizes that will and won't be built in parallel
+		for (int n : new int[] {1, 5, 50, 5000, 100_000}) {
+			var x = new double[n];
+			var y = new double[n];
+			for (int i = 0; i < n; i++) {
+				// Use coarse x values so that there are many ties
+				x[i] = Math.floor(rng.nextDouble() * 100) / 2;
+				y[i] = rng.nextDouble() * 50;
+			}
+			var tree = KdTree2D.create(x, y);
+			assertEquals(n, tree.size());
+
+			int nQueries = 200;
+			var qx = new double[nQueries];
+			var qy = new double[nQueries];
+			for (int q = 0; q < nQueries; q++) {
+				qx[q] = rng.nextDouble() * 60 - 5;
+				qy[q] = rng.nextDouble() * 60 - 5;
+				double radius = rng.nextDouble() * 5;
+				int exclude = rng.nextInt(n);
+
+				var distSq = new double[n];
+				double nearestSq = Double.POSITIVE_INFINITY;
+				double nearestExcludedSq = Double.POSITIVE_INFINITY;
+				int count = 0;
+				for (int i = 0; i < n; i++) {
+					double dx = x[i] - qx[q];
+					double dy = y[i] - qy[q];
+					distSq[i] = dx * dx + dy * dy;
+					nearestSq = Math.min(nearestSq, distSq[i]);
+					if (i != exclude)
+						nearestExcludedSq = Math.min(nearestExcludedSq, distSq[i]);
+					if (distSq[i] <= radius * radius)
+						count++;
+				}
+
+				assertEquals(nearestSq, distSq[tree.nearest(qx[q], qy[q])]);
+				assertEquals(Math.sqrt(nearestSq), tree.nearestDistance(qx[q], qy[q]));
+				int ind = tree.nearest(qx[q], qy[q], exclude);
+				if (n == 1)
+					assertEquals(-1, ind);
+				else
+					assertEquals(nearestExcludedSq, distSq[ind]);
+
+				assertEquals(count, tree.countWithinRadius(qx[q], qy[q], radius));
+				assertEquals(count, tree.findWithinRadius(qx[q], qy[q], radius).length);
+
+				var sorted = distSq.clone();
+				Arrays.sort(sorted);
+				var knn = tree.kNearest(qx[q], qy[q], 10, -1);
+				assertEquals(Math.min(10, n), knn.length);
+				for (int i = 0; i < knn.length; i++)
+					assertEquals(sorted[i], distSq[knn[i]]);
+			}
+
+			// Batch queries should match individual queries
+			var nearest = tree.nearest(qx, qy);
+			var distances = tree.nearestDistances(qx, qy);
+			var radii = new double[] {1, 2.5, 5};
+			var counts = tree.countWithinRadii(qx, qy, radii);
+			for (int q = 0; q < nQueries; q++) {
+				assertEquals(tree.nearest(qx[q], qy[q]), nearest[q]);
+				assertEquals(tree.nearestDistance(qx[q], qy[q]), distances[q]);
+				var expectedCounts = new int[radii.length];
+				for (int r = 0; r < radii.length; r++)
+					expectedCounts[r] = tree.countWithinRadius(qx[q], qy[q], radii[r]);
+				assertArrayEquals(expectedCounts, counts[q]);
+			}
+		}
+	}
+
+}
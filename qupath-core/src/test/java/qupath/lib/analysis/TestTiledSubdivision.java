@@ -0,0 +1,172 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.geom.Coordinate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.GeometryTools;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestTiledSubdivision {
+
+	private static final Logger logger = LoggerFactory.getLogger(TestTiledSubdivision.class);
+
+	@Test
+	public void test_uniformPoints() {
+		var pathObjects = createRandomDetections(new Random(100L), 20_000, 10_000, 10_000);
+		var tiled = TiledSubdivision.createFromCentroids(pathObjects, true, 1000, 100);
+		assertEquals(pathObjects.size(), tiled.size());
+		assertMatchesDelaunay(pathObjects, tiled, 50);
+	}
+
+	@Test
+	public void test_clusteredPoints() {
+		// Dense clusters separated by large empty regions, so that the halo needs to grow
+		var rng = new Random(200L);
+		var pathObjects = new ArrayList<PathObject>();
+		for (int c = 0; c < 5; c++) {
+			double cx = rng.nextDouble() * 20_000;
+			double cy = rng.nextDouble() * 20_000;
+			for (int i = 0; i < 2000; i++) {
+				double x = cx + rng.nextGaussian() * 200;
+				double y = cy + rng.nextGaussian() * 200;
+				pathObjects.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(x, y, 1, 1, ImagePlane.getDefaultPlane())));
+			}
+		}
+		var tiled = TiledSubdivision.createFromCentroids(pathObjects, true, 500, 20);
+		assertMatchesDelaunay(pathObjects, tiled, 20);
+	}
+
+	@Test
+	public void test_update() {
+		var rng = new Random(300L);
+		var pathObjects = createRandomDetections(rng, 10_000, 5_000, 5_000);
+		var tiled = TiledSubdivision.createFromCentroids(pathObjects, true, 500, 50);
+
+		// Remove and add objects within the same envelope
+		var removed = new ArrayList<>(pathObjects.subList(0, 500));
+		var added = createRandomDetections(rng, 500, 5_000, 5_000);
+		pathObjects.removeAll(removed);
+		pathObjects.addAll(added);
+		tiled.update(removed, added);
+		assertEquals(pathObjects.size(), tiled.size());
+		for (var pathObject : removed)
+			assertTrue(tiled.getNeighbors(pathObject).isEmpty());
+		assertMatchesDelaunay(pathObjects, tiled, 50);
+
+		// Add objects outside the current envelope
+		var outside = createRandomDetections(rng, 100, 6_000, 6_000);
+		pathObjects.addAll(outside);
+		tiled.update(List.of(), outside);
+		assertMatchesDelaunay(pathObjects, tiled, 50);
+	}
+
+	/**
+	 * Check neighbors are the same as for a global triangulation.
+	 * Points close to the convex hull are excluded, because JTS can give slightly different results there
+	 * depending upon the size of the frame used for the triangulation.
+	 */
+	private static void assertMatchesDelaunay(List<PathObject> pathObjects, TiledSubdivision tiled, double margin) {
+		var subdivision = DelaunayTools.createFromCentroids(pathObjects, true);
+		var factory = GeometryTools.getDefaultFactory();
+		var coords = pathObjects.stream()
+				.map(p -> new Coordinate(p.getROI().getCentroidX(), p.getROI().getCentroidY()))
+				.toArray(Coordinate[]::new);
+		var hull = new ConvexHull(coords, factory).getConvexHull().getBoundary();
+		int nChecked = 0;
+		for (var pathObject : pathObjects) {
+			var neighbors = tiled.getNeighbors(pathObject);
+			// Neighbors should always be symmetric
+			for (var neighbor : neighbors)
+				assertTrue(tiled.getNeighbors(neighbor).contains(pathObject));
+			var roi = pathObject.getROI();
+			var point = factory.createPoint(new Coordinate(roi.getCentroidX(), roi.getCentroidY()));
+			if (hull.distance(point) < margin)
+				continue;
+			var expected = subdivision.getNeighbors(pathObject);
+			assertEquals(Set.copyOf(expected), Set.copyOf(neighbors));
+			if (!expected.isEmpty())
+				assertEquals(subdivision.getNearestNeighbor(pathObject), tiled.getNearestNeighbor(pathObject));
+			nChecked++;
+		}
+		assertTrue(nChecked > pathObjects.size() / 2);
+	}
+
+	private static List<PathObject> createRandomDetections(Random rng, int n, double width, double height) {
+		var list = new ArrayList<PathObject>();
+		for (int i = 0; i < n; i++) {
+			double x = rng.nextDouble() * width;
+			double y = rng.nextDouble() * height;
+			list.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(x, y, 1, 1, ImagePlane.getDefaultPlane())));
+		}
+		return list;
+	}
+
+	/**
+	 * This test is ignored, but can be used to investigate the performance of the tiled subdivision
+	 * compared to a single triangulation.
+	 */
+	@Test
+	@Disabled
+	public void test_timing() {
+		var pathObjects = createRandomDetections(new Random(400L), 1_000_000, 100_000, 100_000);
+
+		long startTime = System.currentTimeMillis();
+		var tiled = TiledSubdivision.createFromCentroids(pathObjects, true);
+		long endTime = System.currentTimeMillis();
+		logger.info("Tiled subdivision: {} ms (tile size {})", endTime - startTime, tiled.getTileSize());
+
+		startTime = System.currentTimeMillis();
+		var neighbors = tiled.getAllNeighbors();
+		endTime = System.currentTimeMillis();
+		logger.info("Tiled neighbors: {} ms ({} objects)", endTime - startTime, neighbors.size());
+
+		startTime = System.currentTimeMillis();
+		tiled.update(pathObjects.subList(0, 100), createRandomDetections(new Random(500L), 100, 100_000, 100_000));
+		endTime = System.currentTimeMillis();
+		logger.info("Tiled update: {} ms", endTime - startTime);
+
+		startTime = System.currentTimeMillis();
+		var subdivision = DelaunayTools.createFromCentroids(pathObjects, true);
+		subdivision.getAllNeighbors();
+		endTime = System.currentTimeMillis();
+		logger.info("Full subdivision: {} ms", endTime - startTime);
+	}
+
+}
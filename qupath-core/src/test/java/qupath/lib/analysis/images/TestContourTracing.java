@@ -30,18 +30,29 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
 import javax.imageio.ImageIO;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.operation.valid.IsValidOp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import qupath.lib.analysis.images.ContourTracing.ChannelThreshold;
+import qupath.lib.images.servers.ImageServers;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.GeometryTools;
+
 /**
  * Test conversion of raster images (binary and labelled) to ROIs.
  * 
@@ -124,6 +135,44 @@ public class TestContourTracing {
 		logger.debug("Contours traced for {} in {} ms", path.getFileName().toString(), time);
 	}
 
+	
+	@Test
+	void testTracePolygons() throws Exception {
+		// Create a labelled image with overlapping circles, so that many regions cross tile boundaries
+		var img = new BufferedImage(300, 250, BufferedImage.TYPE_BYTE_GRAY);
+		var raster = img.getRaster();
+		var rng = new Random(100L);
+		for (int i = 0; i < 100; i++) {
+			int label = 1 + rng.nextInt(3);
+			int cx = rng.nextInt(img.getWidth());
+			int cy = rng.nextInt(img.getHeight());
+			int r = 2 + rng.nextInt(20);
+			for (int y = Math.max(0, cy - r); y < Math.min(img.getHeight(), cy + r); y++) {
+				for (int x = Math.max(0, cx - r); x < Math.min(img.getWidth(), cx + r); x++) {
+					if ((x - cx) * (x - cx) + (y - cy) * (y - cy) < r * r)
+						raster.setSample(x, y, 0, label);
+				}
+			}
+		}
+		var server = ImageServers.pyramidalizeTiled(new WrappedBufferedImageServer("labels", img), 32, 32, 1.0);
+		var thresholds = new ChannelThreshold[] {ChannelThreshold.create(1), ChannelThreshold.create(2), ChannelThreshold.create(3)};
+		var request = RegionRequest.createInstance(server);
+		
+		var expected = ContourTracing.traceGeometries(server, request, null, thresholds);
+		var actual = new HashMap<Integer, List<Polygon>>();
+		ContourTracing.tracePolygons(server, request, null, (label, polygon) -> actual.computeIfAbsent(label, k -> new ArrayList<>()).add(polygon), thresholds);
+		
+		assertEquals(expected.keySet(), actual.keySet());
+		for (var entry : expected.entrySet()) {
+			var geometry = entry.getValue();
+			var polygons = actual.get(entry.getKey());
+			assertEquals(geometry.getNumGeometries(), polygons.size());
+			var union = GeometryTools.union(polygons);
+			assertEquals(geometry.getArea(), polygons.stream().mapToDouble(p -> p.getArea()).sum(), 0.000001);
+			assertEquals(0, union.symDifference(geometry).getArea(), 0.000001);
+		}
+	}
+
 		
 	static void testImage(BufferedImage img) throws Exception {
 		
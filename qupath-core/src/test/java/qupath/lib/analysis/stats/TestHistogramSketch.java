@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.analysis.stats;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.io.GsonTools;
+
+@SuppressWarnings("javadoc")
+public class TestHistogramSketch {
+
+	private static final double[] PERCENTILES = {0, 0.1, 1, 5, 25, 50, 75, 95, 99, 99.9, 100};
+
+	@Test
+	public void test_integerValues() {
+		var rng = new Random(100L);
+		float[] values = new float[100_000];
+		for (int i = 0; i < values.length; i++)
+			values[i] = rng.nextInt(4096);
+		var sketch = new HistogramSketch();
+		sketch.add(values);
+		assertTrue(sketch.isInteger());
+		assertEquals(values.length, sketch.getCount());
+
+		// Percentiles should be exact for integers
+		float[] sorted = values.clone();
+		Arrays.sort(sorted);
+		for (double p : PERCENTILES) {
+			int rank = (int)Math.ceil(p / 100.0 * sorted.length);
+			assertEquals(sorted[Math.max(0, rank-1)], sketch.getPercentile(p), "Percentile " + p);
+		}
+
+		// Histograms should match those computed directly
+		var histogram = sketch.toHistogram(values.length);
+		var expected = new Histogram(values, values.length);
+		assertEquals(expected.nBins(), histogram.nBins());
+		assertEquals(expected.getEdgeMin(), histogram.getEdgeMin());
+		assertEquals(expected.getEdgeMax(), histogram.getEdgeMax());
+		for (int i = 0; i < expected.nBins(); i++)
+			assertEquals(expected.getCountsForBin(i), histogram.getCountsForBin(i));
+		assertEquals(expected.getMeanValue(), histogram.getMeanValue(), 1e-6);
+		assertEquals(expected.getStdDev(), histogram.getStdDev(), 1e-6);
+		assertTrue(histogram.isInteger());
+	}
+
+	@Test
+	public void test_floatValues() {
+		var rng = new Random(200L);
+		double[] values = new double[100_000];
+		for (int i = 0; i < values.length; i++)
+			values[i] = rng.nextGaussian() * 100 + 10;
+		// Include some outliers
+		values[10] = -1e6;
+		values[20] = 1e7;
+		var sketch = new HistogramSketch(1024);
+		sketch.add(values);
+		assertFalse(sketch.isInteger());
+
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		assertEquals(sorted[0], sketch.getPercentile(0));
+		assertEquals(sorted[sorted.length-1], sketch.getPercentile(100));
+		for (double p : PERCENTILES) {
+			int rank = (int)Math.ceil(p / 100.0 * sorted.length);
+			assertEquals(sorted[Math.max(0, rank-1)], sketch.getPercentile(p), sketch.getBinWidth(), "Percentile " + p);
+		}
+		assertEquals(Arrays.stream(values).average().getAsDouble(), sketch.getMean(), 1e-6);
+		var histogram = sketch.toHistogram(256);
+		assertTrue(histogram.nBins() <= 256);
+		assertEquals(values.length, histogram.getCountSum());
+	}
+
+	@Test
+	public void test_merge() {
+		var rng = new Random(300L);
+		int n = 4;
+		var parts = new HistogramSketch[n];
+		var all = new HistogramSketch(512);
+		for (int p = 0; p < n; p++) {
+			parts[p] = new HistogramSketch(512);
+			// Use very different ranges for different parts
+			double scale = Math.pow(10, p);
+			for (int i = 0; i < 10_000; i++) {
+				double v = rng.nextDouble() * scale - p;
+				parts[p].add(v);
+				all.add(v);
+			}
+		}
+		var forward = new HistogramSketch(512);
+		var backward = new HistogramSketch(512);
+		for (int p = 0; p < n; p++) {
+			forward.merge(parts[p]);
+			backward.merge(parts[n-p-1]);
+		}
+		for (var merged : new HistogramSketch[] {forward, backward}) {
+			assertEquals(all.getCount(), merged.getCount());
+			assertEquals(all.getMin(), merged.getMin());
+			assertEquals(all.getMax(), merged.getMax());
+			assertEquals(all.getBinWidth(), merged.getBinWidth());
+			assertEquals(all.getMean(), merged.getMean(), 1e-9);
+			assertEquals(all.getVariance(), merged.getVariance(), 1e-6);
+			assertArrayEquals(all.getPercentiles(PERCENTILES), merged.getPercentiles(PERCENTILES));
+		}
+	}
+
+	@Test
+	public void test_missingValues() {
+		var sketch = new HistogramSketch();
+		assertEquals(Double.NaN, sketch.getPercentile(50));
+		assertEquals(0, sketch.toHistogram(10).nBins());
+		sketch.add(new float[] {Float.NaN, Float.POSITIVE_INFINITY, 2.5f});
+		assertEquals(1, sketch.getCount());
+		assertEquals(2, sketch.getMissingCount());
+		assertEquals(2.5, sketch.getPercentile(50));
+	}
+
+	@Test
+	public void test_json() {
+		var sketch = new HistogramSketch();
+		var rng = new Random(400L);
+		for (int i = 0; i < 1000; i++)
+			sketch.add(rng.nextDouble());
+		var gson = GsonTools.getInstance();
+		var sketch2 = gson.fromJson(gson.toJson(sketch), HistogramSketch.class);
+		assertEquals(sketch.getCount(), sketch2.getCount());
+		assertArrayEquals(sketch.getPercentiles(PERCENTILES), sketch2.getPercentiles(PERCENTILES));
+	}
+
+}
@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.classifiers.object;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.ImageChannel;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjectFilter;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestCompositeClassifier {
+
+	private static final List<String> MEASUREMENTS = List.of("CD3", "CD8", "PanCK");
+
+	@Test
+	public void test_tableMatchesSequential() {
+		var classifiers = new ArrayList<ObjectClassifier<BufferedImage>>();
+		for (var name : MEASUREMENTS) {
+			classifiers.add(ObjectClassifiers.createChannelClassifier(PathObjectFilter.DETECTIONS_ALL,
+					ImageChannel.getInstance(name, null), name, 0.5));
+		}
+		var composite = ObjectClassifiers.createCompositeClassifier(classifiers);
+
+		var tumor = PathClass.StandardPathClasses.TUMOR;
+		var positive = PathClass.getInstance(tumor, "Positive", null);
+		for (boolean reset : new boolean[] {true, false}) {
+			var expected = createDetections(new Random(100L), 1000, positive);
+			var actual = createDetections(new Random(100L), 1000, positive);
+
+			// Apply the classifiers one after the other
+			for (var pathObject : expected) {
+				if (reset)
+					pathObject.resetPathClass();
+			}
+			for (var classifier : classifiers)
+				classifier.classifyObjects(null, expected, false);
+
+			composite.classifyObjects(null, actual, reset);
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getPathClass(), actual.get(i).getPathClass());
+				assertEquals(expected.get(i).getClassProbability(), actual.get(i).getClassProbability());
+			}
+		}
+	}
+
+	@Test
+	public void test_fallbackWithoutMeasurements() {
+		// A classifier that doesn't use a single measurement can't use a table, so objects should be updated between classifiers
+		var cd3 = ObjectClassifiers.<BufferedImage>createChannelClassifier(PathObjectFilter.DETECTIONS_ALL,
+				ImageChannel.getInstance("CD3", null), "CD3", 0.5);
+		var cd3Class = cd3.getPathClasses().iterator().next();
+		var other = new SimpleClassifier<BufferedImage>(PathObjectFilter.DETECTIONS_ALL,
+				p -> p.getPathClass() == cd3Class ? PathClass.fromString("Other") : null, List.of(PathClass.fromString("Other")));
+		assertNull(((MeasurementTableClassifier<?>)other).getRequiredMeasurements());
+
+		var composite = ObjectClassifiers.createCompositeClassifier(cd3, other);
+		var pathObjects = createDetections(new Random(200L), 100, null);
+		composite.classifyObjects(null, pathObjects, true);
+		for (var pathObject : pathObjects) {
+			if (pathObject.getMeasurementList().get("CD3") >= 0.5)
+				assertEquals(PathClass.fromArray("CD3", "Other"), pathObject.getPathClass());
+			else
+				assertNull(pathObject.getPathClass());
+		}
+	}
+
+	@Test
+	public void test_measurementTable() {
+		var pathObjects = createDetections(new Random(300L), 25_000, null);
+		pathObjects.get(10).getMeasurementList().remove("CD8");
+		var table = MeasurementTable.create(pathObjects, List.of("CD8", "CD3", "CD8", "Missing"));
+		assertEquals(pathObjects.size(), table.size());
+		assertEquals(List.of("CD8", "CD3", "Missing"), new ArrayList<>(table.getMeasurementNames()));
+		assertNull(table.getColumn("PanCK"));
+		var cd3 = table.getColumn("CD3");
+		var cd8 = table.getColumn("CD8");
+		for (int i = 0; i < pathObjects.size(); i++) {
+			var ml = pathObjects.get(i).getMeasurementList();
+			assertEquals(ml.get("CD3"), cd3[i]);
+			assertEquals(ml.get("CD8"), cd8[i]);
+			assertEquals(Double.NaN, table.getColumn("Missing")[i]);
+		}
+		assertEquals(Double.NaN, cd8[10]);
+	}
+
+	private static List<PathObject> createDetections(Random rng, int n, PathClass pathClass) {
+		var list = new ArrayList<PathObject>();
+		for (int i = 0; i < n; i++) {
+			var pathObject = PathObjects.createDetectionObject(ROIs.createRectangleROI(i, 0, 1, 1, ImagePlane.getDefaultPlane()));
+			try (var ml = pathObject.getMeasurementList()) {
+				for (var name : MEASUREMENTS)
+					ml.put(name, rng.nextDouble());
+			}
+			// Include some existing classifications (with probabilities) that may need to be retained
+			if (pathClass != null && i % 3 == 0)
+				pathObject.setPathClass(pathClass, rng.nextDouble());
+			list.add(pathObject);
+		}
+		return list;
+	}
+
+}
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.classifiers.pixel;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.images.servers.TileRequest;
+import qupath.lib.regions.ImageRegion;
+
+@SuppressWarnings("javadoc")
+public class TestPixelClassificationTileStore {
+
+	@Test
+	public void test_readWrite() throws IOException {
+		var dir = Files.createTempDirectory("predictions");
+		try {
+			var store = PixelClassificationTileStore.create(dir, "image", "classifier");
+			var cm = createColorModel();
+			var tile = TileRequest.createInstance("image", 1, 2.0, ImageRegion.createInstance(0, 512, 256, 256, 0, 0));
+			assertNull(store.read(tile, cm));
+
+			var img = new BufferedImage(64, 32, BufferedImage.TYPE_BYTE_INDEXED, cm);
+			var rng = new Random(100L);
+			int[] samples = new int[img.getWidth() * img.getHeight()];
+			for (int i = 0; i < samples.length; i++)
+				samples[i] = rng.nextInt(4);
+			img.getRaster().setSamples(0, 0, img.getWidth(), img.getHeight(), 0, samples);
+			store.write(tile, img);
+			assertTrue(Files.isRegularFile(store.getPath(tile)));
+
+			var img2 = store.read(tile, cm);
+			assertNotNull(img2);
+			assertEquals(img.getWidth(), img2.getWidth());
+			assertEquals(img.getHeight(), img2.getHeight());
+			assertArrayEquals(samples, img2.getRaster().getSamples(0, 0, img.getWidth(), img.getHeight(), 0, (int[])null));
+
+			// Tiles at other levels or locations are distinct
+			var tile2 = TileRequest.createInstance("image", 0, 1.0, ImageRegion.createInstance(0, 512, 256, 256, 0, 0));
+			assertNull(store.read(tile2, cm));
+
+			// Stores for other classifications are distinct
+			var store2 = PixelClassificationTileStore.create(dir, "image", "classifier2");
+			assertNotEquals(store.getDirectory(), store2.getDirectory());
+			assertNull(store2.read(tile, cm));
+		} finally {
+			deleteRecursive(dir);
+		}
+	}
+
+	@Test
+	public void test_canStore() {
+		assertTrue(PixelClassificationTileStore.canStore(new BufferedImage(8, 8, BufferedImage.TYPE_BYTE_GRAY)));
+		assertFalse(PixelClassificationTileStore.canStore(new BufferedImage(8, 8, BufferedImage.TYPE_USHORT_GRAY)));
+		assertFalse(PixelClassificationTileStore.canStore(null));
+	}
+
+	private static IndexColorModel createColorModel() {
+		byte[] r = {0, (byte)255, 0, 0};
+		byte[] g = {0, 0, (byte)255, 0};
+		byte[] b = {0, 0, 0, (byte)255};
+		return new IndexColorModel(8, 4, r, g, b);
+	}
+
+	private static void deleteRecursive(Path path) throws IOException {
+		try (var stream = Files.walk(path)) {
+			for (var p : stream.sorted(Comparator.reverseOrder()).toList())
+				Files.deleteIfExists(p);
+		}
+	}
+
+}
@@ -26,18 +26,24 @@ package qupath.lib.color;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Locale;
 import java.util.Random;
 
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import qupath.lib.color.ColorTransformer.ColorTransformMethod;
 import qupath.lib.common.ColorTools;
+import qupath.lib.common.GeneralTools;
 
 @SuppressWarnings("javadoc")
 public class TestColors {
+	private static final Logger logger = LoggerFactory.getLogger(TestColors.class);
 	private static final double EPSILON = 1e-15; // smaller error
 	private static final double EPSILON2 = 0.01; // bigger error allowed
 //	private static final int MIN_RGB = 0;
@@ -304,5 +310,73 @@ public class TestColors {
 	}
 	
 	
+	@Test
+	public void test_deconvolvedPixels() {
+		var stains = ColorDeconvolutionStains.makeDefaultColorDeconvolutionStains(ColorDeconvolutionStains.DefaultColorDeconvolutionStains.H_DAB)
+				.changeMaxValues(240, 235, 250);
+		var rng = new Random(100L);
+		int[] rgb = new int[10_000];
+		for (int i = 0; i < rgb.length; i++)
+			rgb[i] = rng.nextInt();
+		
+		// Results should be identical to deconvolving each pixel separately
+		float[][] pixels = ColorTransformer.getDeconvolvedPixels(rgb, stains, null);
+		assertEquals(3, pixels.length);
+		var inverse = stains.getMatrixInverse();
+		var odRed = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
+		var odGreen = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
+		var odBlue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
+		for (int s = 1; s <= 3; s++) {
+			float[] expected = new float[rgb.length];
+			for (int i = 0; i < rgb.length; i++)
+				expected[i] = ColorTransformer.deconvolve(rgb[i], inverse, odRed, odGreen, odBlue, s);
+			assertArrayEquals(expected, pixels[s-1]);
+		}
+		
+		// Output arrays should be reused, and stains can be requested in any order
+		float[][] pixels2 = new float[][] {new float[rgb.length], new float[rgb.length]};
+		assertSame(pixels2, ColorTransformer.getDeconvolvedPixels(rgb, stains, pixels2, 2, 1));
+		assertArrayEquals(pixels[1], pixels2[0]);
+		assertArrayEquals(pixels[0], pixels2[1]);
+		assertArrayEquals(pixels[2], ColorTransformer.getTransformedPixels(rgb, ColorTransformMethod.Stain_3, null, stains));
+	}
+	
+	/**
+	 * This test is ignored, but can be used to compare the speed of per-pixel and lookup-table color deconvolution.
+	 */
+	@Test
+	@Disabled
+	public void benchmark_deconvolvedPixels() {
+		var stains = ColorDeconvolutionStains.makeDefaultColorDeconvolutionStains(ColorDeconvolutionStains.DefaultColorDeconvolutionStains.H_E);
+		var rng = new Random(200L);
+		// Typical tile size
+		int[] rgb = new int[512 * 512];
+		for (int i = 0; i < rgb.length; i++)
+			rgb[i] = rng.nextInt();
+		float[][] pixels = new float[3][rgb.length];
+		double[] odRed = ColorDeconvolutionHelper.makeODLUT(stains.getMaxRed());
+		double[] odGreen = ColorDeconvolutionHelper.makeODLUT(stains.getMaxGreen());
+		double[] odBlue = ColorDeconvolutionHelper.makeODLUT(stains.getMaxBlue());
+		int nRepeats = 200;
+		for (int k = 0; k < 3; k++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < nRepeats; i++) {
+				var inverse = stains.getMatrixInverse();
+				for (int s = 0; s < 3; s++) {
+					for (int p = 0; p < rgb.length; p++)
+						pixels[s][p] = ColorTransformer.deconvolve(rgb[p], inverse, odRed, odGreen, odBlue, s+1);
+				}
+			}
+			long mid = System.nanoTime();
+			for (int i = 0; i < nRepeats; i++)
+				ColorTransformer.getDeconvolvedPixels(rgb, stains, pixels);
+			long end = System.nanoTime();
+			double megapixels = nRepeats * rgb.length / 1e6;
+			logger.info("Per-pixel: {} MP/s, lookup tables: {} MP/s",
+					GeneralTools.formatNumber(megapixels / ((mid - start) / 1e9), 1),
+					GeneralTools.formatNumber(megapixels / ((end - mid) / 1e9), 1));
+		}
+	}
+	
 }
 
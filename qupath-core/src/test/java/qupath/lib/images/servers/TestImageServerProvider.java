@@ -0,0 +1,48 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+@SuppressWarnings("javadoc")
+public class TestImageServerProvider {
+
+	@Test
+	public void test_buildersByClassName() {
+		var builders = ImageServerProvider.getImageServerBuildersByClassName(JsonImageServerBuilder.class.getName());
+		assertEquals(1, builders.size());
+		assertInstanceOf(JsonImageServerBuilder.class, builders.get(0));
+		
+		// Builders should be reused, and can be requested by simple name
+		var buildersSimpleName = ImageServerProvider.getImageServerBuildersByClassName("JsonImageServerBuilder");
+		assertEquals(1, buildersSimpleName.size());
+		assertSame(builders.get(0), buildersSimpleName.get(0));
+		
+		assertTrue(ImageServerProvider.getImageServerBuildersByClassName("NotAnImageServerBuilder").isEmpty());
+	}
+
+}
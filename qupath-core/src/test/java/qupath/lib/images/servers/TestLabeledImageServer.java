@@ -0,0 +1,283 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.images.ImageData;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.PathObjects;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.RegionRequest;
+import qupath.lib.roi.ROIs;
+
+@SuppressWarnings("javadoc")
+public class TestLabeledImageServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(TestLabeledImageServer.class);
+
+	@Test
+	public void test_scanlineRectangle() {
+		int width = 20, height = 15;
+		var mask = rasterize(new Rectangle2D.Double(2, 3, 5, 4), width, height);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				boolean inside = x >= 2 && x < 7 && y >= 3 && y < 7;
+				assertEquals(inside ? 1 : 0, mask[y * width + x]);
+			}
+		}
+	}
+
+	@Test
+	public void test_scanlineMatchesJava2D() {
+		int width = 200, height = 150;
+		var area = new Area(new Ellipse2D.Double(5.5, 5.5, 140, 140));
+		area.subtract(new Area(new Rectangle2D.Double(40.2, 40.7, 30.3, 30.1)));
+		var ellipse = new Ellipse2D.Double(20.2, 30.1, 120.5, 80.3);
+		var rectangle = new Rectangle2D.Double(-50, -50, 400, 400);
+		for (Shape shape : Arrays.asList(area, ellipse, rectangle)) {
+			var mask = rasterize(shape, width, height);
+
+			var img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+			var g2d = img.createGraphics();
+			g2d.setColor(Color.WHITE);
+			g2d.fill(shape);
+			g2d.dispose();
+			var expected = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+
+			// We don't expect an exact match, since curves are flattened differently - but should be close
+			int nFilled = 0;
+			int nDifferent = 0;
+			for (int i = 0; i < mask.length; i++) {
+				if (expected[i] != 0)
+					nFilled++;
+				if ((expected[i] != 0) != (mask[i] != 0))
+					nDifferent++;
+			}
+			assertTrue(nFilled > 0);
+			assertTrue(nDifferent < nFilled * 0.02, "Too many different pixels: " + nDifferent + " of " + nFilled);
+		}
+	}
+
+	@Test
+	public void test_scanlineThinLines() {
+		int width = 200, height = 150;
+		for (Shape shape : Arrays.asList(new Line2D.Double(3, 4, 180, 120), new Line2D.Double(150, 3, 10, 140), new Rectangle2D.Double(20, 20, 100, 100))) {
+			var mask = new int[width * height];
+			var segments = ScanlineRasterizer.createSegments(shape, ScanlineRasterizer.DEFAULT_FLATNESS);
+			ScanlineRasterizer.draw(segments, 1, 0.5, 0.5, width, height, (y, x0, x1) -> Arrays.fill(mask, y * width + x0, y * width + x1, 1));
+
+			var img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+			var g2d = img.createGraphics();
+			g2d.setColor(Color.WHITE);
+			g2d.draw(shape);
+			g2d.dispose();
+			var expected = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+			for (int i = 0; i < mask.length; i++)
+				assertEquals(expected[i] != 0, mask[i] != 0);
+		}
+	}
+
+	private static int[] rasterize(Shape shape, int width, int height) {
+		var mask = new int[width * height];
+		var edges = ScanlineRasterizer.createEdges(shape, ScanlineRasterizer.DEFAULT_FLATNESS);
+		ScanlineRasterizer.fill(edges, 1, 0, 0, width, height, (y, x0, x1) -> Arrays.fill(mask, y * width + x0, y * width + x1, 1));
+		return mask;
+	}
+
+	@Test
+	public void test_classLabels() throws IOException {
+		var imageData = createImageData(200, 200);
+		var hierarchy = imageData.getHierarchy();
+		var tumor = PathObjects.createAnnotationObject(ROIs.createRectangleROI(20, 20, 100, 100, ImagePlane.getDefaultPlane()),
+				PathClass.StandardPathClasses.TUMOR);
+		var stroma = PathObjects.createAnnotationObject(ROIs.createRectangleROI(150, 150, 20, 20, ImagePlane.getDefaultPlane()),
+				PathClass.StandardPathClasses.STROMA);
+		hierarchy.addObjects(Arrays.asList(tumor, stroma));
+
+		var server = new LabeledImageServer.Builder(imageData)
+				.backgroundLabel(0)
+				.addLabel(PathClass.StandardPathClasses.TUMOR, 1)
+				.addLabel(PathClass.StandardPathClasses.STROMA, 2)
+				.setBoundaryLabel("Boundary*", 3)
+				.tileSize(64)
+				.build();
+
+		var img = server.readRegion(RegionRequest.createInstance(server.getPath(), 1, 0, 0, 200, 200));
+		var raster = img.getRaster();
+		assertEquals(0, raster.getSample(5, 5, 0));
+		assertEquals(1, raster.getSample(70, 70, 0));
+		assertEquals(3, raster.getSample(20, 70, 0));
+		assertEquals(2, raster.getSample(160, 160, 0));
+		assertEquals(3, raster.getSample(150, 160, 0));
+	}
+
+	@Test
+	public void test_instanceLabels() throws IOException {
+		// Use more than 255 objects, which previously required drawing to an RGB image
+		var imageData = createImageData(1000, 1000);
+		var hierarchy = imageData.getHierarchy();
+		var detections = new ArrayList<PathObject>();
+		for (int y = 0; y < 1000; y += 50) {
+			for (int x = 0; x < 1000; x += 50) {
+				detections.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(x + 10, y + 10, 30, 30, ImagePlane.getDefaultPlane())));
+			}
+		}
+		hierarchy.addObjects(detections);
+
+		var server = new LabeledImageServer.Builder(imageData)
+				.useDetections()
+				.useInstanceLabels()
+				.tileSize(128)
+				.build();
+		assertEquals(PixelType.UINT16, server.getPixelType());
+
+		var img = server.readRegion(RegionRequest.createInstance(server.getPath(), 1, 0, 0, 1000, 1000));
+		var raster = img.getRaster();
+		var labels = server.getInstanceLabels();
+		var found = new HashSet<Integer>();
+		for (var detection : detections) {
+			var roi = detection.getROI();
+			int label = labels.get(detection);
+			int x = (int)roi.getBoundsX();
+			int y = (int)roi.getBoundsY();
+			int count = 0;
+			for (int yy = y - 5; yy < y + 35; yy++) {
+				for (int xx = x - 5; xx < x + 35; xx++) {
+					if (raster.getSample(xx, yy, 0) == label)
+						count++;
+				}
+			}
+			assertEquals(30 * 30, count);
+			found.add(label);
+		}
+		assertEquals(detections.size(), found.size());
+	}
+
+	@Test
+	public void test_instanceLabelsFloat() throws IOException {
+		// More than 65535 objects can't be stored as UINT16 labels
+		int spacing = 4;
+		int n = 270;
+		var imageData = createImageData(n * spacing, n * spacing);
+		var detections = new ArrayList<PathObject>();
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				detections.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(x * spacing + 1, y * spacing + 1, 2, 2, ImagePlane.getDefaultPlane())));
+			}
+		}
+		imageData.getHierarchy().addObjects(detections);
+
+		var server = new LabeledImageServer.Builder(imageData)
+				.useDetections()
+				.useInstanceLabels()
+				.grayscale()
+				.tileSize(256)
+				.build();
+		var labels = server.getInstanceLabels();
+		assertTrue(labels.size() > 65535);
+		assertEquals(PixelType.FLOAT32, server.getPixelType());
+		assertEquals(1, server.nChannels());
+
+		int x0 = (n - 10) * spacing;
+		int y0 = (n - 10) * spacing;
+		var img = server.readRegion(RegionRequest.createInstance(server.getPath(), 1, x0, y0, 10 * spacing, 10 * spacing));
+		var raster = img.getRaster();
+		assertEquals(1, raster.getNumBands());
+		assertEquals(DataBuffer.TYPE_FLOAT, raster.getDataBuffer().getDataType());
+		for (var detection : detections) {
+			var roi = detection.getROI();
+			int x = (int)roi.getBoundsX() - x0;
+			int y = (int)roi.getBoundsY() - y0;
+			if (x < 0 || y < 0)
+				continue;
+			float label = labels.get(detection);
+			assertEquals(label, raster.getSampleFloat(x, y, 0));
+			assertEquals(label, raster.getSampleFloat(x + 1, y + 1, 0));
+			assertEquals(0f, raster.getSampleFloat(x - 1, y - 1, 0));
+		}
+	}
+
+	private static ImageData<BufferedImage> createImageData(int width, int height) {
+		var img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		return new ImageData<>(new WrappedBufferedImageServer("Test", img), new PathObjectHierarchy());
+	}
+
+	/**
+	 * This test is ignored, but can be used to investigate the performance of exporting instance labels
+	 * for a large number of detections.
+	 */
+	@Test
+	@Disabled
+	public void test_timing() throws IOException {
+		int size = 20_000;
+		var imageData = createImageData(size, size);
+		var rng = new Random(100L);
+		var detections = new ArrayList<PathObject>();
+		for (int i = 0; i < 200_000; i++) {
+			double x = rng.nextDouble() * (size - 20);
+			double y = rng.nextDouble() * (size - 20);
+			detections.add(PathObjects.createDetectionObject(ROIs.createEllipseROI(x, y, 15, 12, ImagePlane.getDefaultPlane())));
+		}
+		imageData.getHierarchy().addObjects(detections);
+
+		var server = new LabeledImageServer.Builder(imageData)
+				.useDetections()
+				.useInstanceLabels()
+				.tileSize(512)
+				.build();
+		long startTime = System.currentTimeMillis();
+		server.getTileRequestManager().getAllTileRequests().parallelStream().forEach(tile -> {
+			try {
+				server.readRegion(tile.getRegionRequest());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		long endTime = System.currentTimeMillis();
+		logger.info("Exported {} tiles in {} ms", server.getTileRequestManager().getAllTileRequests().size(), endTime - startTime);
+	}
+
+}
@@ -0,0 +1,224 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.CleanupMode;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.awt.common.BufferedImageTools;
+import qupath.lib.regions.RegionRequest;
+
+@SuppressWarnings("javadoc")
+public class TestMappedTileImageServer {
+
+	private static final Logger logger = LoggerFactory.getLogger(TestMappedTileImageServer.class);
+
+	/**
+	 * Mapped buffers are only released when garbage collected, so the files can't always be deleted on Windows.
+	 * We therefore clean up ourselves, and ignore failures.
+	 */
+	@TempDir(cleanup = CleanupMode.NEVER)
+	Path dir;
+
+	@Test
+	public void test_float() throws Exception {
+		var img = BufferedImageTools.createImage(300, 200, PixelType.FLOAT32, 3);
+		var rng = new Random(100L);
+		var raster = img.getRaster();
+		for (int b = 0; b < 3; b++) {
+			for (int y = 0; y < img.getHeight(); y++) {
+				for (int x = 0; x < img.getWidth(); x++)
+					raster.setSample(x, y, b, rng.nextGaussian());
+			}
+		}
+		var server = new WrappedBufferedImageServer("float", img);
+		var metadata = new ImageServerMetadata.Builder(server.getMetadata())
+				.preferredTileSize(128, 64)
+				.levelsFromDownsamples(1, 2)
+				.build();
+
+		try {
+			var path = dir.resolve("tiles.qpmt");
+			try (var store = MappedTileImageServer.create(path, metadata)) {
+				assertThrows(FileAlreadyExistsException.class, () -> MappedTileImageServer.create(path, metadata));
+
+				var tiles = store.getTileRequestManager().getAllTileRequests();
+				assertFalse(tiles.stream().anyMatch(store::containsTile));
+				store.writeTiles(server);
+				assertTrue(tiles.stream().allMatch(store::containsTile));
+
+				assertSamplesEqual(img, store.readRegion(RegionRequest.createInstance(store.getPath(), 1, 0, 0, 300, 200)));
+			}
+
+			// Reopen and read a region spanning several tiles
+			try (var store = MappedTileImageServer.open(path)) {
+				assertEquals(metadata.getPixelType(), store.getPixelType());
+				assertEquals(2, store.nResolutions());
+				var request = RegionRequest.createInstance(store.getPath(), 1, 100, 50, 150, 100);
+				assertSamplesEqual(img.getSubimage(100, 50, 150, 100), store.readRegion(request));
+			}
+		} finally {
+			deleteQuietly(dir);
+		}
+		server.close();
+	}
+
+	@Test
+	public void test_rgb() throws Exception {
+		var img = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+		var rng = new Random(200L);
+		for (int y = 0; y < img.getHeight(); y++) {
+			for (int x = 0; x < img.getWidth(); x++)
+				img.setRGB(x, y, rng.nextInt() & 0xffffff);
+		}
+		var server = new WrappedBufferedImageServer("rgb", img);
+		var metadata = new ImageServerMetadata.Builder(server.getMetadata())
+				.preferredTileSize(64, 64)
+				.build();
+
+		try (var store = MappedTileImageServer.create(dir.resolve("tiles.qpmt"), metadata)) {
+			assertTrue(store.isRGB());
+
+			// Write a single tile, and check the others are empty
+			var tile = store.getTileRequestManager().getTileRequest(0, 70, 70, 0, 0);
+			store.writeTile(tile, server.readRegion(tile.getRegionRequest()));
+			for (var t : store.getTileRequestManager().getAllTileRequests())
+				assertEquals(t == tile, store.containsTile(t));
+
+			var imgTile = store.readRegion(tile.getRegionRequest());
+			assertArrayEquals(
+					img.getRGB(64, 64, 64, 64, null, 0, 64),
+					imgTile.getRGB(0, 0, 64, 64, null, 0, 64));
+
+			// Tile sizes must match
+			assertThrows(IllegalArgumentException.class, () -> store.writeTile(tile, new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB)));
+		} finally {
+			deleteQuietly(dir);
+		}
+		server.close();
+	}
+
+	@Test
+	public void test_readRegions() throws Exception {
+		var img = BufferedImageTools.createImage(250, 180, PixelType.UINT16, 2);
+		var rng = new Random(300L);
+		var raster = img.getRaster();
+		for (int b = 0; b < 2; b++) {
+			for (int y = 0; y < img.getHeight(); y++) {
+				for (int x = 0; x < img.getWidth(); x++)
+					raster.setSample(x, y, b, rng.nextInt(65536));
+			}
+		}
+		var server = new WrappedBufferedImageServer("uint16", img);
+		var metadata = new ImageServerMetadata.Builder(server.getMetadata())
+				.preferredTileSize(64, 64)
+				.levelsFromDownsamples(1, 2)
+				.build();
+
+		try (var store = MappedTileImageServer.create(dir.resolve("tiles.qpmt"), metadata)) {
+			store.writeTiles(server);
+			var path = store.getPath();
+			// Overlapping regions, an exact tile, a duplicate and a lower resolution request
+			var requests = List.of(
+					RegionRequest.createInstance(path, 1, 10, 20, 100, 90),
+					RegionRequest.createInstance(path, 1, 50, 40, 150, 100),
+					RegionRequest.createInstance(path, 1, 64, 64, 64, 64),
+					RegionRequest.createInstance(path, 1, 10, 20, 100, 90),
+					RegionRequest.createInstance(path, 2, 0, 0, 250, 180)
+					);
+			var results = store.readRegions(requests);
+			assertEquals(4, results.size());
+			for (var entry : results.entrySet())
+				assertSamplesEqual(store.readRegion(entry.getKey()), entry.getValue());
+		} finally {
+			deleteQuietly(dir);
+		}
+		server.close();
+	}
+
+	@Test
+	public void test_close() throws Exception {
+		var img = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+		var server = new WrappedBufferedImageServer("closed", img);
+		var metadata = new ImageServerMetadata.Builder(server.getMetadata())
+				.preferredTileSize(64, 64)
+				.build();
+		try {
+			var store = MappedTileImageServer.create(dir.resolve("tiles.qpmt"), metadata);
+			var tile = store.getTileRequestManager().getAllTileRequests().iterator().next();
+			store.writeTile(tile, server.readRegion(tile.getRegionRequest()));
+			store.close();
+			// Closing again should have no effect
+			store.close();
+			// Tiles can't be accessed after the server has been closed
+			assertThrows(IllegalStateException.class, () -> store.containsTile(tile));
+			assertThrows(IOException.class, () -> store.writeTile(tile, server.readRegion(tile.getRegionRequest())));
+
+			try (var reopened = MappedTileImageServer.open(dir.resolve("tiles.qpmt"))) {
+				assertTrue(reopened.containsTile(tile));
+			}
+		} finally {
+			deleteQuietly(dir);
+		}
+		server.close();
+	}
+
+	private static void assertSamplesEqual(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		int w = expected.getWidth();
+		int h = expected.getHeight();
+		for (int b = 0; b < expected.getRaster().getNumBands(); b++) {
+			assertArrayEquals(
+					expected.getRaster().getSamples(0, 0, w, h, b, (float[])null),
+					actual.getRaster().getSamples(0, 0, w, h, b, (float[])null));
+		}
+	}
+
+	private static void deleteQuietly(Path path) {
+		try (var stream = Files.walk(path)) {
+			for (var p : stream.sorted(Comparator.reverseOrder()).toList())
+				Files.deleteIfExists(p);
+		} catch (IOException e) {
+			logger.warn("Unable to delete {}: {}", path, e.getLocalizedMessage());
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.images.servers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.awt.common.BufferedImageTools;
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.regions.ImageRegion;
+
+@SuppressWarnings("javadoc")
+public class TestTissueMap {
+
+	@Test
+	public void test_rgb() throws Exception {
+		var img = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+		var g2d = img.createGraphics();
+		g2d.setColor(new Color(240, 238, 242));
+		g2d.fillRect(0, 0, 400, 300);
+		g2d.setColor(new Color(180, 60, 150));
+		g2d.fillRect(100, 80, 80, 70);
+		g2d.dispose();
+
+		var server = new WrappedBufferedImageServer("rgb", img);
+		var tissueMap = TissueMap.create(server);
+		assertTrue(tissueMap.containsTissue(ImageRegion.createInstance(120, 100, 10, 10, 0, 0)));
+		assertTrue(tissueMap.containsTissue(ImageRegion.createInstance(0, 0, 101, 81, 0, 0)));
+		assertFalse(tissueMap.containsTissue(ImageRegion.createInstance(300, 200, 50, 50, 0, 0)));
+		assertFalse(tissueMap.containsTissue(ImageRegion.createInstance(500, 500, 50, 50, 0, 0)));
+
+		var background = tissueMap.getBackgroundValues(ImagePlane.getDefaultPlane());
+		assertEquals(240, background[0], 0.5);
+		assertEquals(238, background[1], 0.5);
+		assertEquals(242, background[2], 0.5);
+
+		var imgBackground = tissueMap.createBackgroundImage(16, 8, ImagePlane.getDefaultPlane());
+		assertEquals(16, imgBackground.getWidth());
+		assertEquals(8, imgBackground.getHeight());
+		assertEquals(img.getRGB(0, 0), imgBackground.getRGB(15, 7));
+
+		assertSame(TissueMap.getInstance(server), TissueMap.getInstance(server));
+		server.close();
+	}
+
+	@Test
+	public void test_fluorescence() throws Exception {
+		var img = BufferedImageTools.createImage(200, 200, PixelType.UINT16, 2);
+		var raster = img.getRaster();
+		for (int y = 0; y < 200; y++) {
+			for (int x = 0; x < 200; x++) {
+				raster.setSample(x, y, 0, 100 + (x + y) % 5);
+				raster.setSample(x, y, 1, 50);
+			}
+		}
+		// Signal in the second channel only
+		for (int y = 150; y < 180; y++) {
+			for (int x = 20; x < 60; x++)
+				raster.setSample(x, y, 1, 5000);
+		}
+
+		var server = new WrappedBufferedImageServer("fluorescence", img);
+		var tissueMap = TissueMap.create(server);
+		assertTrue(tissueMap.containsTissue(ImageRegion.createInstance(30, 160, 5, 5, 0, 0)));
+		assertFalse(tissueMap.containsTissue(ImageRegion.createInstance(100, 0, 100, 100, 0, 0)));
+		assertEquals(50, tissueMap.getBackgroundValues(ImagePlane.getDefaultPlane())[1], 1e-6);
+
+		// Only tiles touching the signal should be enumerated
+		var manager = server.getTileRequestManager()
+				.filterTiles(t -> tissueMap.containsTissue(t.getRegionRequest()));
+		assertFalse(manager.getAllTileRequests().isEmpty());
+		for (var tile : server.getTileRequestManager().getAllTileRequests()) {
+			assertEquals(tissueMap.containsTissue(tile.getRegionRequest()), manager.getAllTileRequests().contains(tile));
+		}
+		server.close();
+	}
+
+	@Test
+	public void test_uniform() throws Exception {
+		// A uniform RGB image, and a fluorescence image containing only low-contrast noise
+		var imgRGB = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+		var g2d = imgRGB.createGraphics();
+		g2d.setColor(new Color(180, 60, 150));
+		g2d.fillRect(0, 0, 200, 150);
+		g2d.dispose();
+		var imgNoise = BufferedImageTools.createImage(200, 150, PixelType.UINT16, 1);
+		var raster = imgNoise.getRaster();
+		for (int y = 0; y < 150; y++) {
+			for (int x = 0; x < 200; x++)
+				raster.setSample(x, y, 0, 1000 + (x * 7 + y * 3) % 4);
+		}
+
+		// Without any contrast, we can't tell if an image is all tissue or all background - so nothing should be skipped
+		for (var img : new BufferedImage[] {imgRGB, imgNoise}) {
+			var server = new WrappedBufferedImageServer("uniform", img);
+			var tissueMap = TissueMap.create(server);
+			assertTrue(tissueMap.containsTissue(ImageRegion.createInstance(0, 0, 10, 10, 0, 0)));
+			assertTrue(tissueMap.containsTissue(ImageRegion.createInstance(150, 100, 50, 50, 0, 0)));
+			for (var tile : server.getTileRequestManager().getAllTileRequests())
+				assertTrue(tissueMap.containsTissue(tile.getRegionRequest()));
+			server.close();
+		}
+	}
+
+	@Test
+	public void test_otsu() {
+		float[] values = new float[1000];
+		for (int i = 0; i < values.length; i++)
+			values[i] = i < 900 ? 10 + i % 3 : 200 + i % 7;
+		double threshold = TissueMap.otsuThreshold(values);
+		assertTrue(threshold > 12 && threshold < 200);
+		assertTrue(Double.isNaN(TissueMap.otsuThreshold(new float[] {5, 5, 5})));
+	}
+
+}
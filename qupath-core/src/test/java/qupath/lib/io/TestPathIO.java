@@ -28,6 +28,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -44,9 +45,13 @@ import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Test;
 
+import qupath.lib.images.ImageData;
+import qupath.lib.images.ImageData.ImageType;
+import qupath.lib.images.servers.WrappedBufferedImageServer;
 import qupath.lib.objects.PathObjects;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.regions.ImagePlane;
 import qupath.lib.roi.ROIs;
 
 @SuppressWarnings("javadoc")
@@ -137,6 +142,25 @@ public class TestPathIO {
 
 	}
 	
+	@Test
+	public void test_extractImageType() throws IOException {
+		var imageData = new ImageData<>(
+				new WrappedBufferedImageServer("Dummy", new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY)),
+				new PathObjectHierarchy(),
+				ImageType.FLUORESCENCE);
+		imageData.getHierarchy().addObject(PathObjects.createAnnotationObject(ROIs.createRectangleROI(1, 1, 5, 5, ImagePlane.getDefaultPlane())));
+		var tmpFile = Files.createTempFile("anything", ".qpdata");
+		try {
+			PathIO.writeImageData(tmpFile, imageData);
+			assertEquals(ImageType.FLUORESCENCE, PathIO.extractImageType(tmpFile));
+			
+			Files.writeString(tmpFile, "Not a data file");
+			assertThrows(IOException.class, () -> PathIO.extractImageType(tmpFile));
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+	
 	private static <T> T serializeDeserializeStandard(T obj) {
 		try {
 			var bytesOut = new ByteArrayOutputStream();
@@ -24,15 +24,22 @@ package qupath.lib.objects.hierarchy;
 import org.junit.jupiter.api.Test;
 import qupath.lib.objects.PathObject;
 import qupath.lib.objects.PathObjectTools;
+import qupath.lib.objects.PathROIObject;
 import qupath.lib.objects.PathObjects;
 import qupath.lib.regions.ImagePlane;
 import qupath.lib.regions.ImageRegion;
 import qupath.lib.roi.ROIs;
 import qupath.lib.roi.interfaces.ROI;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -279,4 +286,123 @@ public class TestPathObjectHierarchy {
         assertTrue(hierarchy.getCellSubdivision(plane).isEmpty());
     }
 
+
+    @Test
+    public void test_insertManyDetections() {
+        var hierarchy = new PathObjectHierarchy();
+        var plane = ImagePlane.getDefaultPlane();
+        // Nested and overlapping annotations, spanning multiple tiles of the cache
+        var outer = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 4000, 4000, plane));
+        var inner = PathObjects.createAnnotationObject(ROIs.createEllipseROI(500, 500, 2000, 2000, plane));
+        var overlapping = PathObjects.createAnnotationObject(ROIs.createRectangleROI(3000, 3000, 1500, 1500, plane));
+        var otherPlane = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 4000, 4000, ImagePlane.getPlane(1, 0)));
+        hierarchy.addObjects(List.of(outer, inner, overlapping, otherPlane));
+        hierarchy.resolveHierarchy();
+
+        var rng = new Random(100L);
+        var detections = new ArrayList<PathObject>();
+        for (int i = 0; i < 2000; i++) {
+            double x = rng.nextDouble() * 5000;
+            double y = rng.nextDouble() * 5000;
+            detections.add(PathObjects.createDetectionObject(ROIs.createRectangleROI(x, y, 5, 5, plane)));
+        }
+
+        // Insert one at a time to get the expected parents
+        for (var detection : detections)
+            hierarchy.insertPathObject(detection, false);
+        var expectedParents = detections.stream().map(PathObject::getParent).toList();
+
+        // Insert again as a batch, and check parents are unchanged
+        hierarchy.removeObjects(detections, false);
+        assertTrue(detections.stream().allMatch(p -> p.getParent() == null));
+        hierarchy.insertPathObjects(detections);
+        assertEquals(expectedParents, detections.stream().map(PathObject::getParent).toList());
+        assertTrue(expectedParents.contains(inner));
+        assertTrue(expectedParents.contains(overlapping));
+        assertTrue(expectedParents.contains(hierarchy.getRootObject()));
+        assertFalse(expectedParents.contains(otherPlane));
+
+        // Resolving the hierarchy shouldn't change anything
+        hierarchy.resolveHierarchy();
+        assertEquals(expectedParents, detections.stream().map(PathObject::getParent).toList());
+        assertEquals(detections.size(), hierarchy.getDetectionObjects().size());
+    }
+
+    @Test
+    public void test_resolveHierarchyNestedDetections() {
+        var hierarchy = new PathObjectHierarchy();
+        var plane = ImagePlane.getDefaultPlane();
+        var annotation = PathObjects.createAnnotationObject(ROIs.createRectangleROI(0, 0, 2000, 2000, plane));
+        hierarchy.addObject(annotation);
+
+        // Cells with a nested detection each, giving more detections than needed for a batch insert
+        var cells = new ArrayList<PathObject>();
+        var spots = new ArrayList<PathObject>();
+        for (int i = 0; i < 1200; i++) {
+            double x = (i % 40) * 50.0 + 10;
+            double y = (i / 40) * 50.0 + 10;
+            var cell = PathObjects.createDetectionObject(ROIs.createRectangleROI(x, y, 20, 20, plane));
+            var spot = PathObjects.createDetectionObject(ROIs.createRectangleROI(x + 5, y + 5, 2, 2, plane));
+            cell.addChildObject(spot);
+            cells.add(cell);
+            spots.add(spot);
+        }
+        hierarchy.addObjects(cells);
+        assertEquals(2400, hierarchy.getDetectionObjects().size());
+
+        hierarchy.resolveHierarchy();
+        assertEquals(2400, hierarchy.getDetectionObjects().size());
+        for (int i = 0; i < cells.size(); i++) {
+            var cell = cells.get(i);
+            var spot = spots.get(i);
+            assertEquals(annotation, cell.getParent());
+            assertEquals(cell, spot.getParent());
+        }
+    }
+
+    @Test
+    public void test_concurrentRegionQueries() throws Exception {
+        var hierarchy = new PathObjectHierarchy();
+        var plane = ImagePlane.getDefaultPlane();
+        var rng = new Random(26L);
+        var annotations = new ArrayList<PathObject>();
+        for (int i = 0; i < 2000; i++) {
+            double x = rng.nextDouble() * 10000;
+            double y = rng.nextDouble() * 10000;
+            annotations.add(PathObjects.createAnnotationObject(ROIs.createEllipseROI(x, y, 50 + rng.nextDouble() * 200, 50 + rng.nextDouble() * 200, plane)));
+        }
+        hierarchy.addObjects(annotations);
+
+        var regions = new ArrayList<ImageRegion>();
+        for (int i = 0; i < 500; i++)
+            regions.add(ImageRegion.createInstance(rng.nextInt(10000), rng.nextInt(10000), 256, 256, 0, 0));
+        var expected = regions.stream().map(r -> new HashSet<>(hierarchy.getAnnotationsForRegion(r))).toList();
+
+        // Queries only hold the read lock, but still update cached envelopes - so must be safe to call concurrently
+        var pool = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 5; round++) {
+                // Replace ROIs so that new envelopes need to be cached
+                for (var annotation : annotations) {
+                    var roi = annotation.getROI();
+                    ((PathROIObject)annotation).setROI(ROIs.createEllipseROI(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight(), plane));
+                }
+                var futures = new ArrayList<Future<?>>();
+                for (int t = 0; t < 8; t++) {
+                    int offset = t;
+                    futures.add(pool.submit(() -> {
+                        for (int i = 0; i < regions.size(); i++) {
+                            int ind = (i + offset * 61) % regions.size();
+                            assertEquals(expected.get(ind), new HashSet<>(hierarchy.getAnnotationsForRegion(regions.get(ind))));
+                        }
+                    }));
+                }
+                for (var future : futures)
+                    future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
 }
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.projects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@SuppressWarnings("javadoc")
+public class TestThumbnailAtlas {
+	
+	@TempDir
+	Path dir;
+
+	@Test
+	public void test_roundTrip() throws IOException {
+		var pathAtlas = dir.resolve("data").resolve("thumbnails.atlas");
+		var pathProject = createProjectFile();
+		
+		var bytes1 = createBytes(1, 1000);
+		var bytes2 = createBytes(2, 20000);
+		var atlas = new ThumbnailAtlas(pathAtlas, () -> pathProject);
+		assertFalse(atlas.writeIfChanged());
+		atlas.put("1", bytes1);
+		atlas.put("2", bytes2);
+		assertArrayEquals(bytes1, atlas.get("1"));
+		assertTrue(atlas.writeIfChanged());
+		assertFalse(atlas.writeIfChanged());
+		assertArrayEquals(bytes2, atlas.get("2"));
+		
+		var atlas2 = new ThumbnailAtlas(pathAtlas, () -> pathProject);
+		assertEquals(2, atlas2.size());
+		assertArrayEquals(bytes1, atlas2.get("1"));
+		assertArrayEquals(bytes2, atlas2.get("2"));
+		assertNull(atlas2.get("3"));
+		
+		// Replace, remove and add entries, then check they persist
+		var bytes3 = createBytes(3, 500);
+		atlas2.put("1", bytes3);
+		atlas2.remove("2");
+		atlas2.put("3", bytes3);
+		atlas2.retainAll(List.of("1", "2"));
+		assertTrue(atlas2.writeIfChanged());
+		
+		var atlas3 = new ThumbnailAtlas(pathAtlas, () -> pathProject);
+		assertEquals(1, atlas3.size());
+		assertArrayEquals(bytes3, atlas3.get("1"));
+		assertNull(atlas3.get("2"));
+		assertNull(atlas3.get("3"));
+	}
+	
+	@Test
+	public void test_invalidation() throws IOException {
+		var pathAtlas = dir.resolve("thumbnails.atlas");
+		var pathProject = createProjectFile();
+		
+		var bytes = createBytes(1, 1000);
+		var atlas = new ThumbnailAtlas(pathAtlas, () -> pathProject);
+		atlas.put("1", bytes);
+		atlas.put("2", bytes);
+		assertTrue(atlas.writeIfChanged());
+		
+		// Saving the project via the atlas owner should only update the atlas header
+		setModified(pathProject, 5000);
+		assertTrue(atlas.writeIfChanged());
+		assertArrayEquals(bytes, new ThumbnailAtlas(pathAtlas, () -> pathProject).get("1"));
+
+		// Changing the project elsewhere should invalidate the whole atlas
+		setModified(pathProject, 10000);
+		var atlasStale = new ThumbnailAtlas(pathAtlas, () -> pathProject);
+		assertEquals(0, atlasStale.size());
+		assertNull(atlasStale.get("1"));
+		
+		// Corrupt entries should be ignored
+		setModified(pathProject, 5000);
+		try (var file = new RandomAccessFile(pathAtlas.toFile(), "rw")) {
+			file.seek(24 + 10);
+			file.write(~bytes[10]);
+		}
+		var atlasCorrupt = new ThumbnailAtlas(pathAtlas, () -> pathProject);
+		assertNull(atlasCorrupt.get("1"));
+		assertArrayEquals(bytes, atlasCorrupt.get("2"));
+		
+		// Invalid files should be ignored and replaced
+		Files.write(pathAtlas, new byte[] {1, 2, 3});
+		var atlasInvalid = new ThumbnailAtlas(pathAtlas, () -> pathProject);
+		assertEquals(0, atlasInvalid.size());
+		assertTrue(atlasInvalid.writeIfChanged());
+		assertEquals(0, new ThumbnailAtlas(pathAtlas, () -> pathProject).size());
+	}
+	
+	private Path createProjectFile() throws IOException {
+		var path = dir.resolve("project.qpproj");
+		Files.writeString(path, "{}");
+		setModified(path, 1000);
+		return path;
+	}
+	
+	private static void setModified(Path path, long millis) throws IOException {
+		Files.setLastModifiedTime(path, FileTime.fromMillis(millis));
+	}
+	
+	private static byte[] createBytes(long seed, int n) {
+		var bytes = new byte[n];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+
+}
@@ -187,6 +187,53 @@ public class TestGeometryTools {
 		// The fast polygon union discards lines
 		assertEquals(1, FastPolygonUnion.union(g1, gLine).getNumGeometries());
 	}
+	
+	@Test
+	public void testUnionLargeGroup() {
+		// Overlapping squares forming a single connected group (large enough to be split), with a hole in the middle
+		var geometries = createOverlappingSquares(50, 20, 30);
+		var union = FastPolygonUnion.union(geometries);
+		assertEquals(1, union.getNumGeometries());
+		assertEquals(1, ((Polygon)union).getNumInteriorRing());
+		assertEquals(50.5 * 50.5 - 9.5 * 9.5, union.getArea(), 1e-6);
+		assertTrue(union.isValid());
+		assertEquals(GeometryTools.getDefaultFactory().buildGeometry(geometries).union().norm(), union.norm());
+	}
+	
+	/**
+	 * This test is ignored, but can be used to check the time taken to merge 100,000 overlapping polygons.
+	 */
+	@Test
+	@Disabled
+	public void benchmarkUnionLargeGroup() {
+		var geometries = createOverlappingSquares(317, -1, -1);
+		for (int i = 0; i < 3; i++) {
+			long start = System.currentTimeMillis();
+			var union = FastPolygonUnion.union(geometries);
+			long end = System.currentTimeMillis();
+			logger.info("FastPolygonUnion of {} polygons: {} ms (area={})", geometries.size(), end - start, union.getArea());
+		}
+		long start = System.currentTimeMillis();
+		var union = GeometryTools.getDefaultFactory().buildGeometry(geometries).union();
+		long end = System.currentTimeMillis();
+		logger.info("Standard union of {} polygons: {} ms (area={})", geometries.size(), end - start, union.getArea());
+	}
+	
+	/**
+	 * Create a grid of n x n squares, each overlapping its neighbors.
+	 * Squares with both row and column indices in the range [holeStart, holeEnd) are omitted.
+	 */
+	private static List<Geometry> createOverlappingSquares(int n, int holeStart, int holeEnd) {
+		List<Geometry> geometries = new ArrayList<>();
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				if (x >= holeStart && x < holeEnd && y >= holeStart && y < holeEnd)
+					continue;
+				geometries.add(GeometryTools.createRectangle(x, y, 1.5, 1.5));
+			}
+		}
+		return geometries;
+	}
 
 
 	@Test
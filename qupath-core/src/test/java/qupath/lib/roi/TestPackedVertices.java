@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.roi;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.regions.ImagePlane;
+import qupath.lib.roi.interfaces.ROI;
+
+@SuppressWarnings("javadoc")
+public class TestPackedVertices {
+
+	private static final Logger logger = LoggerFactory.getLogger(TestPackedVertices.class);
+
+	@Test
+	public void test_exactCoordinates() {
+		var rng = new Random(100L);
+		// Integer, half-pixel and finer grid coordinates, with and without large offsets
+		for (double quantum : new double[] {1, 0.5, 0.25, 1.0/256}) {
+			for (double offset : new double[] {0, 12345, 98765.5}) {
+				var x = new float[31];
+				var y = new float[31];
+				for (int i = 0; i < x.length; i++) {
+					x[i] = (float)(offset + rng.nextInt(100) * quantum);
+					y[i] = (float)(offset * 2 + rng.nextInt(100) * quantum);
+				}
+				var packed = PackedVertices.create(x, y);
+				assertNotNull(packed);
+				assertEquals(x.length, packed.size());
+				assertArrayEquals(x, packed.getX(null));
+				assertArrayEquals(y, packed.getY(new float[x.length]));
+				for (int i = 0; i < x.length; i++) {
+					assertEquals(x[i], packed.getX(i));
+					assertEquals(y[i], packed.getY(i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test_notPackable() {
+		// Coordinates that aren't on a fine enough grid
+		assertNull(PackedVertices.create(new float[] {0.1f, 0.2f, 0.3f}, new float[] {0, 1, 0}));
+		// Span too large for 16-bit offsets
+		assertNull(PackedVertices.create(new float[] {0, 70_000, 0}, new float[] {0, 1, 0}));
+		// Non-finite values
+		assertNull(PackedVertices.create(new float[] {0, Float.NaN, 0}, new float[] {0, 1, 0}));
+		assertNull(PackedVertices.create(new float[0], new float[0]));
+	}
+
+	@Test
+	public void test_compactPolygon() {
+		var polygon = createCell(new Random(200L), 1000.5, 2000.25, 31);
+		var compact = RoiTools.compact(polygon);
+		assertInstanceOf(PolygonROI.class, compact);
+		assertInstanceOf(PackedVertices.class, ((PolygonROI)compact).getVertices());
+		assertSame(compact, RoiTools.compact(compact));
+		assertEquals(polygon.getAllPoints(), compact.getAllPoints());
+		assertEquals(polygon.getArea(), compact.getArea());
+		assertEquals(polygon.getLength(), compact.getLength());
+		assertEquals(polygon.getCentroidX(), compact.getCentroidX());
+		assertEquals(polygon.getCentroidY(), compact.getCentroidY());
+		assertEquals(polygon.getBoundsX(), compact.getBoundsX());
+		assertEquals(polygon.getBoundsWidth(), compact.getBoundsWidth());
+		assertEquals(polygon.getImagePlane(), compact.getImagePlane());
+		assertEquals(polygon.getGeometry(), compact.getGeometry());
+		assertEquals(polygon.contains(1010, 2010), compact.contains(1010, 2010));
+
+		// Other ROIs should be unchanged
+		var rectangle = ROIs.createRectangleROI(0, 0, 10, 10, ImagePlane.getDefaultPlane());
+		assertSame(rectangle, RoiTools.compact(rectangle));
+	}
+
+	private static PolygonROI createCell(Random rng, double cx, double cy, int nVertices) {
+		var x = new float[nVertices];
+		var y = new float[nVertices];
+		for (int i = 0; i < nVertices; i++) {
+			double theta = 2 * Math.PI * i / nVertices;
+			double r = 8 + rng.nextInt(4);
+			// Traced contours lie on the pixel grid
+			x[i] = (float)Math.round(cx + Math.cos(theta) * r);
+			y[i] = (float)Math.round(cy + Math.sin(theta) * r);
+		}
+		return new PolygonROI(x, y, ImagePlane.getPlane(1, 2), false);
+	}
+
+	/**
+	 * This test is ignored, but can be used to estimate the memory needed per polygon before and after compaction.
+	 */
+	@Test
+	@Disabled
+	public void test_memory() {
+		int n = 1_000_000;
+		var rng = new Random(300L);
+		var runtime = Runtime.getRuntime();
+		for (boolean compact : new boolean[] {false, true}) {
+			System.gc();
+			long before = runtime.totalMemory() - runtime.freeMemory();
+			List<ROI> rois = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				ROI roi = createCell(rng, rng.nextInt(100_000), rng.nextInt(100_000), 31);
+				// Ensure measurements are cached, as they would be after adding to a hierarchy
+				roi.getBoundsX();
+				rois.add(compact ? RoiTools.compact(roi) : roi);
+			}
+			System.gc();
+			long after = runtime.totalMemory() - runtime.freeMemory();
+			logger.info("{} polygons: {} bytes per ROI", compact ? "Compact" : "Default", (after - before) / n);
+		}
+	}
+
+}
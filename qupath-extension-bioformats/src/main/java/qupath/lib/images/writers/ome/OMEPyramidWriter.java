@@ -70,6 +70,7 @@ import qupath.lib.images.servers.PixelCalibration;
 import qupath.lib.images.servers.PixelType;
 import qupath.lib.images.servers.ServerTools;
 import qupath.lib.images.servers.TileRequest;
+import qupath.lib.images.servers.TissueMap;
 import qupath.lib.images.servers.ImageServerMetadata.ChannelType;
 import qupath.lib.images.servers.ImageServers;
 import qupath.lib.regions.ImageRegion;
@@ -386,6 +387,8 @@ public class OMEPyramidWriter {
 	
 		private CompressionType compression = CompressionType.DEFAULT;
 		
+		private TissueMap tissueMap;
+		
 		private static int[] RGB_CHANNEL_ARRAY = new int[] {0, 1, 2};
 		
 		void initializeMetadata(IMetadata meta, int series) throws IOException {
@@ -884,7 +887,11 @@ public class OMEPyramidWriter {
 			
 			// Get the region request - and make sure to translate it to the origin
 			RegionRequest request = tile.getRegionRequest().translate(this.x, this.y);
-			BufferedImage img = server.readRegion(request);
+			BufferedImage img;
+			if (tissueMap != null && !tissueMap.containsTissue(request))
+				img = tissueMap.createBackgroundImage(tile.getTileWidth(), tile.getTileHeight(), request.getImagePlane());
+			else
+				img = server.readRegion(request);
 			
 			var pixelType = getExportPixelType();
 			int bytesPerPixel = pixelType.getBytesPerPixel();
@@ -1209,6 +1216,23 @@ public class OMEPyramidWriter {
 			return this;
 		}
 		
+		/**
+		 * Specify whether tiles that contain only background should be filled with a constant background value, 
+		 * rather than requesting their pixels from the server.
+		 * Background is identified using a {@link TissueMap}, which can greatly reduce the time needed to export 
+		 * whole slide images with a lot of empty glass.
+		 * <p>
+		 * Note that this means that background pixels will not be exported exactly.
+		 * 
+		 * @param fillBackground
+		 * @return this builder
+		 * @since v0.6.0
+		 */
+		public Builder fillBackground(boolean fillBackground) {
+			series.tissueMap = fillBackground ? TissueMap.getInstance(series.serverOriginal) : null;
+			return this;
+		}
+		
 		/**
 		 * Parallelize tile export, if possible.
 		 * 
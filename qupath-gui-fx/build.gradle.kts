@@ -21,6 +21,9 @@ dependencies {
 
   implementation(libs.guava)
 
+  implementation(libs.groovy.core)
+  implementation(libs.groovy.jsr223)
+
   implementation(libs.snakeyaml)
   implementation(libs.picocli)
   
@@ -58,6 +58,7 @@ import javafx.beans.property.SimpleLongProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.ListChangeListener;
+import qupath.lib.analysis.images.ImageHistograms;
 import qupath.lib.analysis.stats.Histogram;
 import qupath.lib.color.ColorTransformer;
 import qupath.lib.color.ColorTransformer.ColorTransformMethod;
@@ -147,6 +148,9 @@ public class ImageDisplay extends AbstractImageRenderer {
 	// Flag when the image data is being set, to prevent other changes or events being processed
 	private boolean settingImageData = false;
 
+	// Flag that the display ranges came from saved or retained settings, and so shouldn't be reset automatically
+	private boolean displaySettingsRestored = false;
+
 	/**
 	 * Constructor.
 	 */
@@ -247,12 +251,14 @@ public class ImageDisplay extends AbstractImageRenderer {
 			this.imagesForHistograms = imageData == null ? Collections.emptyList() : getImagesForHistogram(imageData.getServer());
 			updateChannelOptions(true);
 			updateHistogramMap();
+			displaySettingsRestored = false;
 			if (imageData != null) {
 				// Load any existing color properties
-				loadChannelColorProperties();
+				displaySettingsRestored = loadChannelColorProperties();
 				// Update from the last image, if required
 				if (lastDisplayJSON != null && !lastDisplayJSON.isEmpty()) {
 					updateFromJSON(lastDisplayJSON);
+					displaySettingsRestored = true;
 				}
 			}
 		} finally {
@@ -986,6 +992,36 @@ public class ImageDisplay extends AbstractImageRenderer {
 	}
 	
 
+	/**
+	 * Set histograms computed from all pixels in the image (or the tissue within it), rather than from thumbnails.
+	 * <p>
+	 * These are used as the histograms for channels read directly from the server.
+	 * This means that auto-contrast is consistent across the whole image, and doesn't depend upon the thumbnail resolution.
+	 * <p>
+	 * The display ranges for these channels are updated using the new histograms, unless they were set from 
+	 * display settings saved with the image or retained from a previous image.
+	 * 
+	 * @param histograms histograms for the current image; ignored if they were computed for a different image
+	 * @since v0.6.0
+	 * @see ImageHistograms
+	 */
+	public void setImageHistograms(ImageHistograms histograms) {
+		var server = getServer();
+		if (server == null || histogramManager == null || histograms == null)
+			return;
+		if (!Objects.equals(server.getPath(), histograms.getServerPath()) || server.nChannels() != histograms.nChannels()) {
+			logger.warn("Histograms don't match the current image - will be ignored");
+			return;
+		}
+		var channels = histogramManager.setImageHistograms(channelOptions, histograms);
+		if (!displaySettingsRestored) {
+			for (var channel : channels)
+				autoSetDisplayRange(channel, false);
+		}
+		if (!channels.isEmpty())
+			changeTimestamp.set(System.currentTimeMillis());
+	}
+
 	/**
 	 * Returns a histogram for a ChannelInfo, or none if no histogram is available (e.g. the channel is RGB)
 	 * @param info
@@ -1071,6 +1107,7 @@ public class ImageDisplay extends AbstractImageRenderer {
 			useInvertedBackground.set(display.useInvertedBackground());
 			if (updateFromJSON(display.toJSON()))
 				saveChannelColorProperties();
+			displaySettingsRestored = true;
 			return true;
 		}
 		return false;
@@ -1273,6 +1310,31 @@ public class ImageDisplay extends AbstractImageRenderer {
 			logger.debug("Histograms built in {} ms", (endTime - startTime));
 		}
 		
+		/**
+		 * Replace the histograms for channels read directly from the server.
+		 * @return the channels that were updated
+		 */
+		List<ChannelDisplayInfo> setImageHistograms(final List<ChannelDisplayInfo> channels, final ImageHistograms histograms) {
+			List<ChannelDisplayInfo> updated = new ArrayList<>();
+			for (var channel : channels) {
+				if (channel instanceof DirectServerChannelInfo directChannel && directChannel.getChannel() < histograms.nChannels()) {
+					var sketch = histograms.getHistogram(directChannel.getChannel());
+					if (sketch.getCount() == 0)
+						continue;
+					var histogram = sketch.toHistogram(NUM_BINS);
+					if (!histogram.isInteger() || Math.max(Math.abs(channel.getMaxAllowed()), Math.abs(channel.getMinAllowed())) > 4096) {
+						// Include the current display range, so that any saved settings aren't clipped
+						directChannel.setMinMaxAllowed(
+								(float)Math.min(Math.min(0, histogram.getMinValue()), channel.getMinDisplay()),
+								(float)Math.max(Math.max(0, histogram.getMaxValue()), channel.getMaxDisplay()));
+					}
+					map.put(getKey(channel), histogram);
+					updated.add(channel);
+				}
+			}
+			return updated;
+		}
+		
 		Histogram getHistogram(final ImageServer<BufferedImage> server, final ChannelDisplayInfo channel, final List<BufferedImage> images) {
 			if (channel instanceof SingleChannelDisplayInfo singleChannel) {
 				// Always recompute histogram for mutable channels
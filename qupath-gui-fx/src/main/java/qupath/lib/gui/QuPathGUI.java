@@ -106,6 +106,7 @@ import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import qupath.fx.utils.FXUtils;
 import qupath.fx.dialogs.FileChoosers;
+import qupath.lib.analysis.images.ImageHistograms;
 import qupath.lib.common.GeneralTools;
 import qupath.lib.common.LogTools;
 import qupath.lib.common.Timeit;
@@ -1504,6 +1505,8 @@ public class QuPathGUI {
 		try {
 			imageData = entry.readImageData();
 			viewer.setImageData(imageData);
+			if (imageData != null)
+				applyCachedHistograms(viewer, entry);
 			if (imageData != null && (imageData.getImageType() == null || imageData.getImageType() == ImageType.UNSET)) {
 				var setType = PathPrefs.imageTypeSettingProperty().get();
 				if (setType == ImageTypeSetting.AUTO_ESTIMATE || setType == ImageTypeSetting.PROMPT) {
@@ -1527,6 +1530,20 @@ public class QuPathGUI {
 		}
 	}
 	
+	/**
+	 * Use any whole-image histograms cached for a project entry to set the display ranges.
+	 */
+	private static void applyCachedHistograms(QuPathViewer viewer, ProjectImageEntry<BufferedImage> entry) {
+		try {
+			var histograms = ImageHistograms.read(entry);
+			if (histograms != null)
+				viewer.getImageDisplay().setImageHistograms(histograms);
+		} catch (IOException e) {
+			logger.warn("Unable to read cached histograms: {}", e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+		}
+	}
+	
 	
 	ProjectImageEntry<BufferedImage> getProjectImageEntry(ImageData<BufferedImage> imageData) {
 		if (imageData == null)
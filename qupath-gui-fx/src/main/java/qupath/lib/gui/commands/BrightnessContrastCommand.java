@@ -60,8 +60,10 @@ import javafx.stage.Stage;
 import jfxtras.scene.layout.HBox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import qupath.fx.dialogs.Dialogs;
 import qupath.fx.utils.FXUtils;
 import qupath.fx.utils.GridPaneUtils;
+import qupath.lib.analysis.images.ImageHistograms;
 import qupath.lib.display.ChannelDisplayInfo;
 import qupath.lib.display.ImageDisplay;
 import qupath.lib.display.settings.DisplaySettingUtils;
@@ -74,10 +76,12 @@ import qupath.lib.gui.commands.display.BrightnessContrastSliderPane;
 import qupath.lib.gui.prefs.PathPrefs;
 import qupath.lib.gui.viewer.QuPathViewer;
 import qupath.lib.images.ImageData;
+import qupath.lib.projects.ProjectImageEntry;
 
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 
@@ -92,6 +96,11 @@ public class BrightnessContrastCommand implements Runnable {
 
 	private static final double BUTTON_SPACING = 5;
 
+	/**
+	 * Maximum width or height of the (downsampled) image used to compute whole image histograms.
+	 */
+	private static final double MAX_HISTOGRAM_IMAGE_SIZE = 4096;
+
 	private final QuPathGUI qupath;
 
 	private final ObjectProperty<QuPathViewer> viewerProperty = new SimpleObjectProperty<>();
@@ -110,6 +119,7 @@ public class BrightnessContrastCommand implements Runnable {
 
 	private final BooleanProperty showGrayscale = new SimpleBooleanProperty(false);
 	private final BooleanProperty invertBackground = new SimpleBooleanProperty(false);
+	private final BooleanProperty computingHistograms = new SimpleBooleanProperty(false);
 
 	private final BooleanBinding blockChannelAdjustment = table.currentChannelVisible().not();
 
@@ -332,9 +342,16 @@ public class BrightnessContrastCommand implements Runnable {
 		btnReset.setOnAction(this::handleResetButtonClicked);
 		btnReset.disableProperty().bind(blockChannelAdjustment);
 
+		Button btnWholeImage = new Button("Whole image");
+		btnWholeImage.setTooltip(new Tooltip("Compute histograms from the whole image (or the selected annotation) and use them to set the display ranges.\n" +
+				"Histograms are cached in the project, so that they are used whenever the image is opened."));
+		btnWholeImage.setOnAction(this::handleWholeImageButtonClicked);
+		btnWholeImage.disableProperty().bind(computingHistograms.or(imageDataProperty.isNull()));
+
 		GridPane pane = GridPaneUtils.createColumnGridControls(
 				btnAuto,
-				btnReset
+				btnReset,
+				btnWholeImage
 		);
 		pane.setHgap(BUTTON_SPACING);
 		return pane;
@@ -361,6 +378,48 @@ public class BrightnessContrastCommand implements Runnable {
 		updateSliders();
 	}
 
+	private void handleWholeImageButtonClicked(ActionEvent e) {
+		var imageData = imageDataProperty.getValue();
+		var imageDisplay = imageDisplayProperty.getValue();
+		if (imageData == null || imageDisplay == null)
+			return;
+		String title = "Whole image histograms";
+		var project = qupath.getProject();
+		ProjectImageEntry<BufferedImage> entry = project == null ? null : project.getEntry(imageData);
+		if (entry == null) {
+			Dialogs.showWarningNotification(title, "Whole image histograms can only be computed for images in a project");
+			return;
+		}
+		var server = imageData.getServer();
+		double downsample = Math.max(1.0, Math.max(server.getWidth(), server.getHeight()) / MAX_HISTOGRAM_IMAGE_SIZE);
+		var selected = imageData.getHierarchy().getSelectionModel().getSelectedObject();
+		var roi = selected != null && selected.hasROI() && selected.getROI().isArea() ? selected.getROI() : null;
+
+		computingHistograms.set(true);
+		qupath.getThreadPoolManager().submitShortTask(() -> {
+			try {
+				var histograms = ImageHistograms.getOrCompute(entry, server, downsample, roi);
+				Platform.runLater(() -> applyWholeImageHistograms(imageDisplay, histograms));
+			} catch (IOException ex) {
+				logger.error("Unable to compute histograms: " + ex.getLocalizedMessage(), ex);
+				Dialogs.showErrorNotification(title, "Unable to compute histograms: " + ex.getLocalizedMessage());
+			} finally {
+				Platform.runLater(() -> computingHistograms.set(false));
+			}
+		});
+	}
+
+	private void applyWholeImageHistograms(ImageDisplay imageDisplay, ImageHistograms histograms) {
+		// The image may have changed while the histograms were being computed
+		if (imageDisplay != imageDisplayProperty.getValue())
+			return;
+		imageDisplay.setImageHistograms(histograms);
+		double saturation = PathPrefs.autoBrightnessContrastSaturationPercentProperty().get()/100.0;
+		for (ChannelDisplayInfo info : imageDisplay.availableChannels())
+			imageDisplay.autoSetDisplayRange(info, saturation);
+		updateSliders();
+	}
+
 	private ObservableList<String> warningList = FXCollections.observableArrayList();
 
 	private ObjectExpression<InfoMessage> infoMessage = Bindings.createObjectBinding(() -> {
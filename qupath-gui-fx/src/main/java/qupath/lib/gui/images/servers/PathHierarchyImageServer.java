@@ -258,7 +258,8 @@ public class PathHierarchyImageServer extends AbstractTileableImageServer implem
 		// Note we don't want to pass a selection model, as selections shouldn't be included
 		if (pathObjects != null && !pathObjects.isEmpty()) {
 			g2d.setClip(AwtTools.getBounds(request));
-			PathObjectPainter.paintSpecifiedObjects(g2d, pathObjects, options, null, downsampleFactor);
+			// Use a lower level of detail for tiny detections
+			PathObjectPainter.paintSpecifiedObjects(img, g2d, pathObjects, options, downsampleFactor);
 		}
 		
 		// See if we have any connections to draw
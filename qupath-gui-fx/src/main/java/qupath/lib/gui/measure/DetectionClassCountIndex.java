@@ -0,0 +1,227 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.measure;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import qupath.lib.gui.measure.ObservableMeasurementTableData.DetectionPathClassCounts;
+import qupath.lib.objects.PathObject;
+import qupath.lib.objects.classes.PathClass;
+import qupath.lib.objects.hierarchy.PathObjectHierarchy;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyEvent;
+import qupath.lib.objects.hierarchy.events.PathObjectHierarchyListener;
+import qupath.lib.roi.interfaces.ROI;
+
+/**
+ * Cache of the detection counts by classification for parent objects in a hierarchy.
+ * <p>
+ * Counts are updated from hierarchy events, rather than being recomputed whenever anything changes.
+ * Only the counts for each parent are stored; the counts affected by a detection are found from its centroid when an event is received.
+ * Adding, removing or reclassifying individual detections updates the affected counts in place.
+ * To support this, the classification under which each detection was last counted is also stored, 
+ * since hierarchy events don't provide the previous classification.
+ * More complex changes cause all counts to be recomputed.
+ */
+class DetectionClassCountIndex implements PathObjectHierarchyListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(DetectionClassCountIndex.class);
+
+	// Note that the index shouldn't reference the hierarchy, so that it doesn't prevent it from being garbage collected
+	private static final Map<PathObjectHierarchy, DetectionClassCountIndex> indexes = Collections.synchronizedMap(new WeakHashMap<>());
+
+	private final Map<PathObject, DetectionPathClassCounts> countsMap = new WeakHashMap<>();
+
+	// Classification of each detection when it was last counted, so that counts can be updated after reclassification
+	private final Map<PathObject, PathClass> countedClasses = new WeakHashMap<>();
+
+	private DetectionClassCountIndex() {}
+
+	/**
+	 * Get the index for a hierarchy, creating it (and adding it as a listener) if necessary.
+	 * @param hierarchy
+	 * @return
+	 */
+	static DetectionClassCountIndex getInstance(PathObjectHierarchy hierarchy) {
+		return indexes.computeIfAbsent(hierarchy, h -> {
+			var index = new DetectionClassCountIndex();
+			h.addListener(index);
+			return index;
+		});
+	}
+
+	/**
+	 * Get the detection counts for a parent object.
+	 * Detections are counted if their centroids fall within the ROI of the parent, or all detections are counted
+	 * for the root object.
+	 * @param hierarchy the hierarchy containing the parent object
+	 * @param parentObject
+	 * @return
+	 */
+	synchronized DetectionPathClassCounts getCounts(PathObjectHierarchy hierarchy, PathObject parentObject) {
+		var counts = countsMap.get(parentObject);
+		if (counts != null)
+			return counts;
+
+		Collection<PathObject> pathObjects;
+		if (parentObject.isRootObject())
+			pathObjects = hierarchy.getDetectionObjects();
+		else
+			pathObjects = hierarchy.getAllDetectionsForROI(parentObject.getROI());
+
+		for (var pathObject : pathObjects) {
+			if (pathObject != parentObject && pathObject.isDetection())
+				countedClasses.put(pathObject, pathObject.getPathClass());
+		}
+		counts = new DetectionPathClassCounts(pathObjects, parentObject);
+		countsMap.put(parentObject, counts);
+		return counts;
+	}
+
+	/**
+	 * Remove all cached counts, so that they are recomputed when next requested.
+	 */
+	synchronized void clear() {
+		for (var counts : countsMap.values())
+			counts.invalidate();
+		countsMap.clear();
+		countedClasses.clear();
+	}
+
+	@Override
+	public synchronized void hierarchyChanged(PathObjectHierarchyEvent event) {
+		if (countsMap.isEmpty()) {
+			countedClasses.clear();
+			return;
+		}
+
+		switch (event.getEventType()) {
+		case CHANGE_CLASSIFICATION:
+			for (var pathObject : event.getChangedObjects()) {
+				if (pathObject.isDetection())
+					reclassify(pathObject);
+			}
+			break;
+		case CHANGE_MEASUREMENTS:
+			break;
+		case CHANGE_OTHER:
+			for (var pathObject : event.getChangedObjects()) {
+				if (pathObject.isDetection()) {
+					// The ROI may have changed, and we don't know where it was before
+					logger.trace("Resetting all counts after {} changed", pathObject);
+					clear();
+					return;
+				}
+				invalidate(pathObject);
+			}
+			break;
+		case ADDED:
+		case REMOVED:
+			boolean added = event.getEventType() == PathObjectHierarchyEvent.HierarchyEventType.ADDED;
+			for (var pathObject : event.getChangedObjects()) {
+				if (pathObject.hasChildObjects()) {
+					// Detections may have been added or removed along with the object
+					logger.trace("Resetting all counts after {} {}", pathObject, added ? "added" : "removed");
+					clear();
+					return;
+				}
+				if (!pathObject.isDetection())
+					invalidate(pathObject);
+				else if (added) {
+					var pathClass = pathObject.getPathClass();
+					countedClasses.put(pathObject, pathClass);
+					updateContaining(pathObject, counts -> counts.add(pathClass, 1));
+				} else {
+					var pathClass = countedClasses.containsKey(pathObject) ? countedClasses.remove(pathObject) : pathObject.getPathClass();
+					updateContaining(pathObject, counts -> counts.add(pathClass, -1));
+				}
+			}
+			break;
+		case OTHER_STRUCTURE_CHANGE:
+		default:
+			clear();
+		}
+	}
+
+	private void invalidate(PathObject parentObject) {
+		var counts = countsMap.remove(parentObject);
+		if (counts != null)
+			counts.invalidate();
+	}
+
+	/**
+	 * Move a reclassified detection from its previous classification to its current one, 
+	 * for all parents that contain its centroid.
+	 * @param pathObject the detection
+	 */
+	private void reclassify(PathObject pathObject) {
+		// If the detection hasn't been counted, there are no counts to update
+		if (!countedClasses.containsKey(pathObject))
+			return;
+		var previousClass = countedClasses.get(pathObject);
+		var pathClass = pathObject.getPathClass();
+		if (previousClass == pathClass)
+			return;
+		countedClasses.put(pathObject, pathClass);
+		updateContaining(pathObject, counts -> {
+			counts.add(previousClass, -1);
+			counts.add(pathClass, 1);
+		});
+	}
+
+	/**
+	 * Update the counts for all parents that contain the centroid of a detection.
+	 * @param pathObject the detection
+	 * @param updater function to update the counts for each parent
+	 */
+	private void updateContaining(PathObject pathObject, Consumer<DetectionPathClassCounts> updater) {
+		var roi = pathObject.getROI();
+		if (roi == null)
+			return;
+		double x = roi.getCentroidX();
+		double y = roi.getCentroidY();
+		for (var entry : countsMap.entrySet()) {
+			if (containsCentroid(entry.getKey(), roi, x, y))
+				updater.accept(entry.getValue());
+		}
+	}
+
+	private static boolean containsCentroid(PathObject parentObject, ROI roi, double x, double y) {
+		if (parentObject.isRootObject())
+			return true;
+		var parentROI = parentObject.getROI();
+		if (parentROI == null || !parentROI.isArea() ||
+				parentROI.getZ() != roi.getZ() || parentROI.getT() != roi.getT())
+			return false;
+		// Check the bounding box first, since it's cheap
+		return x >= parentROI.getBoundsX() && x <= parentROI.getBoundsX() + parentROI.getBoundsWidth() &&
+				y >= parentROI.getBoundsY() && y <= parentROI.getBoundsY() + parentROI.getBoundsHeight() &&
+				parentROI.contains(x, y);
+	}
+
+}
@@ -35,7 +35,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.function.Predicate;
 
 import org.slf4j.Logger;
@@ -69,7 +68,6 @@ import qupath.lib.objects.PathObjectTools;
 import qupath.lib.objects.TMACoreObject;
 import qupath.lib.objects.classes.PathClass;
 import qupath.lib.objects.classes.PathClassTools;
-import qupath.lib.objects.hierarchy.PathObjectHierarchy;
 import qupath.lib.regions.ImagePlane;
 import qupath.lib.roi.PolygonROI;
 import qupath.lib.roi.ROIs;
@@ -404,9 +402,9 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 	 * Refresh the measurement values.
 	 */
 	public void refreshEntries() {
-		// Clear the cached map to force updates
-		if (manager != null)
-			manager.map.clear();
+		// Clear the cached counts to force updates
+		if (imageData != null && imageData.getHierarchy() != null)
+			DetectionClassCountIndex.getInstance(imageData.getHierarchy()).clear();
 	}
 	
 	/**
@@ -459,6 +457,17 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 		return builderMap.get(name) instanceof StringMeasurementBuilder;
 	}
 	
+	/**
+	 * Query whether a named measurement is calculated by the table, rather than read directly 
+	 * from the measurement list of each object.
+	 * @param name the measurement name
+	 * @return true if the measurement is derived, false otherwise
+	 * @since v0.6.0
+	 */
+	public boolean isDerivedMeasurement(final String name) {
+		return builderMap.containsKey(name);
+	}
+	
 	/**
 	 * Query whether a named measurement returns a numeric value only.
 	 * @param name the measurement name
@@ -622,9 +631,6 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 		
 		private List<MeasurementBuilder<?>> builders = new ArrayList<>();
 		
-		// Map to store cached counts, will be reset when the hierarchy changes (in any way)
-		private Map<PathObject, DetectionPathClassCounts> map = new WeakHashMap<>();
-		
 		private boolean containsAnnotations;
 		
 		DerivedMeasurementManager(final ImageData<?> imageData, final boolean containsAnnotations) {
@@ -636,7 +642,6 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 		void updateAvailableMeasurements() {
 //			parentIntensityClasses.clear();
 //			parentPositiveNegativeClasses.clear();
-			map.clear();
 			builders.clear();
 			if (imageData == null || imageData.getHierarchy() == null)
 				return;
@@ -727,6 +732,15 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				updateAvailableMeasurements();
 			return builders;
 		}
+		
+		/**
+		 * Get the detection counts for a parent object.
+		 * These are cached for the hierarchy, and updated as the hierarchy changes.
+		 */
+		private DetectionPathClassCounts getCounts(final PathObject pathObject) {
+			var hierarchy = imageData.getHierarchy();
+			return DetectionClassCountIndex.getInstance(hierarchy).getCounts(hierarchy, pathObject);
+		}
 
 		
 		
@@ -744,11 +758,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected int computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				if (baseClassification)
 					return counts.getCountForAncestor(pathClass);
 				else
@@ -784,11 +794,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 				if (pathObjectTemp == null || !(pathObjectTemp.isAnnotation() || pathObjectTemp.isRootObject()))
 					return Double.NaN;
 				
-				DetectionPathClassCounts counts = map.get(pathObjectTemp);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObjectTemp);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObjectTemp);
 				int n = counts.getCountForAncestor(pathClass);
 				ROI roi = pathObjectTemp.getROI();
 				// For the root, we can measure density only for 2D images of a single time-point
@@ -824,11 +830,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getHScore(pathClasses);
 			}
 			
@@ -849,11 +851,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getAllredIntensity(minPositivePercentage.doubleValue() / 100, pathClasses);
 			}
 			
@@ -874,11 +872,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getAllredProportion(minPositivePercentage.doubleValue() / 100, pathClasses);
 			}
 			
@@ -898,11 +892,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getAllredScore(minPositivePercentage.doubleValue() / 100, pathClasses);
 			}
 			
@@ -921,11 +911,7 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 
 			@Override
 			protected double computeValue() {
-				DetectionPathClassCounts counts = map.get(pathObject);
-				if (counts == null) {
-					counts = new DetectionPathClassCounts(imageData.getHierarchy(), pathObject);
-					map.put(pathObject, counts);
-				}
+				DetectionPathClassCounts counts = getCounts(pathObject);
 				return counts.getPositivePercentage(pathClasses);
 			}
 			
@@ -1740,20 +1726,16 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 		
 		private Map<PathClass, Integer> counts = new HashMap<>();
 		
+		private volatile boolean valid = true;
+		
 		/**
 		 * Create a structure to count detections inside a specified parent.
-		 * @param hierarchy 
-		 * 
+		 * @param pathObjects the objects inside the parent (non-detections will be ignored)
 		 * @param parentObject the parent object.
+		 * @see DetectionClassCountIndex
 		 */
-		DetectionPathClassCounts(final PathObjectHierarchy hierarchy, final PathObject parentObject) {
+		DetectionPathClassCounts(final Collection<? extends PathObject> pathObjects, final PathObject parentObject) {
 //			for (PathObject child : PathObjectTools.getFlattenedObjectList(parentObject, null, true)) {
-			Collection<PathObject> pathObjects;
-			if (parentObject.isRootObject())
-				pathObjects = hierarchy.getDetectionObjects();
-			else
-				pathObjects = hierarchy.getAllDetectionsForROI(parentObject.getROI());
-			
 			for (PathObject child : pathObjects) {
 				if (child == parentObject || !child.isDetection())
 					continue;
@@ -1768,11 +1750,35 @@ public class ObservableMeasurementTableData implements PathTableData<PathObject>
 			}
 		}
 		
-		public int getDirectCount(final PathClass pathClass) {
+		/**
+		 * Update the count for a classification, e.g. after a detection has been reclassified.
+		 * @param pathClass
+		 * @param delta
+		 */
+		synchronized void add(final PathClass pathClass, final int delta) {
+			int count = counts.getOrDefault(pathClass, Integer.valueOf(0)) + delta;
+			if (count == 0)
+				counts.remove(pathClass);
+			else
+				counts.put(pathClass, count);
+		}
+		
+		/**
+		 * Mark the counts as invalid, i.e. no longer updated.
+		 */
+		void invalidate() {
+			valid = false;
+		}
+		
+		boolean isValid() {
+			return valid;
+		}
+		
+		public synchronized int getDirectCount(final PathClass pathClass) {
 			return counts.getOrDefault(pathClass, Integer.valueOf(0));
 		}
 		
-		public int getCountForAncestor(final Predicate<PathClass> predicate, final PathClass ancestor) {
+		public synchronized int getCountForAncestor(final Predicate<PathClass> predicate, final PathClass ancestor) {
 			int count = 0;
 			for (Entry<PathClass, Integer> entry : counts.entrySet()) {
 				if (ancestor == null) {
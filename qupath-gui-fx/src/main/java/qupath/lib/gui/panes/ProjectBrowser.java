@@ -43,8 +43,11 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -190,6 +193,22 @@ public class ProjectBrowser implements ChangeListener<ImageData<BufferedImage>>
 	 * To load thumbnails in the background
 	 */
 	private static ExecutorService executor;
+	
+	/**
+	 * Maximum number of thumbnails to generate concurrently.
+	 * This is kept low because each request may need to open an image server.
+	 */
+	private static final int MAX_THUMBNAIL_THREADS = 4;
+	
+	/**
+	 * Entries for which a thumbnail request is currently queued or running, to avoid duplicate requests.
+	 */
+	private final Set<ProjectImageEntry<BufferedImage>> pendingThumbnails = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Counter used to prioritize thumbnail requests, so that the most recent (i.e. currently visible) are handled first.
+	 */
+	private final AtomicLong thumbnailRequestCounter = new AtomicLong();
 
 	/**
 	 * Constructor.
@@ -202,8 +221,11 @@ public class ProjectBrowser implements ChangeListener<ImageData<BufferedImage>>
 
 		qupath.imageDataProperty().addListener(this);
 		
-		// Get thumbnails in separate thread
-		executor = Executors.newSingleThreadExecutor(ThreadTools.createThreadFactory("thumbnail-loader", true));
+		// Get thumbnails in separate threads, handling the most recent requests first
+		int nThreads = Math.max(1, Math.min(MAX_THUMBNAIL_THREADS, ThreadTools.getParallelism() / 2));
+		executor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<>(),
+				ThreadTools.createThreadFactory("thumbnail-loader", true));
 
 		PathPrefs.maskImageNamesProperty().addListener((v, o, n) -> refreshTree(null));
 		PathPrefs.skipProjectUriChecksProperty().addListener((v, o, n) -> tree.refresh());
@@ -1350,27 +1372,7 @@ public class ProjectBrowser implements ChangeListener<ImageData<BufferedImage>>
 						} else if (!serversFailed.contains(item)) {
 							tooltip.setGraphic(viewTooltip);
 							viewCanvas.getGraphicsContext2D().clearRect(0, 0, viewCanvas.getWidth(), viewCanvas.getHeight());
-							executor.submit(() -> {
-								final ProjectTreeRow objectTemp = getItem();
-								final ProjectImageEntry<BufferedImage> entryTemp = ProjectTreeRow.getEntry(objectTemp);
-								try {
-									if (entryTemp != null && objectCell != objectTemp && entryTemp.getThumbnail() == null) {
-										try (ImageServer<BufferedImage> server = entryTemp.getServerBuilder().build()) {
-											entryTemp.setThumbnail(ProjectCommands.getThumbnailRGB(server));
-											objectCell = objectTemp;
-											tree.refresh();
-										} catch (Exception ex) {
-											logger.warn("Error opening ImageServer (thumbnail generation): {}", ex.getLocalizedMessage(), ex);
-											Platform.runLater(() -> setGraphic(IconFactory.createNode(15, 15, PathIcons.INACTIVE_SERVER)));
-											serversFailed.add(item);
-										}
-									}
-								} catch (IOException ex) {
-									logger.warn("Error getting thumbnail: {}", ex.getLocalizedMessage());
-									Platform.runLater(() -> setGraphic(IconFactory.createNode(15, 15, PathIcons.INACTIVE_SERVER)));
-									serversFailed.add(item);
-								}
-							});
+							requestThumbnail(item, entry);
 						} else
 							setGraphic(IconFactory.createNode(15, 15, PathIcons.INACTIVE_SERVER));
 					} catch (Exception e) {
@@ -1383,6 +1385,40 @@ public class ProjectBrowser implements ChangeListener<ImageData<BufferedImage>>
 		}
 
 
+		/**
+		 * Request a thumbnail in the background.
+		 * Requests are skipped if the cell has been reused by the time they are handled; they will be resubmitted
+		 * if the entry becomes visible again.
+		 */
+		private void requestThumbnail(ProjectTreeRow item, ProjectImageEntry<BufferedImage> entry) {
+			if (!pendingThumbnails.add(entry))
+				return;
+			executor.execute(new ThumbnailRequest(thumbnailRequestCounter.incrementAndGet(), () -> {
+				try {
+					if (getItem() != item)
+						return;
+					if (entry.getThumbnail() == null) {
+						try (ImageServer<BufferedImage> server = entry.getServerBuilder().build()) {
+							entry.setThumbnail(ProjectCommands.getThumbnailRGB(server));
+						} catch (Exception ex) {
+							logger.warn("Error opening ImageServer (thumbnail generation): {}", ex.getLocalizedMessage(), ex);
+							Platform.runLater(() -> setGraphic(IconFactory.createNode(15, 15, PathIcons.INACTIVE_SERVER)));
+							serversFailed.add(item);
+							return;
+						}
+					}
+					objectCell = item;
+					Platform.runLater(() -> tree.refresh());
+				} catch (IOException ex) {
+					logger.warn("Error getting thumbnail: {}", ex.getLocalizedMessage());
+					Platform.runLater(() -> setGraphic(IconFactory.createNode(15, 15, PathIcons.INACTIVE_SERVER)));
+					serversFailed.add(item);
+				} finally {
+					pendingThumbnails.remove(entry);
+				}
+			}));
+		}
+
 		private static UriUpdater.UriStatus checkUri(URI uri) {
 			var path = GeneralTools.toPath(uri);
 			// In case the check is slow, we make it possible for the user to turn it off.
@@ -1398,6 +1434,23 @@ public class ProjectBrowser implements ChangeListener<ImageData<BufferedImage>>
 	}
 
 		
+	/**
+	 * Thumbnail request that can be prioritized, with the most recent requests handled first.
+	 */
+	private record ThumbnailRequest(long order, Runnable runnable) implements Runnable, Comparable<ThumbnailRequest> {
+
+		@Override
+		public void run() {
+			runnable.run();
+		}
+
+		@Override
+		public int compareTo(ThumbnailRequest o) {
+			return -Long.compare(order, o.order);
+		}
+
+	}
+
 	/**
 	 * TreeItem to help with the display of project objects.
 	 */
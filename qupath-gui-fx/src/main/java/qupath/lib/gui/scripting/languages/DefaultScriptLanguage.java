@@ -202,14 +202,15 @@ public class DefaultScriptLanguage extends ScriptLanguage implements ExecutableL
 				if (engine == null)
 					throw new ScriptException("Unable to find ScriptEngine for " + getName());
 				if (engine instanceof Compilable) {
-					var compilable = (Compilable)engine;
 					synchronized (compiledMap) {
 						compiled = compiledMap.getIfPresent(script2);
 						// Compile if we don't have the script, or it is somehow associated with a different engine
 						if (compiled == null || !Objects.equals(compiled.getEngine().getClass(), engine.getClass())) {
 							compiled = compiledMap.getIfPresent(script2);						
 							logger.debug("Compiling script");
-							compiled = compilable.compile(script2);
+							long startTime = System.nanoTime();
+							compiled = compileScript(engine, script2);
+							logger.debug("Script compiled in {} ms", (System.nanoTime() - startTime) / 1_000_000);
 							compiledMap.put(script2, compiled);
 						}	
 					}
@@ -221,9 +222,11 @@ public class DefaultScriptLanguage extends ScriptLanguage implements ExecutableL
 			context.setAttribute(ScriptEngine.ARGV, params.getArgs(), ScriptContext.ENGINE_SCOPE);
 			context.setAttribute(ScriptEngine.FILENAME, filename, ScriptContext.ENGINE_SCOPE);
 			
+			long startTime = System.nanoTime();
 			if (compiled != null) {
 				logger.debug("Evaluating compiled script: {}", compiled);
 				result = compiled.eval(context);
+				logger.debug("Compiled script evaluated in {} ms", (System.nanoTime() - startTime) / 1_000_000);
 			} else {
 				if (engine == null) {
 					engine = ScriptLanguageProvider.getEngineByName(getName());
@@ -232,6 +235,7 @@ public class DefaultScriptLanguage extends ScriptLanguage implements ExecutableL
 				}
 				logger.debug("Evaluating script engine: {}", engine);
 				result = engine.eval(script2, context);
+				logger.debug("Script compiled & evaluated in {} ms", (System.nanoTime() - startTime) / 1_000_000);
 			}
 			
 			if (params.doUpdateHierarchy() && params.getImageData() != null)
@@ -324,6 +328,22 @@ public class DefaultScriptLanguage extends ScriptLanguage implements ExecutableL
 	}
 	
 	
+	/**
+	 * Compile a script using the specified engine.
+	 * <p>
+	 * The default implementation simply calls {@link Compilable#compile(String)}; subclasses may override this 
+	 * to reuse scripts compiled previously.
+	 * Results are cached in memory by this class, so this is only called if a script has not been compiled recently.
+	 * @param engine the script engine; this must implement {@link Compilable}
+	 * @param script the full script, including any default imports
+	 * @return the compiled script
+	 * @throws ScriptException if the script could not be compiled
+	 * @since v0.6.0
+	 */
+	protected CompiledScript compileScript(ScriptEngine engine, String script) throws ScriptException {
+		return ((Compilable)engine).compile(script);
+	}
+	
 	protected String tryToInterpretMessage(Throwable cause, int line, boolean defaultImportsAvailable) {
 		
 		String message = cause.getLocalizedMessage();
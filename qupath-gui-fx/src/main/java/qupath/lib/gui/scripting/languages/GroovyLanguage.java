@@ -23,9 +23,16 @@
 
 package qupath.lib.gui.scripting.languages;
 
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+
 import qupath.lib.gui.scripting.completors.GroovyAutoCompletor;
 import qupath.lib.scripting.languages.AutoCompletions;
 import qupath.lib.scripting.languages.ExecutableLanguage;
@@ -42,6 +49,8 @@ public class GroovyLanguage extends DefaultScriptLanguage implements ExecutableL
 
 	private static final GroovyLanguage INSTANCE_WITH_COMPLETIONS = new GroovyLanguage();
 	private static final GroovyLanguage INSTANCE_NO_COMPLETIONS = new GroovyLanguage(Collections.emptyList());
+	
+	private static volatile GroovyScriptCache compiledScriptCache;
 
 	private GroovyLanguage(Collection<? extends AutoCompletions.Completion> completions) {
 		super("Groovy", Collections.singleton(".groovy"), new GroovyAutoCompletor(completions));
@@ -69,6 +78,45 @@ public class GroovyLanguage extends DefaultScriptLanguage implements ExecutableL
 		return new GroovyLanguage(completions);
 	}
 	
+	/**
+	 * Set a directory that should be used to store compiled scripts, so that they can be reused 
+	 * across QuPath sessions and processes.
+	 * <p>
+	 * This is only used for scripts run with {@link qupath.lib.scripting.ScriptParameters#useCompiled()}.
+	 * Cached scripts are only reused for the same QuPath version and classpath (including extensions).
+	 * <p>
+	 * Because cached classes are loaded and run, the directory should only be writable by the current user 
+	 * (e.g. within the QuPath user directory, not a shared temp directory).
+	 * Cached scripts are ignored if this is not the case.
+	 * @param directory the cache directory, or null if compiled scripts should only be cached in memory
+	 * @since v0.6.0
+	 */
+	public static void setCompiledScriptCacheDirectory(Path directory) {
+		compiledScriptCache = directory == null ? null : new GroovyScriptCache(directory);
+	}
+	
+	/**
+	 * Get the directory used to store compiled scripts.
+	 * @return the cache directory, or null if compiled scripts are only cached in memory
+	 * @since v0.6.0
+	 * @see #setCompiledScriptCacheDirectory(Path)
+	 */
+	public static Path getCompiledScriptCacheDirectory() {
+		var cache = compiledScriptCache;
+		return cache == null ? null : cache.getDirectory();
+	}
+	
+	@Override
+	protected CompiledScript compileScript(ScriptEngine engine, String script) throws ScriptException {
+		var cache = compiledScriptCache;
+		if (cache != null && engine instanceof GroovyScriptEngineImpl groovyEngine) {
+			var compiled = cache.getCompiledScript(groovyEngine, script);
+			if (compiled != null)
+				return compiled;
+		}
+		return super.compileScript(engine, script);
+	}
+	
 	@Override
 	protected ImportStatementGenerator getImportStatementGenerator() {
 		return JAVA_IMPORTER;
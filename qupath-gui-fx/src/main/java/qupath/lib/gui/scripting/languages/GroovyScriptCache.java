@@ -0,0 +1,424 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.scripting.languages;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.jsr223.GroovyCompiledScript;
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import qupath.lib.common.GeneralTools;
+
+/**
+ * On-disk cache of compiled Groovy scripts.
+ * <p>
+ * Compiled classes are stored in a subdirectory named according to a hash of the script text,
+ * the QuPath and Groovy versions, and the classpath (including extensions).
+ * This means that a cached script is never reused after any of these change.
+ * <p>
+ * Subdirectories are written to a temporary location and then moved into place, so that several processes
+ * can safely share the same cache directory.
+ * Problems reading or writing the cache are logged, and the script is compiled as usual.
+ * <p>
+ * Because cached classes are loaded and run, they are only read if the cache directory and its files are 
+ * owned by the current user and (where POSIX permissions are supported) not writable by anyone else.
+ * Only the most recently used scripts are retained.
+ */
+class GroovyScriptCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(GroovyScriptCache.class);
+
+	/**
+	 * File containing the name of the script class; this is written last, so its presence shows the entry is complete.
+	 */
+	private static final String MAIN_CLASS_FILE = "main-class.txt";
+
+	private static final String CLASS_EXTENSION = ".class";
+
+	/**
+	 * Default maximum number of compiled scripts to retain.
+	 */
+	static final int DEFAULT_MAX_ENTRIES = 200;
+
+	/**
+	 * Incomplete entries older than this are assumed to have been left behind by a process that stopped unexpectedly.
+	 */
+	private static final Duration MAX_TEMP_AGE = Duration.ofDays(1);
+
+	private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+	private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+	private final Path directory;
+	private final int maxEntries;
+
+	GroovyScriptCache(Path directory) {
+		this(directory, DEFAULT_MAX_ENTRIES);
+	}
+
+	GroovyScriptCache(Path directory, int maxEntries) {
+		this.directory = directory;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Get the directory used to store compiled scripts.
+	 * @return
+	 */
+	Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Get a compiled script, either by reading it from the cache or by compiling it and adding it to the cache.
+	 * @param engine the engine that should be used to evaluate the script
+	 * @param script the full script text (including any default imports)
+	 * @return the compiled script, or null if the script could not be compiled to a single script class
+	 *         (in which case it should be compiled by the engine)
+	 * @throws ScriptException if the script could not be compiled
+	 */
+	CompiledScript getCompiledScript(GroovyScriptEngineImpl engine, String script) throws ScriptException {
+		var loader = engine.getClassLoader();
+		String key = createKey(script, loader);
+		Path entry = directory.resolve(key);
+
+		var cached = readEntry(engine, entry);
+		if (cached != null)
+			return cached;
+
+		String mainClassName = "QuPathScript_" + key.substring(0, 16);
+		Map<String, byte[]> classes;
+		try {
+			classes = compileClasses(script, mainClassName, loader);
+		} catch (CompilationFailedException e) {
+			throw new ScriptException(e);
+		}
+		if (!classes.containsKey(mainClassName)) {
+			logger.debug("No script class found - compiled script won't be cached");
+			return null;
+		}
+
+		try {
+			writeEntry(entry, mainClassName, classes);
+			evictEntries();
+		} catch (IOException e) {
+			logger.warn("Unable to write compiled script to {}: {}", entry, e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+		}
+
+		try {
+			return new GroovyCompiledScript(engine, new BytesClassLoader(loader, classes).loadClass(mainClassName));
+		} catch (ClassNotFoundException e) {
+			throw new ScriptException(e);
+		}
+	}
+
+
+	/**
+	 * Read a compiled script from the cache, without compiling it if it is missing.
+	 * @param engine the engine that should be used to evaluate the script
+	 * @param script the full script text (including any default imports)
+	 * @return the compiled script, or null if it is not available from the cache
+	 */
+	CompiledScript readCompiledScript(GroovyScriptEngineImpl engine, String script) {
+		return readEntry(engine, directory.resolve(createKey(script, engine.getClassLoader())));
+	}
+
+	private CompiledScript readEntry(GroovyScriptEngineImpl engine, Path entry) {
+		if (!Files.isRegularFile(entry.resolve(MAIN_CLASS_FILE), LinkOption.NOFOLLOW_LINKS))
+			return null;
+		try {
+			checkTrusted(directory);
+			var compiled = new GroovyCompiledScript(engine, readScriptClass(entry, engine.getClassLoader()));
+			// Record when the script was last used, for eviction
+			Files.setLastModifiedTime(entry, FileTime.from(Instant.now()));
+			logger.debug("Read compiled script from {}", entry);
+			return compiled;
+		} catch (IOException | ClassNotFoundException | LinkageError e) {
+			logger.warn("Unable to read compiled script from {}: {}", entry, e.getLocalizedMessage());
+			logger.debug(e.getLocalizedMessage(), e);
+			return null;
+		}
+	}
+
+
+	private static Map<String, byte[]> compileClasses(String script, String mainClassName, GroovyClassLoader loader) throws CompilationFailedException {
+		var unit = new CompilationUnit(new CompilerConfiguration(), null, loader);
+		unit.addSource(mainClassName + ".groovy", script);
+		unit.compile(Phases.CLASS_GENERATION);
+		var classes = new HashMap<String, byte[]>();
+		for (var groovyClass : unit.getClasses())
+			classes.put(groovyClass.getName(), groovyClass.getBytes());
+		return classes;
+	}
+
+
+	private static Class<?> readScriptClass(Path entry, ClassLoader loader) throws IOException, ClassNotFoundException {
+		checkTrusted(entry);
+		Path mainClassFile = entry.resolve(MAIN_CLASS_FILE);
+		checkTrusted(mainClassFile);
+		String mainClassName = Files.readString(mainClassFile, StandardCharsets.UTF_8).strip();
+		var classes = new HashMap<String, byte[]>();
+		try (var stream = Files.list(entry)) {
+			for (var path : stream.toList()) {
+				String name = path.getFileName().toString();
+				if (name.endsWith(CLASS_EXTENSION)) {
+					checkTrusted(path);
+					classes.put(name.substring(0, name.length() - CLASS_EXTENSION.length()), Files.readAllBytes(path));
+				}
+			}
+		}
+		return new BytesClassLoader(loader, classes).loadClass(mainClassName);
+	}
+
+	/**
+	 * Check that a file or directory can only have been written by the current user.
+	 * @throws IOException if the path is a symbolic link, owned by another user, or writable by other users
+	 */
+	static void checkTrusted(Path path) throws IOException {
+		if (Files.isSymbolicLink(path))
+			throw new IOException(path + " is a symbolic link");
+		var user = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+		if (!Objects.equals(user, Files.getOwner(path, LinkOption.NOFOLLOW_LINKS)))
+			throw new IOException(path + " is not owned by the current user");
+		if (Files.getFileAttributeView(path, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS) != null) {
+			var permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+			if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE))
+				throw new IOException(path + " is writable by other users");
+		}
+	}
+
+	private static boolean isPosix(Path path) {
+		return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+	}
+
+
+	private void writeEntry(Path entry, String mainClassName, Map<String, byte[]> classes) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			Files.createDirectories(directory.toAbsolutePath().getParent());
+			try {
+				if (isPosix(directory))
+					Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+				else
+					Files.createDirectory(directory);
+			} catch (FileAlreadyExistsException e) {
+				logger.debug("Script cache directory already created: {}", directory);
+			}
+		}
+		// There's no point writing scripts that we won't later trust
+		checkTrusted(directory);
+		Path temp = Files.createTempDirectory(directory, entry.getFileName().toString() + "-");
+		try {
+			for (var mapEntry : classes.entrySet())
+				writeOwnerOnly(temp.resolve(mapEntry.getKey() + CLASS_EXTENSION), mapEntry.getValue());
+			writeOwnerOnly(temp.resolve(MAIN_CLASS_FILE), mainClassName.getBytes(StandardCharsets.UTF_8));
+			if (isPosix(temp))
+				Files.setPosixFilePermissions(temp, OWNER_ONLY_DIRECTORY);
+			Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+			logger.debug("Wrote compiled script to {}", entry);
+		} catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+			// Another process got there first
+			logger.debug("Compiled script already written to {}", entry);
+		} finally {
+			if (Files.exists(temp))
+				deleteRecursive(temp);
+		}
+	}
+
+	/**
+	 * Write bytes to a file, ensuring it is only writable by the current user even if the umask would allow 
+	 * group write access.
+	 */
+	private static void writeOwnerOnly(Path path, byte[] bytes) throws IOException {
+		Files.write(path, bytes);
+		if (isPosix(path))
+			Files.setPosixFilePermissions(path, OWNER_ONLY_FILE);
+	}
+
+	/**
+	 * Remove the least recently used entries if there are too many, along with any incomplete entries 
+	 * that seem to have been abandoned.
+	 */
+	void evictEntries() {
+		var lastModified = new HashMap<Path, FileTime>();
+		try (var stream = Files.list(directory)) {
+			for (var path : stream.toList()) {
+				if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+					lastModified.put(path, Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS));
+			}
+		} catch (IOException e) {
+			logger.debug("Unable to list compiled scripts: {}", e.getLocalizedMessage());
+			return;
+		}
+		var oldestTemp = FileTime.from(Instant.now().minus(MAX_TEMP_AGE));
+		var entries = new ArrayList<Path>();
+		for (var mapEntry : lastModified.entrySet()) {
+			var path = mapEntry.getKey();
+			if (!path.getFileName().toString().contains("-"))
+				entries.add(path);
+			else if (mapEntry.getValue().compareTo(oldestTemp) < 0)
+				tryToDelete(path);
+		}
+		if (entries.size() <= maxEntries)
+			return;
+		entries.sort(Comparator.comparing(lastModified::get));
+		for (var path : entries.subList(0, entries.size() - maxEntries))
+			tryToDelete(path);
+	}
+
+	private static void tryToDelete(Path path) {
+		try {
+			deleteRecursive(path);
+			logger.debug("Removed compiled script {}", path);
+		} catch (IOException e) {
+			logger.debug("Unable to remove {}: {}", path, e.getLocalizedMessage());
+		}
+	}
+
+	private static void deleteRecursive(Path path) throws IOException {
+		try (var stream = Files.walk(path)) {
+			for (var p : stream.sorted(Comparator.reverseOrder()).toList())
+				Files.deleteIfExists(p);
+		}
+	}
+
+
+	/**
+	 * Create a key that identifies the script and everything that might affect how it is compiled.
+	 */
+	static String createKey(String script, ClassLoader loader) {
+		try {
+			var digest = MessageDigest.getInstance("SHA-256");
+			update(digest, GeneralTools.getVersion());
+			update(digest, GroovySystem.getVersion());
+			update(digest, System.getProperty("java.specification.version"));
+			update(digest, getClasspathFingerprint(loader));
+			update(digest, script);
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is required for all Java implementations
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+	}
+
+	/**
+	 * Create a String describing the classpath, including the size and modification time of each entry
+	 * so that updated jars (e.g. extensions) are detected.
+	 */
+	static String getClasspathFingerprint(ClassLoader loader) {
+		var sb = new StringBuilder();
+		String classpath = System.getProperty("java.class.path");
+		if (classpath != null) {
+			for (var path : classpath.split(File.pathSeparator))
+				appendEntry(sb, Paths.get(path));
+		}
+		for (var cl = loader; cl != null; cl = cl.getParent()) {
+			if (cl instanceof URLClassLoader urlLoader) {
+				for (URL url : urlLoader.getURLs()) {
+					try {
+						appendEntry(sb, Paths.get(url.toURI()));
+					} catch (URISyntaxException | IllegalArgumentException e) {
+						sb.append(url).append('\n');
+					}
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void appendEntry(StringBuilder sb, Path path) {
+		sb.append(path.toAbsolutePath());
+		try {
+			if (Files.isRegularFile(path))
+				sb.append('|').append(Files.size(path)).append('|').append(Files.getLastModifiedTime(path).toMillis());
+		} catch (IOException e) {
+			logger.debug("Unable to read attributes for {}", path);
+		}
+		sb.append('\n');
+	}
+
+
+	/**
+	 * Class loader for classes generated by the compiler, or read from the cache.
+	 */
+	private static class BytesClassLoader extends ClassLoader {
+
+		private final Map<String, byte[]> classes;
+
+		private BytesClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+			super(parent);
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if (bytes == null)
+				throw new ClassNotFoundException(name);
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+	}
+
+}
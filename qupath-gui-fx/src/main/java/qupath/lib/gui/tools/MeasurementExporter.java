@@ -22,28 +22,39 @@
 package qupath.lib.gui.tools;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Multimap;
-
-import qupath.lib.gui.commands.SummaryMeasurementTableCommand;
+import qupath.lib.common.GeneralTools;
+import qupath.lib.common.ThreadTools;
 import qupath.lib.gui.measure.ObservableMeasurementTableData;
 import qupath.lib.gui.prefs.PathPrefs;
 import qupath.lib.images.ImageData;
@@ -72,6 +83,9 @@ public class MeasurementExporter {
 	
 	private List<ProjectImageEntry<BufferedImage>> imageList;
 	
+	// Each image being read may require a lot of memory, so limit how many are read at once by default
+	private int parallelism = Math.min(4, ThreadTools.getParallelism());
+	
 	@SuppressWarnings("javadoc")
 	public MeasurementExporter() {}
 	
@@ -142,6 +156,20 @@ public class MeasurementExporter {
 		return this;
 	}
 	
+	/**
+	 * Specify the maximum number of images that may be read in parallel.
+	 * Higher values can make the export faster, but require more memory.
+	 * @param parallelism
+	 * @return this exporter
+	 * @since v0.6.0
+	 */
+	public MeasurementExporter parallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+		this.parallelism = parallelism;
+		return this;
+	}
+	
 	/**
 	 * Returns the list of images ({@code ProjectImageEntry}).
 	 * @return imageList
@@ -174,6 +202,15 @@ public class MeasurementExporter {
 		return separator;
 	}
 	
+	/**
+	 * Returns the maximum number of images that may be read in parallel.
+	 * @return parallelism
+	 * @since v0.6.0
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+	
 	/**
 	 * Returns the type of path objects used in the export.
 	 * @return path object
@@ -184,11 +221,8 @@ public class MeasurementExporter {
 	
 	/**
 	 * Exports the measurements of one or more entries in the project.
-	 * This function first opens all the images in the project to store 
-	 * all the column names and values of the measurements.
-	 * Then, it loops through the maps containing the values to write
-	 * them to the given output file.
 	 * @param file
+	 * @see #exportMeasurements(OutputStream)
 	 */
 	public void exportMeasurements(File file) {
 		try(FileOutputStream fos = new FileOutputStream(file)) {
@@ -201,100 +235,20 @@ public class MeasurementExporter {
 	
 	/**
 	 * Exports the measurements of one or more entries in the project.
-	 * This function first opens all the images in the project to store 
-	 * all the column names and values of the measurements.
-	 * Then, it loops through the maps containing the values to write
-	 * them to the given output stream.
+	 * <p>
+	 * Images are read in parallel (see {@link #parallelism(int)}), and the measurements for each image are 
+	 * written to a temporary file as soon as they are available.
+	 * Once all images have been read, the combined column names are known and the output is written 
+	 * to the given output stream.
+	 * This means that the memory required does not depend upon the number of images.
 	 * @param stream
 	 */
 	public void exportMeasurements(OutputStream stream) {
 		long startTime = System.currentTimeMillis();
 		
-		Map<ProjectImageEntry<?>, String[]> imageCols = new HashMap<>();
-		Map<ProjectImageEntry<?>, Integer> nImageEntries = new HashMap<>();
-		List<String> allColumns = new ArrayList<>();
-		Multimap<String, String> valueMap = LinkedListMultimap.create();
-		String pattern = "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
-		
-		for (ProjectImageEntry<?> entry: imageList) {
-			try {
-				ImageData<?> imageData = entry.readImageData();
-				ObservableMeasurementTableData model = new ObservableMeasurementTableData();
-				Collection<PathObject> pathObjects = imageData == null ? Collections.emptyList() : imageData.getHierarchy().getObjects(null, type);
-				if (filter != null)
-					pathObjects = pathObjects.stream().filter(filter).toList();
-				
-				model.setImageData(imageData, pathObjects);
-				List<String> data = SummaryMeasurementTableCommand.getTableModelStrings(model, separator, excludeColumns);
-				
-				// Get header
-				String[] header;
-				String headerString = data.get(0);
-				if (headerString.chars().filter(e -> e == '"').count() > 1)
-					header = headerString.split(separator.equals("\t") ? "\\" + separator : separator + pattern , -1);
-				else
-					header = headerString.split(separator);
-				
-				imageCols.put(entry, header);
-				nImageEntries.put(entry, data.size()-1);
-				
-				for (String col: header) {
-					if (!allColumns.contains(col)  && !excludeColumns.contains(col))
-						allColumns.add(col);
-				}
-				
-				// To keep the same column order, just delete non-relevant columns
-				if (!includeOnlyColumns.isEmpty())
-					allColumns.removeIf(n -> !includeOnlyColumns.contains(n));
-				
-				for (int i = 1; i < data.size(); i++) {
-					String[] row;
-					String rowString = data.get(i);
-					
-					// Check if some values in the row are escaped
-					if (rowString.chars().filter(e -> e == '"').count() > 1)
-						row = rowString.split(separator.equals("\t") ? "\\" + separator : separator + pattern , -1);
-					else
-						row = rowString.split(separator);
-					
-					// Put value in map
-					for (int elem = 0; elem < row.length; elem++) {
-						if (allColumns.contains(header[elem]))
-							valueMap.put(header[elem], row[elem]);
-					}
-				}
-				
-			} catch (Exception e) {
-				logger.error(e.getLocalizedMessage(), e);
-			}
-		}
-		
-		try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))){
-			writer.write(String.join(separator, allColumns));
-			writer.write(System.lineSeparator());
-
-			Iterator[] its = new Iterator[allColumns.size()];
-			for (int col = 0; col < allColumns.size(); col++) {
-				its[col] = valueMap.get(allColumns.get(col)).iterator();
-			}
-
-			for (ProjectImageEntry<?> entry: imageList) {
-				
-				for (int nObject = 0; nObject < nImageEntries.get(entry); nObject++) {
-					for (int nCol = 0; nCol < allColumns.size(); nCol++) {
-						if (Arrays.stream(imageCols.get(entry)).anyMatch(allColumns.get(nCol)::equals)) {
-							String val = (String)its[nCol].next();
-							// NaN values -> blank
-							if (val.equals("NaN"))
-								val = "";
-							writer.write(val);
-						}
-						if (nCol < allColumns.size()-1)
-							writer.write(separator);
-					}
-					writer.write(System.lineSeparator());
-				}
-			}
+		try (var tables = new ImageTableFile()) {
+			readTables(tables::add);
+			tables.writeDelimited(stream, separator);
 		} catch (Exception e) {
 			logger.error("Error writing to file: " + e.getLocalizedMessage(), e);
 		}
@@ -312,4 +266,222 @@ public class MeasurementExporter {
 		logger.info("Processed {} images", imageList.size());
 		logger.info(time);
 	}
-}
\ No newline at end of file
+	
+	
+	/**
+	 * Read the measurements for each image in parallel, passing them to the consumer (in the order of the image list) 
+	 * from the calling thread.
+	 * At most {@link #getParallelism()} images are read at any one time.
+	 */
+	private void readTables(IOConsumer<ImageTable> consumer) throws IOException, InterruptedException {
+		var pool = Executors.newFixedThreadPool(parallelism, ThreadTools.createThreadFactory("measurement-export-", true));
+		try {
+			var futures = new ArrayDeque<Future<ImageTable>>();
+			var iterator = imageList.iterator();
+			while (iterator.hasNext() || !futures.isEmpty()) {
+				while (iterator.hasNext() && futures.size() < parallelism) {
+					var entry = iterator.next();
+					futures.add(pool.submit(() -> readTable(entry)));
+				}
+				try {
+					consumer.accept(futures.poll().get());
+				} catch (ExecutionException e) {
+					logger.error(e.getCause().getLocalizedMessage(), e.getCause());
+					consumer.accept(ImageTable.EMPTY);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private ImageTable readTable(ProjectImageEntry<?> entry) throws IOException {
+		ImageData<?> imageData = entry.readImageData();
+		ObservableMeasurementTableData model = new ObservableMeasurementTableData();
+		Collection<PathObject> pathObjects = imageData == null ? Collections.emptyList() : imageData.getHierarchy().getObjects(null, type);
+		if (filter != null)
+			pathObjects = pathObjects.stream().filter(filter).toList();
+		model.setImageData(imageData, pathObjects);
+		
+		List<String> columns = new ArrayList<>(model.getAllNames());
+		columns.removeAll(excludeColumns);
+		if (!includeOnlyColumns.isEmpty())
+			columns.retainAll(includeOnlyColumns);
+		
+		// Read measurements directly from measurement lists where possible, 
+		// otherwise use the same strings that would be shown in a table
+		var items = model.getItems();
+		Object[] values = new Object[columns.size()];
+		for (int c = 0; c < columns.size(); c++) {
+			String col = columns.get(c);
+			if (model.isDerivedMeasurement(col)) {
+				String[] strings = new String[items.size()];
+				for (int i = 0; i < strings.length; i++)
+					strings[i] = model.getStringValue(items.get(i), col);
+				values[c] = strings;
+			} else
+				values[c] = model.getDoubleValues(col);
+		}
+		return new ImageTable(columns, values, items.size());
+	}
+	
+	private static String escape(String val, String separator) {
+		if (val.contains(separator))
+			return "\"" + val + "\"";
+		return val;
+	}
+	
+	
+	@FunctionalInterface
+	private interface IOConsumer<T> {
+		
+		void accept(T value) throws IOException;
+		
+	}
+	
+	
+	/**
+	 * Temporary file used to store the measurements for each image in a compact binary form, 
+	 * until the combined column names are known.
+	 * The file is deleted when this is closed.
+	 */
+	static class ImageTableFile implements AutoCloseable {
+		
+		private final Path path;
+		private final DataOutputStream output;
+		private final List<String> columns = new ArrayList<>();
+		private final Map<String, Integer> columnIndices = new HashMap<>();
+		private int nTables = 0;
+		
+		ImageTableFile() throws IOException {
+			path = Files.createTempFile("qupath-measurements-", ".bin");
+			output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+		}
+		
+		/**
+		 * Add the measurements for an image.
+		 */
+		void add(ImageTable table) throws IOException {
+			// Update the columns, keeping the order in which they are first encountered
+			int[] indices = new int[table.columns().size()];
+			for (int c = 0; c < indices.length; c++) {
+				String col = table.columns().get(c);
+				indices[c] = columnIndices.computeIfAbsent(col, n -> {
+					columns.add(n);
+					return columns.size() - 1;
+				});
+			}
+			table.write(output, indices);
+			nTables++;
+		}
+		
+		/**
+		 * Write all the measurements as delimited text, using the combined columns of all images.
+		 * The stream is closed afterwards.
+		 */
+		void writeDelimited(OutputStream stream, String separator) throws IOException {
+			output.close();
+			try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+					PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+				writer.write(columns.stream().map(c -> escape(c, separator)).collect(Collectors.joining(separator)));
+				writer.write(System.lineSeparator());
+				
+				String[] row = new String[columns.size()];
+				for (int i = 0; i < nTables; i++)
+					ImageTable.writeRows(input, row, v -> escape(v, separator), separator, writer);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				output.close();
+			} finally {
+				Files.deleteIfExists(path);
+			}
+		}
+		
+	}
+	
+	
+	/**
+	 * Measurements for a single image.
+	 * Each value in the array is either a {@code double[]} (for measurements read from measurement lists) or a 
+	 * {@code String[]} (for other measurements), containing one entry per row.
+	 */
+	record ImageTable(List<String> columns, Object[] values, int nRows) {
+		
+		static final ImageTable EMPTY = new ImageTable(Collections.emptyList(), new Object[0], 0);
+		
+		/**
+		 * Write the table in a compact binary form, using the indices of the columns in the combined output.
+		 */
+		private void write(DataOutputStream output, int[] columnIndices) throws IOException {
+			output.writeInt(columnIndices.length);
+			for (int c = 0; c < columnIndices.length; c++) {
+				output.writeInt(columnIndices[c]);
+				output.writeBoolean(values[c] instanceof double[]);
+			}
+			output.writeInt(nRows);
+			for (int r = 0; r < nRows; r++) {
+				for (var v : values) {
+					if (v instanceof double[] doubles)
+						output.writeDouble(doubles[r]);
+					else
+						writeString(output, ((String[])v)[r]);
+				}
+			}
+		}
+		
+		/**
+		 * Read a table written by {@link #write(DataOutputStream, int[])}, writing each row as delimited text.
+		 */
+		private static void writeRows(DataInputStream input, String[] row, Function<String, String> escape, String separator, PrintWriter writer) throws IOException {
+			int nCols = input.readInt();
+			int[] indices = new int[nCols];
+			boolean[] isNumeric = new boolean[nCols];
+			for (int c = 0; c < nCols; c++) {
+				indices[c] = input.readInt();
+				isNumeric[c] = input.readBoolean();
+			}
+			int nRows = input.readInt();
+			for (int r = 0; r < nRows; r++) {
+				Arrays.fill(row, "");
+				for (int c = 0; c < nCols; c++) {
+					String val;
+					if (isNumeric[c]) {
+						double d = input.readDouble();
+						val = Double.isNaN(d) ? "" : GeneralTools.formatNumber(d, 4);
+					} else {
+						val = readString(input);
+						// NaN values -> blank
+						if (val == null || val.equals("NaN"))
+							val = "";
+					}
+					row[indices[c]] = escape.apply(val);
+				}
+				writer.write(String.join(separator, row));
+				writer.write(System.lineSeparator());
+			}
+		}
+		
+		private static void writeString(DataOutputStream output, String val) throws IOException {
+			if (val == null) {
+				output.writeInt(-1);
+				return;
+			}
+			byte[] bytes = val.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+		
+		private static String readString(DataInputStream input) throws IOException {
+			int length = input.readInt();
+			if (length < 0)
+				return null;
+			return new String(input.readNBytes(length), StandardCharsets.UTF_8);
+		}
+		
+	}
+	
+}
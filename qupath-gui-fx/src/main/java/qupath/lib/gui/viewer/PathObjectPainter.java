@@ -41,6 +41,8 @@ import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RectangularShape;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -98,6 +100,12 @@ import qupath.lib.roi.interfaces.ROI;
 public class PathObjectPainter {
 
 	private static final Logger logger = LoggerFactory.getLogger(PathObjectPainter.class);
+	
+	/**
+	 * Downsample above which tiny detections may be written directly to an image raster, rather than painted with Java2D.
+	 * This should match the threshold used to determine whether a detection is tiny.
+	 */
+	private static final double MIN_SPLAT_DOWNSAMPLE = 4;
 
 	private static ShapeProvider shapeProvider = new ShapeProvider();
 
@@ -133,6 +141,95 @@ public class PathObjectPainter {
 	}
 
 
+	/**
+	 * Paint the specified objects to an image, using a cheaper level of detail where possible.
+	 * <p>
+	 * Detections that would only be a few pixels in size at the specified downsample are 'splatted', i.e. 
+	 * written directly into the image raster as a block of pixels, rather than being drawn with Java2D.
+	 * Every splat covers at least one pixel, so that the density of small objects remains visible.
+	 * All other objects are painted as with {@link #paintSpecifiedObjects(Graphics2D, Collection, OverlayOptions, PathObjectSelectionModel, double)}, 
+	 * and the painting order is retained.
+	 * <p>
+	 * This is intended for painting overlay tiles at low resolution, and so no selection model is used.
+	 * 
+	 * @param img the image to paint; splatting is only used if this has the type {@link BufferedImage#TYPE_INT_ARGB}
+	 * @param g2d graphics object for the image, with a transform to convert image coordinates to pixels
+	 * @param pathObjects the objects to paint
+	 * @param overlayOptions the overlay options defining how objects should be painted
+	 * @param downsample the downsample factor; this should already be applied to the graphics object
+	 * @since v0.6.0
+	 */
+	public static void paintSpecifiedObjects(BufferedImage img, Graphics2D g2d, Collection<? extends PathObject> pathObjects, OverlayOptions overlayOptions, double downsample) {
+		if (pathObjects == null)
+			return;
+		var transform = g2d.getTransform();
+		int scaleAndTranslate = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE | AffineTransform.TYPE_GENERAL_SCALE;
+		if (img.getType() != BufferedImage.TYPE_INT_ARGB || downsample <= MIN_SPLAT_DOWNSAMPLE ||
+				(transform.getType() & ~scaleAndTranslate) != 0 || transform.getScaleX() <= 0 || transform.getScaleY() <= 0) {
+			paintSpecifiedObjects(g2d, pathObjects, overlayOptions, null, downsample);
+			return;
+		}
+		// Since the image is painted synchronously, we can alternate between Java2D and writing pixels directly
+		int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		for (PathObject object : pathObjects) {
+			if (Thread.currentThread().isInterrupted())
+				return;
+			if (!splatObject(object, pixels, img.getWidth(), img.getHeight(), transform, overlayOptions, downsample))
+				paintObject(object, g2d, overlayOptions, null, downsample);
+		}
+	}
+	
+	
+	/**
+	 * Write a tiny detection directly into an ARGB pixel array, if possible.
+	 * The pixels are those that Java2D would fill for the bounding box, or the pixel containing the center of the 
+	 * bounding box if no pixels would otherwise be filled.
+	 * @return true if the object has been handled (including if it is hidden), false if it should be painted in the usual way
+	 */
+	private static boolean splatObject(PathObject pathObject, int[] pixels, int width, int height, AffineTransform transform, OverlayOptions overlayOptions, double downsample) {
+		ROI roi = pathObject == null ? null : pathObject.getROI();
+		if (roi == null || !pathObject.isDetection() || !isRoiTinyAfterDownsampling(roi, downsample))
+			return false;
+		if (overlayOptions.isPathClassHidden(pathObject.getPathClass()) || isHiddenObjectType(pathObject, overlayOptions))
+			return true;
+		Color color = getBaseObjectColor(pathObject, overlayOptions, false);
+		// Translucent colors need to be blended, so leave them to Java2D
+		if (color == null || color.getAlpha() != 255)
+			return false;
+		
+		// Use the same (integer) bounds as fillRoiBounds
+		double x = (int)roi.getBoundsX();
+		double y = (int)roi.getBoundsY();
+		double x0 = x * transform.getScaleX() + transform.getTranslateX();
+		double x1 = (x + Math.ceil(roi.getBoundsWidth())) * transform.getScaleX() + transform.getTranslateX();
+		double y0 = y * transform.getScaleY() + transform.getTranslateY();
+		double y1 = (y + Math.ceil(roi.getBoundsHeight())) * transform.getScaleY() + transform.getTranslateY();
+		int ix0 = (int)Math.ceil(x0 - 0.5);
+		int ix1 = (int)Math.ceil(x1 - 0.5);
+		if (ix1 <= ix0) {
+			ix0 = (int)Math.floor((x0 + x1) / 2.0);
+			ix1 = ix0 + 1;
+		}
+		int iy0 = (int)Math.ceil(y0 - 0.5);
+		int iy1 = (int)Math.ceil(y1 - 0.5);
+		if (iy1 <= iy0) {
+			iy0 = (int)Math.floor((y0 + y1) / 2.0);
+			iy1 = iy0 + 1;
+		}
+		ix0 = Math.max(0, ix0);
+		iy0 = Math.max(0, iy0);
+		ix1 = Math.min(width, ix1);
+		iy1 = Math.min(height, iy1);
+		int argb = color.getRGB();
+		for (int yy = iy0; yy < iy1; yy++) {
+			int offset = yy * width;
+			for (int xx = ix0; xx < ix1; xx++)
+				pixels[offset + xx] = argb;
+		}
+		return true;
+	}
+	
+
 	/**
 	 * Paint the specified tissue microarray grid.
 	 * 
@@ -284,14 +381,14 @@ public class PathObjectPainter {
 		} else if (pathObject.isCell()) {
 			PathCellObject cell = (PathCellObject)pathObject;
 			if (overlayOptions.getShowCellBoundaries())
-				paintROI(roi, g, colorStroke, stroke, colorFill, downsample);
+				paintROI(roi, g, colorStroke, stroke, colorFill, downsample, true);
 			if (overlayOptions.getShowCellNuclei()) {
 				var nucleus = cell.getNucleusROI();
 				if (nucleus != null)
-					paintROI(cell.getNucleusROI(), g, colorStroke, stroke, colorFill, downsample);
+					paintROI(cell.getNucleusROI(), g, colorStroke, stroke, colorFill, downsample, true);
 			}
 		} else {
-			paintROI(roi, g, colorStroke, stroke, colorFill, downsample);
+			paintROI(roi, g, colorStroke, stroke, colorFill, downsample, pathObject.isDetection());
 			String arrowhead = getArrowheadStringOrNull(pathObject, roi);
 			if (arrowhead != null) {
 				paintArrowheads(g, roi, arrowhead, colorStroke, null, downsample);
@@ -519,7 +616,7 @@ public class PathObjectPainter {
 
 
 	private static boolean isRoiTinyAfterDownsampling(ROI roi, double downsample) {
-		return downsample > 4 && roi.getBoundsWidth() / downsample < 3 && roi.getBoundsHeight() / downsample < 3;
+		return downsample > MIN_SPLAT_DOWNSAMPLE && roi.getBoundsWidth() / downsample < 3 && roi.getBoundsHeight() / downsample < 3;
 	}
 
 
@@ -612,13 +709,13 @@ public class PathObjectPainter {
 
 
 
-	private static void paintROI(ROI roi, Graphics2D g, Color colorStroke, Stroke stroke, Color colorFill, double downsample) {
+	private static void paintROI(ROI roi, Graphics2D g, Color colorStroke, Stroke stroke, Color colorFill, double downsample, boolean isDetection) {
 		if (colorStroke == null && colorFill == null)
 			return;
 
 		Graphics2D g2d = (Graphics2D)g.create();
 		if (RoiTools.isShapeROI(roi)) {
-			Shape shape = shapeProvider.getShape(roi, downsample, g.getClipBounds());
+			Shape shape = shapeProvider.getShape(roi, downsample, g.getClipBounds(), isDetection);
 			// Only pass the colorFill if we have an area (i.e. not a line/polyline)
 			if (roi.isArea())
 				paintShape(shape, g, colorStroke, stroke, colorFill);
@@ -691,6 +788,12 @@ public class PathObjectPainter {
 	static class ShapeProvider {
 
 		static final int MIN_SIMPLIFY_VERTICES = 250;
+		
+		/**
+		 * Minimum number of vertices for simplification at the lowest band.
+		 * This band is only used for detections (e.g. cells), which are typically painted to overlay tiles at low resolution.
+		 */
+		static final int MIN_SIMPLIFY_VERTICES_LOW = 32;
 
 		private RectanglePool rectanglePool = new RectanglePool();
 		private EllipsePool ellipsePool = new EllipsePool();
@@ -701,16 +804,21 @@ public class PathObjectPainter {
 		private Map<ROI, Shape> map50 = Collections.synchronizedMap(new WeakHashMap<>());
 		private Map<ROI, Shape> map20 = Collections.synchronizedMap(new WeakHashMap<>());
 		private Map<ROI, Shape> map10 = Collections.synchronizedMap(new WeakHashMap<>());
+		private Map<ROI, Shape> map4 = Collections.synchronizedMap(new WeakHashMap<>());
 		private Map<ROI, Shape> map = Collections.synchronizedMap(new WeakHashMap<>());
 
 		// Note: this relies upon the fact that the ROI is immutable shapes are cached
 		private Map<Area, GriddedArea> areaMap = Collections.synchronizedMap(new WeakHashMap<>());
 
-		private Map<ROI, Shape> getMap(final ROI shape, final double downsample) {
+		private Map<ROI, Shape> getMap(final ROI shape, final double downsample, final boolean isDetection) {
 			// If we don't have many vertices, just return the main map - no need to simplify
 			int nVertices = shape.getNumPoints();
-			if (nVertices < MIN_SIMPLIFY_VERTICES || !shape.isArea())
+			if (nVertices < (isDetection ? MIN_SIMPLIFY_VERTICES_LOW : MIN_SIMPLIFY_VERTICES) || !shape.isArea())
 				return map;
+			
+			// Shapes with fewer vertices are usually small, and only simplified at the lowest band
+			if (nVertices < MIN_SIMPLIFY_VERTICES)
+				return downsample > 4 ? map4 : map;
 
 			if (downsample > 50)
 				return map50;
@@ -718,18 +826,33 @@ public class PathObjectPainter {
 				return map20;
 			if (downsample > 10)
 				return map10;
+			// Annotations retain their full detail until the downsample is higher
+			if (isDetection && downsample > 4)
+				return map4;
 			return map;
 		}
+		
+		/**
+		 * Get the altitude threshold used to simplify shapes stored in a map.
+		 * This is about one pixel at the smallest downsample that uses the map.
+		 */
+		private double getSimplifyThreshold(final Map<ROI, Shape> map) {
+			if (map == map50)
+				return 50;
+			if (map == map20)
+				return 20;
+			if (map == map10)
+				return 10;
+			if (map == map4)
+				return 4;
+			return 0;
+		}
 
-		private static Shape simplifyByDownsample(final Shape shape, final double downsample) {
+		private static Shape simplifyShape(final Shape shape, final double altitudeThreshold) {
 			try {
 				int pointCountThreshold = 10;
-				if (downsample > 50)
-					return ShapeSimplifier.simplifyPath(shape instanceof Path2D ? (Path2D)shape : new Path2D.Float(shape), 50, pointCountThreshold);
-				if (downsample > 20)
-					return ShapeSimplifier.simplifyPath(shape instanceof Path2D ? (Path2D)shape : new Path2D.Float(shape), 20, pointCountThreshold);
-				if (downsample > 10)
-					return ShapeSimplifier.simplifyPath(shape instanceof Path2D ? (Path2D)shape : new Path2D.Float(shape), 10, pointCountThreshold);
+				if (altitudeThreshold > 0)
+					return ShapeSimplifier.simplifyPath(shape instanceof Path2D ? (Path2D)shape : new Path2D.Float(shape), altitudeThreshold, pointCountThreshold);
 			} catch (Exception e) {
 				logger.warn("Unable to simplify path: {}", e.getLocalizedMessage());
 				logger.debug("", e);
@@ -737,8 +860,8 @@ public class PathObjectPainter {
 			return shape;
 		}
 
-		public Shape getShape(final ROI roi, final double downsample, final Rectangle clip) {
-			var shape = getShape(roi, downsample);
+		public Shape getShape(final ROI roi, final double downsample, final Rectangle clip, final boolean isDetection) {
+			var shape = getShape(roi, downsample, isDetection);
 			// Painting performance is poor for extremely complex shapes
 			// Here, we try to get a cropped version of the shape when required
 			if (shape instanceof Area area && clip != null) {
@@ -748,7 +871,7 @@ public class PathObjectPainter {
 			return shape;
 		}
 
-		private Shape getShape(final ROI roi, final double downsample) {
+		private Shape getShape(final ROI roi, final double downsample, final boolean isDetection) {
 			if (roi instanceof RectangleROI) {
 				Rectangle2D rectangle = rectanglePool.getShape();
 				rectangle.setFrame(roi.getBoundsX(), roi.getBoundsY(), roi.getBoundsWidth(), roi.getBoundsHeight());
@@ -768,7 +891,7 @@ public class PathObjectPainter {
 				return line;
 			}
 
-			Map<ROI, Shape> map = getMap(roi, downsample);
+			Map<ROI, Shape> map = getMap(roi, downsample, isDetection);
 			Shape shape = map.get(roi);
 			if (shape == null) {
 				shape = RoiTools.getShape(roi);
@@ -780,7 +903,7 @@ public class PathObjectPainter {
 					//					simplifier.setDistanceTolerance(downsample);
 					//					simplifier.setEnsureValid(false);
 					//					shape = GeometryTools.geometryToShape(simplifier.getResultGeometry());
-					shape = simplifyByDownsample(shape, downsample);
+					shape = simplifyShape(shape, getSimplifyThreshold(map));
 				}
 				map.put(roi, shape);
 			}
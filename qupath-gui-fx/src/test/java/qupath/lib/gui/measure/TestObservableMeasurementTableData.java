@@ -26,6 +26,7 @@ package qupath.lib.gui.measure;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Collections;
 
 import org.junit.jupiter.api.Test;
@@ -167,5 +168,79 @@ public class TestObservableMeasurementTableData {
 		
 		}
 	}
+	
+	@SuppressWarnings("javadoc")
+	@Test
+	public void test_incrementalCounts() {
+		ImageData<BufferedImage> imageData = new ImageData<>(
+				new WrappedBufferedImageServer("Dummy",
+						new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB)));
+		PathObjectHierarchy hierarchy = imageData.getHierarchy();
+		PathClass tumorClass = PathClass.StandardPathClasses.TUMOR;
+		
+		PathObject parent = PathObjects.createAnnotationObject(
+				ROIs.createRectangleROI(0, 0, 100, 100, ImagePlane.getDefaultPlane()));
+		ROI smallROI = ROIs.createRectangleROI(50, 50, 1, 1, ImagePlane.getDefaultPlane());
+		for (int i = 0; i < 10; i++)
+			parent.addChildObject(PathObjects.createDetectionObject(smallROI, i < 5 ? PathClass.getNegative(tumorClass) : PathClass.getOnePlus(tumorClass)));
+		PathObject other = PathObjects.createAnnotationObject(
+				ROIs.createRectangleROI(200, 200, 100, 100, ImagePlane.getDefaultPlane()));
+		other.addChildObject(PathObjects.createDetectionObject(
+				ROIs.createRectangleROI(250, 250, 1, 1, ImagePlane.getDefaultPlane()), PathClass.getNegative(tumorClass)));
+		hierarchy.addObjects(Arrays.asList(parent, other));
+		
+		ObservableMeasurementTableData model = new ObservableMeasurementTableData();
+		model.setImageData(imageData, Arrays.asList(parent, other, hierarchy.getRootObject()));
+		assertEquals(5, model.getNumericValue(parent, "Num Tumor: Negative"), EPSILON);
+		assertEquals(50, model.getNumericValue(parent, "Tumor: H-score"), EPSILON);
+		assertEquals(1, model.getNumericValue(other, "Num Tumor: Negative"), EPSILON);
+		var index = DetectionClassCountIndex.getInstance(hierarchy);
+		var counts = index.getCounts(hierarchy, parent);
+		var countsOther = index.getCounts(hierarchy, other);
+		var countsRoot = index.getCounts(hierarchy, hierarchy.getRootObject());
+		
+		// Reclassifying should update the counts that include the detection, without refreshing the table
+		var detection = parent.getChildObjects().stream().filter(p -> p.getPathClass() == PathClass.getNegative(tumorClass)).findFirst().get();
+		detection.setPathClass(PathClass.getOnePlus(tumorClass));
+		hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(detection));
+		assertEquals(4, model.getNumericValue(parent, "Num Tumor: Negative"), EPSILON);
+		assertEquals(6, model.getNumericValue(parent, "Num Tumor: 1+"), EPSILON);
+		assertEquals(60, model.getNumericValue(parent, "Tumor: Positive %"), EPSILON);
+		assertEquals(5, model.getNumericValue(hierarchy.getRootObject(), "Num Tumor: Negative"), EPSILON);
+		// Counts should be updated in place, rather than recomputed
+		assertSame(counts, index.getCounts(hierarchy, parent));
+		assertSame(countsRoot, index.getCounts(hierarchy, hierarchy.getRootObject()));
+		assertSame(countsOther, index.getCounts(hierarchy, other));
+		
+		// Reclassifying again should move the detection back
+		detection.setPathClass(PathClass.getNegative(tumorClass));
+		hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(detection));
+		assertEquals(5, model.getNumericValue(parent, "Num Tumor: Negative"), EPSILON);
+		assertEquals(5, model.getNumericValue(parent, "Num Tumor: 1+"), EPSILON);
+		assertEquals(6, model.getNumericValue(hierarchy.getRootObject(), "Num Tumor: Negative"), EPSILON);
+		detection.setPathClass(PathClass.getOnePlus(tumorClass));
+		hierarchy.fireObjectClassificationsChangedEvent(this, Collections.singletonList(detection));
+		assertSame(counts, index.getCounts(hierarchy, parent));
+		
+		// Removing a detection should update the existing counts in place
+		hierarchy.removeObject(detection, false);
+		assertEquals(5, model.getNumericValue(parent, "Num Tumor: 1+"), EPSILON);
+		assertEquals(9, model.getNumericValue(parent, "Num Tumor (base)"), EPSILON);
+		assertEquals(10, model.getNumericValue(hierarchy.getRootObject(), "Num Tumor (base)"), EPSILON);
+		assertSame(counts, index.getCounts(hierarchy, parent));
+		assertSame(countsRoot, index.getCounts(hierarchy, hierarchy.getRootObject()));
+		assertSame(countsOther, index.getCounts(hierarchy, other));
+		
+		// Adding detections should be reflected in the counts for parents that contain them (only)
+		hierarchy.addObject(PathObjects.createDetectionObject(smallROI, PathClass.getNegative(tumorClass)));
+		hierarchy.addObject(PathObjects.createDetectionObject(
+				ROIs.createRectangleROI(500, 500, 1, 1, ImagePlane.getDefaultPlane()), PathClass.getNegative(tumorClass)));
+		assertEquals(5, model.getNumericValue(parent, "Num Tumor: Negative"), EPSILON);
+		assertEquals(10, model.getNumericValue(parent, "Num Tumor (base)"), EPSILON);
+		assertEquals(1, model.getNumericValue(other, "Num Tumor (base)"), EPSILON);
+		assertEquals(12, model.getNumericValue(hierarchy.getRootObject(), "Num Tumor (base)"), EPSILON);
+		assertSame(counts, index.getCounts(hierarchy, parent));
+		assertSame(countsOther, index.getCounts(hierarchy, other));
+	}
 
 }
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.scripting.languages;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@SuppressWarnings("javadoc")
+public class TestGroovyScriptCache {
+
+	@Test
+	public void test_roundTrip(@TempDir Path dir) throws Exception {
+		var engine = new GroovyScriptEngineImpl();
+		var cacheDir = dir.resolve("cache");
+		var cache = new GroovyScriptCache(cacheDir);
+		String script = "def x = [1, 2, 3].collect { it * 2 }\nreturn x.sum()";
+		assertNull(cache.readCompiledScript(engine, script));
+
+		var compiled = cache.getCompiledScript(engine, script);
+		assertEquals(12, compiled.eval());
+		assertTrue(Files.isDirectory(cacheDir));
+		if (isPosix(cacheDir))
+			assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheDir)));
+
+		// A new cache (e.g. in another process) should read the stored classes
+		var cache2 = new GroovyScriptCache(cacheDir);
+		var cached = cache2.readCompiledScript(engine, script);
+		assertNotNull(cached);
+		assertEquals(12, cached.eval());
+		assertNull(cache2.readCompiledScript(engine, script + "\n// changed"));
+	}
+
+	@Test
+	public void test_untrusted(@TempDir Path dir) throws Exception {
+		var cacheDir = dir.resolve("cache");
+		if (!isPosix(dir))
+			return;
+		var engine = new GroovyScriptEngineImpl();
+		var cache = new GroovyScriptCache(cacheDir);
+		String script = "return 1";
+		cache.getCompiledScript(engine, script);
+		assertNotNull(cache.readCompiledScript(engine, script));
+
+		// Classes that another user could have written must not be loaded
+		Path classFile;
+		try (var stream = Files.walk(cacheDir)) {
+			classFile = stream.filter(p -> p.toString().endsWith(".class")).findFirst().orElseThrow();
+		}
+		Files.setPosixFilePermissions(classFile, PosixFilePermissions.fromString("rw-rw-rw-"));
+		assertThrows(IOException.class, () -> GroovyScriptCache.checkTrusted(classFile));
+		assertNull(cache.readCompiledScript(engine, script));
+		Files.setPosixFilePermissions(classFile, PosixFilePermissions.fromString("rw-------"));
+		assertNotNull(cache.readCompiledScript(engine, script));
+
+		Files.setPosixFilePermissions(cacheDir, PosixFilePermissions.fromString("rwxrwxrwx"));
+		assertNull(cache.readCompiledScript(engine, script));
+		// The script should still be compiled, even if it can't be cached
+		assertEquals(1, cache.getCompiledScript(engine, script).eval());
+	}
+
+	@Test
+	public void test_eviction(@TempDir Path dir) throws Exception {
+		var engine = new GroovyScriptEngineImpl();
+		var cacheDir = dir.resolve("cache");
+		var cache = new GroovyScriptCache(cacheDir, 2);
+		for (int i = 0; i < 3; i++) {
+			cache.getCompiledScript(engine, "return " + i);
+			// Ensure modification times differ
+			try (var stream = Files.list(cacheDir)) {
+				for (var path : stream.toList())
+					Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() - 10_000));
+			}
+		}
+		try (var stream = Files.list(cacheDir)) {
+			assertEquals(2, stream.count());
+		}
+		assertNull(cache.readCompiledScript(engine, "return 0"));
+		assertNotNull(cache.readCompiledScript(engine, "return 1"));
+		assertNotNull(cache.readCompiledScript(engine, "return 2"));
+
+		// Reading a script should mark it as recently used
+		Thread.sleep(50);
+		assertNotNull(cache.readCompiledScript(engine, "return 1"));
+		try (var stream = Files.list(cacheDir)) {
+			for (var path : stream.toList())
+				Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() - 10_000));
+		}
+		cache.getCompiledScript(engine, "return 3");
+		assertNotNull(cache.readCompiledScript(engine, "return 1"));
+		assertNull(cache.readCompiledScript(engine, "return 2"));
+	}
+
+	private static boolean isPosix(Path path) {
+		return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+	}
+
+}
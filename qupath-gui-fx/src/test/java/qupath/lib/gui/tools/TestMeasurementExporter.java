@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * This file is part of QuPath.
+ * %%
+ * Copyright (C) 2024 QuPath developers, The University of Edinburgh
+ * %%
+ * QuPath is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * QuPath is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with QuPath.  If not, see <https://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package qupath.lib.gui.tools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import qupath.lib.common.GeneralTools;
+import qupath.lib.gui.tools.MeasurementExporter.ImageTable;
+import qupath.lib.gui.tools.MeasurementExporter.ImageTableFile;
+
+@SuppressWarnings("javadoc")
+public class TestMeasurementExporter {
+
+	@Test
+	public void test_roundTrip() throws Exception {
+		var table1 = new ImageTable(
+				List.of("Image", "Area µm^2", "Classe prédite"),
+				new Object[] {
+						new String[] {"image_1.tif", "image_1.tif", "image_1.tif"},
+						new double[] {1.5, Double.NaN, -2.25},
+						new String[] {"Tumeur", null, "NaN"}
+				},
+				3);
+		// Columns in a different order, with some new ones (including one containing the separator)
+		var table2 = new ImageTable(
+				List.of("Classe prédite", "Image", "直径", "a\tb"),
+				new Object[] {
+						new String[] {"Stroma ✓"},
+						new String[] {"画像.tif"},
+						new double[] {Double.NaN},
+						new String[] {"x\ty"}
+				},
+				1);
+
+		var bytes = new ByteArrayOutputStream();
+		try (var file = new ImageTableFile()) {
+			file.add(table1);
+			file.add(ImageTable.EMPTY);
+			file.add(table2);
+			file.writeDelimited(bytes, "\t");
+		}
+
+		var lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator());
+		assertEquals(5, lines.length);
+		assertEquals("Image\tArea µm^2\tClasse prédite\t直径\t\"a\tb\"", lines[0]);
+		assertEquals("image_1.tif\t" + GeneralTools.formatNumber(1.5, 4) + "\tTumeur\t\t", lines[1]);
+		// NaN values and nulls should be blank
+		assertEquals("image_1.tif\t\t\t\t", lines[2]);
+		assertEquals("image_1.tif\t" + GeneralTools.formatNumber(-2.25, 4) + "\t\t\t", lines[3]);
+		assertEquals("画像.tif\t\tStroma ✓\t\t\"x\ty\"", lines[4]);
+	}
+
+}